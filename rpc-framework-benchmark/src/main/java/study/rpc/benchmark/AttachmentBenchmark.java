@@ -0,0 +1,172 @@
+package study.rpc.benchmark;
+
+import org.apache.curator.test.TestingServer;
+import study.rpc.config.RpcConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.RpcConfigEnum;
+import study.rpc.proxy.RpcClientProxy;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.transport.netty.client.NettyRpcClient;
+import study.rpc.remoting.transport.netty.server.NettyRpcServer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 大块二进制参数和返回值的吞吐：RpcAttachment(跟在消息帧后面，文件通过sendfile发送，接收方不拷贝)
+ * 和byte[](序列化进消息体)对比。byte[]受单条消息8MB的限制，更大的数据只能用附件
+ * <p>
+ * 参数：
+ * <pre>
+ *   sizes=1,4,16,64,256,512   数据大小(MB)
+ *   bytes=1024                每个大小至少传输的总量(MB)，至少3次
+ * </pre>
+ * 运行：java -Xmx2g -cp target/classes:$(cat cp.txt) study.rpc.benchmark.AttachmentBenchmark
+ */
+public final class AttachmentBenchmark {
+    private static final long MB = 1024 * 1024;
+
+    public interface BlobService {
+        long upload(RpcAttachment data);
+
+        long uploadBytes(byte[] data);
+
+        RpcAttachment download(long length);
+
+        byte[] downloadBytes(int length);
+    }
+
+    public static final class BlobServiceImpl implements BlobService {
+        private final Path file;
+
+        BlobServiceImpl(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public long upload(RpcAttachment data) {
+            //请求中的附件在响应写出后由框架释放
+            return data.length();
+        }
+
+        @Override
+        public long uploadBytes(byte[] data) {
+            return data.length;
+        }
+
+        @Override
+        public RpcAttachment download(long length) {
+            return RpcAttachment.of(file, 0, length);
+        }
+
+        @Override
+        public byte[] downloadBytes(int length) {
+            return read(file, length);
+        }
+    }
+
+    private AttachmentBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        String[] sizes = options.getOrDefault("sizes", "1,4,16,64,256,512").split(",");
+        long totalBytes = Long.parseLong(options.getOrDefault("bytes", "1024")) * MB;
+        long maxSize = 0;
+        for (String size : sizes) {
+            maxSize = Math.max(maxSize, Long.parseLong(size) * MB);
+        }
+
+        Path file = Files.createTempFile("rpc-attachment", ".bin");
+        TestingServer zkServer = new TestingServer(true);
+        NettyRpcServer server = null;
+        try {
+            fill(file, maxSize);
+            System.setProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue(), zkServer.getConnectString());
+            //配置快照只在显式reload时更新
+            RpcConfig.reload();
+            server = new NettyRpcServer(new InetSocketAddress("127.0.0.1", NettyRpcServer.PORT));
+            server.start();
+            server.registerService(RpcServiceConfig.builder().service(new BlobServiceImpl(file)).build()).join();
+            BlobService blobService = new RpcClientProxy(new NettyRpcClient()).getProxy(BlobService.class);
+
+            System.out.printf("%8s %16s %16s %16s %16s%n", "size", "upload attach", "upload byte[]", "download attach", "download byte[]");
+            for (String size : sizes) {
+                long length = Long.parseLong(size) * MB;
+                int iterations = (int) Math.max(3, totalBytes / length);
+                //消息体超过8MB时解码端拒绝，byte[]没有结果
+                boolean inline = length + 1024 < RpcConstants.MAX_FRAME_LENGTH;
+                byte[] bytes = inline ? read(file, (int) length) : null;
+                RpcAttachment attachment = RpcAttachment.of(file, 0, length);
+                String uploadAttachment = throughput(length, iterations, () -> check(length, blobService.upload(attachment)));
+                String uploadBytes = inline ? throughput(length, iterations, () -> check(length, blobService.uploadBytes(bytes))) : "n/a";
+                String downloadAttachment = throughput(length, iterations, () -> {
+                    try (RpcAttachment result = blobService.download(length)) {
+                        check(length, result.length());
+                    }
+                });
+                String downloadBytes = inline ? throughput(length, iterations,
+                        () -> check(length, blobService.downloadBytes((int) length).length)) : "n/a";
+                System.out.printf("%6dMB %16s %16s %16s %16s%n", length / MB, uploadAttachment, uploadBytes,
+                        downloadAttachment, downloadBytes);
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            zkServer.close();
+            Files.deleteIfExists(file);
+        }
+        System.exit(0);
+    }
+
+    //先调用一次预热，之后统计每秒传输的MB数
+    private static String throughput(long length, int iterations, Runnable call) {
+        call.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format("%.0f MB/s", length * iterations / (double) MB / seconds);
+    }
+
+    private static void check(long expected, long actual) {
+        if (expected != actual) {
+            throw new IllegalStateException("expected " + expected + " bytes, got " + actual);
+        }
+    }
+
+    private static void fill(Path file, long length) throws IOException {
+        byte[] block = new byte[(int) MB];
+        ThreadLocalRandom.current().nextBytes(block);
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            for (long written = 0; written < length; written += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, length - written));
+            }
+        }
+    }
+
+    private static byte[] read(Path file, int length) {
+        byte[] bytes = new byte[length];
+        try (RandomAccessFile in = new RandomAccessFile(file.toFile(), "r")) {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,9 @@
+package study.rpc.benchmark;
+
+/**
+ * 压测使用的服务接口
+ */
+public interface BenchmarkService {
+    //原样返回消息，请求和响应大小相同
+    String echo(String message);
+}
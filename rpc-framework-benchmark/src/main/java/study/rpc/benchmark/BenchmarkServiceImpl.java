@@ -0,0 +1,24 @@
+package study.rpc.benchmark;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class BenchmarkServiceImpl implements BenchmarkService {
+    //模拟每次调用的处理时间(例如访问下游)，0表示直接返回
+    private final long serviceTimeNanos;
+
+    public BenchmarkServiceImpl() {
+        this(0);
+    }
+
+    public BenchmarkServiceImpl(long serviceTimeNanos) {
+        this.serviceTimeNanos = serviceTimeNanos;
+    }
+
+    @Override
+    public String echo(String message) {
+        if (serviceTimeNanos > 0) {
+            LockSupport.parkNanos(serviceTimeNanos);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,333 @@
+package study.rpc.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.curator.test.TestingServer;
+import study.rpc.config.MethodCacheConfig;
+import study.rpc.config.RpcConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.RpcConfigEnum;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.limiter.AdaptiveConcurrencyLimiter;
+import study.rpc.metrics.MethodMetricsSnapshot;
+import study.rpc.metrics.RpcMetrics;
+import study.rpc.proxy.RpcClientProxy;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.netty.client.NettyRpcClient;
+import study.rpc.remoting.transport.netty.server.NettyRpcServer;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端的回环压测工具：一个服务端 + N个客户端，通过127.0.0.1走完整的 发现->负载均衡->编码->网络->调用->解码 链路
+ * <p>
+ * 注册中心使用进程内的Zookeeper(TestingServer)。流量是开环(固定速率)的：第i个请求的计划发送时间是 start + i * interval，
+ * 延迟从计划发送时间开始计算，而不是从实际发送时间，这样客户端被阻塞时排队的时间也会计入延迟，
+ * 避免了协调遗漏(coordinated omission)导致的延迟低估。
+ * <p>
+ * 参数都是key=value的形式：
+ * <pre>
+ *   mode=all|provider|consumer  all：同一个JVM中启动zk、服务端和客户端；provider/consumer：分进程运行
+ *   zk=host:port                consumer模式必填；provider模式不填则启动进程内zk
+ *   port=9998                   服务端端口
+ *   consumers=4                 客户端(连接)数量
+ *   rate=20000                  所有客户端合计的请求速率(次/秒)
+ *   warmup=5 duration=30        预热和正式压测的秒数
+ *   payload=64                  echo消息的字节数
+ *   cache=none|result|serialized 服务端对echo方法开启结果缓存，serialized同时缓存序列化好的响应
+ *   limit=false                 服务端开启自适应并发限制，超出容量的请求被快速拒绝
+ *   shm=false                   服务端和客户端开启共享内存传输，同一台机器上的连接不走TCP(分进程时两边都要加)
+ *   uds=false                   服务端和客户端开启Unix域套接字传输，客户端通过注册中心中的路径连接本机服务端
+ *   serviceTimeUs=0             echo方法模拟的处理时间(微秒)，服务端容量约为 业务线程数 * 1000000 / serviceTimeUs
+ *   hgrm=path                   可选，输出完整的百分位分布文件
+ *   maxP99Us=                   可选，p99超过这个值(微秒)或者有失败请求时以非0退出，作为回归门禁
+ * </pre>
+ */
+public final class LoopbackLoadGenerator {
+
+    //压测结束后等待未返回请求的最长时间
+    private static final long DRAIN_TIMEOUT_MS = 5000;
+
+    private LoopbackLoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        //在任何Logger创建之前降低日志级别，避免zk和每次调用的日志影响压测
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Map<String, String> options = parseOptions(args);
+        if (Boolean.parseBoolean(options.get("limit"))) {
+            //必须在服务端相关的类加载之前设置
+            System.setProperty("rpc.limit.enabled", "true");
+        }
+        if (Boolean.parseBoolean(options.get("shm"))) {
+            System.setProperty("rpc.shm.enabled", "true");
+        }
+        if (Boolean.parseBoolean(options.get("uds"))) {
+            System.setProperty("rpc.uds.enabled", "true");
+        }
+        String mode = options.getOrDefault("mode", "all");
+        int port = Integer.parseInt(options.getOrDefault("port", String.valueOf(NettyRpcServer.PORT)));
+
+        TestingServer zkServer = null;
+        String zkAddress = options.get("zk");
+        if (zkAddress == null) {
+            if ("consumer".equals(mode)) {
+                throw new IllegalArgumentException("consumer mode requires zk=host:port");
+            }
+            zkServer = new TestingServer(true);
+            zkAddress = zkServer.getConnectString();
+        }
+        System.setProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue(), zkAddress);
+        //配置快照只在显式reload时更新
+        RpcConfig.reload();
+
+        NettyRpcServer server = null;
+        if (!"consumer".equals(mode)) {
+            server = startProvider(port, options.getOrDefault("cache", "none"),
+                    TimeUnit.MICROSECONDS.toNanos(Long.parseLong(options.getOrDefault("serviceTimeUs", "0"))));
+            System.out.printf("provider ready on 127.0.0.1:%d, zk=%s%n", port, zkAddress);
+        }
+
+        int exitCode = 0;
+        try {
+            if ("provider".equals(mode)) {
+                //分进程压测时服务端一直运行，直到进程被结束
+                new CountDownLatch(1).await();
+            } else {
+                exitCode = runConsumers(options);
+            }
+            if (server != null && server.getExpiredRequests() > 0) {
+                //客户端设置了请求超时(-Drpc.client.request.timeout.ms)时，服务端丢弃的过期请求数
+                System.out.printf("provider dropped expired requests: %d%n", server.getExpiredRequests());
+            }
+            if (server != null && server.getLimiter() != null) {
+                AdaptiveConcurrencyLimiter limiter = server.getLimiter();
+                System.out.printf("limiter: limit=%d rejected=%d%n", limiter.getLimit(), limiter.getRejected());
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            if (zkServer != null) {
+                zkServer.close();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private static NettyRpcServer startProvider(int port, String cache, long serviceTimeNanos) throws InterruptedException {
+        NettyRpcServer server = new NettyRpcServer(new InetSocketAddress("127.0.0.1", port));
+        server.start();
+        RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder().service(new BenchmarkServiceImpl(serviceTimeNanos)).build();
+        if (!"none".equals(cache)) {
+            rpcServiceConfig.getCachedMethods().put("echo", MethodCacheConfig.builder()
+                    .cacheSerialized("serialized".equals(cache)).build());
+        }
+        //等待注册完成，避免客户端在注册之前查询服务
+        server.registerService(rpcServiceConfig).join();
+        return server;
+    }
+
+    private static int runConsumers(Map<String, String> options) throws Exception {
+        int consumers = Integer.parseInt(options.getOrDefault("consumers", "4"));
+        long rate = Long.parseLong(options.getOrDefault("rate", "20000"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        int payloadSize = Integer.parseInt(options.getOrDefault("payload", "64"));
+
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'x');
+        String payload = new String(chars);
+        Method echo = BenchmarkService.class.getMethod("echo", String.class);
+
+        //每个客户端一条独立的连接，按rate/consumers的速率发送
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * consumers / rate;
+        List<Consumer> consumerList = new ArrayList<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            Consumer consumer = new Consumer(new NettyRpcClient(), echo, payload);
+            //同步调用一次，完成服务发现和建立连接
+            consumer.callOnce();
+            consumerList.add(consumer);
+        }
+
+        Recorder recorder = new Recorder(3);
+        Counters counters = new Counters();
+        long warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long runNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureStart = start + warmupNanos;
+        long end = measureStart + runNanos;
+
+        List<Thread> drivers = new ArrayList<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            Consumer consumer = consumerList.get(i);
+            //各个客户端的发送时间错开，避免所有请求在同一时刻到达
+            long offset = intervalNanos * i / consumers;
+            Thread t = new Thread(() -> consumer.drive(start + offset, intervalNanos, measureStart, end, recorder, counters),
+                    "load-driver-" + i);
+            t.setDaemon(true);
+            drivers.add(t);
+            t.start();
+        }
+        for (Thread t : drivers) {
+            t.join();
+        }
+        //等待最后一批请求返回
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (counters.outstanding() > 0 && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(10);
+        }
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        int exitCode = report(options, histogram, counters, rate, consumers, payloadSize, durationSeconds);
+        for (Consumer consumer : consumerList) {
+            consumer.client.close();
+        }
+        return exitCode;
+    }
+
+    private static int report(Map<String, String> options, Histogram histogram, Counters counters,
+                              long rate, int consumers, int payloadSize, long durationSeconds) throws IOException {
+        long completed = histogram.getTotalCount();
+        System.out.printf("consumers=%d offered=%d/s payload=%dB duration=%ds%n", consumers, rate, payloadSize, durationSeconds);
+        //throughput统计所有返回的请求，goodput只统计成功的请求
+        System.out.printf("sent=%d completed=%d errors=%d timedOut=%d throughput=%.1f/s goodput=%.1f/s%n",
+                counters.sent.sum(), completed, counters.errors.sum(), counters.outstanding(),
+                (double) completed / durationSeconds,
+                (double) (completed - counters.errors.sum()) / durationSeconds);
+        //直方图以纳秒记录，输出时换算成微秒
+        System.out.printf("latency(us) p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f%n",
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getValueAtPercentile(99.99) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+
+        //同一个JVM中运行时，客户端和服务端的统计都在这里
+        for (MethodMetricsSnapshot snapshot : RpcMetrics.snapshot()) {
+            System.out.println(snapshot);
+        }
+
+        String hgrm = options.get("hgrm");
+        if (hgrm != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(hgrm))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+
+        String maxP99Us = options.get("maxP99Us");
+        if (maxP99Us != null) {
+            double p99Us = histogram.getValueAtPercentile(99) / 1000.0;
+            if (p99Us > Double.parseDouble(maxP99Us) || counters.errors.sum() > 0 || counters.outstanding() > 0) {
+                System.out.printf("REGRESSION: p99=%.1fus limit=%sus errors=%d timedOut=%d%n",
+                        p99Us, maxP99Us, counters.errors.sum(), counters.outstanding());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i <= 0) {
+                throw new IllegalArgumentException("argument must be key=value: " + arg);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        return options;
+    }
+
+    /**
+     * 压测计数，只统计正式压测阶段(预热之后)发出的请求
+     */
+    private static final class Counters {
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder finished = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        long outstanding() {
+            return sent.sum() - finished.sum();
+        }
+    }
+
+    /**
+     * 一个客户端：独占一个NettyRpcClient和一个发送线程
+     */
+    private static final class Consumer {
+        private final NettyRpcClient client;
+        private final RpcClientProxy proxy;
+        private final Method method;
+        private final Object[] args;
+
+        Consumer(NettyRpcClient client, Method method, String payload) {
+            this.client = client;
+            this.proxy = new RpcClientProxy(client);
+            this.method = method;
+            this.args = new Object[]{payload};
+        }
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<RpcResponse<Object>> send() {
+            RpcRequest rpcRequest = proxy.buildRpcRequest(method, args);
+            return (CompletableFuture<RpcResponse<Object>>) client.sendRpcRequest(rpcRequest);
+        }
+
+        void callOnce() throws Exception {
+            send().get(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 开环发送：不等待上一个请求返回，严格按照计划时间发送
+         */
+        void drive(long firstIntended, long intervalNanos, long measureStart, long end,
+                   Recorder recorder, Counters counters) {
+            for (long intended = firstIntended; intended < end; intended += intervalNanos) {
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                boolean measured = intended >= measureStart;
+                if (measured) {
+                    counters.sent.increment();
+                }
+                long intendedStart = intended;
+                CompletableFuture<RpcResponse<Object>> future;
+                try {
+                    future = send();
+                } catch (Exception e) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                }
+                future.whenComplete((response, throwable) -> {
+                    if (!measured) {
+                        return;
+                    }
+                    recorder.recordValue(System.nanoTime() - intendedStart);
+                    if (throwable != null || response == null
+                            || !Integer.valueOf(RpcResponseCodeEnum.SUCCESS.getCode()).equals(response.getCode())) {
+                        counters.errors.increment();
+                    }
+                    counters.finished.increment();
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package study.rpc.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import study.rpc.metrics.MethodMetrics;
+import study.rpc.metrics.RpcMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用统计在热点路径上的开销：一次调用 = 查找MethodMetrics + onStart + onComplete
+ * 运行：java -cp target/classes:$(cat cp.txt) org.openjdk.jmh.Main MetricsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private static final String SERVICE_NAME = BenchmarkService.class.getName();
+    private static final String METHOD_NAME = "echo";
+
+    @Benchmark
+    public void recordCall() {
+        MethodMetrics metrics = RpcMetrics.consumer(SERVICE_NAME, METHOD_NAME);
+        metrics.onStart();
+        metrics.onComplete(12_345, true);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordCallContended() {
+        MethodMetrics metrics = RpcMetrics.consumer(SERVICE_NAME, METHOD_NAME);
+        metrics.onStart();
+        metrics.onComplete(12_345, true);
+    }
+}
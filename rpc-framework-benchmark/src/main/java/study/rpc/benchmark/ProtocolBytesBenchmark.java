@@ -0,0 +1,123 @@
+package study.rpc.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.netty.codec.CompactProtocol;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * v1协议和紧凑协议(v2)每次调用在线路上的字节数：客户端和服务端的编解码器直接对接，不经过网络，
+ * 连接建立(协商)之后统计请求和响应的平均字节数，以及两端编解码的平均耗时
+ * <p>
+ * 参数：
+ * <pre>
+ *   payloads=0,8,64,512   echo消息的字节数
+ *   calls=100000          每种协议统计的调用次数
+ * </pre>
+ * 运行：java -cp target/classes:$(cat cp.txt) study.rpc.benchmark.ProtocolBytesBenchmark
+ */
+public final class ProtocolBytesBenchmark {
+    //协商和方法字典在前几次调用中完成，不计入统计
+    private static final int WARMUP_CALLS = 20_000;
+
+    private ProtocolBytesBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        String[] payloads = options.getOrDefault("payloads", "0,8,64,512").split(",");
+        int calls = Integer.parseInt(options.getOrDefault("calls", "100000"));
+        System.out.printf("%8s %10s %10s %10s %10s %10s %10s %8s%n", "payload",
+                "v1 req B", "v1 resp B", "v1 ns", "v2 req B", "v2 resp B", "v2 ns", "saved");
+        for (String payloadLength : payloads) {
+            char[] chars = new char[Integer.parseInt(payloadLength)];
+            Arrays.fill(chars, 'x');
+            String payload = new String(chars);
+            Result v1 = run(null, null, payload, calls);
+            Result v2 = run(CompactProtocol.forClient(), CompactProtocol.forServer(), payload, calls);
+            double v1Bytes = v1.requestBytes + v1.responseBytes;
+            double v2Bytes = v2.requestBytes + v2.responseBytes;
+            System.out.printf("%8d %10.1f %10.1f %10.0f %10.1f %10.1f %10.0f %7.1f%%%n", chars.length,
+                    v1.requestBytes, v1.responseBytes, v1.nanos, v2.requestBytes, v2.responseBytes, v2.nanos,
+                    100 * (1 - v2Bytes / v1Bytes));
+        }
+    }
+
+    private static Result run(CompactProtocol clientProtocol, CompactProtocol serverProtocol, String payload, int calls) {
+        EmbeddedChannel client = new EmbeddedChannel(new RpcMessageEncoder(clientProtocol), new RpcMessageDecoder(clientProtocol));
+        EmbeddedChannel server = new EmbeddedChannel(new RpcMessageEncoder(serverProtocol), new RpcMessageDecoder(serverProtocol));
+        long[] bytes = new long[2];
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call(client, server, payload, bytes);
+        }
+        bytes[0] = 0;
+        bytes[1] = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call(client, server, payload, bytes);
+        }
+        long nanos = System.nanoTime() - start;
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+        return new Result((double) bytes[0] / calls, (double) bytes[1] / calls, (double) nanos / calls);
+    }
+
+    private static void call(EmbeddedChannel client, EmbeddedChannel server, String payload, long[] bytes) {
+        RpcRequest rpcRequest = RpcRequest.builder().requestId(UUID.randomUUID().toString())
+                .interfaceName(BenchmarkService.class.getName()).methodName("echo")
+                .parameters(new Object[]{payload}).paramTypes(new Class<?>[]{String.class})
+                .group("").version("").build();
+        client.writeOutbound(message(RpcConstants.REQUEST_TYPE, rpcRequest));
+        bytes[0] += transfer(client, server);
+        RpcRequest received = (RpcRequest) ((RpcMessage) server.readInbound()).getData();
+        server.writeOutbound(message(RpcConstants.RESPONSE_TYPE,
+                RpcResponse.success(received.getParameters()[0], received.getRequestId())));
+        bytes[1] += transfer(server, client);
+        RpcResponse<?> response = (RpcResponse<?>) ((RpcMessage) client.readInbound()).getData();
+        if (!rpcRequest.getRequestId().equals(response.getRequestId())) {
+            throw new IllegalStateException("requestId mismatch: " + response.getRequestId());
+        }
+    }
+
+    private static RpcMessage message(byte messageType, Object data) {
+        return RpcMessage.builder().messageType(messageType).codec(SerializationTypeEnum.KRYO.getCode()).data(data).build();
+    }
+
+    private static long transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        long bytes = 0;
+        ByteBuf buf;
+        while ((buf = from.readOutbound()) != null) {
+            bytes += buf.readableBytes();
+            to.writeInbound(buf);
+        }
+        return bytes;
+    }
+
+    private static final class Result {
+        private final double requestBytes;
+        private final double responseBytes;
+        private final double nanos;
+
+        Result(double requestBytes, double responseBytes, double nanos) {
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.nanos = nanos;
+        }
+    }
+}
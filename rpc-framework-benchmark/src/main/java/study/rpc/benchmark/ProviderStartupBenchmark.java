@@ -0,0 +1,71 @@
+package study.rpc.benchmark;
+
+import org.apache.curator.test.TestingServer;
+import study.rpc.config.RpcConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.RpcConfigEnum;
+import study.rpc.registry.zk.util.CuratorUtils;
+import study.rpc.remoting.transport.netty.server.NettyRpcServer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 服务端启动耗时：从启动到端口可以处理请求(ready)，以及到所有服务注册完成(registered)的时间
+ * <p>
+ * 参数：
+ * <pre>
+ *   services=500     发布的服务数量(同一个实现类，不同的version)
+ *   serial=false     true时先阻塞等待zk连接，再逐个等待每个服务注册完成，和之前的启动方式一致，用于对比
+ * </pre>
+ * 运行：java -cp target/classes:$(cat cp.txt) study.rpc.benchmark.ProviderStartupBenchmark services=500
+ */
+public final class ProviderStartupBenchmark {
+
+    private ProviderStartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        int services = Integer.parseInt(options.getOrDefault("services", "500"));
+        boolean serial = Boolean.parseBoolean(options.getOrDefault("serial", "false"));
+
+        try (TestingServer zkServer = new TestingServer(true)) {
+            System.setProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue(), zkServer.getConnectString());
+            //配置快照只在显式reload时更新
+            RpcConfig.reload();
+            long start = System.nanoTime();
+            NettyRpcServer server = new NettyRpcServer(new InetSocketAddress("127.0.0.1", NettyRpcServer.PORT));
+            if (serial) {
+                CuratorUtils.getZkClient();
+            }
+            server.start();
+            List<CompletableFuture<Void>> registrations = new ArrayList<>(services);
+            for (int i = 0; i < services; i++) {
+                RpcServiceConfig rpcServiceConfig = RpcServiceConfig.builder()
+                        .service(new BenchmarkServiceImpl()).version("v" + i).build();
+                CompletableFuture<Void> registration = server.registerService(rpcServiceConfig);
+                if (serial) {
+                    registration.join();
+                }
+                registrations.add(registration);
+            }
+            long ready = System.nanoTime();
+            CompletableFuture.allOf(registrations.toArray(new CompletableFuture[0])).join();
+            long registered = System.nanoTime();
+            System.out.printf("services=%d serial=%s ready=%.1fms registered=%.1fms%n", services, serial,
+                    (ready - start) / 1e6, (registered - start) / 1e6);
+            server.close();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,170 @@
+package study.rpc.benchmark;
+
+import org.apache.curator.test.TestingServer;
+import study.rpc.config.RpcConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.RpcConfigEnum;
+import study.rpc.proxy.RpcClientProxy;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.netty.client.NettyRpcClient;
+import study.rpc.remoting.transport.netty.server.NettyRpcServer;
+
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端监听socket数(SO_REUSEPORT reactor数)和吞吐的关系：每一轮用不同的reactor数启动服务端，
+ * 客户端以闭环方式(每条连接保持固定数量的未完成请求)打满服务端，输出每秒完成的调用数
+ * <p>
+ * 参数：
+ * <pre>
+ *   reactors=1,2,4,8     每一轮服务端的reactor数，1是原来的单accept线程 + 共享IO线程池
+ *   connections=32       客户端连接数，需要比reactor数多很多，内核按连接的四元组哈希分配到各个socket
+ *   inflight=16          每条连接上同时未完成的请求数
+ *   warmup=3 duration=10 预热和统计的秒数
+ *   payload=16           echo消息的字节数
+ * </pre>
+ * 运行：java -cp target/classes:$(cat cp.txt) study.rpc.benchmark.ReactorScalingBenchmark
+ */
+public final class ReactorScalingBenchmark {
+    private static final int BASE_PORT = 19100;
+
+    private ReactorScalingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        String[] reactorCounts = options.getOrDefault("reactors", "1,2,4,8").split(",");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "32"));
+        int inflight = Integer.parseInt(options.getOrDefault("inflight", "16"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "3"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "10"));
+        char[] chars = new char[Integer.parseInt(options.getOrDefault("payload", "16"))];
+        Arrays.fill(chars, 'x');
+        String payload = new String(chars);
+
+        TestingServer zkServer = new TestingServer(true);
+        System.setProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue(), zkServer.getConnectString());
+        //配置快照只在显式reload时更新
+        RpcConfig.reload();
+        System.out.printf("cpus=%d connections=%d inflight=%d payload=%dB%n",
+                Runtime.getRuntime().availableProcessors(), connections, inflight, chars.length);
+        System.out.printf("%8s %14s %8s%n", "reactors", "calls/s", "scaling");
+        double baseline = 0;
+        try {
+            for (int round = 0; round < reactorCounts.length; round++) {
+                int reactors = Integer.parseInt(reactorCounts[round]);
+                double throughput = run(reactors, BASE_PORT + round, connections, inflight, payload,
+                        warmupSeconds, durationSeconds);
+                if (round == 0) {
+                    baseline = throughput;
+                }
+                System.out.printf("%8d %14.0f %7.2fx%n", reactors, throughput, throughput / baseline);
+            }
+        } finally {
+            zkServer.close();
+        }
+        System.exit(0);
+    }
+
+    private static double run(int reactors, int port, int connections, int inflight, String payload,
+                              long warmupSeconds, long durationSeconds) throws Exception {
+        //服务端启动时从配置快照读取reactor数
+        System.setProperty(RpcConfigEnum.SERVER_REACTORS.getPropertyValue(), String.valueOf(reactors));
+        RpcConfig.reload();
+        //每一轮用不同的版本号注册，客户端不会查到上一轮已经关闭的服务端
+        String version = "reactors-" + reactors + "-" + port;
+        NettyRpcServer server = new NettyRpcServer(new InetSocketAddress("127.0.0.1", port));
+        server.start();
+        List<Connection> clients = new ArrayList<>(connections);
+        try {
+            server.registerService(RpcServiceConfig.builder().service(new BenchmarkServiceImpl()).version(version).build()).join();
+            Method echo = BenchmarkService.class.getMethod("echo", String.class);
+            RpcServiceConfig clientConfig = RpcServiceConfig.builder().version(version).build();
+            for (int i = 0; i < connections; i++) {
+                Connection connection = new Connection(new NettyRpcClient(), clientConfig, echo, payload);
+                //同步调用一次，完成服务发现和建立连接
+                connection.send().get(5, TimeUnit.SECONDS);
+                clients.add(connection);
+            }
+            for (Connection connection : clients) {
+                for (int i = 0; i < inflight; i++) {
+                    connection.loop();
+                }
+            }
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            long before = completed(clients);
+            long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            long calls = completed(clients) - before;
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return calls / seconds;
+        } finally {
+            for (Connection connection : clients) {
+                connection.running = false;
+            }
+            //等待未完成的请求返回后再关闭连接
+            TimeUnit.MILLISECONDS.sleep(200);
+            for (Connection connection : clients) {
+                connection.client.close();
+            }
+            server.close();
+        }
+    }
+
+    private static long completed(List<Connection> clients) {
+        long sum = 0;
+        for (Connection connection : clients) {
+            sum += connection.completed.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * 一条连接：独占一个NettyRpcClient，请求返回后立即在IO线程上发送下一个
+     */
+    private static final class Connection {
+        private final NettyRpcClient client;
+        private final RpcClientProxy proxy;
+        private final Method method;
+        private final Object[] args;
+        private final LongAdder completed = new LongAdder();
+        private volatile boolean running = true;
+
+        Connection(NettyRpcClient client, RpcServiceConfig rpcServiceConfig, Method method, String payload) {
+            this.client = client;
+            this.proxy = new RpcClientProxy(client, rpcServiceConfig);
+            this.method = method;
+            this.args = new Object[]{payload};
+        }
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<RpcResponse<Object>> send() {
+            RpcRequest rpcRequest = proxy.buildRpcRequest(method, args);
+            return (CompletableFuture<RpcResponse<Object>>) client.sendRpcRequest(rpcRequest);
+        }
+
+        void loop() {
+            send().whenComplete((response, throwable) -> {
+                completed.increment();
+                if (running) {
+                    loop();
+                }
+            });
+        }
+    }
+}
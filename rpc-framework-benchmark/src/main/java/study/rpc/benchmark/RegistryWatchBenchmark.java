@@ -0,0 +1,121 @@
+package study.rpc.benchmark;
+
+import org.apache.curator.test.TestingServer;
+import study.rpc.config.RpcConfig;
+import study.rpc.enums.RpcConfigEnum;
+import study.rpc.registry.zk.util.CuratorUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 消费端订阅大量服务时注册中心监听的开销：线程数、堆内存和Zookeeper上的watch数量，以及地址变化后多久能看到
+ * <p>
+ * 参数：
+ * <pre>
+ *   services=2000    订阅的服务数量，每个服务一个实例
+ * </pre>
+ * 运行：java -cp target/classes:$(cat cp.txt) study.rpc.benchmark.RegistryWatchBenchmark services=2000
+ */
+public final class RegistryWatchBenchmark {
+
+    private RegistryWatchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        //内嵌的Zookeeper默认不开放四字命令，mntr中的zk_watch_count包括数据watch和子节点watch
+        System.setProperty("zookeeper.4lw.commands.whitelist", "*");
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        int services = Integer.parseInt(options.getOrDefault("services", "2000"));
+
+        try (TestingServer zkServer = new TestingServer(true)) {
+            System.setProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue(), zkServer.getConnectString());
+            //配置快照只在显式reload时更新
+            RpcConfig.reload();
+            List<CompletableFuture<Void>> registrations = new ArrayList<>(services);
+            for (int i = 0; i < services; i++) {
+                registrations.add(CuratorUtils.createPersistentNodeAsync(instancePath(i, 9998), null));
+            }
+            CompletableFuture.allOf(registrations.toArray(new CompletableFuture[0])).join();
+
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            int threadsBefore = Thread.activeCount();
+            long heapBefore = usedHeap(memory);
+            long start = System.nanoTime();
+            for (int i = 0; i < services; i++) {
+                CuratorUtils.getServiceAddresses(serviceName(i));
+            }
+            long lookupNanos = System.nanoTime() - start;
+            //等后台的监听器启动完成
+            Thread.sleep(2000);
+            int threads = Thread.activeCount() - threadsBefore;
+            long heap = usedHeap(memory) - heapBefore;
+
+            //新增一个实例，统计消费端多久能看到
+            start = System.nanoTime();
+            CuratorUtils.createPersistentNodeAsync(instancePath(0, 9999), null).join();
+            while (CuratorUtils.getServiceAddresses(serviceName(0)).size() < 2) {
+                Thread.sleep(1);
+            }
+            long updateNanos = System.nanoTime() - start;
+
+            System.out.printf("services=%d lookup=%.1fms threads=+%d heap=+%.1fMB watches=%s update=%.1fms%n", services,
+                    lookupNanos / 1e6, threads, heap / 1024.0 / 1024.0, watchCount(zkServer.getPort()), updateNanos / 1e6);
+        }
+        System.exit(0);
+    }
+
+    private static String serviceName(int i) {
+        return "study.rpc.benchmark.Service" + i + "bench" + "v1";
+    }
+
+    private static String instancePath(int i, int port) {
+        return CuratorUtils.ZK_REGISTER_ROOT_PATH + "/" + serviceName(i) + "/127.0.0.1:" + port;
+    }
+
+    private static long usedHeap(MemoryMXBean memory) throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static String watchCount(int port) throws Exception {
+        for (String line : fourLetterWord(port, "mntr").split("\n")) {
+            if (line.startsWith("zk_watch_count")) {
+                return line.substring("zk_watch_count".length()).trim();
+            }
+        }
+        return "unknown";
+    }
+
+    private static String fourLetterWord(int port, String command) throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(command.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                response.write(buffer, 0, n);
+            }
+            return response.toString(StandardCharsets.US_ASCII.name());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package study.rpc.config;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.LoadBalanceEnum;
+import study.rpc.enums.RpcConfigEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.utils.PropertiesFileUtil;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 框架配置的不可变快照：启动时从classpath中的rpc.properties、环境变量和系统属性加载一次，
+ * 优先级 系统属性 > 环境变量(RPC_ZOOKEEPER_ADDRESS) > 配置文件 > 默认值。
+ * <p>
+ * 调用方每次通过get()读取当前快照，重新加载时整体替换快照，读到的值之间总是一致的。
+ * 线程池、Zookeeper连接这类创建时读取的配置只对之后创建的实例生效。
+ */
+@Slf4j
+@Getter
+@Builder(toBuilder = true)
+@ToString
+public final class RpcConfig {
+    private static volatile RpcConfig current = load();
+
+    static {
+        long refreshSeconds = current.getRefreshSeconds();
+        if (refreshSeconds > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rpc-config-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(RpcConfig::reload, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Builder.Default
+    private final String zookeeperAddress = "127.0.0.1:2181";
+    @Builder.Default
+    private final long zookeeperConnectTimeoutMs = 30_000;
+    @Builder.Default
+    private final int zookeeperRetryBaseSleepMs = 1000;
+    @Builder.Default
+    private final int zookeeperMaxRetries = 3;
+    //默认有限的超时时间，不回复的服务端不会让调用一直等待，截止时间也能传给服务端；显式配置为0表示一直等待响应
+    @Builder.Default
+    private final long requestTimeoutMs = 5000;
+    @Builder.Default
+    private final int connectTimeoutMs = 5000;
+    @Builder.Default
+    private final int heartbeatIntervalSeconds = 5;
+    @Builder.Default
+    private final int serverIdleTimeoutSeconds = 30;
+    @Builder.Default
+    private final int serviceHandlerThreads = Runtime.getRuntime().availableProcessors() * 2;
+    @Builder.Default
+    private final int serverReactors = 1;
+    //序列化扩展名和对应写入消息头的codec
+    @Builder.Default
+    private final String serializer = SerializationTypeEnum.KRYO.getName();
+    @Builder.Default
+    private final byte codec = SerializationTypeEnum.KRYO.getCode();
+    @Builder.Default
+    private final String loadBalance = LoadBalanceEnum.LOADBALANCE.getName();
+    @Builder.Default
+    private final long refreshSeconds = 0;
+
+    /**
+     * 当前的配置快照，热点路径上只是一次字段读取
+     */
+    public static RpcConfig get() {
+        return current;
+    }
+
+    /**
+     * 重新加载配置并替换当前快照；新配置不合法时保留原来的快照
+     */
+    public static RpcConfig reload() {
+        try {
+            RpcConfig config = load();
+            current = config;
+            return config;
+        } catch (RuntimeException e) {
+            log.warn("reload rpc config failed, keep the current one", e);
+            return current;
+        }
+    }
+
+    private static RpcConfig load() {
+        return load(PropertiesFileUtil.readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue()),
+                System.getenv(), System.getProperties());
+    }
+
+    static RpcConfig load(Properties file, Map<String, String> env, Properties system) {
+        Source source = new Source(file, env, system);
+        RpcConfigBuilder builder = RpcConfig.builder();
+        source.string(RpcConfigEnum.ZK_ADDRESS, builder::zookeeperAddress);
+        source.number(RpcConfigEnum.ZK_CONNECT_TIMEOUT_MS, v -> builder.zookeeperConnectTimeoutMs(v));
+        source.number(RpcConfigEnum.ZK_RETRY_BASE_SLEEP_MS, v -> builder.zookeeperRetryBaseSleepMs(Math.toIntExact(v)));
+        source.number(RpcConfigEnum.ZK_MAX_RETRIES, v -> builder.zookeeperMaxRetries(Math.toIntExact(v)));
+        source.number(RpcConfigEnum.REQUEST_TIMEOUT_MS, v -> builder.requestTimeoutMs(v));
+        source.number(RpcConfigEnum.CONNECT_TIMEOUT_MS, v -> builder.connectTimeoutMs(Math.toIntExact(v)));
+        source.number(RpcConfigEnum.HEARTBEAT_INTERVAL_SECONDS, v -> builder.heartbeatIntervalSeconds(Math.toIntExact(v)));
+        source.number(RpcConfigEnum.SERVER_IDLE_TIMEOUT_SECONDS, v -> builder.serverIdleTimeoutSeconds(Math.toIntExact(v)));
+        source.number(RpcConfigEnum.SERVICE_HANDLER_THREADS, v -> builder.serviceHandlerThreads(Math.toIntExact(v)));
+        source.number(RpcConfigEnum.SERVER_REACTORS, v -> builder.serverReactors(Math.toIntExact(v)));
+        source.string(RpcConfigEnum.SERIALIZER, name -> {
+            //在加载时检查，不让未知的序列化方式进入快照
+            SerializationTypeEnum type = SerializationTypeEnum.fromName(name);
+            if (type == null) {
+                throw new IllegalArgumentException("unknown serializer: " + name);
+            }
+            builder.serializer(type.getName()).codec(type.getCode());
+        });
+        source.string(RpcConfigEnum.LOAD_BALANCE, builder::loadBalance);
+        source.number(RpcConfigEnum.REFRESH_SECONDS, v -> builder.refreshSeconds(v));
+        return builder.build();
+    }
+
+    //按优先级查找配置项，没有配置时不调用setter，保留默认值
+    private static final class Source {
+        private final Properties file;
+        private final Map<String, String> env;
+        private final Properties system;
+
+        Source(Properties file, Map<String, String> env, Properties system) {
+            this.file = file;
+            this.env = env;
+            this.system = system;
+        }
+
+        void string(RpcConfigEnum key, Consumer<String> setter) {
+            String value = system.getProperty(key.getPropertyValue());
+            if (value == null) {
+                value = env.get(key.getEnvironmentName());
+            }
+            if (value == null && file != null) {
+                value = file.getProperty(key.getPropertyValue());
+            }
+            if (value != null && !value.trim().isEmpty()) {
+                setter.accept(value.trim());
+            }
+        }
+
+        void number(RpcConfigEnum key, LongConsumer setter) {
+            string(key, value -> {
+                try {
+                    setter.accept(Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid value for " + key.getPropertyValue() + ": " + value, e);
+                }
+            });
+        }
+    }
+}
@@ -10,7 +10,35 @@ public enum RpcConfigEnum {
     //配置文件路径
     RPC_CONFIG_PATH("rpc.properties"),
     //Zookeeper地址键值
-    ZK_ADDRESS("rpc.zookeeper.address");
+    ZK_ADDRESS("rpc.zookeeper.address"),
+    //等待Zookeeper连接的最长时间(毫秒)
+    ZK_CONNECT_TIMEOUT_MS("rpc.zookeeper.connect.timeout.ms"),
+    //Zookeeper重试的基础等待时间(毫秒)和最大重试次数
+    ZK_RETRY_BASE_SLEEP_MS("rpc.zookeeper.retry.base.sleep.ms"),
+    ZK_MAX_RETRIES("rpc.zookeeper.max.retries"),
+    //客户端等待响应的最长时间(毫秒)，0表示一直等待
+    REQUEST_TIMEOUT_MS("rpc.client.request.timeout.ms"),
+    //客户端建立连接的超时时间(毫秒)
+    CONNECT_TIMEOUT_MS("rpc.client.connect.timeout.ms"),
+    //客户端空闲多少秒后发送心跳
+    HEARTBEAT_INTERVAL_SECONDS("rpc.client.heartbeat.seconds"),
+    //服务端多少秒没有收到请求就关闭连接
+    SERVER_IDLE_TIMEOUT_SECONDS("rpc.server.idle.timeout.seconds"),
+    //服务端业务线程数
+    SERVICE_HANDLER_THREADS("rpc.server.handler.threads"),
+    //服务端用SO_REUSEPORT在同一个端口上监听的socket数，每个socket有自己的IO线程和业务线程池，1表示只有一个
+    SERVER_REACTORS("rpc.server.reactors"),
+    //客户端请求使用的序列化扩展名
+    SERIALIZER("rpc.serializer"),
+    //负载均衡扩展名
+    LOAD_BALANCE("rpc.loadbalance"),
+    //定时重新加载配置的间隔(秒)，0表示不重新加载
+    REFRESH_SECONDS("rpc.config.refresh.seconds");
 
     private final String propertyValue;
+
+    //环境变量名：rpc.zookeeper.address -> RPC_ZOOKEEPER_ADDRESS
+    public String getEnvironmentName() {
+        return propertyValue.replace('.', '_').toUpperCase();
+    }
 }
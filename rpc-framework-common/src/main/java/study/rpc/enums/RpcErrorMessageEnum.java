@@ -11,7 +11,12 @@ public enum RpcErrorMessageEnum {
     CLIENT_CONNECT_SERVER_FAILURE("客户端连接服务端失败"),
     SERVICE_INVOCATION_FAILURE("服务调用失败"),
     SERVICE_CAN_NOT_BE_FOUND("没有找到指定的服务"),
+    SERVICE_OVERLOADED("服务端过载，请求被拒绝"),
+    REQUEST_TIMEOUT("等待响应超时"),
+    CONNECTION_CLOSED("连接已断开，请求没有收到响应"),
     SERVICE_NOT_IMPLEMENT_ANY_INTERFACE("注册的服务没有实现任何接口"),
+    MERGER_NOT_FOUND("广播调用没有配置结果合并器，返回类型无法自动选择"),
+    BROADCAST_FAILURE("广播调用成功的服务端数量不足"),
     REQUEST_NOT_MATCH_RESPONSE("返回结果错误！请求和返回的相应不匹配");
 
     private final String message;
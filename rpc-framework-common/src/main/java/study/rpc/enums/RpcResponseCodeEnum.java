@@ -10,7 +10,9 @@ import lombok.ToString;
 @ToString
 public enum RpcResponseCodeEnum {
     SUCCESS(200, "The remote call is successful"),
-    FAIL(500, "The remote call is fail");
+    FAIL(500, "The remote call is fail"),
+    //服务端过载拒绝了请求，请求没有被执行，客户端可以换一个地址重试
+    OVERLOADED(503, "The server is overloaded");
 
     //枚举类型不能修改，要用final
     private final int code;
@@ -0,0 +1,37 @@
+package study.rpc.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum SerializationTypeEnum {
+    //code写在消息头的codec字段中，name对应META-INF/extensions中的扩展名
+    KRYO((byte) 0x01, "kryo");
+
+    //values()每次都会拷贝数组，解码每个消息都要查询一次
+    private static final SerializationTypeEnum[] VALUES = values();
+
+    private final byte code;
+    private final String name;
+
+    //根据消息头中的codec字节找到对应的序列化扩展名
+    public static String getName(byte code) {
+        for (SerializationTypeEnum c : VALUES) {
+            if (c.getCode() == code) {
+                return c.name;
+            }
+        }
+        return null;
+    }
+
+    //根据扩展名找到对应的类型，没有时为null
+    public static SerializationTypeEnum fromName(String name) {
+        for (SerializationTypeEnum c : VALUES) {
+            if (c.getName().equals(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+package study.rpc.extension;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 编译时生成扩展索引：把 extension.dir 目录(通常是src/main/resources/META-INF/extensions)下的配置文件合并成
+ * META-INF/extensions.index，ExtensionLoader启动时只读这一个文件，不再为每个扩展点扫描整个classpath。
+ * 同时检查配置的实现类是否存在，写错类名时编译失败而不是运行时才报错。
+ * <p>
+ * 在模块的maven-compiler-plugin中通过annotationProcessors和-Aextension.dir=...启用。
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(ExtensionIndexProcessor.DIRECTORY_OPTION)
+public class ExtensionIndexProcessor extends AbstractProcessor {
+    static final String DIRECTORY_OPTION = "extension.dir";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        //所有源文件处理完之后生成一次
+        if (!roundEnv.processingOver()) {
+            return false;
+        }
+        String directory = processingEnv.getOptions().get(DIRECTORY_OPTION);
+        if (directory == null || !Files.isDirectory(Paths.get(directory))) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "extension index not generated, directory not found: " + directory);
+            return false;
+        }
+        try {
+            List<String> lines = readEntries(Paths.get(directory));
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ExtensionLoader.INDEX_FILE);
+            try (Writer writer = index.openWriter()) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "generate extension index failed: " + e);
+        }
+        return false;
+    }
+
+    //每行：接口全限定名:扩展名=实现类全限定名，按文件名排序保证输出稳定
+    private List<String> readEntries(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        List<String> lines = new ArrayList<>();
+        for (Path file : files) {
+            String type = file.getFileName().toString();
+            try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int ci = line.indexOf('#');
+                    if (ci >= 0) {
+                        line = line.substring(0, ci);
+                    }
+                    int ei = line.indexOf('=');
+                    if (ei <= 0) {
+                        continue;
+                    }
+                    String name = line.substring(0, ei).trim();
+                    String clazzName = line.substring(ei + 1).trim();
+                    //嵌套类在配置文件中是Outer$Inner，查找时使用Outer.Inner
+                    if (processingEnv.getElementUtils().getTypeElement(clazzName.replace('$', '.')) == null) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                "extension class not found: " + clazzName + " in " + file);
+                        continue;
+                    }
+                    lines.add(type + ":" + name + "=" + clazzName);
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
@@ -27,6 +28,8 @@ public final class ExtensionLoader <T> {
 
     //扩展实现类配置文件存放的根目录
     private static final String SERVICE_DIRECTORY = "META-INF/extensions/";
+    //编译时由ExtensionIndexProcessor把所有配置文件合并成的索引，每行格式：接口全限定名:扩展名=实现类全限定名
+    static final String INDEX_FILE = "META-INF/extensions.index";
     // 当前加载的扩展类型（即接口类型）
     private final Class<?> type;
 
@@ -34,11 +37,11 @@ public final class ExtensionLoader <T> {
     // 每个接口类型对应一个 ExtensionLoader 实例
     private static final Map<Class<?>, ExtensionLoader<?>> EXTENSION_LOADERS = new ConcurrentHashMap<>();
 
-    //缓存所有扩展类的映射，按扩展名存储对应的类
+    //缓存所有扩展类的映射，按扩展名存储对应的实现类名，类在第一次创建实例时才加载
     //用Holder封装的意义：
     //1、线程安全，可以保证只有一个线程在对Map操作
     //2、延迟加载，Map不会在系统启动时立即加载，而是等到第一次访问时才加载。
-    private final Holder<Map<String, Class<?>>> cachedClasses = new Holder<>();
+    private final Holder<Map<String, String>> cachedClasses = new Holder<>();
 
     //缓存每个扩展点名称对应的实例，保证按照名称获取实例的单例性
     //为什么不直接使用T，而是使用Holder<Object>
@@ -64,27 +67,27 @@ public final class ExtensionLoader <T> {
      */
     //Class<S>表示类型S的运行时表示
     public static <S> ExtensionLoader<S> getExtensionLoader(Class<S> type) {
-
-        //检查传入的扩展点类型，确保是带有SPI注解的可扩展的接口类
         if (type == null) {
             throw new IllegalArgumentException("Extension type should not be null");
         }
+        //从缓存中获取加载器，已经创建过的加载器一定通过了检查，不需要每次都反射读取注解
+        ExtensionLoader<S> extensionLoader = (ExtensionLoader<S>) EXTENSION_LOADERS.get(type);
+        if (extensionLoader != null) {
+            return extensionLoader;
+        }
+        checkExtensionType(type);
+        //只有在指定的键不存在时，才会创建加载器并添加到映射中
+        return (ExtensionLoader<S>) EXTENSION_LOADERS.computeIfAbsent(type, ExtensionLoader::new);
+    }
+
+    //检查传入的扩展点类型，确保是带有SPI注解的可扩展的接口类
+    private static void checkExtensionType(Class<?> type) {
         if (!type.isInterface()) {
             throw new IllegalArgumentException("Extension type must be an interface");
         }
         if (type.getAnnotation(SPI.class) == null) {
             throw new IllegalArgumentException("Extension type must be annotated by @SPI");
         }
-
-        //从缓存中获取加载器，如果不存在就创建新的
-        ExtensionLoader<S> extensionLoader = (ExtensionLoader<S>) EXTENSION_LOADERS.get(type);
-        //未获取成功
-        if (extensionLoader == null) {
-            //只有在指定的键不存在时，才会将键值对添加到映射中
-            EXTENSION_LOADERS.putIfAbsent(type, new ExtensionLoader<>(type));
-            extensionLoader = (ExtensionLoader<S>) EXTENSION_LOADERS.get(type);
-        }
-        return extensionLoader;
     }
 
     /**
@@ -92,52 +95,67 @@ public final class ExtensionLoader <T> {
      * 保证了懒加载：只有在实际需要时才进行初始化。
      * 多线程管理：采用双重检查锁定
      * 第一轮检查 if (holder == null) 是为了确保 缓存中是否已经存在对应的扩展点实例。
-     * 第二轮检查 if (instance == null) 是为了 确保实例的创建过程是线程安全的。
+     * 第二轮检查 if (holder.get() == null) 是为了 确保实例的创建过程是线程安全的。
+     * 实例创建之后的调用只有一次ConcurrentHashMap查找和一次volatile读，不分配对象、不加锁。
      */
     public T getExtension(String name) {
+        //快速路径：实例已经创建，空白的名称不会进入缓存，所以可以先查缓存再检查名称
+        Holder<Object> holder = name == null ? null : cachedInstances.get(name);
+        if (holder != null) {
+            Object instance = holder.get();
+            if (instance != null) {
+                return (T) instance;
+            }
+        }
         // 判断字符串是否为空或仅包含空白字符
         if (StringUtil.isBlank(name)) {
             throw new IllegalArgumentException("Extension name should not be null or empty.");
         }
-
-        //现在尝试从缓存中获取扩展实例
-        Holder<Object> holder = cachedInstances.get(name);
         //如果实例还没创建，则进行创建并缓存
         if (holder == null) {
-            cachedInstances.putIfAbsent(name, new Holder<>());
-            holder = cachedInstances.get(name);
-        }
-        Object instance = holder.get();
-        if (instance == null) {
-            //进入同步块，线程安全地创建和缓存扩展点实例
-            //在多线程环境下，多个线程可能同时访问相同的扩展点，确保只有一个线程能创建实例，其他线程能够复用这个实例。
-            //同步块（synchronized）是一个用来控制对共享资源访问的机制，确保在同一时刻只有一个线程能访问某个代码块。
-            synchronized (holder) {
-                if (instance == null) {
-                    instance = createExtension(name);
-                    holder.set(instance);
-                }
+            holder = cachedInstances.computeIfAbsent(name, k -> new Holder<>());
+        }
+        //进入同步块，线程安全地创建和缓存扩展点实例
+        //在多线程环境下，多个线程可能同时访问相同的扩展点，确保只有一个线程能创建实例，其他线程能够复用这个实例。
+        //必须在同步块内重新读取holder，而不是检查进入同步块之前读到的局部变量，否则并发的首次调用会各自创建一个实例
+        synchronized (holder) {
+            Object instance = holder.get();
+            if (instance == null) {
+                instance = createExtension(name);
+                holder.set(instance);
             }
+            return (T) instance;
         }
-        return (T) instance;
     }
 
     private T createExtension(String name) {
-        //从扩展名-类缓存中加查找指定名称的类
-        Class<?> clazz = getExtensionClasses().get(name);
+        //从扩展名-类名缓存中加查找指定名称的类
+        String clazzName = getExtensionClasses().get(name);
+        if (clazzName == null) {
+            //索引中没有时扫描一次配置文件，兼容没有生成索引的jar中新增的扩展
+            Map<String, String> scanned = new HashMap<>();
+            loadDirectory(scanned);
+            clazzName = scanned.get(name);
+        }
         //如果找不到该类，则抛出异常
-        if (clazz == null) {
+        if (clazzName == null) {
             throw new RuntimeException("No such extension of name " + name);
         }
+        //只加载用到的实现类，没有用到的扩展不会触发类加载和静态初始化
+        Class<?> clazz;
+        try {
+            clazz = ExtensionLoader.class.getClassLoader().loadClass(clazzName);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Extension class not found: " + clazzName, e);
+        }
 
         //尝试从类-实例缓存中获取实例
         T instance = (T) EXTENSION_INSTANCES.get(clazz);
         //实例尚未创建则进行创建
         if(instance == null){
             try{
-                EXTENSION_INSTANCES.putIfAbsent(clazz, clazz.newInstance());
-                //通过反射动态地创建类的实例(该方法已过时)
-                //新方法：通过构造函数创建类的实例：clazz.getDeclaredConstructor().newInstance();
+                //通过无参构造函数反射创建类的实例，Class.newInstance已过时
+                EXTENSION_INSTANCES.putIfAbsent(clazz, clazz.getDeclaredConstructor().newInstance());
                 instance = (T) EXTENSION_INSTANCES.get(clazz);
             }catch(Exception e){
                 log.error("Failed to create extension instance: " + name, e);
@@ -150,18 +168,22 @@ public final class ExtensionLoader <T> {
      * 接口加载：根据扩展点接口加载其所有实现类
      * 延迟加载机制：只有在需要时才加载扩展类。
      */
-    private Map<String, Class<?>> getExtensionClasses() {
+    private Map<String, String> getExtensionClasses() {
         // 首先从缓存中获取扩展-类映射
-        Map<String, Class<?>> classes = cachedClasses.get();
+        Map<String, String> classes = cachedClasses.get();
 
         // 如果缓存中没有扩展名-类映射（classes 为 null），则需要加载
         if (classes == null) {
             synchronized (cachedClasses) {
                 classes = cachedClasses.get();
                 if (classes == null) {
-                    classes = new HashMap<>();
-                    //通过加载并解析扩展类的配置文件来填充扩展-类映射
-                    loadDirectory(classes);
+                    //优先使用编译时生成的索引，索引中没有这个扩展点时(例如第三方jar没有生成索引)再扫描配置文件
+                    classes = IndexHolder.INDEX.get(type.getName());
+                    if (classes == null) {
+                        classes = new HashMap<>();
+                        //通过加载并解析扩展类的配置文件来填充扩展-类映射
+                        loadDirectory(classes);
+                    }
                     cachedClasses.set(classes);
                 }
             }
@@ -173,7 +195,7 @@ public final class ExtensionLoader <T> {
      * 配置文件管理：按规定规则读取配置文件，解析扩展名称与实现类的映射
      * 寻找符合条件的配置文件
      */
-    private void loadDirectory(Map<String, Class<?>> extensionClasses) {
+    private void loadDirectory(Map<String, String> extensionClasses) {
 
         //配置文件路径格式：根目录(META-INF/extensions)/<接口全限定名>
         //通过 类名.静态成员 访问静态变量或方法是 Java 的基本规则。
@@ -191,7 +213,7 @@ public final class ExtensionLoader <T> {
                 while (urls.hasMoreElements()) {
                     URL resourceUrl = urls.nextElement();
                     // 依次处理读取每一个URL的内容
-                    loadResource(extensionClasses, classLoader, resourceUrl);
+                    loadResource(resourceUrl, extensionClasses::put);
                 }
             }
         } catch (IOException e) {
@@ -203,7 +225,7 @@ public final class ExtensionLoader <T> {
      * 配置文件管理：按规定规则读取配置文件，解析扩展名称与实现类的映射
      * 解析配置文件
      */
-    private void loadResource(Map<String, Class<?>> extensionClasses, ClassLoader classLoader, URL resourceUrl) {
+    private static void loadResource(URL resourceUrl, BiConsumer<String, String> consumer) {
         //使用 BufferedReader 包装 InputStreamReader，为文件读取提供缓冲，提高效率。
         //BufferedReader从缓冲区读取文件内容，减少对硬盘访问次数，提供按行读取
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(resourceUrl.openStream(), UTF_8))) {
@@ -217,23 +239,16 @@ public final class ExtensionLoader <T> {
                 //去掉两端的空白字符
                 line = line.trim();
 
-                if (line.length() > 0) {
-                    try {
-                        final int ei = line.indexOf('=');
-                        // 获取扩展名称
-                        String name = line.substring(0, ei).trim();
-                        //获取类名
-                        String clazzName = line.substring(ei + 1).trim();
-
-                        //确保扩展名和类名都不为空
-                        if (name.length() > 0 && clazzName.length() > 0) {
-                            //使用类加载器加载类，并将扩展名-类映射存入extensionClasses
-                            //利用反射机制，根据类的全限定名获取类
-                            Class<?> clazz = classLoader.loadClass(clazzName);
-                            extensionClasses.put(name, clazz);
-                        }
-                    } catch (ClassNotFoundException e) {
-                        log.error(e.getMessage());
+                final int ei = line.indexOf('=');
+                if (ei > 0) {
+                    // 获取扩展名称
+                    String name = line.substring(0, ei).trim();
+                    //获取类名
+                    String clazzName = line.substring(ei + 1).trim();
+
+                    //确保扩展名和类名都不为空，类在第一次使用时才加载
+                    if (name.length() > 0 && clazzName.length() > 0) {
+                        consumer.accept(name, clazzName);
                     }
                 }
             }
@@ -241,4 +256,32 @@ public final class ExtensionLoader <T> {
             log.error(e.getMessage());
         }
     }
+
+    /**
+     * 启动时一次性读取所有jar中的索引文件：接口全限定名 -> (扩展名 -> 实现类名)
+     * 放在内部类中，第一次需要扩展类映射时才读取
+     */
+    static final class IndexHolder {
+        static final Map<String, Map<String, String>> INDEX = loadIndex();
+
+        private static Map<String, Map<String, String>> loadIndex() {
+            Map<String, Map<String, String>> index = new HashMap<>();
+            try {
+                Enumeration<URL> urls = ExtensionLoader.class.getClassLoader().getResources(INDEX_FILE);
+                while (urls.hasMoreElements()) {
+                    loadResource(urls.nextElement(), (key, clazzName) -> {
+                        //key是 接口全限定名:扩展名
+                        int ci = key.lastIndexOf(':');
+                        if (ci > 0) {
+                            index.computeIfAbsent(key.substring(0, ci), t -> new HashMap<>())
+                                    .put(key.substring(ci + 1), clazzName);
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                log.error(e.getMessage());
+            }
+            return index;
+        }
+    }
 }
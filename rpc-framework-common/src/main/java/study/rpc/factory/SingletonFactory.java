@@ -0,0 +1,35 @@
+package study.rpc.factory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 获取单例对象的工厂类
+ * 服务端的多个组件（NettyRpcServer、RpcRequestHandler）需要共享同一个ServiceProvider，
+ * 通过这个工厂保证同一个类在JVM中只有一个实例
+ */
+public final class SingletonFactory {
+    private static final Map<String, Object> OBJECT_MAP = new ConcurrentHashMap<>();
+
+    private SingletonFactory() {
+    }
+
+    public static <T> T getInstance(Class<T> c) {
+        if (c == null) {
+            throw new IllegalArgumentException();
+        }
+        String key = c.toString();
+        if (OBJECT_MAP.containsKey(key)) {
+            return c.cast(OBJECT_MAP.get(key));
+        }
+        //computeIfAbsent保证并发时只有一个线程创建实例
+        return c.cast(OBJECT_MAP.computeIfAbsent(key, k -> {
+            try {
+                return c.getDeclaredConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }));
+    }
+}
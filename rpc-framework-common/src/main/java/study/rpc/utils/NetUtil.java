@@ -0,0 +1,31 @@
+package study.rpc.utils;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class NetUtil {
+    //查询网卡比较慢，缓存每个地址的结果
+    private static final Map<InetAddress, Boolean> LOCAL_ADDRESSES = new ConcurrentHashMap<>();
+
+    /**
+     * 地址是否属于本机：回环地址、通配地址或者本机某个网卡的地址
+     */
+    public static boolean isLocalAddress(InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        return LOCAL_ADDRESSES.computeIfAbsent(address, a -> {
+            if (a.isLoopbackAddress() || a.isAnyLocalAddress()) {
+                return true;
+            }
+            try {
+                return NetworkInterface.getByInetAddress(a) != null;
+            } catch (SocketException e) {
+                return false;
+            }
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package study.rpc.breaker;
+
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.config.CircuitBreakerConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个服务端地址的熔断器，状态全部用原子变量维护，不加锁
+ * <p>
+ * CLOSED：正常放行，按秒分桶统计滑动窗口内的失败和慢调用比例，超过阈值进入OPEN。
+ * OPEN：不放行，经过openMillis后进入HALF_OPEN。
+ * HALF_OPEN：同一时间只放行一个探测请求，成功则CLOSED，失败则重新OPEN。
+ * 桶切换时和并发记录的样本可能丢失少量计数，对比例判断没有影响。
+ */
+@Slf4j
+public class CircuitBreaker {
+    static final int CLOSED = 0;
+    static final int OPEN = 1;
+    static final int HALF_OPEN = 2;
+
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String address;
+    private final CircuitBreakerConfig config;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final Bucket[] buckets;
+    //状态变化时通知，用于让过滤后的地址列表失效
+    private final Runnable stateListener;
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private volatile long openedAtNanos;
+    //半开状态下探测请求的发出时间，0表示没有探测请求
+    private final AtomicLong probeStartNanos = new AtomicLong();
+
+    public CircuitBreaker(String address, CircuitBreakerConfig config, Runnable stateListener) {
+        this.address = address;
+        this.config = config;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallMillis());
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.getOpenMillis());
+        this.buckets = new Bucket[config.getWindowSeconds()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.stateListener = stateListener;
+    }
+
+    /**
+     * 是否可以作为负载均衡的候选地址，不改变状态
+     */
+    boolean isCallPermitted(long nowNanos) {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return nowNanos - openedAtNanos >= openNanos;
+            default:
+                long probeStart = probeStartNanos.get();
+                //探测请求一直没有结果时，允许再发一个
+                return probeStart == 0 || nowNanos - probeStart >= openNanos;
+        }
+    }
+
+    /**
+     * 被负载均衡选中后调用：关闭状态直接放行，否则尝试拿到唯一的探测名额
+     */
+    boolean tryAcquire(long nowNanos) {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        if (current == OPEN) {
+            if (nowNanos - openedAtNanos < openNanos) {
+                return false;
+            }
+            if (state.compareAndSet(OPEN, HALF_OPEN)) {
+                log.info("circuit breaker half open: [{}]", address);
+                stateListener.run();
+            }
+        }
+        long probeStart = probeStartNanos.get();
+        if (probeStart != 0 && nowNanos - probeStart < openNanos) {
+            return false;
+        }
+        return probeStartNanos.compareAndSet(probeStart, nowNanos);
+    }
+
+    /**
+     * 记录一次调用的结果
+     */
+    void onResult(boolean success, long latencyNanos, long nowNanos) {
+        boolean failed = !success || latencyNanos >= slowCallNanos;
+        int current = state.get();
+        if (current == HALF_OPEN) {
+            probeStartNanos.set(0);
+            if (failed) {
+                open(HALF_OPEN, nowNanos);
+            } else if (state.compareAndSet(HALF_OPEN, CLOSED)) {
+                for (Bucket bucket : buckets) {
+                    bucket.epoch.set(Long.MIN_VALUE);
+                }
+                log.info("circuit breaker closed: [{}]", address);
+                stateListener.run();
+            }
+            return;
+        }
+        if (current == OPEN) {
+            //熔断前发出的请求，结果不再统计
+            return;
+        }
+        long epoch = Math.floorDiv(nowNanos, BUCKET_NANOS);
+        Bucket bucket = bucket(epoch);
+        bucket.total.increment();
+        if (!success) {
+            bucket.failures.increment();
+        }
+        if (latencyNanos >= slowCallNanos) {
+            bucket.slowCalls.increment();
+        }
+        //比例只会在失败或者慢调用时升高，只有这时才需要汇总窗口
+        if (failed) {
+            checkWindow(epoch, nowNanos);
+        }
+    }
+
+    private void checkWindow(long epoch, long nowNanos) {
+        long total = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (Bucket bucket : buckets) {
+            if (bucket.epoch.get() > epoch - buckets.length) {
+                total += bucket.total.sum();
+                failures += bucket.failures.sum();
+                slowCalls += bucket.slowCalls.sum();
+            }
+        }
+        if (total < config.getMinimumCalls()) {
+            return;
+        }
+        if (failures >= total * config.getFailureRateThreshold() || slowCalls >= total * config.getSlowCallRateThreshold()) {
+            log.warn("circuit breaker open: [{}], calls={} failures={} slowCalls={}", address, total, failures, slowCalls);
+            open(CLOSED, nowNanos);
+        }
+    }
+
+    private void open(int expected, long nowNanos) {
+        //先写时间再改状态，其他线程看到OPEN时一定能看到新的时间
+        openedAtNanos = nowNanos;
+        if (state.compareAndSet(expected, OPEN)) {
+            stateListener.run();
+        }
+    }
+
+    //当前秒对应的桶，桶属于更早的秒时先清空
+    private Bucket bucket(long epoch) {
+        Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) buckets.length)];
+        long bucketEpoch = bucket.epoch.get();
+        if (bucketEpoch != epoch && bucket.epoch.compareAndSet(bucketEpoch, epoch)) {
+            bucket.total.reset();
+            bucket.failures.reset();
+            bucket.slowCalls.reset();
+        }
+        return bucket;
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    long getOpenedAtNanos() {
+        return openedAtNanos;
+    }
+
+    long getOpenNanos() {
+        return openNanos;
+    }
+
+    private static final class Bucket {
+        private final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+    }
+}
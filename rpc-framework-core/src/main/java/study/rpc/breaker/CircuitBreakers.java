@@ -0,0 +1,108 @@
+package study.rpc.breaker;
+
+import study.rpc.config.CircuitBreakerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端所有服务端地址的熔断器，通过-Drpc.breaker.enabled=true开启
+ * <p>
+ * 负载均衡前用filter去掉被熔断的地址，选中之后用tryAcquire确认(半开状态只放行一个探测请求)，
+ * 调用结束后由传输层通过onResult记录结果。
+ */
+public final class CircuitBreakers {
+    public static final boolean ENABLED = Boolean.getBoolean("rpc.breaker.enabled");
+
+    private static final CircuitBreakerConfig CONFIG = CircuitBreakerConfig.fromSystemProperties();
+    //服务端地址(host:port) -> 熔断器
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+    //任意熔断器状态变化时加一，缓存的过滤结果随之失效
+    private static final AtomicLong VERSION = new AtomicLong();
+    //服务名 -> 上一次的过滤结果，地址列表和熔断状态都没变时复用同一个列表，一致性哈希的选择器不用重建
+    private static final Map<String, Filtered> FILTERED = new ConcurrentHashMap<>();
+
+    private CircuitBreakers() {
+    }
+
+    public static CircuitBreaker get(String address) {
+        CircuitBreaker breaker = BREAKERS.get(address);
+        if (breaker == null) {
+            breaker = BREAKERS.computeIfAbsent(address, a -> new CircuitBreaker(a, CONFIG, VERSION::incrementAndGet));
+        }
+        return breaker;
+    }
+
+    /**
+     * 去掉被熔断的地址，所有地址都被熔断时返回null，由调用方决定是否仍然使用原列表
+     */
+    public static List<String> filter(String rpcServiceName, List<String> serviceAddresses, long nowNanos) {
+        Filtered filtered = FILTERED.get(rpcServiceName);
+        long version = VERSION.get();
+        if (filtered != null && filtered.source == serviceAddresses && filtered.version == version
+                && nowNanos < filtered.recheckAtNanos) {
+            return filtered.result;
+        }
+        List<String> result = serviceAddresses;
+        long recheckAtNanos = Long.MAX_VALUE;
+        for (int i = 0; i < serviceAddresses.size(); i++) {
+            String address = serviceAddresses.get(i);
+            CircuitBreaker breaker = BREAKERS.get(address);
+            if (breaker == null || breaker.isCallPermitted(nowNanos)) {
+                if (result != serviceAddresses) {
+                    result.add(address);
+                }
+                continue;
+            }
+            if (result == serviceAddresses) {
+                //第一次遇到被熔断的地址时才复制列表
+                result = new ArrayList<>(serviceAddresses.subList(0, i));
+            }
+            if (breaker.getState() == CircuitBreaker.OPEN) {
+                //熔断时间到了之后需要重新过滤
+                recheckAtNanos = Math.min(recheckAtNanos, breaker.getOpenedAtNanos() + breaker.getOpenNanos());
+            } else {
+                recheckAtNanos = Math.min(recheckAtNanos, nowNanos + breaker.getOpenNanos());
+            }
+        }
+        if (result.isEmpty()) {
+            result = null;
+        }
+        FILTERED.put(rpcServiceName, new Filtered(serviceAddresses, version, recheckAtNanos, result));
+        return result;
+    }
+
+    /**
+     * 只判断不占用半开状态的探测名额
+     */
+    public static boolean isCallPermitted(String address, long nowNanos) {
+        CircuitBreaker breaker = BREAKERS.get(address);
+        return breaker == null || breaker.isCallPermitted(nowNanos);
+    }
+
+    public static boolean tryAcquire(String address, long nowNanos) {
+        CircuitBreaker breaker = BREAKERS.get(address);
+        return breaker == null || breaker.tryAcquire(nowNanos);
+    }
+
+    public static void onResult(String address, boolean success, long latencyNanos) {
+        get(address).onResult(success, latencyNanos, System.nanoTime());
+    }
+
+    private static final class Filtered {
+        private final List<String> source;
+        private final long version;
+        private final long recheckAtNanos;
+        private final List<String> result;
+
+        private Filtered(List<String> source, long version, long recheckAtNanos, List<String> result) {
+            this.source = source;
+            this.version = version;
+            this.recheckAtNanos = recheckAtNanos;
+            this.result = result;
+        }
+    }
+}
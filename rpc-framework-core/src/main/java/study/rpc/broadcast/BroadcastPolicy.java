@@ -0,0 +1,148 @@
+package study.rpc.broadcast;
+
+import study.rpc.config.BroadcastConfig;
+import study.rpc.config.RpcConfig;
+import study.rpc.enums.RpcErrorMessageEnum;
+import study.rpc.exception.RpcException;
+import study.rpc.extension.ExtensionLoader;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 单个方法的广播调用：发给几个服务端、超时时间，以及如何把各个服务端的结果合并成一个
+ * <p>
+ * 每个服务端的调用都带着同一个截止时间，到期还没有响应的以超时失败，所以所有调用总会完成；
+ * 不允许部分结果时第一个失败就让整个调用失败，允许时等所有调用完成后合并成功的结果。
+ */
+public class BroadcastPolicy {
+    //失败的调用在结果数组中的占位
+    private static final Object FAILED = new Object();
+    //广播和请求都没有配置超时时间时使用的超时时间
+    static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    private final BroadcastConfig config;
+    //void方法不需要合并，为null
+    private final ResultMerger merger;
+
+    public BroadcastPolicy(BroadcastConfig config, Method method) {
+        this.config = config;
+        Class<?> resultType = resultType(method);
+        String mergerName = config.getMerger() != null ? config.getMerger() : defaultMerger(resultType);
+        if (mergerName == null && resultType != void.class && resultType != Void.class) {
+            throw new RpcException(RpcErrorMessageEnum.MERGER_NOT_FOUND, method.toString());
+        }
+        this.merger = mergerName == null ? null : ExtensionLoader.getExtensionLoader(ResultMerger.class).getExtension(mergerName);
+    }
+
+    public int getFanout() {
+        return config.getFanout();
+    }
+
+    /**
+     * 广播总是有截止时间，否则一个不回复的服务端会让整个调用一直等待：
+     * 没有配置时使用配置的请求超时时间，它也是0时使用DEFAULT_TIMEOUT_MILLIS
+     */
+    public long getTimeoutMillis() {
+        if (config.getTimeoutMillis() > 0) {
+            return config.getTimeoutMillis();
+        }
+        long requestTimeoutMs = RpcConfig.get().getRequestTimeoutMs();
+        return requestTimeoutMs > 0 ? requestTimeoutMs : DEFAULT_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * 按部分结果策略等待各个服务端的结果并合并
+     */
+    public CompletableFuture<Object> gather(List<CompletableFuture<Object>> calls) {
+        CompletableFuture<Object> resultFuture = new CompletableFuture<>();
+        int size = calls.size();
+        AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(size);
+        AtomicInteger remaining = new AtomicInteger(size);
+        AtomicInteger failures = new AtomicInteger();
+        if (size == 0) {
+            complete(resultFuture, results, 0);
+        }
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            calls.get(i).whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    failures.incrementAndGet();
+                    results.set(index, FAILED);
+                    if (!config.isAllowPartial()) {
+                        resultFuture.completeExceptionally(throwable);
+                        return;
+                    }
+                } else {
+                    results.set(index, result);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    complete(resultFuture, results, size - failures.get());
+                }
+            });
+        }
+        return resultFuture;
+    }
+
+    private void complete(CompletableFuture<Object> resultFuture, AtomicReferenceArray<Object> results, int successes) {
+        if (successes < Math.max(1, config.getMinSuccesses())) {
+            resultFuture.completeExceptionally(new RpcException(RpcErrorMessageEnum.BROADCAST_FAILURE,
+                    "successes:" + successes + "/" + results.length()));
+            return;
+        }
+        List<Object> succeeded = new ArrayList<>(successes);
+        for (int i = 0; i < results.length(); i++) {
+            Object result = results.get(i);
+            if (result != FAILED) {
+                succeeded.add(result);
+            }
+        }
+        try {
+            resultFuture.complete(merger == null ? null : merger.merge(succeeded));
+        } catch (RuntimeException e) {
+            resultFuture.completeExceptionally(e);
+        }
+    }
+
+    //异步方法合并的是future中的结果类型
+    private static Class<?> resultType(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType != CompletableFuture.class && returnType != CompletionStage.class) {
+            return returnType;
+        }
+        Type genericType = method.getGenericReturnType();
+        if (genericType instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            if (argument instanceof ParameterizedType) {
+                argument = ((ParameterizedType) argument).getRawType();
+            }
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        return Object.class;
+    }
+
+    private static String defaultMerger(Class<?> resultType) {
+        if (Set.class.isAssignableFrom(resultType)) {
+            return "set";
+        }
+        if (Collection.class.isAssignableFrom(resultType)) {
+            return "list";
+        }
+        if (Map.class.isAssignableFrom(resultType)) {
+            return "map";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package study.rpc.broadcast;
+
+import study.rpc.extension.SPI;
+
+import java.util.List;
+
+/**
+ * 广播调用的结果合并器，通过BroadcastConfig.merger按扩展名选择
+ */
+@SPI
+public interface ResultMerger {
+    /**
+     * 合并各个服务端返回的结果，results只包含成功的调用，按服务端地址的顺序排列
+     */
+    Object merge(List<Object> results);
+}
@@ -0,0 +1,25 @@
+package study.rpc.broadcast.merger;
+
+import study.rpc.broadcast.ResultMerger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 把各个服务端返回的集合拼接成一个List，null被忽略
+ */
+public class ListMerger implements ResultMerger {
+    @Override
+    public Object merge(List<Object> results) {
+        List<Object> merged = new ArrayList<>();
+        for (Object result : results) {
+            if (result instanceof Collection) {
+                merged.addAll((Collection<?>) result);
+            } else if (result != null) {
+                merged.add(result);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,23 @@
+package study.rpc.broadcast.merger;
+
+import study.rpc.broadcast.ResultMerger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各个服务端返回的Map合并成一个，相同的key以后面的服务端为准，适合按key分区的查询
+ */
+public class MapMerger implements ResultMerger {
+    @Override
+    public Object merge(List<Object> results) {
+        Map<Object, Object> merged = new LinkedHashMap<>();
+        for (Object result : results) {
+            if (result != null) {
+                merged.putAll((Map<?, ?>) result);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,26 @@
+package study.rpc.broadcast.merger;
+
+import study.rpc.broadcast.ResultMerger;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 各个服务端返回的集合取并集，null被忽略
+ */
+public class SetMerger implements ResultMerger {
+    @Override
+    public Object merge(List<Object> results) {
+        Set<Object> merged = new LinkedHashSet<>();
+        for (Object result : results) {
+            if (result instanceof Collection) {
+                merged.addAll((Collection<?>) result);
+            } else if (result != null) {
+                merged.add(result);
+            }
+        }
+        return merged;
+    }
+}
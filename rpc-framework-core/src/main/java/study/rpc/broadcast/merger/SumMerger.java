@@ -0,0 +1,41 @@
+package study.rpc.broadcast.merger;
+
+import study.rpc.broadcast.ResultMerger;
+
+import java.util.List;
+
+/**
+ * 各个服务端返回的数字求和，例如统计总数、失效的缓存条目数；结果类型和服务端返回的类型一致
+ */
+public class SumMerger implements ResultMerger {
+    @Override
+    public Object merge(List<Object> results) {
+        long longSum = 0;
+        double doubleSum = 0;
+        Object sample = null;
+        for (Object result : results) {
+            if (result == null) {
+                continue;
+            }
+            sample = result;
+            longSum += ((Number) result).longValue();
+            doubleSum += ((Number) result).doubleValue();
+        }
+        if (sample instanceof Integer) {
+            return (int) longSum;
+        }
+        if (sample instanceof Long) {
+            return longSum;
+        }
+        if (sample instanceof Short) {
+            return (short) longSum;
+        }
+        if (sample instanceof Float) {
+            return (float) doubleSum;
+        }
+        if (sample instanceof Double) {
+            return doubleSum;
+        }
+        return sample == null ? null : longSum;
+    }
+}
@@ -0,0 +1,15 @@
+package study.rpc.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 服务端缓存的一次调用结果
+ * serializedPrefix不为null时，是该结果对应的响应序列化后去掉requestId的字节
+ */
+@AllArgsConstructor
+@Getter
+public class CachedResponse {
+    private final Object result;
+    private final byte[] serializedPrefix;
+}
@@ -0,0 +1,105 @@
+package study.rpc.cache;
+
+import study.rpc.config.MethodCacheConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.serialize.Serializer;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 客户端的请求合并和本地结果缓存
+ * <p>
+ * 合并：同一个方法、参数序列化后相同的并发调用只发送一次请求，其余调用等待同一个结果，用于缓存击穿时保护服务端。
+ * 缓存：成功的结果在本地保存一小段时间(短TTL、有容量上限)，期间相同的调用直接返回。
+ * 被合并或者命中缓存的调用拿到的是同一个结果对象，调用方不能修改它；
+ * 每个调用方拿到各自的future，取消或者完成自己的future不影响其他等待者。
+ */
+public class ConsumerResultCache {
+    //每个代理方法的状态，没有开启合并和缓存的方法存Optional.empty()
+    private final Map<Method, Optional<MethodState>> states = new ConcurrentHashMap<>();
+    private final Serializer serializer;
+
+    public ConsumerResultCache() {
+        this.serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(SerializationTypeEnum.KRYO.getName());
+    }
+
+    /**
+     * 没有开启合并和缓存时返回null
+     */
+    public MethodState getState(Method method, RpcServiceConfig rpcServiceConfig) {
+        Optional<MethodState> state = states.get(method);
+        if (state == null) {
+            state = states.computeIfAbsent(method, m -> {
+                String methodName = m.getName();
+                MethodCacheConfig cacheConfig = rpcServiceConfig.getConsumerCachedMethods().get(methodName);
+                boolean collapse = rpcServiceConfig.getCollapsedMethods().contains(methodName);
+                if (cacheConfig == null && !collapse) {
+                    return Optional.empty();
+                }
+                return Optional.of(new MethodState(cacheConfig));
+            });
+        }
+        return state.orElse(null);
+    }
+
+    public class MethodState {
+        //正在进行的调用：参数 -> 结果，调用结束后移除
+        private final Map<ResultCacheKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+        private final WTinyLfuCache<ResultCacheKey, Object> cache;
+
+        MethodState(MethodCacheConfig cacheConfig) {
+            this.cache = cacheConfig == null ? null
+                    : new WTinyLfuCache<>(cacheConfig.getMaximumSize(), TimeUnit.MILLISECONDS.toNanos(cacheConfig.getTtlMillis()));
+        }
+
+        /**
+         * 先查本地缓存，再查是否有相同的调用正在进行，都没有时才通过invoker发送请求
+         */
+        public CompletableFuture<Object> invoke(Object[] args, Supplier<CompletableFuture<Object>> invoker) {
+            ResultCacheKey key = new ResultCacheKey(serializer.serialize(args));
+            if (cache != null) {
+                Object cached = cache.get(key);
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(cached);
+                }
+            }
+            CompletableFuture<Object> placeholder = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(key, placeholder);
+            if (existing != null) {
+                //placeholder只在这里完成，交给调用方的是它的副本
+                return existing.copy();
+            }
+            //当前线程负责发送请求，结果转交给所有等待者
+            CompletableFuture<Object> future;
+            try {
+                future = invoker.get();
+            } catch (RuntimeException e) {
+                inFlight.remove(key, placeholder);
+                placeholder.completeExceptionally(e);
+                return placeholder.copy();
+            }
+            future.whenComplete((result, throwable) -> {
+                //先写缓存再移除，保证后来的调用要么命中缓存要么等待同一个结果
+                if (throwable == null && cache != null && result != null) {
+                    cache.put(key, result);
+                }
+                inFlight.remove(key, placeholder);
+                if (throwable != null) {
+                    placeholder.completeExceptionally(throwable);
+                } else {
+                    placeholder.complete(result);
+                }
+            });
+            return placeholder.copy();
+        }
+    }
+}
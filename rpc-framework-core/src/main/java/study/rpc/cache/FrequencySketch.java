@@ -0,0 +1,80 @@
+package study.rpc.cache;
+
+/**
+ * Count-Min Sketch：用固定大小的计数器估算每个key最近的访问频率，给W-TinyLFU的准入判断使用
+ * 每个计数器4位，最大15；记录次数达到sampleSize后所有计数器减半，让频率随时间衰减
+ * 非线程安全，由WTinyLfuCache的锁保护
+ */
+final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    //不同行使用不同的种子打散hash
+    private static final int[] SEEDS = {0x97cb3127, 0xb9ae5a47, 0x7b5bad95, 0x4d7e4f2b};
+
+    //每个long存放16个4位计数器
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int counters = Math.max(64, Integer.highestOneBit(Math.max(1, maximumSize) - 1) << 2);
+        this.table = new long[counters >>> 4];
+        this.tableMask = counters - 1;
+        this.sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, count(indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementAt(indexOf(hash, i));
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & tableMask;
+    }
+
+    private int count(int counter) {
+        return (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xfL);
+    }
+
+    private boolean incrementAt(int counter) {
+        int shift = (counter & 15) << 2;
+        int i = counter >>> 4;
+        if (((table[i] >>> shift) & 0xfL) < MAX_COUNT) {
+            table[i] += 1L << shift;
+            return true;
+        }
+        return false;
+    }
+
+    //所有计数器减半：每个4位计数器右移一位，再去掉从高位计数器移过来的位
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+        }
+        additions >>>= 1;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+}
@@ -0,0 +1,102 @@
+package study.rpc.cache;
+
+import study.rpc.config.MethodCacheConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.serialize.Serializer;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 服务端方法结果缓存，包在RpcRequestHandler的反射调用外面
+ * 只有在RpcServiceConfig.cachedMethods中配置过的方法才会缓存，键是参数类型和序列化后的参数
+ */
+public class ProviderResultCache {
+    private static final String[] NO_PARAMETER_TYPES = new String[0];
+    //服务名 -> 方法名 -> 缓存，只保存配置了缓存的方法，服务名和方法名来自客户端，不能为任意名称创建条目
+    private final Map<String, Map<String, MethodCache>> caches = new ConcurrentHashMap<>();
+    private final Serializer serializer;
+
+    public ProviderResultCache() {
+        this.serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(SerializationTypeEnum.KRYO.getName());
+    }
+
+    /**
+     * 没有配置缓存时返回null，调用方直接调用方法
+     */
+    public MethodCache getCache(String rpcServiceName, RpcServiceConfig rpcServiceConfig, RpcRequest rpcRequest) {
+        //先查配置再创建缓存，没有配置的方法不占用任何条目
+        MethodCacheConfig config = rpcServiceConfig == null ? null : rpcServiceConfig.getCachedMethods().get(rpcRequest.getMethodName());
+        if (config == null) {
+            return null;
+        }
+        Map<String, MethodCache> methods = caches.get(rpcServiceName);
+        if (methods == null) {
+            methods = caches.computeIfAbsent(rpcServiceName, k -> new ConcurrentHashMap<>());
+        }
+        MethodCache cache = methods.get(rpcRequest.getMethodName());
+        if (cache == null) {
+            cache = methods.computeIfAbsent(rpcRequest.getMethodName(), methodName -> new MethodCache(config));
+        }
+        return cache;
+    }
+
+    //泛化调用只有参数类型的类名，统一使用类名，两种调用方式命中同一个缓存
+    private static String[] paramTypeNames(RpcRequest rpcRequest) {
+        if (rpcRequest.getParamTypes() == null) {
+            return rpcRequest.getParamTypeNames() == null ? NO_PARAMETER_TYPES : rpcRequest.getParamTypeNames();
+        }
+        String[] names = new String[rpcRequest.getParamTypes().length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = rpcRequest.getParamTypes()[i].getName();
+        }
+        return names;
+    }
+
+    public class MethodCache {
+        private final WTinyLfuCache<ResultCacheKey, CachedResponse> cache;
+        private final boolean cacheSerialized;
+
+        MethodCache(MethodCacheConfig config) {
+            this.cache = new WTinyLfuCache<>(config.getMaximumSize(), TimeUnit.MILLISECONDS.toNanos(config.getTtlMillis()));
+            this.cacheSerialized = config.isCacheSerialized();
+        }
+
+        /**
+         * 命中直接返回缓存，否则调用invoker并缓存结果，调用抛出异常时不缓存
+         * 异步方法未命中时返回CompletionStage，正常完成后才放入缓存
+         */
+        public Object get(RpcRequest rpcRequest, Supplier<Object> invoker) {
+            ResultCacheKey key = new ResultCacheKey(paramTypeNames(rpcRequest), serializer.serialize(rpcRequest.getParameters()));
+            CachedResponse cachedResponse = cache.get(key);
+            if (cachedResponse == null) {
+                Object result = invoker.get();
+                if (result instanceof CompletionStage) {
+                    return ((CompletionStage<?>) result).thenApply(value -> {
+                        put(key, value);
+                        return value;
+                    });
+                }
+                cachedResponse = put(key, result);
+            }
+            return cachedResponse;
+        }
+
+        private CachedResponse put(ResultCacheKey key, Object result) {
+            byte[] prefix = cacheSerialized
+                    ? serializer.serializeResponsePrefix(RpcResponse.success(result, null))
+                    : null;
+            CachedResponse cachedResponse = new CachedResponse(result, prefix);
+            cache.put(key, cachedResponse);
+            return cachedResponse;
+        }
+    }
+}
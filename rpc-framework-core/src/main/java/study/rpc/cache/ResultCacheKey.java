@@ -0,0 +1,41 @@
+package study.rpc.cache;
+
+import java.util.Arrays;
+
+/**
+ * 结果缓存的键：参数类型和序列化后的调用参数
+ * 缓存本身按 服务名 -> 方法名 区分，同名的重载方法共用一个缓存，所以键里还要有参数类型
+ */
+public final class ResultCacheKey {
+    private static final String[] NO_PARAMETER_TYPES = new String[0];
+    private final String[] paramTypes;
+    private final byte[] arguments;
+    private final int hash;
+
+    public ResultCacheKey(byte[] arguments) {
+        this(NO_PARAMETER_TYPES, arguments);
+    }
+
+    public ResultCacheKey(String[] paramTypes, byte[] arguments) {
+        this.paramTypes = paramTypes;
+        this.arguments = arguments;
+        this.hash = 31 * Arrays.hashCode(paramTypes) + Arrays.hashCode(arguments);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ResultCacheKey)) {
+            return false;
+        }
+        ResultCacheKey that = (ResultCacheKey) o;
+        return hash == that.hash && Arrays.equals(arguments, that.arguments) && Arrays.equals(paramTypes, that.paramTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,202 @@
+package study.rpc.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 限制条目数量的W-TinyLFU缓存，支持TTL
+ * <p>
+ * 结构：新条目先进入窗口LRU(约1%容量)；从窗口淘汰出来的候选者要和主区(SLRU)的淘汰者比较访问频率，
+ * 频率更高的才能留下，这样偶发的一次性访问不会把热点数据挤出去。
+ * 主区分为试用区和保护区(80%)，在试用区再次被访问的条目晋升到保护区。
+ * <p>
+ * 所有操作在同一把锁下完成，读操作也会调整链表顺序，所以不适合超高并发的单个热点缓存
+ */
+public class WTinyLfuCache<K, V> {
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    //小于等于0表示不过期
+    private final long ttlNanos;
+
+    private final Map<K, Node<K, V>> data;
+    private final FrequencySketch sketch;
+    //三个双向链表的哨兵节点，head.next是最久未访问的
+    private final Node<K, V> window = Node.sentinel();
+    private final Node<K, V> probation = Node.sentinel();
+    private final Node<K, V> protectedQueue = Node.sentinel();
+    private int windowSize;
+    private int protectedSize;
+
+    public WTinyLfuCache(int maximumSize, long ttlNanos) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+        this.ttlNanos = ttlNanos;
+        this.data = new HashMap<>();
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (isExpired(node, System.nanoTime())) {
+            remove(node);
+            return null;
+        }
+        onHit(node);
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        Node<K, V> node = data.get(key);
+        long now = System.nanoTime();
+        if (node != null) {
+            node.value = value;
+            node.writeNanos = now;
+            onHit(node);
+            return;
+        }
+        node = new Node<>(key, value, now);
+        data.put(key, node);
+        node.queue = WINDOW;
+        node.linkLast(window);
+        windowSize++;
+        evict();
+    }
+
+    public synchronized void invalidate(K key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            remove(node);
+        }
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return ttlNanos > 0 && now - node.writeNanos >= ttlNanos;
+    }
+
+    private void onHit(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            node.moveToLast(window);
+        } else if (node.queue == PROBATION) {
+            //试用区的条目再次被访问，晋升到保护区
+            node.unlink();
+            node.queue = PROTECTED;
+            node.linkLast(protectedQueue);
+            protectedSize++;
+            //保护区超出容量时，把最久未访问的降级回试用区
+            if (protectedSize > protectedMaximum) {
+                Node<K, V> demoted = protectedQueue.next;
+                demoted.unlink();
+                demoted.queue = PROBATION;
+                demoted.linkLast(probation);
+                protectedSize--;
+            }
+        } else {
+            node.moveToLast(protectedQueue);
+        }
+    }
+
+    private void evict() {
+        //窗口超出容量时，最久未访问的条目成为候选者，移动到试用区
+        Node<K, V> candidate = null;
+        while (windowSize > windowMaximum) {
+            Node<K, V> node = window.next;
+            node.unlink();
+            windowSize--;
+            node.queue = PROBATION;
+            node.linkLast(probation);
+            candidate = node;
+        }
+        while (data.size() > maximumSize) {
+            Node<K, V> victim = probation.next;
+            if (victim == probation || victim == candidate) {
+                victim = protectedQueue.next;
+            }
+            if (candidate == null) {
+                remove(victim == protectedQueue ? window.next : victim);
+                continue;
+            }
+            if (victim == protectedQueue) {
+                //主区中只有候选者自己
+                remove(candidate);
+                candidate = null;
+                continue;
+            }
+            //候选者和淘汰者比较频率，频率低的被淘汰，相同时淘汰候选者
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                remove(victim);
+            } else {
+                Node<K, V> evicted = candidate;
+                candidate = null;
+                remove(evicted);
+            }
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        node.unlink();
+        if (node.queue == WINDOW) {
+            windowSize--;
+        } else if (node.queue == PROTECTED) {
+            protectedSize--;
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private V value;
+        private long writeNanos;
+        private byte queue;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        Node(K key, V value, long writeNanos) {
+            this.key = key;
+            this.value = value;
+            this.writeNanos = writeNanos;
+        }
+
+        static <K, V> Node<K, V> sentinel() {
+            Node<K, V> head = new Node<>(null, null, 0);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+
+        void linkLast(Node<K, V> head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+
+        void moveToLast(Node<K, V> head) {
+            unlink();
+            linkLast(head);
+        }
+    }
+}
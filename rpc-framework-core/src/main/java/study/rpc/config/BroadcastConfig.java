@@ -0,0 +1,28 @@
+package study.rpc.config;
+
+import lombok.*;
+
+/**
+ * 客户端单个方法的广播调用配置：请求并行发给服务的所有服务端(或其中fanout个)，结果由合并器合并成一个
+ * 用于缓存失效通知、分区查询这类需要每个服务端都执行的操作
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+public class BroadcastConfig {
+    //结果合并器的扩展名(META-INF/extensions/study.rpc.broadcast.ResultMerger)，
+    //为null时按返回类型选择：List/Collection->list，Set->set，Map->map，void不需要合并
+    private String merger;
+    //最多发给几个服务端，0表示全部
+    private int fanout;
+    //有服务端失败或超时时是否合并已经返回的结果，false时任何一个服务端失败整个调用就失败
+    private boolean allowPartial;
+    //允许部分结果时至少需要成功的服务端数量
+    @Builder.Default
+    private int minSuccesses = 1;
+    //整个广播的超时时间，0表示使用配置的请求超时时间(它也是0时为3秒)；从上游继承的截止时间更早时以上游为准
+    private long timeoutMillis;
+}
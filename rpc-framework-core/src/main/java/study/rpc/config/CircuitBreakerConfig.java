@@ -0,0 +1,49 @@
+package study.rpc.config;
+
+import lombok.*;
+
+/**
+ * 客户端对每个服务端地址的熔断配置
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+public class CircuitBreakerConfig {
+    //统计窗口的秒数，每秒一个桶
+    @Builder.Default
+    private int windowSeconds = 10;
+    //窗口内至少有这么多次调用才会判断是否熔断
+    @Builder.Default
+    private int minimumCalls = 20;
+    //失败比例达到这个值时熔断
+    @Builder.Default
+    private double failureRateThreshold = 0.5;
+    //超过这个时间的调用记为慢调用
+    @Builder.Default
+    private long slowCallMillis = 1000;
+    //慢调用比例达到这个值时熔断
+    @Builder.Default
+    private double slowCallRateThreshold = 0.5;
+    //熔断之后经过这段时间放行一个探测请求(半开)
+    @Builder.Default
+    private long openMillis = 5000;
+
+    /**
+     * 通过-Drpc.breaker.xxx覆盖默认值
+     */
+    public static CircuitBreakerConfig fromSystemProperties() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSeconds(Integer.getInteger("rpc.breaker.window.seconds", config.getWindowSeconds()));
+        config.setMinimumCalls(Integer.getInteger("rpc.breaker.minimum.calls", config.getMinimumCalls()));
+        config.setFailureRateThreshold(Double.parseDouble(System.getProperty("rpc.breaker.failure.rate",
+                String.valueOf(config.getFailureRateThreshold()))));
+        config.setSlowCallMillis(Long.getLong("rpc.breaker.slow.call.millis", config.getSlowCallMillis()));
+        config.setSlowCallRateThreshold(Double.parseDouble(System.getProperty("rpc.breaker.slow.call.rate",
+                String.valueOf(config.getSlowCallRateThreshold()))));
+        config.setOpenMillis(Long.getLong("rpc.breaker.open.millis", config.getOpenMillis()));
+        return config;
+    }
+}
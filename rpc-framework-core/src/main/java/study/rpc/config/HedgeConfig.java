@@ -0,0 +1,30 @@
+package study.rpc.config;
+
+import lombok.*;
+
+/**
+ * 客户端单个方法的对冲请求配置，只应该用于幂等的只读方法
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+public class HedgeConfig {
+    //超过最近延迟的这个百分位还没有响应时，向另一个地址再发一次
+    @Builder.Default
+    private double percentile = 95;
+    //对冲等待时间的下限
+    @Builder.Default
+    private long minDelayMillis = 1;
+    //统计到这么多次调用之后才开始对冲
+    @Builder.Default
+    private int minSamples = 100;
+    //预算：每次调用积累的对冲次数，0.1表示对冲最多增加10%的请求
+    @Builder.Default
+    private double budgetRatio = 0.1;
+    //预算最多积累的对冲次数，低流量时也允许少量对冲
+    @Builder.Default
+    private int maxBudget = 10;
+}
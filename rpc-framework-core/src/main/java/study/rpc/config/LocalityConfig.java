@@ -0,0 +1,52 @@
+package study.rpc.config;
+
+import lombok.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 本机的位置标签和就近路由的配置，服务端把标签随注册信息发布，客户端用来判断服务端离自己多远
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+@Slf4j
+public class LocalityConfig {
+    //可用区，没有配置时不按可用区区分
+    private String zone;
+    //主机名，默认是本机的主机名
+    private String host;
+    //本地(同主机或同可用区)的服务端中可用的比例低于这个值时，把更远的服务端也加入候选
+    @Builder.Default
+    private double minHealthyRatio = 0.5;
+    //服务端返回过载后，这段时间内在判断本地是否可用时把它算作不可用
+    @Builder.Default
+    private long overloadMillis = 1000;
+
+    /**
+     * 通过-Drpc.locality.xxx覆盖默认值
+     */
+    public static LocalityConfig fromSystemProperties() {
+        LocalityConfig config = new LocalityConfig();
+        config.setZone(System.getProperty("rpc.locality.zone"));
+        config.setHost(System.getProperty("rpc.locality.host", localHostName()));
+        config.setMinHealthyRatio(Double.parseDouble(System.getProperty("rpc.locality.min.healthy.ratio",
+                String.valueOf(config.getMinHealthyRatio()))));
+        config.setOverloadMillis(Long.getLong("rpc.locality.overload.millis", config.getOverloadMillis()));
+        return config;
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.warn("get local host name fail", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package study.rpc.config;
+
+import lombok.*;
+
+/**
+ * 服务端单个方法的结果缓存配置，只应该用于幂等的只读方法
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+public class MethodCacheConfig {
+    //最多缓存的结果数量
+    @Builder.Default
+    private int maximumSize = 1024;
+    //结果的有效时间，小于等于0表示不过期(只按容量淘汰)
+    @Builder.Default
+    private long ttlMillis = 60_000;
+    //同时缓存序列化好的响应，命中时既不调用方法也不序列化结果
+    private boolean cacheSerialized;
+}
@@ -3,6 +3,11 @@ package study.rpc.config;
 
 import lombok.*;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
@@ -12,11 +17,30 @@ import lombok.*;
 
 public class RpcServiceConfig {
 
+    //使用builder构建时也保留默认值，否则服务名会拼接出"null"
+    @Builder.Default
     private String version = "";
+    @Builder.Default
     private String group = "";
 
     private Object service;
 
+    //服务端：开启结果缓存的方法：方法名 -> 缓存配置，默认不缓存
+    @Builder.Default
+    private Map<String, MethodCacheConfig> cachedMethods = new HashMap<>();
+    //客户端：合并相同参数的并发调用的方法
+    @Builder.Default
+    private Set<String> collapsedMethods = new HashSet<>();
+    //客户端：在本地短时间缓存结果的方法，方法名 -> 缓存配置(cacheSerialized不适用)
+    @Builder.Default
+    private Map<String, MethodCacheConfig> consumerCachedMethods = new HashMap<>();
+    //客户端：开启对冲请求的方法，方法名 -> 对冲配置
+    @Builder.Default
+    private Map<String, HedgeConfig> hedgedMethods = new HashMap<>();
+    //客户端：广播调用的方法，方法名 -> 广播配置
+    @Builder.Default
+    private Map<String, BroadcastConfig> broadcastMethods = new HashMap<>();
+
     public String getRpcServiceName() {
         return this.getServiceName() + this.getGroup() + this.getVersion();
     }
@@ -26,10 +50,10 @@ public class RpcServiceConfig {
      * getInterfaces()
      * 通过 getInterfaces() 获取该类实现的接口数组。
      * 通过数组访问第一个接口 interfaces[0]。
-     * 使用 getCanonicalName() 获取该接口的全限定名。
+     * 使用 getName() 获取该接口的全限定名，和客户端RpcRequest中的interfaceName一致(嵌套接口是Outer$Inner)。
      */
     public String getServiceName() {
-        return this.service.getClass().getInterfaces()[0].getCanonicalName();
+        return this.service.getClass().getInterfaces()[0].getName();
     }
 
 }
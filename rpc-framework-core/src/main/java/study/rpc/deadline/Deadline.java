@@ -0,0 +1,82 @@
+package study.rpc.deadline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 调用的截止时间，使用System.nanoTime()的绝对值，0表示没有截止时间
+ * <p>
+ * 截止时间以剩余时间的形式写在请求的消息头中，服务端收到后换算成本地时间：
+ * 业务线程取出请求时已经过期就直接丢弃，不调用也不回复；没有过期时在处理期间放在当前线程中，
+ * 服务内部发出的下游调用自动继承，下游的截止时间不会晚于上游
+ */
+public final class Deadline {
+    //服务端处理请求的线程和调用方设置的截止时间，数组避免每次设置时装箱
+    private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private Deadline() {
+    }
+
+    /**
+     * 当前线程的截止时间，没有时为0
+     */
+    public static long current() {
+        return CURRENT.get()[0];
+    }
+
+    /**
+     * 设置当前线程的截止时间，返回原来的值，处理完后通过restore恢复
+     */
+    public static long enter(long deadlineNanos) {
+        long[] holder = CURRENT.get();
+        long previous = holder[0];
+        holder[0] = deadlineNanos;
+        return previous;
+    }
+
+    public static void restore(long previous) {
+        CURRENT.get()[0] = previous;
+    }
+
+    /**
+     * 在timeout之内执行action，其中发出的rpc调用都带上这个截止时间；已经有更早的截止时间时使用更早的
+     */
+    public static <T> T call(long timeout, TimeUnit unit, Supplier<T> action) {
+        long previous = enter(earliest(current(), System.nanoTime() + unit.toNanos(timeout)));
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 一次新调用的截止时间：当前线程的截止时间和调用超时时间中更早的一个，timeoutMs为0表示不限制
+     */
+    public static long forCall(long timeoutMs) {
+        long deadlineNanos = current();
+        if (timeoutMs > 0) {
+            deadlineNanos = earliest(deadlineNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        }
+        return deadlineNanos;
+    }
+
+    /**
+     * 剩余时间(纳秒)，已经过期时返回0或负数；没有截止时间时返回Long.MAX_VALUE
+     */
+    public static long remainingNanos(long deadlineNanos) {
+        return deadlineNanos == 0 ? Long.MAX_VALUE : deadlineNanos - System.nanoTime();
+    }
+
+    public static boolean isExpired(long deadlineNanos) {
+        return deadlineNanos != 0 && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    //nanoTime可能为负数，需要用差值比较
+    private static long earliest(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        return a - b <= 0 ? a : b;
+    }
+}
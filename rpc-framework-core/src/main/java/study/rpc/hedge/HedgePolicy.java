@@ -0,0 +1,103 @@
+package study.rpc.hedge;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import study.rpc.config.HedgeConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个方法的对冲状态：根据最近的延迟计算对冲等待时间，并用预算限制对冲带来的额外请求
+ * <p>
+ * 延迟写入Recorder，每秒最多由一个线程汇总一次；预算是令牌桶，每次调用存入budgetRatio个令牌，每次对冲取出一个。
+ */
+public class HedgePolicy {
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    //预算以千分之一个令牌为单位，用整数做CAS
+    private static final long TOKEN = 1000;
+
+    private final HedgeConfig config;
+    private final long minDelayNanos;
+    private final long deposit;
+    private final long maxTokens;
+
+    private final Recorder latency = new Recorder(3);
+    private final AtomicLong nextRefreshNanos = new AtomicLong(System.nanoTime() + REFRESH_NANOS);
+    //还没有足够的样本时为-1，不对冲
+    private volatile long delayNanos = -1;
+    private final AtomicLong tokens;
+
+    //以下字段只在synchronized的refresh中访问
+    private Histogram interval;
+    private final Histogram window = new Histogram(3);
+
+    public HedgePolicy(HedgeConfig config) {
+        this.config = config;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getMinDelayMillis());
+        this.deposit = (long) (config.getBudgetRatio() * TOKEN);
+        this.maxTokens = config.getMaxBudget() * TOKEN;
+        this.tokens = new AtomicLong(maxTokens);
+    }
+
+    /**
+     * 对冲等待时间，返回-1表示不对冲
+     */
+    public long getDelayNanos() {
+        maybeRefresh(System.nanoTime());
+        return delayNanos;
+    }
+
+    /**
+     * 每次调用存入预算
+     */
+    public void onCall() {
+        while (true) {
+            long current = tokens.get();
+            long next = Math.min(maxTokens, current + deposit);
+            if (next == current || tokens.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取出一次对冲的预算，预算不足时返回false
+     */
+    public boolean tryAcquireHedge() {
+        while (true) {
+            long current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 记录一次成功请求的延迟(从这次请求发出开始计算)
+     */
+    public void recordLatency(long latencyNanos) {
+        latency.recordValue(Math.max(0, latencyNanos));
+    }
+
+    void maybeRefresh(long nowNanos) {
+        long next = nextRefreshNanos.get();
+        if (nowNanos - next < 0 || !nextRefreshNanos.compareAndSet(next, nowNanos + REFRESH_NANOS)) {
+            return;
+        }
+        refresh();
+    }
+
+    private synchronized void refresh() {
+        interval = latency.getIntervalHistogram(interval);
+        window.add(interval);
+        //样本不够时继续累积，保留上一次的结果
+        if (window.getTotalCount() >= config.getMinSamples()) {
+            delayNanos = Math.max(minDelayNanos, window.getValueAtPercentile(config.getPercentile()));
+            window.reset();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package study.rpc.injvm;
+
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.exception.RpcException;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.provider.ServiceProvider;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.serialize.Serializer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 进程内调用：服务已经在当前JVM中发布时，客户端代理直接调用服务实例，不经过注册中心、序列化和网络
+ * <p>
+ * 通过-Drpc.injvm.enabled=true开启。默认参数和返回值直接传引用，双方共享同一个对象；
+ * 加上-Drpc.injvm.copy=true时通过序列化深拷贝参数和返回值，和远程调用一样互相隔离。
+ * 服务端的结果缓存、并发限制等不会生效，目标方法抛出的异常原样交给调用方。
+ */
+@Slf4j
+public class InJvmInvoker {
+    public static final boolean ENABLED = Boolean.getBoolean("rpc.injvm.enabled");
+    private static final boolean COPY = Boolean.getBoolean("rpc.injvm.copy");
+
+    private final ServiceProvider serviceProvider;
+    //不拷贝时为null
+    private final Serializer serializer;
+
+    public InJvmInvoker() {
+        this(SingletonFactory.getInstance(ZkServiceProviderImpl.class), COPY);
+    }
+
+    public InJvmInvoker(ServiceProvider serviceProvider, boolean copy) {
+        this.serviceProvider = serviceProvider;
+        this.serializer = copy ? ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(SerializationTypeEnum.KRYO.getName()) : null;
+    }
+
+    /**
+     * 当前JVM中发布的服务实例，没有时返回null，调用方走远程调用
+     */
+    public Object findService(String rpcServiceName) {
+        return serviceProvider.findService(rpcServiceName);
+    }
+
+    /**
+     * 直接调用服务实例的方法，method是接口中的方法；异步方法返回的future完成时结果才完成
+     */
+    public CompletableFuture<Object> invoke(Object service, Method method, Object[] args) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        try {
+            Object result = method.invoke(service, copy(args));
+            if (result instanceof CompletionStage) {
+                ((CompletionStage<?>) result).whenComplete((value, throwable) -> {
+                    if (throwable == null) {
+                        future.complete(copy(value));
+                    } else {
+                        future.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause() : throwable);
+                    }
+                });
+            } else {
+                future.complete(copy(result));
+            }
+        } catch (InvocationTargetException e) {
+            future.completeExceptionally(e.getCause());
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            future.completeExceptionally(new RpcException(e.getMessage(), e));
+        }
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T copy(T value) {
+        if (serializer == null || value == null) {
+            return value;
+        }
+        return (T) serializer.deserialize(serializer.serialize(value), value.getClass());
+    }
+}
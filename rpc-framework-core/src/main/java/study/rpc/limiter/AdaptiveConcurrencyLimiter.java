@@ -0,0 +1,130 @@
+package study.rpc.limiter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端自适应并发限制(gradient算法)：根据观测到的延迟动态调整允许同时处理的请求数
+ * <p>
+ * 和Vegas一样用观测到的最小延迟代表没有排队时的延迟，短期延迟明显高于它时说明请求在排队，按比例缩小限制；
+ * 延迟没有上升时限制每个窗口增加一个排队余量，逐步探测容量。超过限制的请求直接拒绝，不进入业务线程池排队。
+ * 最小延迟定期重新测量，以跟上服务本身耗时的变化。
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+    public static final boolean ENABLED = Boolean.getBoolean("rpc.limit.enabled");
+
+    //允许短期延迟比长期平均高出的比例
+    private static final double TOLERANCE = 1.5;
+    //新的估计值在限制中的权重
+    private static final double SMOOTHING = 0.2;
+    //每个窗口收集的样本数
+    private static final int WINDOW_SIZE = 10;
+    //每隔多少个窗口重新测量最小延迟
+    private static final int PROBE_WINDOWS = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+
+    //以下字段只在synchronized的onSample中访问
+    private double estimatedLimit;
+    private double noLoadRttNanos;
+    private int windowsSinceProbe;
+    private long windowRttSum;
+    private int windowCount;
+    private int windowMaxInFlight;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * 没有开启限流时返回null，参数通过-Drpc.limit.initial/min/max配置
+     */
+    public static AdaptiveConcurrencyLimiter fromSystemProperties() {
+        if (!ENABLED) {
+            return null;
+        }
+        return new AdaptiveConcurrencyLimiter(Integer.getInteger("rpc.limit.initial", 20),
+                Integer.getInteger("rpc.limit.min", 4), Integer.getInteger("rpc.limit.max", 1000));
+    }
+
+    /**
+     * 获取一个并发名额，返回false时调用方应该直接拒绝请求
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求处理完成，rttNanos是从收到请求到处理完的时间(包括排队)
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        onSample(rttNanos, current);
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtRelease) {
+        windowRttSum += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtRelease);
+        if (++windowCount < WINDOW_SIZE) {
+            return;
+        }
+        double shortRtt = (double) windowRttSum / windowCount;
+        int maxInFlight = windowMaxInFlight;
+        windowRttSum = 0;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+
+        if (++windowsSinceProbe >= PROBE_WINDOWS) {
+            windowsSinceProbe = 0;
+            noLoadRttNanos = 0;
+        }
+        if (noLoadRttNanos == 0 || shortRtt < noLoadRttNanos) {
+            noLoadRttNanos = shortRtt;
+        }
+        //并发远低于限制时延迟不能说明容量，不调整
+        if (maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * noLoadRttNanos / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        int rounded = (int) estimatedLimit;
+        if (rounded != limit) {
+            log.debug("concurrency limit changed: [{}] -> [{}], shortRtt={}ns noLoadRtt={}ns",
+                    limit, rounded, (long) shortRtt, (long) noLoadRttNanos);
+            limit = rounded;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
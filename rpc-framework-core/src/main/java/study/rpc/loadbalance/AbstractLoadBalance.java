@@ -1,9 +1,12 @@
 package study.rpc.loadbalance;
 
 
+import study.rpc.breaker.CircuitBreakers;
+import study.rpc.locality.LocalityRouter;
 import study.rpc.remoting.dtObject.RpcRequest;
 import study.rpc.utils.CollectionUtil;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,12 +20,41 @@ public abstract class AbstractLoadBalance implements LoadBalance{
         if(CollectionUtil.isEmpty(serviceAddresses)){
             return null;
         }
+        if (LocalityRouter.ENABLED) {
+            //先按远近缩小候选范围，返回的是预先分好的列表
+            serviceAddresses = LocalityRouter.route(rpcRequest.getRpcServiceName(), serviceAddresses, System.nanoTime());
+        }
+        if (CircuitBreakers.ENABLED) {
+            return selectWithCircuitBreaker(serviceAddresses, rpcRequest);
+        }
         if(serviceAddresses.size() == 1){
             return serviceAddresses.get(0);
         }
         return doSelect(serviceAddresses,rpcRequest);
     }
 
+    //先去掉被熔断的地址再选择；全部被熔断时仍然在原列表中选择，不让整个服务不可用
+    private String selectWithCircuitBreaker(List<String> serviceAddresses, RpcRequest rpcRequest) {
+        long now = System.nanoTime();
+        List<String> candidates = CircuitBreakers.filter(rpcRequest.getRpcServiceName(), serviceAddresses, now);
+        if (candidates == null) {
+            return select(serviceAddresses, rpcRequest);
+        }
+        while (true) {
+            String address = select(candidates, rpcRequest);
+            if (CircuitBreakers.tryAcquire(address, now) || candidates.size() == 1) {
+                return address;
+            }
+            //半开状态的探测名额被其他请求拿走了，换一个地址；只剩这一个地址时仍然使用它
+            candidates = new ArrayList<>(candidates);
+            candidates.remove(address);
+        }
+    }
+
+    private String select(List<String> serviceAddresses, RpcRequest rpcRequest) {
+        return serviceAddresses.size() == 1 ? serviceAddresses.get(0) : doSelect(serviceAddresses, rpcRequest);
+    }
+
     //只需要实现做选择的抽象方法
     protected abstract String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest);
 }
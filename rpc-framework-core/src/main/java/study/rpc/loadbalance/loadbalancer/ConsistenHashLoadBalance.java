@@ -36,19 +36,22 @@ public class ConsistenHashLoadBalance extends AbstractLoadBalance {
         }
 
         //将rpc服务名和参数组合，通过selector 选择目标服务节点
-        return selector.select(rpcServiceName + Arrays.stream(rpcRequest.getParameters()));
+        //之前拼接的是Stream对象的toString，每次都不一样，相同的参数并不会落到同一个节点
+        return selector.select(rpcServiceName, rpcRequest.getParameters());
     }
 
     static class ConsistentHashSelector{
         //final:初始化后不能重新赋值，但是可以修改内容
-        //TreeMap按照键排序，也就是按哈希值排序
-        //存储虚拟节点的哈希环，键为哈希值，值为服务节点地址
-        private final TreeMap<Long, String> virtualInvokers;
+        //哈希环：虚拟节点的哈希值从小到大排列，和对应的服务节点地址下标一一对应
+        //用数组二分查找代替TreeMap，选择时不需要装箱和创建子视图
+        private final long[] ring;
+        private final String[] ringInvokers;
         //当前服务地址列表的唯一标识哈希码
         private final int identityHashCode;
 
         ConsistentHashSelector(List<String> invokers, int replicaNumber, int identityHashCode){
-            this.virtualInvokers = new TreeMap<>();
+            //TreeMap按照键排序，也就是按哈希值排序，构建完成后转换成数组
+            TreeMap<Long, String> virtualInvokers = new TreeMap<>();
             this.identityHashCode = identityHashCode;
 
             //构建一致性哈希环，讲服务节点映射到虚拟节点上
@@ -71,6 +74,13 @@ public class ConsistenHashLoadBalance extends AbstractLoadBalance {
                     }
                 }
             }
+            this.ring = new long[virtualInvokers.size()];
+            this.ringInvokers = new String[virtualInvokers.size()];
+            int i = 0;
+            for (Map.Entry<Long, String> entry : virtualInvokers.entrySet()) {
+                ring[i] = entry.getKey();
+                ringInvokers[i++] = entry.getValue();
+            }
         }
 
         //利用MessageDigest类获取Java内置的MD5哈希算法实例
@@ -101,26 +111,35 @@ public class ConsistenHashLoadBalance extends AbstractLoadBalance {
                     (long) (digest[index * 4] & 255)) & 4294967295L;
         }
 
-        //根据rpc服务键选择对应的目标服务器
-        //rpc服务键中有参数的变化保证是动态的服务键，其中包括唯一标识符requestId
-        public String select(String rpcServiceKey){
-            //rpc
-            byte[] digest = md5(rpcServiceKey);
-            return selectForKey(hash(digest,0));
+        //根据服务名和参数选择对应的目标服务器，相同的参数总是选到同一个节点
+        //键只用于在环上定位，不需要MD5那样的分布，用hashCode打散即可，不再每次创建MessageDigest
+        public String select(String rpcServiceName, Object[] parameters){
+            int h = 31 * rpcServiceName.hashCode() + Arrays.deepHashCode(parameters);
+            return selectForKey(mix(h));
+        }
+
+        //murmur3的fmix32，把相近的hashCode打散到整个32位空间
+        static long mix(int h){
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h & 4294967295L;
         }
 
         //根据哈希值在哈希环上查找最近的服务节点
         //在哈希环中找到大于等于给定哈希值的第一个节点
         public String selectForKey(long hashCode){
-            //tailMap:获取大于等于hashCode的键值对，true标识包含等于
-            Map.Entry<Long,String> entry = virtualInvokers.tailMap(hashCode,true).firstEntry();
-
+            int index = Arrays.binarySearch(ring, hashCode);
+            if(index < 0){
+                index = -index - 1;
+            }
             //如果没有找到，返回第一个节点
-            if(entry == null){
-                entry = virtualInvokers.firstEntry();
+            if(index == ring.length){
+                index = 0;
             }
-
-            return entry.getValue();
+            return ringInvokers[index];
         }
 
     }
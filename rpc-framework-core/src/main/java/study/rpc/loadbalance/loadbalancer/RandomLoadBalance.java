@@ -4,12 +4,12 @@ import study.rpc.loadbalance.AbstractLoadBalance;
 import study.rpc.remoting.dtObject.RpcRequest;
 
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RandomLoadBalance extends AbstractLoadBalance {
     @Override
     protected String doSelect(List<String> serviceAddresses, RpcRequest rpcRequest) {
-        Random random = new Random();
-        return serviceAddresses.get(random.nextInt(serviceAddresses.size()));
+        //每次new Random既有分配，多个线程同时创建时还会竞争种子
+        return serviceAddresses.get(ThreadLocalRandom.current().nextInt(serviceAddresses.size()));
     }
 }
@@ -0,0 +1,75 @@
+package study.rpc.locality;
+
+import study.rpc.breaker.CircuitBreakers;
+import study.rpc.config.LocalityConfig;
+import study.rpc.registry.ServiceNodeData;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 就近路由，通过-Drpc.locality.enabled=true开启
+ * <p>
+ * 注册中心的地址列表变化时在后台读取各个服务端的位置标签，再用prepare预先分好层；
+ * 负载均衡前用route选出最近的可用的一层，本地的服务端被熔断或者刚返回过过载时才把更远的服务端加进来。
+ */
+public final class LocalityRouter {
+    public static final boolean ENABLED = Boolean.getBoolean("rpc.locality.enabled");
+
+    private static final LocalityConfig CONFIG = LocalityConfig.fromSystemProperties();
+    private static final long OVERLOAD_NANOS = TimeUnit.MILLISECONDS.toNanos(CONFIG.getOverloadMillis());
+    //服务名 -> 当前地址列表快照的分层结果
+    private static final Map<String, LocalityTiers> TIERS = new ConcurrentHashMap<>();
+    //服务端地址(host:port) -> 过载标记的到期时间
+    private static final Map<String, Long> OVERLOADED = new ConcurrentHashMap<>();
+    private static final LocalityTiers.Availability AVAILABILITY = LocalityRouter::isAvailable;
+
+    private LocalityRouter() {
+    }
+
+    /**
+     * 本机发布到注册中心的节点数据
+     */
+    public static ServiceNodeData localNodeData(String domainSocketPath) {
+        return new ServiceNodeData(domainSocketPath, CONFIG.getZone(), CONFIG.getHost());
+    }
+
+    /**
+     * 地址列表快照变化时重新分层，没有变化时什么也不做；nodeData不能阻塞，位置标签需要事先读好
+     */
+    public static void prepare(String rpcServiceName, List<String> serviceAddresses, Function<String, ServiceNodeData> nodeData) {
+        LocalityTiers tiers = TIERS.get(rpcServiceName);
+        if (tiers == null || tiers.getSource() != serviceAddresses) {
+            TIERS.put(rpcServiceName, new LocalityTiers(serviceAddresses, nodeData, CONFIG.getZone(), CONFIG.getHost()));
+        }
+    }
+
+    /**
+     * 返回最近的可用的候选列表；不是当前快照的列表(重试时排除了部分地址)不做处理
+     */
+    public static List<String> route(String rpcServiceName, List<String> serviceAddresses, long nowNanos) {
+        LocalityTiers tiers = TIERS.get(rpcServiceName);
+        if (tiers == null || tiers.getSource() != serviceAddresses) {
+            return serviceAddresses;
+        }
+        return tiers.select(AVAILABILITY, CONFIG.getMinHealthyRatio(), nowNanos);
+    }
+
+    public static void onOverloaded(String address) {
+        OVERLOADED.put(address, System.nanoTime() + OVERLOAD_NANOS);
+    }
+
+    private static boolean isAvailable(String address, long nowNanos) {
+        Long overloadedUntil = OVERLOADED.get(address);
+        if (overloadedUntil != null) {
+            if (nowNanos - overloadedUntil < 0) {
+                return false;
+            }
+            OVERLOADED.remove(address, overloadedUntil);
+        }
+        return !CircuitBreakers.ENABLED || CircuitBreakers.isCallPermitted(address, nowNanos);
+    }
+}
@@ -0,0 +1,77 @@
+package study.rpc.locality;
+
+import study.rpc.registry.ServiceNodeData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * 一个地址列表快照按离本机的远近分好的候选列表：同主机、同主机和同可用区、全部
+ * <p>
+ * 每一层包含前一层的所有地址，和前一层相同的层不保留，最后一层就是原列表本身。
+ * 地址列表变化时整体重建，调用时只判断每一层是否可用，不重新过滤。
+ */
+public class LocalityTiers {
+
+    /**
+     * 判断服务端当前是否可以接收请求
+     */
+    public interface Availability {
+        boolean isAvailable(String address, long nowNanos);
+    }
+
+    private final List<String> source;
+    private final List<List<String>> tiers;
+
+    public LocalityTiers(List<String> source, Function<String, ServiceNodeData> nodeData, String zone, String host) {
+        this.source = source;
+        List<String> sameHost = new ArrayList<>();
+        List<String> sameZone = new ArrayList<>();
+        for (String address : source) {
+            ServiceNodeData data = nodeData.apply(address);
+            if (host != null && Objects.equals(host, data.getHost())) {
+                sameHost.add(address);
+            } else if (zone != null && Objects.equals(zone, data.getZone())) {
+                sameZone.add(address);
+            }
+        }
+        List<List<String>> tiers = new ArrayList<>(3);
+        if (!sameHost.isEmpty() && sameHost.size() < source.size()) {
+            tiers.add(Collections.unmodifiableList(sameHost));
+        }
+        if (!sameZone.isEmpty() && sameHost.size() + sameZone.size() < source.size()) {
+            List<String> local = new ArrayList<>(sameHost);
+            local.addAll(sameZone);
+            tiers.add(Collections.unmodifiableList(local));
+        }
+        tiers.add(source);
+        this.tiers = tiers;
+    }
+
+    public List<String> getSource() {
+        return source;
+    }
+
+    /**
+     * 返回最近的可用比例不低于minHealthyRatio的一层，本地的服务端都不可用或者过载时逐层扩大到更远的服务端
+     */
+    public List<String> select(Availability availability, double minHealthyRatio, long nowNanos) {
+        int last = tiers.size() - 1;
+        for (int i = 0; i < last; i++) {
+            List<String> tier = tiers.get(i);
+            int available = 0;
+            for (int j = 0; j < tier.size(); j++) {
+                if (availability.isAvailable(tier.get(j), nowNanos)) {
+                    available++;
+                }
+            }
+            if (available > 0 && available >= minHealthyRatio * tier.size()) {
+                return tier;
+            }
+        }
+        return tiers.get(last);
+    }
+}
@@ -0,0 +1,98 @@
+package study.rpc.metrics;
+
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个服务方法在客户端或服务端的统计数据
+ * 写入路径(调用线程/IO线程)全部是无锁的：计数使用分段的LongAdder，延迟写入HdrHistogram的Recorder
+ * 读取路径(snapshot)才会加锁，把Recorder中的区间数据累加到总的直方图中
+ */
+public class MethodMetrics {
+    //直方图保留3位有效数字，值的范围自动扩展
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    @Getter
+    private final RpcMetrics.Side side;
+    @Getter
+    private final String serviceName;
+    @Getter
+    private final String methodName;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    //进行中的调用数：开始时+1，结束时-1
+    private final LongAdder inFlight = new LongAdder();
+    //客户端发出的对冲请求数，以及对冲请求先返回的次数
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    //调用延迟：客户端是发送到收到响应，服务端是开始调用到调用结束
+    private final Recorder latency = new Recorder(SIGNIFICANT_DIGITS);
+    //请求体序列化/反序列化耗时
+    private final Recorder serialization = new Recorder(SIGNIFICANT_DIGITS);
+    //服务端请求从IO线程解码完成到业务线程开始处理的排队时间
+    private final Recorder queueWait = new Recorder(SIGNIFICANT_DIGITS);
+
+    //以下字段只在snapshot中访问，由synchronized保护
+    private Histogram latencyInterval;
+    private Histogram serializationInterval;
+    private Histogram queueWaitInterval;
+    private final Histogram latencyTotal = new Histogram(SIGNIFICANT_DIGITS);
+    private final Histogram serializationTotal = new Histogram(SIGNIFICANT_DIGITS);
+    private final Histogram queueWaitTotal = new Histogram(SIGNIFICANT_DIGITS);
+
+    MethodMetrics(RpcMetrics.Side side, String serviceName, String methodName) {
+        this.side = side;
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+    }
+
+    public void onStart() {
+        calls.increment();
+        inFlight.increment();
+    }
+
+    public void onComplete(long latencyNanos, boolean success) {
+        inFlight.decrement();
+        if (!success) {
+            errors.increment();
+        }
+        latency.recordValue(Math.max(0, latencyNanos));
+    }
+
+    public void recordHedge() {
+        hedges.increment();
+    }
+
+    public void recordHedgeWin() {
+        hedgeWins.increment();
+    }
+
+    public void recordSerialization(long nanos) {
+        serialization.recordValue(Math.max(0, nanos));
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWait.recordValue(Math.max(0, nanos));
+    }
+
+    /**
+     * 拉取当前的统计快照，计数和直方图都是从启动开始累计的
+     */
+    public synchronized MethodMetricsSnapshot snapshot() {
+        //传入上一次的区间直方图进行复用，避免每次拉取都分配新的直方图
+        latencyInterval = latency.getIntervalHistogram(latencyInterval);
+        serializationInterval = serialization.getIntervalHistogram(serializationInterval);
+        queueWaitInterval = queueWait.getIntervalHistogram(queueWaitInterval);
+        latencyTotal.add(latencyInterval);
+        serializationTotal.add(serializationInterval);
+        queueWaitTotal.add(queueWaitInterval);
+        return new MethodMetricsSnapshot(side.name(), serviceName, methodName,
+                calls.sum(), errors.sum(), inFlight.sum(), hedges.sum(), hedgeWins.sum(),
+                latencyTotal, serializationTotal, queueWaitTotal);
+    }
+}
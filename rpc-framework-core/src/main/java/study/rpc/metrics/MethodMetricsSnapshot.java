@@ -0,0 +1,56 @@
+package study.rpc.metrics;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.HdrHistogram.Histogram;
+
+/**
+ * MethodMetrics在某一时刻的不可变快照，时间单位都是微秒
+ * 只有getter，可以直接作为MXBean的属性类型导出到JMX
+ */
+@Getter
+@ToString
+public class MethodMetricsSnapshot {
+    private final String side;
+    private final String serviceName;
+    private final String methodName;
+    private final long calls;
+    private final long errors;
+    private final long inFlight;
+    private final long hedges;
+    private final long hedgeWins;
+
+    private final double latencyP50Us;
+    private final double latencyP99Us;
+    private final double latencyP999Us;
+    private final double latencyMaxUs;
+    private final double serializationP50Us;
+    private final double serializationP99Us;
+    private final double queueWaitP50Us;
+    private final double queueWaitP99Us;
+
+    MethodMetricsSnapshot(String side, String serviceName, String methodName, long calls, long errors, long inFlight,
+                          long hedges, long hedgeWins,
+                          Histogram latency, Histogram serialization, Histogram queueWait) {
+        this.side = side;
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+        this.calls = calls;
+        this.errors = errors;
+        this.inFlight = inFlight;
+        this.hedges = hedges;
+        this.hedgeWins = hedgeWins;
+        this.latencyP50Us = toMicros(latency.getValueAtPercentile(50));
+        this.latencyP99Us = toMicros(latency.getValueAtPercentile(99));
+        this.latencyP999Us = toMicros(latency.getValueAtPercentile(99.9));
+        this.latencyMaxUs = toMicros(latency.getMaxValue());
+        this.serializationP50Us = toMicros(serialization.getValueAtPercentile(50));
+        this.serializationP99Us = toMicros(serialization.getValueAtPercentile(99));
+        this.queueWaitP50Us = toMicros(queueWait.getValueAtPercentile(50));
+        this.queueWaitP99Us = toMicros(queueWait.getValueAtPercentile(99));
+    }
+
+    private static double toMicros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,101 @@
+package study.rpc.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端和服务端的调用统计入口
+ * 按 服务名 -> 方法名 两级Map存放MethodMetrics，命中时不需要拼接字符串，热点路径上没有对象分配
+ * 通过 -Drpc.metrics.enabled=false 关闭统计
+ */
+@Slf4j
+public final class RpcMetrics {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("rpc.metrics.enabled"));
+
+    //响应体的序列化耗时不属于某个具体方法，统一记录在这个名称下
+    public static final String ANY_SERVICE = "*";
+    public static final String RESPONSE_CODEC = "<response>";
+    //服务端收到的不存在的服务或方法统一记录在这个名称下，名称来自客户端，不能直接作为Map的key
+    public static final String UNKNOWN_METHOD = "<unknown>";
+
+    public enum Side {
+        CONSUMER, PROVIDER
+    }
+
+    private static final Map<String, Map<String, MethodMetrics>> CONSUMER_METRICS = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, MethodMetrics>> PROVIDER_METRICS = new ConcurrentHashMap<>();
+
+    private RpcMetrics() {
+    }
+
+    public static MethodMetrics consumer(String serviceName, String methodName) {
+        return get(CONSUMER_METRICS, Side.CONSUMER, serviceName, methodName);
+    }
+
+    public static MethodMetrics provider(String serviceName, String methodName) {
+        return get(PROVIDER_METRICS, Side.PROVIDER, serviceName, methodName);
+    }
+
+    public static MethodMetrics unknownProvider() {
+        return provider(ANY_SERVICE, UNKNOWN_METHOD);
+    }
+
+    public static MethodMetrics responseCodec(Side side) {
+        return side == Side.CONSUMER ? consumer(ANY_SERVICE, RESPONSE_CODEC) : provider(ANY_SERVICE, RESPONSE_CODEC);
+    }
+
+    private static MethodMetrics get(Map<String, Map<String, MethodMetrics>> metrics, Side side,
+                                     String serviceName, String methodName) {
+        //先get再computeIfAbsent：已存在时只有两次无锁的读
+        Map<String, MethodMetrics> methods = metrics.get(serviceName);
+        if (methods == null) {
+            methods = metrics.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>());
+        }
+        MethodMetrics methodMetrics = methods.get(methodName);
+        if (methodMetrics == null) {
+            methodMetrics = methods.computeIfAbsent(methodName, k -> new MethodMetrics(side, serviceName, methodName));
+        }
+        return methodMetrics;
+    }
+
+    /**
+     * 拉取所有方法的统计快照
+     */
+    public static List<MethodMetricsSnapshot> snapshot() {
+        List<MethodMetricsSnapshot> snapshots = new ArrayList<>();
+        collect(CONSUMER_METRICS, snapshots);
+        collect(PROVIDER_METRICS, snapshots);
+        return snapshots;
+    }
+
+    private static void collect(Map<String, Map<String, MethodMetrics>> metrics, List<MethodMetricsSnapshot> snapshots) {
+        for (Map<String, MethodMetrics> methods : metrics.values()) {
+            for (MethodMetrics methodMetrics : methods.values()) {
+                snapshots.add(methodMetrics.snapshot());
+            }
+        }
+    }
+
+    /**
+     * 可选：把统计数据注册到平台MBeanServer，名称为study.rpc:type=RpcMetrics
+     */
+    public static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("study.rpc:type=RpcMetrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                RpcMetricsMXBean bean = RpcMetrics::snapshot;
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(bean, RpcMetricsMXBean.class, true), name);
+            }
+        } catch (Exception e) {
+            log.error("register rpc metrics mbean fail", e);
+        }
+    }
+}
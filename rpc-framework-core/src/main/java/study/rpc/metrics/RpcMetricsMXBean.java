@@ -0,0 +1,10 @@
+package study.rpc.metrics;
+
+import java.util.List;
+
+/**
+ * 通过JMX导出的统计数据，注册方式见RpcMetrics.registerMBean()
+ */
+public interface RpcMetricsMXBean {
+    List<MethodMetricsSnapshot> getSnapshots();
+}
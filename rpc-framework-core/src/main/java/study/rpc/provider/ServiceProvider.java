@@ -3,9 +3,19 @@ package study.rpc.provider;
 
 import study.rpc.config.RpcServiceConfig;
 
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
 public interface ServiceProvider {
 
     void addService(RpcServiceConfig rpcServiceConfig);
     Object getService(String rpcServiceName);
+    //和getService相同，但是服务不存在时返回null，用于判断能否进程内调用
+    Object findService(String rpcServiceName);
+    RpcServiceConfig getServiceConfig(String rpcServiceName);
     void publishService(RpcServiceConfig rpcServiceConfig);
+    //发布到指定的服务端地址，服务端不在默认端口监听时使用
+    void publishService(RpcServiceConfig rpcServiceConfig, InetSocketAddress serverAddress);
+    //同时公布服务端监听的Unix域套接字路径，没有时为null；注册在后台进行，返回的future在注册完成时结束
+    CompletableFuture<Void> publishService(RpcServiceConfig rpcServiceConfig, InetSocketAddress serverAddress, String domainSocketPath);
 }
@@ -3,13 +3,20 @@ package study.rpc.provider.impl;
 import lombok.extern.slf4j.Slf4j;
 import study.rpc.config.RpcServiceConfig;
 
+import study.rpc.enums.RpcErrorMessageEnum;
 import study.rpc.enums.ServiceRegistryEnum;
+import study.rpc.exception.RpcException;
 import study.rpc.extension.ExtensionLoader;
 import study.rpc.provider.ServiceProvider;
 import study.rpc.registry.ServiceRegistry;
+import study.rpc.remoting.transport.netty.server.NettyRpcServer;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
@@ -17,6 +24,8 @@ public class ZkServiceProviderImpl implements ServiceProvider {
 
     //存储服务名称和实例的映射。管理服务实例，供本地调用和查找。
     private final Map<String, Object> serviceMap;
+    //服务名称和发布时配置的映射，用于查询方法级别的配置(如结果缓存)
+    private final Map<String, RpcServiceConfig> serviceConfigMap;
     // 已注册服务表，防止重复注册，所以使用Set
     private final Set<String> registeredService;
     private final ServiceRegistry serviceRegistry;
@@ -24,6 +33,7 @@ public class ZkServiceProviderImpl implements ServiceProvider {
     public ZkServiceProviderImpl() {
         //ConcurrentHashMap是高并发线程安全的哈希表
         serviceMap = new ConcurrentHashMap<>();
+        serviceConfigMap = new ConcurrentHashMap<>();
         //当你只需要存储键并且要确保线程安全时，可以使用newKeySet()
         registeredService = ConcurrentHashMap.newKeySet();
         serviceRegistry = ExtensionLoader.getExtensionLoader(ServiceRegistry.class).getExtension(ServiceRegistryEnum.ZK.getName());
@@ -32,17 +42,63 @@ public class ZkServiceProviderImpl implements ServiceProvider {
 
     @Override
     public void addService(RpcServiceConfig rpcServiceConfig) {
-
+        String rpcServiceName = rpcServiceConfig.getRpcServiceName();
+        //add返回false说明已经添加过了
+        if (!registeredService.add(rpcServiceName)) {
+            return;
+        }
+        serviceConfigMap.put(rpcServiceName, rpcServiceConfig);
+        serviceMap.put(rpcServiceName, rpcServiceConfig.getService());
+        log.info("Add service: {} and interfaces:{}", rpcServiceName, rpcServiceConfig.getService().getClass().getInterfaces());
     }
 
     @Override
     public Object getService(String rpcServiceName) {
-        return null;
+        Object service = serviceMap.get(rpcServiceName);
+        if (null == service) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
+        }
+        return service;
+    }
+
+    @Override
+    public Object findService(String rpcServiceName) {
+        return serviceMap.get(rpcServiceName);
+    }
+
+    @Override
+    public RpcServiceConfig getServiceConfig(String rpcServiceName) {
+        return serviceConfigMap.get(rpcServiceName);
     }
 
     @Override
     public void publishService(RpcServiceConfig rpcServiceConfig) {
+        try {
+            //默认使用本机地址和NettyRpcServer的默认端口
+            String host = InetAddress.getLocalHost().getHostAddress();
+            publishService(rpcServiceConfig, new InetSocketAddress(host, NettyRpcServer.PORT));
+        } catch (UnknownHostException e) {
+            log.error("occur exception when getHostAddress", e);
+        }
+    }
+
+    @Override
+    public void publishService(RpcServiceConfig rpcServiceConfig, InetSocketAddress serverAddress) {
+        publishService(rpcServiceConfig, serverAddress, null);
+    }
 
+    @Override
+    public CompletableFuture<Void> publishService(RpcServiceConfig rpcServiceConfig, InetSocketAddress serverAddress, String domainSocketPath) {
+        //先加入本地服务表，再注册到Zookeeper，保证客户端发现服务时本地已经可以处理请求
+        this.addService(rpcServiceConfig);
+        //注册异步进行，多个服务的注册请求并行发送，不阻塞服务端启动
+        String rpcServiceName = rpcServiceConfig.getRpcServiceName();
+        return serviceRegistry.registerServiceAsync(rpcServiceName, serverAddress, domainSocketPath)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        log.error("register service [{}] fail", rpcServiceName, e);
+                    }
+                });
     }
 
 }
@@ -0,0 +1,14 @@
+package study.rpc.proxy;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 泛化调用接口：没有服务接口类的调用方(例如网关、测试工具)按名字调用远程方法
+ * parameterTypes是参数类型的全限定名，基本类型写int、long等，数组使用Class.getName()的写法
+ */
+public interface GenericService {
+
+    Object invoke(String methodName, String[] parameterTypes, Object[] args);
+
+    CompletableFuture<Object> invokeAsync(String methodName, String[] parameterTypes, Object[] args);
+}
@@ -0,0 +1,241 @@
+package study.rpc.proxy;
+
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.broadcast.BroadcastPolicy;
+import study.rpc.cache.ConsumerResultCache;
+import study.rpc.config.RpcConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.deadline.Deadline;
+import study.rpc.enums.RpcErrorMessageEnum;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.exception.RpcException;
+import study.rpc.hedge.HedgePolicy;
+import study.rpc.injvm.InJvmInvoker;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.RpcRequestTransport;
+import study.rpc.remoting.transport.netty.client.NettyRpcClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 动态代理类：客户端调用接口方法时，实际上调用的是invoke方法，由invoke方法把调用转换为RpcRequest发送给服务端
+ * 返回CompletableFuture或CompletionStage的方法是异步桩，直接返回结果的future，不阻塞调用线程
+ * rpcServiceConfig中配置了广播的方法发给所有服务端，结果合并后返回
+ */
+@Slf4j
+public class RpcClientProxy implements InvocationHandler {
+
+    private static final String INTERFACE_NAME = "interfaceName";
+
+    //用于发送请求给服务端，对应netty这种实现
+    private final RpcRequestTransport rpcRequestTransport;
+    private final RpcServiceConfig rpcServiceConfig;
+    //请求合并和本地结果缓存，只对rpcServiceConfig中配置的方法生效
+    private final ConsumerResultCache consumerResultCache = new ConsumerResultCache();
+    //开启对冲的方法的对冲状态，没有开启的方法存Optional.empty()
+    private final Map<Method, Optional<HedgePolicy>> hedgePolicies = new ConcurrentHashMap<>();
+    //广播调用的方法的合并策略，不是广播的方法存Optional.empty()
+    private final Map<Method, Optional<BroadcastPolicy>> broadcastPolicies = new ConcurrentHashMap<>();
+    //进程内调用，没有开启时为null
+    private final InJvmInvoker inJvmInvoker = InJvmInvoker.ENABLED ? new InJvmInvoker() : null;
+
+    public RpcClientProxy(RpcRequestTransport rpcRequestTransport, RpcServiceConfig rpcServiceConfig) {
+        this.rpcRequestTransport = rpcRequestTransport;
+        this.rpcServiceConfig = rpcServiceConfig;
+    }
+
+    public RpcClientProxy(RpcRequestTransport rpcRequestTransport) {
+        this.rpcRequestTransport = rpcRequestTransport;
+        this.rpcServiceConfig = new RpcServiceConfig();
+    }
+
+    /**
+     * 获取代理对象
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getProxy(Class<T> clazz) {
+        return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        log.debug("invoked method: [{}]", method.getName());
+        ConsumerResultCache.MethodState state = consumerResultCache.getState(method, rpcServiceConfig);
+        CompletableFuture<Object> future = state == null ? invokeAsync(method, args)
+                : state.invoke(args == null ? new Object[0] : args, () -> invokeAsync(method, args));
+        if (isAsync(method)) {
+            //超时由NettyRpcClient在截止时间到达时让future异常完成
+            return future;
+        }
+        if (getBroadcastPolicy(method) != null) {
+            //每个服务端的调用到截止时间都会结束，由BroadcastPolicy决定返回部分结果还是失败，这里不再单独计时
+            return await(future, method.getDeclaringClass().getName(), 0);
+        }
+        return await(future, method.getDeclaringClass().getName(), Deadline.forCall(RpcConfig.get().getRequestTimeoutMs()));
+    }
+
+    private static boolean isAsync(Method method) {
+        Class<?> returnType = method.getReturnType();
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class;
+    }
+
+    //等待结果，超过截止时间(配置的请求超时时间或者从上游继承的截止时间)时抛出异常，deadlineNanos为0时一直等待
+    private static Object await(CompletableFuture<Object> future, String interfaceName, long deadlineNanos) throws Throwable {
+        try {
+            return deadlineNanos == 0 ? future.get()
+                    : future.get(Math.max(0, Deadline.remainingNanos(deadlineNanos)), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            //抛出原始异常，和不合并时的行为保持一致
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            throw new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT, INTERFACE_NAME + ":" + interfaceName);
+        }
+    }
+
+    /**
+     * 泛化调用：不需要接口类，按接口名、方法名和参数类型名调用，group和version来自rpcServiceConfig
+     * 参数和返回值仍然由序列化框架处理，调用方需要能加载它们的类
+     */
+    public GenericService getGenericService(String interfaceName) {
+        return new GenericService() {
+            @Override
+            public Object invoke(String methodName, String[] parameterTypes, Object[] args) {
+                try {
+                    return await(invokeAsync(methodName, parameterTypes, args), interfaceName,
+                            Deadline.forCall(RpcConfig.get().getRequestTimeoutMs()));
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    //GenericService.invoke没有声明受检异常，包装后抛出
+                    throw new RpcException(e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public CompletableFuture<Object> invokeAsync(String methodName, String[] parameterTypes, Object[] args) {
+                RpcRequest rpcRequest = RpcRequest.builder().methodName(methodName)
+                        .parameters(args)
+                        .interfaceName(interfaceName)
+                        .paramTypeNames(parameterTypes)
+                        .requestId(UUID.randomUUID().toString())
+                        .group(rpcServiceConfig.getGroup())
+                        .version(rpcServiceConfig.getVersion())
+                        .build();
+                return send(rpcRequest, null);
+            }
+        };
+    }
+
+    private CompletableFuture<Object> invokeAsync(Method method, Object[] args) {
+        BroadcastPolicy broadcastPolicy = getBroadcastPolicy(method);
+        if (broadcastPolicy != null && rpcRequestTransport instanceof NettyRpcClient) {
+            //广播要发给所有服务端，不走进程内调用
+            return broadcast(buildRpcRequest(method, args), broadcastPolicy);
+        }
+        if (inJvmInvoker != null) {
+            //服务在当前JVM中发布时直接调用，服务名和buildRpcRequest中的一致
+            Object service = inJvmInvoker.findService(method.getDeclaringClass().getName()
+                    + rpcServiceConfig.getGroup() + rpcServiceConfig.getVersion());
+            if (service != null) {
+                return inJvmInvoker.invoke(service, method, args);
+            }
+        }
+        return send(buildRpcRequest(method, args), rpcRequestTransport instanceof NettyRpcClient ? getHedgePolicy(method) : null);
+    }
+
+    //发送请求，结果在检查响应后返回
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> send(RpcRequest rpcRequest, HedgePolicy hedgePolicy) {
+        CompletableFuture<RpcResponse<Object>> completableFuture;
+        if (rpcRequestTransport instanceof NettyRpcClient) {
+            completableFuture = hedgePolicy == null
+                    ? (CompletableFuture<RpcResponse<Object>>) rpcRequestTransport.sendRpcRequest(rpcRequest)
+                    : ((NettyRpcClient) rpcRequestTransport).sendHedgedRpcRequest(rpcRequest, hedgePolicy);
+        } else {
+            completableFuture = CompletableFuture.completedFuture(null);
+        }
+        return completableFuture.thenApply(rpcResponse -> {
+            this.check(rpcResponse, rpcRequest);
+            return rpcResponse.getData();
+        });
+    }
+
+    //发给各个服务端，分别检查响应后按策略合并
+    private CompletableFuture<Object> broadcast(RpcRequest rpcRequest, BroadcastPolicy broadcastPolicy) {
+        List<CompletableFuture<RpcResponse<Object>>> responses = ((NettyRpcClient) rpcRequestTransport)
+                .sendBroadcastRpcRequest(rpcRequest, broadcastPolicy.getFanout(), broadcastPolicy.getTimeoutMillis());
+        List<CompletableFuture<Object>> results = new ArrayList<>(responses.size());
+        for (CompletableFuture<RpcResponse<Object>> response : responses) {
+            results.add(response.thenApply(rpcResponse -> {
+                this.check(rpcResponse, rpcRequest);
+                return rpcResponse.getData();
+            }));
+        }
+        return broadcastPolicy.gather(results);
+    }
+
+    private BroadcastPolicy getBroadcastPolicy(Method method) {
+        Optional<BroadcastPolicy> broadcastPolicy = broadcastPolicies.get(method);
+        if (broadcastPolicy == null) {
+            broadcastPolicy = broadcastPolicies.computeIfAbsent(method, m ->
+                    Optional.ofNullable(rpcServiceConfig.getBroadcastMethods().get(m.getName()))
+                            .map(config -> new BroadcastPolicy(config, m)));
+        }
+        return broadcastPolicy.orElse(null);
+    }
+
+    private HedgePolicy getHedgePolicy(Method method) {
+        Optional<HedgePolicy> hedgePolicy = hedgePolicies.get(method);
+        if (hedgePolicy == null) {
+            hedgePolicy = hedgePolicies.computeIfAbsent(method, m ->
+                    Optional.ofNullable(rpcServiceConfig.getHedgedMethods().get(m.getName())).map(HedgePolicy::new));
+        }
+        return hedgePolicy.orElse(null);
+    }
+
+    /**
+     * 根据调用的方法和参数构造RpcRequest，group和version来自rpcServiceConfig
+     */
+    public RpcRequest buildRpcRequest(Method method, Object[] args) {
+        return RpcRequest.builder().methodName(method.getName())
+                .parameters(args)
+                .interfaceName(method.getDeclaringClass().getName())
+                .paramTypes(method.getParameterTypes())
+                .requestId(UUID.randomUUID().toString())
+                .group(rpcServiceConfig.getGroup())
+                .version(rpcServiceConfig.getVersion())
+                .build();
+    }
+
+    //检查响应是否和请求对应，以及调用是否成功
+    private void check(RpcResponse<Object> rpcResponse, RpcRequest rpcRequest) {
+        if (rpcResponse == null) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        }
+
+        if (!rpcRequest.getRequestId().equals(rpcResponse.getRequestId())) {
+            throw new RpcException(RpcErrorMessageEnum.REQUEST_NOT_MATCH_RESPONSE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        }
+
+        if (rpcResponse.getCode() != null && rpcResponse.getCode().equals(RpcResponseCodeEnum.OVERLOADED.getCode())) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_OVERLOADED, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        }
+        if (rpcResponse.getCode() == null || !rpcResponse.getCode().equals(RpcResponseCodeEnum.SUCCESS.getCode())) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, INTERFACE_NAME + ":" + rpcRequest.getInterfaceName());
+        }
+    }
+}
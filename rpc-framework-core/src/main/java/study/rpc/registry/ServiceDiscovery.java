@@ -1,10 +1,37 @@
 package study.rpc.registry;
 
 import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import study.rpc.extension.SPI;
 import study.rpc.remoting.dtObject.RpcRequest;
 /**
  * 服务发现：根据服务名查询服务，用于客户端调用。
  */
+@SPI
 public interface ServiceDiscovery {
     InetSocketAddress lookupService(RpcRequest rpcRequest);
+
+    /**
+     * 查找服务地址时排除指定的地址(host:port)，用于请求被拒绝后换一个地址重试
+     */
+    default InetSocketAddress lookupService(RpcRequest rpcRequest, Collection<String> excludedAddresses) {
+        return lookupService(rpcRequest);
+    }
+
+    /**
+     * 查找服务的所有服务端地址，用于广播调用
+     */
+    default List<InetSocketAddress> lookupAllServices(RpcRequest rpcRequest) {
+        return Collections.singletonList(lookupService(rpcRequest));
+    }
+
+    /**
+     * 查询服务端注册的Unix域套接字路径，没有注册时返回null
+     */
+    default String lookupDomainSocketPath(String rpcServiceName, InetSocketAddress inetSocketAddress) {
+        return null;
+    }
 }
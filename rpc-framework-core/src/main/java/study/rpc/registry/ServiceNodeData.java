@@ -0,0 +1,96 @@
+package study.rpc.registry;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 服务实例节点(host:port)上的数据：Unix域套接字路径和位置标签(可用区、主机)
+ * <p>
+ * 格式是key=value&amp;key=value，值经过URL编码；不含=的数据是旧版本服务端写入的域套接字路径
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class ServiceNodeData {
+    public static final ServiceNodeData EMPTY = new ServiceNodeData(null, null, null);
+
+    private static final String DOMAIN_SOCKET_PATH = "uds";
+    private static final String ZONE = "zone";
+    private static final String HOST = "host";
+
+    private final String domainSocketPath;
+    private final String zone;
+    private final String host;
+
+    /**
+     * 没有任何内容时返回null，节点不带数据
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        append(sb, DOMAIN_SOCKET_PATH, domainSocketPath);
+        append(sb, ZONE, zone);
+        append(sb, HOST, host);
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    public static ServiceNodeData parse(String data) {
+        if (data == null || data.isEmpty()) {
+            return EMPTY;
+        }
+        if (data.indexOf('=') < 0) {
+            return new ServiceNodeData(data, null, null);
+        }
+        String domainSocketPath = null;
+        String zone = null;
+        String host = null;
+        for (String pair : data.split("&")) {
+            int i = pair.indexOf('=');
+            if (i < 0) {
+                continue;
+            }
+            String value = decode(pair.substring(i + 1));
+            switch (pair.substring(0, i)) {
+                case DOMAIN_SOCKET_PATH:
+                    domainSocketPath = value;
+                    break;
+                case ZONE:
+                    zone = value;
+                    break;
+                case HOST:
+                    host = value;
+                    break;
+                default:
+                    //新版本增加的字段，忽略
+            }
+        }
+        return new ServiceNodeData(domainSocketPath, zone, host);
+    }
+
+    private static void append(StringBuilder sb, String key, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (sb.length() > 0) {
+            sb.append('&');
+        }
+        try {
+            sb.append(key).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8.name()));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,9 +1,28 @@
 package study.rpc.registry;
 
+import study.rpc.extension.SPI;
+
 import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
 
+@SPI
 public interface ServiceRegistry {
 
     void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress);
 
+    /**
+     * 注册服务，同时公布服务端在本机监听的Unix域套接字路径，供同一台机器上的客户端使用
+     */
+    default void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress, String domainSocketPath) {
+        registerService(rpcServiceName, inetSocketAddress);
+    }
+
+    /**
+     * 异步注册服务，注册完成(或失败)时future结束；默认实现同步注册
+     */
+    default CompletableFuture<Void> registerServiceAsync(String rpcServiceName, InetSocketAddress inetSocketAddress, String domainSocketPath) {
+        registerService(rpcServiceName, inetSocketAddress, domainSocketPath);
+        return CompletableFuture.completedFuture(null);
+    }
+
 }
@@ -1,32 +1,34 @@
 package study.rpc.registry.zk;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.curator.framework.CuratorFramework;
-import study.rpc.enums.LoadBalanceEnum;
+import study.rpc.config.RpcConfig;
 import study.rpc.extension.ExtensionLoader;
 import study.rpc.loadbalance.LoadBalance;
 import study.rpc.registry.ServiceDiscovery;
+import study.rpc.registry.ServiceNodeData;
 import study.rpc.registry.zk.util.CuratorUtils;
 import study.rpc.remoting.dtObject.RpcRequest;
 import study.rpc.utils.CollectionUtil;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 import study.rpc.exception.RpcException;
 import study.rpc.enums.RpcErrorMessageEnum;
 
 
 @Slf4j
 public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
-    private final LoadBalance loadBalance;
+    private final ExtensionLoader<LoadBalance> loadBalanceLoader;
 
     public ZkServiceDiscoveryImpl(){
         //通过ExtensionLoader获取负载均衡实例
         //getExtensionLoader：根据扩展(接口)获取加载器实例
-        //getExtension：根据指定扩展名称获取扩展点实例（实现类实例）
-        this.loadBalance = ExtensionLoader.getExtensionLoader(LoadBalance.class)
-                .getExtension(LoadBalanceEnum.LOADBALANCE.getName());
-        //getExtension(loadBalance) -> createExtension(loadBalance) -> getExtensionClasses()
-        //getExtensionClasses()就会从配置文件META/extensions中读出loadBalance由哪个实现类来实现
+        this.loadBalanceLoader = ExtensionLoader.getExtensionLoader(LoadBalance.class);
+        //在后台建立Zookeeper会话，第一次调用时不需要从头等待连接
+        CuratorUtils.getZkClientAsync();
     }
 
     /**
@@ -36,27 +38,69 @@ public class ZkServiceDiscoveryImpl implements ServiceDiscovery {
      */
     @Override
     public InetSocketAddress lookupService(RpcRequest rpcRequest) {
+        return lookupService(rpcRequest, Collections.emptyList());
+    }
+
+    @Override
+    public InetSocketAddress lookupService(RpcRequest rpcRequest, Collection<String> excludedAddresses) {
         //获取RPC请求中的服务名称
         String rpcServiceName = rpcRequest.getRpcServiceName();
-        //获取Curator客户端，连接Zookeeper
-        CuratorFramework zkClient = CuratorUtils.getZkClient();
-        //从Zookeeper获取指定服务的所有服务实例地址
-        List<String> serviceUrlList = CuratorUtils.getChildrenNodes(zkClient,rpcServiceName);
+        //从Zookeeper获取指定服务的所有服务实例地址，会话建立之前可以使用本地快照中的地址
+        List<String> serviceUrlList = CuratorUtils.getServiceAddresses(rpcServiceName);
 
         if (CollectionUtil.isEmpty(serviceUrlList)) {
             throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
         }
+        if (!excludedAddresses.isEmpty()) {
+            //不能修改缓存中的列表，过滤后得到新的列表
+            serviceUrlList = serviceUrlList.stream()
+                    .filter(address -> !excludedAddresses.contains(address))
+                    .collect(Collectors.toList());
+            if (serviceUrlList.isEmpty()) {
+                throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
+            }
+        }
 
         //使用负载均衡策略从服务实例列表中选择一个服务地址
+        //每次按当前配置快照中的名字取负载均衡实现，配置重新加载后立即生效
+        LoadBalance loadBalance = loadBalanceLoader.getExtension(RpcConfig.get().getLoadBalance());
         String targetServiceUrl = loadBalance.selectServiceAddress(serviceUrlList, rpcRequest);
-        log.info("Successfully found the service address:[{}]", targetServiceUrl);
+        //每次调用都会执行，使用debug级别避免日志成为热点路径上的开销
+        log.debug("Successfully found the service address:[{}]", targetServiceUrl);
+
+        return toInetSocketAddress(targetServiceUrl);
+    }
 
-        //解析目标服务地址字符串(host:port)，组成InetSocketAddress
-        //通过:将 targetServiceUrl拆分成两个部分：host 和 port。
-        String[] socketAddressArray = targetServiceUrl.split(":");
+    @Override
+    public List<InetSocketAddress> lookupAllServices(RpcRequest rpcRequest) {
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        List<String> serviceUrlList = CuratorUtils.getServiceAddresses(rpcServiceName);
+        if (CollectionUtil.isEmpty(serviceUrlList)) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_CAN_NOT_BE_FOUND, rpcServiceName);
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>(serviceUrlList.size());
+        for (String serviceUrl : serviceUrlList) {
+            addresses.add(toInetSocketAddress(serviceUrl));
+        }
+        return addresses;
+    }
+
+    //解析服务地址字符串(host:port)，组成InetSocketAddress
+    private static InetSocketAddress toInetSocketAddress(String serviceUrl) {
+        //通过:将 serviceUrl拆分成两个部分：host 和 port。
+        String[] socketAddressArray = serviceUrl.split(":");
         String host = socketAddressArray[0];
         int port = Integer.parseInt(socketAddressArray[1]);
 
         return new InetSocketAddress(host,port);
     }
+
+    /**
+     * 只读取地址列表变化时后台缓存的节点数据，不在建立连接时访问Zookeeper；还没有读到时返回null，这次连接使用TCP
+     */
+    @Override
+    public String lookupDomainSocketPath(String rpcServiceName, InetSocketAddress inetSocketAddress) {
+        String address = inetSocketAddress.getHostString() + ":" + inetSocketAddress.getPort();
+        return ServiceNodeData.parse(CuratorUtils.getCachedNodeData(rpcServiceName, address)).getDomainSocketPath();
+    }
 }
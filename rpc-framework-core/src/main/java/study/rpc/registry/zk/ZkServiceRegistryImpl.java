@@ -2,10 +2,13 @@ package study.rpc.registry.zk;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
+import study.rpc.locality.LocalityRouter;
 import study.rpc.registry.ServiceRegistry;
 import study.rpc.registry.zk.util.CuratorUtils;
 
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 
 @Slf4j
@@ -13,12 +16,31 @@ public class ZkServiceRegistryImpl implements ServiceRegistry {
 
     @Override
     public void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress) {
+        registerService(rpcServiceName, inetSocketAddress, null);
+    }
+
+    @Override
+    public void registerService(String rpcServiceName, InetSocketAddress inetSocketAddress, String domainSocketPath) {
         // 获取客户端
         CuratorFramework zkClient = CuratorUtils.getZkClient();
-        // 构建服务节点路径
-        String servicePath = CuratorUtils.ZK_REGISTER_ROOT_PATH + '/'+rpcServiceName + inetSocketAddress.toString();
         //创建节点
-        CuratorUtils.createPersistentNode(zkClient,servicePath);
+        CuratorUtils.createPersistentNode(zkClient, servicePath(rpcServiceName, inetSocketAddress), nodeData(domainSocketPath));
     }
 
+    @Override
+    public CompletableFuture<Void> registerServiceAsync(String rpcServiceName, InetSocketAddress inetSocketAddress, String domainSocketPath) {
+        //连接还没有建立时请求在连接建立后发送，调用方不需要等待
+        return CuratorUtils.createPersistentNodeAsync(servicePath(rpcServiceName, inetSocketAddress), nodeData(domainSocketPath));
+    }
+
+    // 构建服务节点路径
+    private static String servicePath(String rpcServiceName, InetSocketAddress inetSocketAddress) {
+        return CuratorUtils.ZK_REGISTER_ROOT_PATH + '/' + rpcServiceName + inetSocketAddress.toString();
+    }
+
+    //域套接字路径和位置标签作为节点数据，节点名仍然是host:port，不影响负载均衡和其他客户端
+    private static byte[] nodeData(String domainSocketPath) {
+        String data = LocalityRouter.localNodeData(domainSocketPath).encode();
+        return data == null ? null : data.getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -6,41 +6,80 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.CuratorWatcher;
 import org.apache.curator.framework.imps.CuratorFrameworkState;
-import org.apache.curator.framework.recipes.cache.PathChildrenCache;
-import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
-import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.zookeeper.CreateMode;
-import study.rpc.enums.RpcConfigEnum;
-import study.rpc.utils.PropertiesFileUtil;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import study.rpc.config.RpcConfig;
+import study.rpc.locality.LocalityRouter;
+import study.rpc.registry.ServiceNodeData;
+import study.rpc.remoting.transport.uds.DomainSocketTransport;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //Curator工具类，封装常用方法,避免代码复用严重
 @Slf4j
 public class CuratorUtils {
-    // 默认 ZooKeeper 地址，127.0.0.1 是本地 IP，2181 是默认端口。
-    private static final String DEFAULT_ZOOKEEPER_ADDRESS = "127.0.0.1:2181";
-    //连接 ZooKeeper 时的基础重试等待时间(ms)
-    private static final int BASE_SLEEP_TIME_MS = 1000;
-    //最大重试次数。
-    private static final int MAX_RETRIES = 3;
-
     // 创建的是一个ZNode节点
-    private static CuratorFramework zkClient;
+    private static volatile CuratorFramework zkClient;
+    //后台建立连接的结果，连接成功之前调用方可以先做其他事情
+    private static CompletableFuture<CuratorFramework> zkClientFuture;
+    //建立连接的后台线程，所有连接尝试共用一个
+    private static final ExecutorService CONNECTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "zk-connect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //可选的本地地址快照文件：会话建立之前使用上次运行时看到的服务地址，-Drpc.registry.cache.file=...开启
+    private static final String SNAPSHOT_FILE = System.getProperty("rpc.registry.cache.file");
+    private static final Map<String, List<String>> SNAPSHOT = loadSnapshot();
+    //地址变化后最多等待这么久再写快照文件，期间的多次变化合并为一次写入，进程退出时写入最后的状态
+    private static final long SNAPSHOT_FLUSH_MS = Long.getLong("rpc.registry.cache.flush.ms", 1000);
+    private static final AtomicBoolean SNAPSHOT_DIRTY = new AtomicBoolean();
+    private static final ScheduledExecutorService SNAPSHOT_WRITER = SNAPSHOT_FILE == null ? null : startSnapshotWriter();
+    //会话建立之前使用了快照的服务，连接成功后再从Zookeeper获取一次
+    private static final Set<String> PENDING_SERVICES = ConcurrentHashMap.newKeySet();
 
     public static final String ZK_REGISTER_ROOT_PATH = "/my-rpc";
     //存储服务名对应的服务实例地址列表
     private static final Map<String, List<String>> SERVICE_ADDRESS_MAP = new ConcurrentHashMap<>();
     //存储已注册的服务路径
     private static final Set<String> REGISTERED_PATH_SET = ConcurrentHashMap.newKeySet();
+    //已经发送过创建请求的父节点
+    private static final Set<String> CREATED_PARENT_SET = ConcurrentHashMap.newKeySet();
+    //服务实例节点的数据，没有数据时为空字符串
+    private static final Map<String, String> NODE_DATA_MAP = new ConcurrentHashMap<>();
+    //所有服务共用一个监听器，不额外创建线程，也不缓存用不到的实例节点数据
+    //Zookeeper上每个订阅的服务只有一个子节点watch，读过数据的实例节点多一个一次性的数据watch
+    private static final CuratorWatcher REGISTRY_WATCHER = CuratorUtils::onWatchedEvent;
 
     private CuratorUtils() {
 
@@ -50,21 +89,103 @@ public class CuratorUtils {
      * 创建持久节点，存储注册信息
      */
     public static void createPersistentNode(CuratorFramework zkClient, String path){
-        try{
-            //如果节点不存在，创建新节点
-            if(REGISTERED_PATH_SET.contains(path) || zkClient.checkExists().forPath(path)!=null){
-                // {}是占位符，参数插入位置
-                log.info("The node already exists. The node is:[{}]", path);
-            }else{
-                //creatingParentsIfNeeded() 确保父节点路径会被自动递归创建。
-                //withMode(CreateMode.PERSISTENT)指定节点为持久节点。
-                zkClient.create().creatingParentContainersIfNeeded().withMode(CreateMode.PERSISTENT).forPath(path);
-                log.info("The node was created successfully. The node is:[{}]",path);
+        createPersistentNode(zkClient, path, null);
+    }
+
+    /**
+     * 创建持久节点并写入节点数据，节点已经存在时更新数据
+     */
+    public static void createPersistentNode(CuratorFramework zkClient, String path, byte[] data){
+        try {
+            createPersistentNode(zkClient, path, data, new CompletableFuture<>()).join();
+        } catch (CompletionException e) {
+            log.error("create persistent node for path [{}] fail", path, e.getCause());
+        }
+    }
+
+    /**
+     * 异步创建持久节点：不等待连接建立，也不等待Zookeeper响应
+     * 请求通过同一个会话流水线发送，注册大量服务时不需要每个服务等待一次往返
+     */
+    public static CompletableFuture<Void> createPersistentNodeAsync(String path, byte[] data) {
+        return getZkClientAsync().thenCompose(client -> createPersistentNode(client, path, data, new CompletableFuture<>()));
+    }
+
+    private static CompletableFuture<Void> createPersistentNode(CuratorFramework zkClient, String path, byte[] data,
+                                                                CompletableFuture<Void> result) {
+        //没有数据时写入空数据，否则Curator默认写入本机IP
+        byte[] nodeData = data == null ? new byte[0] : data;
+        try {
+            //先发送父节点的创建请求再发送子节点的，同一个会话中的请求按顺序处理，不需要等父节点创建完成
+            //creatingParentContainersIfNeeded()会在子节点创建失败后同步创建父节点，大量服务注册时会退化为串行
+            createParentContainers(zkClient, path);
+            //withMode(CreateMode.PERSISTENT)指定节点为持久节点。
+            zkClient.create().withMode(CreateMode.PERSISTENT)
+                    .inBackground((client, event) -> {
+                        if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                            log.info("The node was created successfully. The node is:[{}]", path);
+                            REGISTERED_PATH_SET.add(path);
+                            result.complete(null);
+                        } else if (event.getResultCode() == KeeperException.Code.NODEEXISTS.intValue()) {
+                            //持久节点在服务端重启后仍然存在，覆盖数据(例如域套接字路径)
+                            log.info("The node already exists. The node is:[{}]", path);
+                            client.setData().inBackground((c, e) -> {
+                                REGISTERED_PATH_SET.add(path);
+                                complete(result, e.getResultCode(), path);
+                            }).forPath(path, nodeData);
+                        } else {
+                            complete(result, event.getResultCode(), path);
+                        }
+                    }).forPath(path, nodeData);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static void createParentContainers(CuratorFramework zkClient, String path) throws Exception {
+        int i = path.indexOf('/', 1);
+        while (i > 0) {
+            String parent = path.substring(0, i);
+            //每个父节点只发送一次创建请求，已经存在的错误忽略；其他错误会让子节点创建失败，由调用方处理
+            if (CREATED_PARENT_SET.add(parent)) {
+                zkClient.create().withMode(CreateMode.CONTAINER).inBackground((client, event) -> {
+                    int code = event.getResultCode();
+                    if (code != KeeperException.Code.OK.intValue() && code != KeeperException.Code.NODEEXISTS.intValue()) {
+                        CREATED_PARENT_SET.remove(parent);
+                    }
+                }).forPath(parent);
             }
-            REGISTERED_PATH_SET.add(path);
-        }catch(Exception e){
-            log.error("create persistent node for path [{}] fail", path);
+            i = path.indexOf('/', i + 1);
+        }
+    }
+
+    private static void complete(CompletableFuture<Void> result, int resultCode, String path) {
+        if (resultCode == KeeperException.Code.OK.intValue()) {
+            result.complete(null);
+        } else {
+            result.completeExceptionally(KeeperException.create(KeeperException.Code.get(resultCode), path));
+        }
+    }
+
+    /**
+     * 获取服务的所有实例地址，用于服务发现
+     * 会话还没有建立时优先使用本地快照中的地址，不阻塞调用方，连接成功后再从Zookeeper获取并监听
+     */
+    public static List<String> getServiceAddresses(String rpcServiceName) {
+        List<String> addresses = SERVICE_ADDRESS_MAP.get(rpcServiceName);
+        if (addresses != null) {
+            return addresses;
+        }
+        CompletableFuture<CuratorFramework> future = getZkClientAsync();
+        List<String> snapshot = SNAPSHOT.get(rpcServiceName);
+        if (!future.isDone() && snapshot != null) {
+            if (PENDING_SERVICES.add(rpcServiceName)) {
+                future.thenAccept(client -> getChildrenNodes(client, rpcServiceName));
+            }
+            return snapshot;
         }
+        return getChildrenNodes(getZkClient(), rpcServiceName);
     }
 
     /**
@@ -78,16 +199,26 @@ public class CuratorUtils {
         List<String> result = null;
         String servicePath = ZK_REGISTER_ROOT_PATH+ "/" + rpcServiceName;
         try{
-            result = zkClient.getChildren().forPath(servicePath);
+            //读取子节点的同时注册监听，两者之间不会漏掉变化
+            result = zkClient.getChildren().usingWatcher(REGISTRY_WATCHER).forPath(servicePath);
             SERVICE_ADDRESS_MAP.put(rpcServiceName,result);
-            //注册一个监听器，有新节点的变化
-            registerWatcher(rpcServiceName, zkClient);
+            markSnapshotDirty();
+            loadNodeData(zkClient, rpcServiceName, result);
         }catch(Exception e){
             log.error("get children nodes for path [{}] fail", servicePath);
         }
         return result;
     }
 
+    /**
+     * 获取已经缓存的服务实例节点(host:port)的数据，没有缓存、节点没有数据或者不存在时返回null
+     * 只读本地缓存，不访问Zookeeper；缓存在地址列表变化时由后台读取填充
+     */
+    public static String getCachedNodeData(String rpcServiceName, String address) {
+        String data = NODE_DATA_MAP.get(ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName + "/" + address);
+        return data == null || data.isEmpty() ? null : data;
+    }
+
     /**
      * 在服务端关闭时，清理与当前服务器相关的注册信息
      */
@@ -105,69 +236,252 @@ public class CuratorUtils {
     }
 
     /**
-     * 获取CuratorFramework客户端
+     * 获取CuratorFramework客户端，连接还没有建立时阻塞等待
      */
-
     public static CuratorFramework getZkClient() {
-        //返回已启动的客户端
-        if(zkClient != null && zkClient.getState() == CuratorFrameworkState.STARTED){
-            return zkClient;
-        }
-        //检查zkClient是否已经初始化
-        //Properties是一个专门用于读取配置文件的类
-        //通过 Properties 类，可以从外部配置文件（.properties 文件）中加载键值对数据
-        //从RpcConfigEnum枚举中获取配置文件路径
-        Properties properties = PropertiesFileUtil.readPropertiesFile(RpcConfigEnum.RPC_CONFIG_PATH.getPropertyValue());
-        //如果成功读取到properties对象，且成功从配置文件中获取zookeeper.address，则使用该值，否则使用默认值DEFAULT_ZOOKEEPER_ADDRESS（127.0.0.1:2181）
-        String zookeeperAddress = properties != null && properties.getProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue()) != null ?
-                properties.getProperty(RpcConfigEnum.ZK_ADDRESS.getPropertyValue())
-                : DEFAULT_ZOOKEEPER_ADDRESS;
-
-        RetryPolicy retryPolicy = new ExponentialBackoffRetry(BASE_SLEEP_TIME_MS,MAX_RETRIES);
-        zkClient = CuratorFrameworkFactory.builder()
-                .connectString(zookeeperAddress)
+        try {
+            return getZkClientAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting to connect to ZK!", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 在后台线程中读取配置、启动客户端并等待连接建立，多次调用返回同一个结果
+     * 服务端和客户端启动时先调用它，连接建立和端口绑定、类加载等工作并行进行
+     */
+    public static synchronized CompletableFuture<CuratorFramework> getZkClientAsync() {
+        //正在连接或者已经连接上的客户端直接复用，客户端被关闭或者连接失败后重新创建
+        if (zkClientFuture != null && (!zkClientFuture.isDone()
+                || (!zkClientFuture.isCompletedExceptionally() && zkClient.getState() == CuratorFrameworkState.STARTED))) {
+            return zkClientFuture;
+        }
+        CompletableFuture<CuratorFramework> future = new CompletableFuture<>();
+        zkClientFuture = future;
+        CONNECTOR.execute(() -> {
+            try {
+                future.complete(connect());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 已经建立并且当前处于连接状态的客户端，否则返回null；不会发起连接，也不会阻塞
+     */
+    public static synchronized CuratorFramework getConnectedZkClient() {
+        if (zkClientFuture == null || !zkClientFuture.isDone() || zkClientFuture.isCompletedExceptionally()) {
+            return null;
+        }
+        CuratorFramework client = zkClient;
+        return client != null && client.getState() == CuratorFrameworkState.STARTED
+                && client.getZookeeperClient().isConnected() ? client : null;
+    }
+
+    private static CuratorFramework connect() throws InterruptedException {
+        //Zookeeper地址和重试参数来自配置快照(系统属性 > 环境变量 > rpc.properties > 默认值 127.0.0.1:2181)
+        //不在这里重新加载，晚于配置类加载设置的系统属性需要调用方显式RpcConfig.reload()
+        RpcConfig config = RpcConfig.get();
+        RetryPolicy retryPolicy = new ExponentialBackoffRetry(config.getZookeeperRetryBaseSleepMs(), config.getZookeeperMaxRetries());
+        CuratorFramework client = CuratorFrameworkFactory.builder()
+                .connectString(config.getZookeeperAddress())
                 .retryPolicy(retryPolicy)
                 .build();
-        zkClient.start();
-        //检测连接超时，确保ZooKeeper客户端成功连接到ZooKeeper服务器。
-        try{
-            //blockUntilConnected 是 CuratorFramework 提供的一个方法
-            // 阻塞当前线程，直到客户端与 ZooKeeper 服务器成功建立连接，或达到指定的超时时间。
-            if(!zkClient.blockUntilConnected(30, TimeUnit.SECONDS)){
-                throw new RuntimeException("Time out waiting to connect to ZK!");
+        //会话过期后Zookeeper上的watch全部丢失，重新连上时重新读取并监听所有订阅的服务
+        client.getConnectionStateListenable().addListener((c, newState) -> {
+            if (newState == ConnectionState.RECONNECTED) {
+                NODE_DATA_MAP.clear();
+                SERVICE_ADDRESS_MAP.keySet().forEach(rpcServiceName -> watchService(c, rpcServiceName));
             }
-        }catch(InterruptedException e){
-            e.printStackTrace();
+        });
+        client.start();
+        //检测连接超时，确保ZooKeeper客户端成功连接到ZooKeeper服务器。
+        //blockUntilConnected 是 CuratorFramework 提供的一个方法
+        // 阻塞当前线程，直到客户端与 ZooKeeper 服务器成功建立连接，或达到指定的超时时间。
+        if(!client.blockUntilConnected((int) config.getZookeeperConnectTimeoutMs(), TimeUnit.MILLISECONDS)){
+            client.close();
+            throw new RuntimeException("Time out waiting to connect to ZK!");
         }
+        zkClient = client;
+        return client;
+    }
 
-        return zkClient;
+    /**
+     * 所有监听事件的入口，在Zookeeper的事件线程中执行，只发送后台请求，不阻塞事件线程
+     * 服务节点(/my-rpc/服务名)：子节点变化、创建或删除时重新读取地址并再次监听
+     * 实例节点(/my-rpc/服务名/地址)：数据变化或删除时清掉缓存的节点数据，数据变化时重新读取
+     */
+    private static void onWatchedEvent(WatchedEvent event) {
+        String path = event.getPath();
+        //连接状态变化的事件没有路径，由连接状态监听器处理
+        if (path == null || !path.startsWith(ZK_REGISTER_ROOT_PATH + "/")) {
+            return;
+        }
+        String relative = path.substring(ZK_REGISTER_ROOT_PATH.length() + 1);
+        CuratorFramework client = zkClient;
+        if (relative.indexOf('/') >= 0) {
+            NODE_DATA_MAP.remove(path);
+            //数据变化时在后台重新读取，删除的实例由地址列表的变化处理
+            if (client != null && event.getType() == Watcher.Event.EventType.NodeDataChanged) {
+                readNodeData(client, path, () -> {
+                });
+            }
+            return;
+        }
+        if (client != null) {
+            watchService(client, relative);
+        }
     }
 
     /**
-     *  注册 Watcher 监听某服务节点，并更新本地缓存
-     *  为指定服务节点注册一个 Watcher，当节点数据或子节点发生变更时，自动更新本地缓存 SERVICE_ADDRESS_MAP。
+     * 在后台重新读取服务的实例地址并注册监听
+     * 服务节点不存在时(最后一个实例删除后容器节点会被回收)地址为空，同时监听节点的创建
      */
+    private static void watchService(CuratorFramework zkClient, String rpcServiceName) {
+        String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
+        try {
+            zkClient.getChildren().usingWatcher(REGISTRY_WATCHER).inBackground((client, event) -> {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    updateServiceAddresses(client, servicePath, rpcServiceName, event.getChildren());
+                } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                    updateServiceAddresses(client, servicePath, rpcServiceName, Collections.emptyList());
+                    client.checkExists().usingWatcher(REGISTRY_WATCHER).inBackground((c, e) -> {
+                        //读取和注册exists监听之间节点又被创建了，这时不会再有事件，重新读取一次
+                        if (e.getStat() != null) {
+                            watchService(c, rpcServiceName);
+                        }
+                    }).forPath(servicePath);
+                } else {
+                    log.error("watch service [{}] fail, result code: [{}]", servicePath, event.getResultCode());
+                }
+            }).forPath(servicePath);
+        } catch (Exception e) {
+            log.error("watch service [{}] fail", servicePath, e);
+        }
+    }
+
+    private static void updateServiceAddresses(CuratorFramework zkClient, String servicePath, String rpcServiceName,
+                                               List<String> serviceAddresses) {
+        SERVICE_ADDRESS_MAP.put(rpcServiceName, serviceAddresses);
+        markSnapshotDirty();
+        //下线的实例不再需要缓存节点数据
+        NODE_DATA_MAP.keySet().removeIf(nodePath -> nodePath.startsWith(servicePath + "/")
+                && !serviceAddresses.contains(nodePath.substring(servicePath.length() + 1)));
+        loadNodeData(zkClient, rpcServiceName, serviceAddresses);
+    }
 
-    private static void registerWatcher(String rpcServiceName, CuratorFramework zkClient) throws Exception{
+    /**
+     * 就近路由需要每个实例的位置标签，域套接字需要每个实例的套接字路径：地址列表变化时在后台读取还没有缓存的节点数据，
+     * 全部读完后为这个快照分层。调用和建立连接时只使用缓存，不访问Zookeeper；读完之前不按远近区分，也不使用域套接字
+     */
+    private static void loadNodeData(CuratorFramework zkClient, String rpcServiceName, List<String> serviceAddresses) {
+        if (!(LocalityRouter.ENABLED || DomainSocketTransport.ENABLED) || serviceAddresses.isEmpty()) {
+            return;
+        }
         String servicePath = ZK_REGISTER_ROOT_PATH + "/" + rpcServiceName;
+        AtomicInteger remaining = new AtomicInteger(serviceAddresses.size());
+        Runnable onLoaded = () -> {
+            //读取期间地址列表又变化了，由新的列表负责分层
+            if (LocalityRouter.ENABLED && remaining.decrementAndGet() == 0
+                    && SERVICE_ADDRESS_MAP.get(rpcServiceName) == serviceAddresses) {
+                LocalityRouter.prepare(rpcServiceName, serviceAddresses,
+                        address -> ServiceNodeData.parse(NODE_DATA_MAP.get(servicePath + "/" + address)));
+            }
+        };
+        for (String address : serviceAddresses) {
+            String nodePath = servicePath + "/" + address;
+            if (NODE_DATA_MAP.containsKey(nodePath)) {
+                onLoaded.run();
+                continue;
+            }
+            readNodeData(zkClient, nodePath, onLoaded);
+        }
+    }
 
-        //PathChildrenCache 是 Curator 提供的一个监听器，专门用于监听指定路径下的子节点变化
-        //true:要缓存子节点的数据，事件回调时，可以通过 ChildData 对象直接获取子节点的名称和数据
-        PathChildrenCache pathChildrenCache = new PathChildrenCache(zkClient,servicePath,true);
+    private static void readNodeData(CuratorFramework zkClient, String nodePath, Runnable onLoaded) {
+        try {
+            zkClient.getData().usingWatcher(REGISTRY_WATCHER).inBackground((client, event) -> {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    byte[] bytes = event.getData();
+                    NODE_DATA_MAP.put(nodePath, bytes == null ? "" : new String(bytes, StandardCharsets.UTF_8));
+                }
+                onLoaded.run();
+            }).forPath(nodePath);
+        } catch (Exception e) {
+            //读不到的实例按没有位置标签、没有域套接字处理
+            log.error("get data for path [{}] fail", nodePath, e);
+            onLoaded.run();
+        }
+    }
 
-        //PathChildrenCacheListener 是一个监听器接口，用于定义事件回调函数，处理 PathChildrenCache 触发的子节点变化事件
-        //PathChildrenCacheListener 接口只有一个回调方法:
-        //void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception;
-        //在这方法里定义子节点发生变化时需要执行的操作
+    private static Map<String, List<String>> loadSnapshot() {
+        Map<String, List<String>> snapshot = new ConcurrentHashMap<>();
+        if (SNAPSHOT_FILE == null || !Files.exists(Paths.get(SNAPSHOT_FILE))) {
+            return snapshot;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(SNAPSHOT_FILE), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            log.warn("read registry snapshot [{}] fail", SNAPSHOT_FILE, e);
+            return snapshot;
+        }
+        for (String rpcServiceName : properties.stringPropertyNames()) {
+            String addresses = properties.getProperty(rpcServiceName);
+            if (!addresses.isEmpty()) {
+                snapshot.put(rpcServiceName, Arrays.asList(addresses.split(",")));
+            }
+        }
+        return snapshot;
+    }
 
-        PathChildrenCacheListener pathChildrenCacheListener = (curatorFramework, pathChildrenCacheEvent) -> {
-            List<String> serviceAddresses = curatorFramework.getChildren().forPath(servicePath);
-            SERVICE_ADDRESS_MAP.put(rpcServiceName, serviceAddresses);
-        };
-        //注册监听器
-        pathChildrenCache.getListenable().addListener(pathChildrenCacheListener);
-        //启动监听
-        pathChildrenCache.start();
+    private static ScheduledExecutorService startSnapshotWriter() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "registry-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(CuratorUtils::saveSnapshot, "registry-snapshot-flush"));
+        return executor;
     }
 
+    /**
+     * 地址变化时只标记快照需要更新，第一次标记时安排一次延迟写入，不在Zookeeper的事件线程上写文件
+     */
+    private static void markSnapshotDirty() {
+        if (SNAPSHOT_WRITER != null && SNAPSHOT_DIRTY.compareAndSet(false, true)) {
+            SNAPSHOT_WRITER.schedule(CuratorUtils::saveSnapshot, SNAPSHOT_FLUSH_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 把当前看到的服务地址写入快照文件，先写临时文件再改名，避免进程退出时留下不完整的文件
+     * 写入之前清掉标记，写入期间的变化会安排下一次写入
+     */
+    private static synchronized void saveSnapshot() {
+        if (!SNAPSHOT_DIRTY.getAndSet(false)) {
+            return;
+        }
+        SNAPSHOT.putAll(SERVICE_ADDRESS_MAP);
+        Properties properties = new Properties();
+        SNAPSHOT.forEach((rpcServiceName, addresses) -> properties.setProperty(rpcServiceName, String.join(",", addresses)));
+        Path file = Paths.get(SNAPSHOT_FILE);
+        Path tmp = Paths.get(SNAPSHOT_FILE + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "rpc registry snapshot");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("write registry snapshot [{}] fail", SNAPSHOT_FILE, e);
+        }
+    }
 }
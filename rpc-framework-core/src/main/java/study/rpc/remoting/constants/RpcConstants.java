@@ -12,6 +12,8 @@ public class RpcConstants {
     public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
     //当前rpc协议的版本号
     public static final byte VERSION = 1;
+    //紧凑协议的版本号：只在连接建立时协商，协商成功后的消息不再带魔数和版本，见CompactProtocol
+    public static final byte COMPACT_VERSION = 2;
     //rpc消息的最小长度，需要达到这个长度才可以完成消息头的解析
     public static final byte TOTAL_LENGTH = 16;
     //定义消息的类型，便于客户端和服务端解析和处理不同类型的消息
@@ -28,6 +30,24 @@ public class RpcConstants {
     public static final String PING = "ping";
     public static final String PONG = "pong";
 
+    //消息类型的最高位为1表示16字节消息头后面跟着扩展字段：2B扩展长度 + 若干个(1B类型 1B长度 值)
+    //没有扩展字段的消息和原来的格式完全一样
+    public static final byte HEADER_EXTENSION_FLAG = (byte) 0x80;
+    //扩展字段类型：链路追踪上下文
+    public static final byte EXTENSION_TRACE = 1;
+    //扩展字段类型：请求的服务名(UTF-8)，网关不反序列化消息体就可以路由
+    public static final byte EXTENSION_SERVICE = 2;
+    //扩展字段类型：请求的剩余时间(纳秒)，接收方换算成本地的截止时间
+    public static final byte EXTENSION_DEADLINE = 3;
+    //扩展字段类型：跟在消息帧后面的附件，每个附件4B长度
+    public static final byte EXTENSION_ATTACHMENTS = 4;
+    //扩展字段类型：支持的协议版本(1B)，客户端用来声明支持紧凑协议，服务端用来确认
+    public static final byte EXTENSION_PROTOCOL = 5;
+    //一条消息最多带的附件数量，受扩展条目1字节长度的限制
+    public static final int MAX_ATTACHMENTS = 255 / 4;
+    //单个附件的最大长度:1GB，附件不计入MAX_FRAME_LENGTH
+    public static final int MAX_ATTACHMENT_LENGTH = 1024 * 1024 * 1024;
+
     //定义单条消息的最大长度:8MB
     public static final int MAX_FRAME_LENGTH = 8 * 1024 * 1024;
 }
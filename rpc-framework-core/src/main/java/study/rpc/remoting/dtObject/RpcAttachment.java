@@ -0,0 +1,163 @@
+package study.rpc.remoting.dtObject;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import study.rpc.remoting.constants.RpcConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 大块二进制数据，作为参数或返回值时不经过序列化，而是跟在消息帧后面单独发送，不受MAX_FRAME_LENGTH限制
+ * <p>
+ * 发送方通过of(ByteBuffer)或of(Path)创建：直接内存的ByteBuffer原样写出，文件通过FileChannel.transferTo(sendfile)发送。
+ * 接收方拿到的是接收缓冲区的切片，没有拷贝，用完后需要close()；服务端在响应写出之后自动释放请求中的附件。
+ * 不经过网络的序列化(进程内调用的拷贝、结果缓存等)会把内容直接写进序列化结果中。
+ */
+public final class RpcAttachment implements AutoCloseable {
+    //发送方：内存中的数据
+    private final ByteBuffer buffer;
+    //发送方：文件中的一段
+    private final File file;
+    private final long position;
+    private final long length;
+    //接收方：接收缓冲区的切片，持有一个引用
+    private final ByteBuf content;
+    private volatile boolean closed;
+
+    private RpcAttachment(ByteBuffer buffer, File file, long position, long length, ByteBuf content) {
+        if (length > RpcConstants.MAX_ATTACHMENT_LENGTH) {
+            throw new IllegalArgumentException("attachment too large: " + length);
+        }
+        this.buffer = buffer;
+        this.file = file;
+        this.position = position;
+        this.length = length;
+        this.content = content;
+    }
+
+    /**
+     * buffer中position到limit之间的数据，发送前不能修改
+     */
+    public static RpcAttachment of(ByteBuffer buffer) {
+        ByteBuffer slice = buffer.slice();
+        return new RpcAttachment(slice, null, 0, slice.remaining(), null);
+    }
+
+    public static RpcAttachment of(Path file) throws IOException {
+        return of(file, 0, Files.size(file));
+    }
+
+    public static RpcAttachment of(Path file, long position, long length) {
+        return new RpcAttachment(null, file.toFile(), position, length, null);
+    }
+
+    /**
+     * 接收到的数据，附件持有content的一个引用，close()时释放
+     */
+    public static RpcAttachment wrap(ByteBuf content) {
+        return new RpcAttachment(null, null, 0, content.readableBytes(), content);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * 不拷贝的视图：接收到的数据可能分布在多个缓冲区中，文件通过只读映射读取
+     */
+    public ByteBuffer[] nioBuffers() {
+        if (content != null) {
+            return content.nioBuffers();
+        }
+        if (buffer != null) {
+            return new ByteBuffer[]{buffer.duplicate()};
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ByteBuffer[]{channel.map(FileChannel.MapMode.READ_ONLY, position, length)};
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 写入target，例如保存到文件；文件附件写入文件时由操作系统直接拷贝
+     */
+    public void transferTo(WritableByteChannel target) throws IOException {
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long transferred = 0;
+                while (transferred < length) {
+                    transferred += channel.transferTo(position + transferred, length - transferred, target);
+                }
+            }
+            return;
+        }
+        for (ByteBuffer nioBuffer : nioBuffers()) {
+            while (nioBuffer.hasRemaining()) {
+                target.write(nioBuffer);
+            }
+        }
+    }
+
+    /**
+     * 拷贝出全部内容
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        for (ByteBuffer nioBuffer : nioBuffers()) {
+            int n = nioBuffer.remaining();
+            nioBuffer.get(bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * 编码器写出的对象：ByteBuf或者FileRegion，每次调用返回一个新的引用，写出后由Netty释放
+     */
+    public Object toOutbound() {
+        if (content != null) {
+            return content.retainedDuplicate();
+        }
+        if (buffer != null) {
+            return Unpooled.wrappedBuffer(buffer.duplicate());
+        }
+        //DefaultFileRegion在写出时才打开文件，写完后关闭
+        return new DefaultFileRegion(file, position, length);
+    }
+
+    @Override
+    public void close() {
+        if (content != null && !closed) {
+            closed = true;
+            content.release();
+        }
+    }
+
+    /**
+     * 释放消息中收到的附件，list可以为null
+     */
+    public static void closeAll(List<RpcAttachment> attachments) {
+        if (attachments != null) {
+            for (RpcAttachment attachment : attachments) {
+                attachment.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RpcAttachment(length=" + length + (file != null ? ", file=" + file : "") + ")";
+    }
+}
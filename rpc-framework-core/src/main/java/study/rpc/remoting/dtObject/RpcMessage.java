@@ -2,6 +2,9 @@ package study.rpc.remoting.dtObject;
 
 
 import lombok.*;
+import study.rpc.trace.TraceContext;
+
+import java.util.List;
 
 @AllArgsConstructor
 @NoArgsConstructor
@@ -22,4 +25,22 @@ public class RpcMessage {
     private Object data;
     //消息体的压缩方式
     private byte compress;
+    //解码完成的时间(System.nanoTime)，只在本地使用，不写入消息头，用于统计服务端排队时间
+    private long receiveNanos;
+    //请求体反序列化的耗时，只在本地使用，确认方法存在后再记入统计
+    private long decodeNanos;
+    //链路追踪上下文，只有被采样的请求和它的响应才有，编码在消息头扩展字段中
+    private TraceContext traceContext;
+    //请求的服务名，编码在消息头扩展字段中；旧版本客户端的请求没有
+    private String serviceName;
+    //透传模式下没有反序列化的消息体，此时data为null，编码时原样写出
+    private byte[] serializedBody;
+    //请求的截止时间(本地System.nanoTime)，0表示没有；以剩余时间的形式写在消息头扩展字段中
+    private long deadlineNanos;
+    //跟在消息帧后面的附件，解码时为收到的附件，透传时原样转发
+    private List<RpcAttachment> attachments;
+    //消息头扩展字段中的附件长度，只在解码时使用
+    private int[] attachmentLengths;
+    //消息头扩展字段中对端支持的协议版本，只在解码时使用，用于协商紧凑协议
+    private byte protocolVersion;
 }
@@ -18,6 +18,8 @@ public class RpcRequest{
     private Object[] parameters;
     //调用方法参数的类型
     private Class<?>[] paramTypes;
+    //泛化调用时客户端没有接口类，用类名代替paramTypes，由服务端加载
+    private String[] paramTypeNames;
 
     private String group;
     //多个服务可能具有相同的接口名和分组，但版本不同
@@ -11,6 +11,8 @@ import study.rpc.enums.RpcResponseCodeEnum;
 @Builder
 @ToString
 public class RpcResponse<T> {
+    //200超出了Integer的缓存范围，每次装箱都会新建对象
+    private static final Integer SUCCESS_CODE = RpcResponseCodeEnum.SUCCESS.getCode();
 
     private String requestId;
     //响应的状态码，表示请求的处理结果
@@ -19,11 +21,13 @@ public class RpcResponse<T> {
     private String message;
     //实际返回的数据
     private T data;
+    //服务端缓存的序列化前缀(不含requestId)，只在服务端本地使用，不会被序列化
+    private transient byte[] serializedPrefix;
 
 
     public static <T> RpcResponse<T> success(T data, String requestId){
         RpcResponse<T> response = new RpcResponse<>();
-        response.setCode(RpcResponseCodeEnum.SUCCESS.getCode());
+        response.setCode(SUCCESS_CODE);
         response.setMessage(RpcResponseCodeEnum.SUCCESS.getMessage());
         response.setRequestId(requestId);
         if(data != null){
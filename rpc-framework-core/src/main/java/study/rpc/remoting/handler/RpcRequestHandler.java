@@ -1,4 +1,167 @@
 package study.rpc.remoting.handler;
 
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.cache.ProviderResultCache;
+import study.rpc.exception.RpcException;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.provider.ServiceProvider;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.remoting.dtObject.RpcRequest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 服务端处理RpcRequest：根据服务名找到本地服务实例，通过反射调用目标方法
+ */
+@Slf4j
 public class RpcRequestHandler {
+    //基本类型不能通过Class.forName加载
+    private static final Map<String, Class<?>> PRIMITIVE_TYPES = Stream.of(boolean.class, byte.class, char.class,
+            short.class, int.class, long.class, float.class, double.class, void.class)
+            .collect(Collectors.toMap(Class::getName, c -> c));
+    private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+    private final ServiceProvider serviceProvider;
+    private final ProviderResultCache resultCache;
+    //服务实现类 -> 方法名 -> 各个重载，Class.getMethod每次都会查找并拷贝一个新的Method对象
+    private final Map<Class<?>, Map<String, MethodEntry[]>> methods = new ConcurrentHashMap<>();
+    //服务实现类 -> 公开的方法名
+    private final Map<Class<?>, Set<String>> methodNames = new ConcurrentHashMap<>();
+
+    public RpcRequestHandler() {
+        serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+        resultCache = new ProviderResultCache();
+    }
+
+    /**
+     * 处理rpcRequest：调用对应的方法，然后返回方法的执行结果
+     * 方法配置了结果缓存时返回CachedResponse；异步方法返回CompletionStage，完成时再写回响应，
+     * 返回Flow.Publisher的方法收集全部元素后以List作为结果
+     */
+    public Object handle(RpcRequest rpcRequest) {
+        String rpcServiceName = rpcRequest.getRpcServiceName();
+        Object service = serviceProvider.getService(rpcServiceName);
+        ProviderResultCache.MethodCache cache = resultCache.getCache(rpcServiceName, serviceProvider.getServiceConfig(rpcServiceName), rpcRequest);
+        if (cache == null) {
+            return invokeTargetMethod(rpcRequest, service);
+        }
+        return cache.get(rpcRequest, () -> invokeTargetMethod(rpcRequest, service));
+    }
+
+    /**
+     * 请求的服务已经发布并且有这个名称的方法；服务名和方法名来自客户端，按名称统计之前先确认
+     */
+    public boolean exists(RpcRequest rpcRequest) {
+        Object service = serviceProvider.findService(rpcRequest.getRpcServiceName());
+        return service != null && methodNames.computeIfAbsent(service.getClass(), c -> Arrays.stream(c.getMethods())
+                .map(Method::getName).collect(Collectors.toSet())).contains(rpcRequest.getMethodName());
+    }
+
+    private Object invokeTargetMethod(RpcRequest rpcRequest, Object service) {
+        Object result;
+        try {
+            //根据方法名和参数类型找到实现类中的方法
+            Class<?>[] paramTypes = rpcRequest.getParamTypes() != null || rpcRequest.getParamTypeNames() == null
+                    ? rpcRequest.getParamTypes() : loadTypes(rpcRequest.getParamTypeNames(), service.getClass().getClassLoader());
+            Method method = findMethod(service.getClass(), rpcRequest.getMethodName(), paramTypes);
+            result = method.invoke(service, rpcRequest.getParameters());
+            if (result instanceof Flow.Publisher) {
+                result = collect((Flow.Publisher<?>) result);
+            }
+            log.debug("service:[{}] successful invoke method:[{}]", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalArgumentException | InvocationTargetException | IllegalAccessException e) {
+            throw new RpcException(e.getMessage(), e);
+        }
+        return result;
+    }
+
+    private Method findMethod(Class<?> serviceClass, String methodName, Class<?>[] paramTypes) throws NoSuchMethodException {
+        if (paramTypes == null) {
+            paramTypes = NO_PARAMETERS;
+        }
+        Map<String, MethodEntry[]> byName = methods.get(serviceClass);
+        if (byName == null) {
+            byName = methods.computeIfAbsent(serviceClass, c -> new ConcurrentHashMap<>());
+        }
+        MethodEntry[] entries = byName.get(methodName);
+        if (entries != null) {
+            for (MethodEntry entry : entries) {
+                if (Arrays.equals(entry.paramTypes, paramTypes)) {
+                    return entry.method;
+                }
+            }
+        }
+        Method method = serviceClass.getMethod(methodName, paramTypes);
+        MethodEntry[] added = {new MethodEntry(paramTypes.clone(), method)};
+        byName.merge(methodName, added, (current, value) -> {
+            MethodEntry[] merged = Arrays.copyOf(current, current.length + 1);
+            merged[current.length] = value[0];
+            return merged;
+        });
+        return method;
+    }
+
+    private static final class MethodEntry {
+        private final Class<?>[] paramTypes;
+        private final Method method;
+
+        MethodEntry(Class<?>[] paramTypes, Method method) {
+            this.paramTypes = paramTypes;
+            this.method = method;
+        }
+    }
+
+    /**
+     * 泛化调用：按服务实现类的类加载器加载参数类型，支持数组的描述符写法(例如[Ljava.lang.String;)
+     * 紧凑协议解码方法字典时也用它加载参数类型
+     */
+    public static Class<?>[] loadTypes(String[] typeNames, ClassLoader classLoader) throws ClassNotFoundException {
+        Class<?>[] types = new Class<?>[typeNames.length];
+        for (int i = 0; i < typeNames.length; i++) {
+            Class<?> type = PRIMITIVE_TYPES.get(typeNames[i]);
+            types[i] = type != null ? type : Class.forName(typeNames[i], false, classLoader);
+        }
+        return types;
+    }
+
+    /**
+     * 一次调用只有一个响应，Publisher发出的元素全部收集后在onComplete时一起返回
+     */
+    private static CompletableFuture<Object> collect(Flow.Publisher<?> publisher) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<Object>() {
+            private final List<Object> items = new ArrayList<>();
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Object item) {
+                items.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(items);
+            }
+        });
+        return future;
+    }
 }
@@ -0,0 +1,16 @@
+package study.rpc.remoting.transport;
+
+import study.rpc.extension.SPI;
+import study.rpc.remoting.dtObject.RpcRequest;
+
+/**
+ * 客户端发送RpcRequest的传输层接口
+ */
+@SPI
+public interface RpcRequestTransport {
+    /**
+     * 发送rpc请求到服务端
+     * @return 服务端返回的结果，Netty实现返回的是CompletableFuture<RpcResponse<Object>>
+     */
+    Object sendRpcRequest(RpcRequest rpcRequest);
+}
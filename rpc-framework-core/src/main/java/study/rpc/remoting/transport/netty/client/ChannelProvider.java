@@ -0,0 +1,44 @@
+package study.rpc.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 存放和获取Channel对象，同一个服务端地址复用同一条连接
+ */
+@Slf4j
+public class ChannelProvider {
+
+    private final Map<String, Channel> channelMap;
+
+    public ChannelProvider() {
+        channelMap = new ConcurrentHashMap<>();
+    }
+
+    public Channel get(InetSocketAddress inetSocketAddress) {
+        String key = inetSocketAddress.toString();
+        Channel channel = channelMap.get(key);
+        //连接还可用就直接返回，否则移除掉
+        if (channel != null) {
+            if (channel.isActive()) {
+                return channel;
+            } else {
+                channelMap.remove(key);
+            }
+        }
+        return null;
+    }
+
+    public void set(InetSocketAddress inetSocketAddress, Channel channel) {
+        channelMap.put(inetSocketAddress.toString(), channel);
+    }
+
+    public void remove(InetSocketAddress inetSocketAddress) {
+        channelMap.remove(inetSocketAddress.toString());
+        log.info("Channel map size :[{}]", channelMap.size());
+    }
+}
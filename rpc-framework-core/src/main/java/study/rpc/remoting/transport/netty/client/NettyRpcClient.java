@@ -0,0 +1,543 @@
+package study.rpc.remoting.transport.netty.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.breaker.CircuitBreakers;
+import study.rpc.config.RpcConfig;
+import study.rpc.deadline.Deadline;
+import study.rpc.enums.RpcErrorMessageEnum;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.ServiceRegistryEnum;
+import study.rpc.exception.RpcException;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.hedge.HedgePolicy;
+import study.rpc.locality.LocalityRouter;
+import study.rpc.metrics.MethodMetrics;
+import study.rpc.metrics.RpcMetrics;
+import study.rpc.registry.ServiceDiscovery;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.RpcRequestTransport;
+import study.rpc.remoting.transport.netty.codec.CompactProtocol;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+import study.rpc.remoting.transport.shm.ShmConnection;
+import study.rpc.remoting.transport.shm.ShmTransport;
+import study.rpc.remoting.transport.uds.DomainSocketTransport;
+import study.rpc.trace.TraceContext;
+import study.rpc.trace.Tracer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端：发送RpcRequest，返回CompletableFuture，响应由NettyRpcClientHandler异步完成
+ */
+@Slf4j
+public final class NettyRpcClient implements RpcRequestTransport {
+    private final ServiceDiscovery serviceDiscovery;
+    private final UnprocessedRequests unprocessedRequests;
+    private final ChannelProvider channelProvider;
+    private final Bootstrap bootstrap;
+    private final EventLoopGroup eventLoopGroup;
+    //Unix域套接字连接使用epoll线程，没有开启时为null
+    private final Bootstrap domainSocketBootstrap;
+    private final EventLoopGroup domainSocketEventLoopGroup;
+    //通过共享内存建立的连接，关闭客户端时一起关闭
+    private final List<ShmConnection> shmConnections = new CopyOnWriteArrayList<>();
+    //对冲请求和请求超时的定时器，精度1毫秒，线程在第一次使用时才启动
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-client-timer", true), 1, TimeUnit.MILLISECONDS);
+    //服务端过载拒绝后最多换几个地址重试
+    private static final int MAX_OVERLOAD_RETRIES = 2;
+
+    public NettyRpcClient() {
+        RpcConfig config = RpcConfig.get();
+        int heartbeatIntervalSeconds = config.getHeartbeatIntervalSeconds();
+        ChannelInitializer<Channel> initializer = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ChannelPipeline p = ch.pipeline();
+                // 一段时间(默认5秒)之内没有发送数据给服务端的话，就发送一次心跳请求
+                p.addLast(new IdleStateHandler(0, heartbeatIntervalSeconds, 0, TimeUnit.SECONDS));
+                //编码器和解码器共用连接的紧凑协议状态(协商结果、方法字典、请求编号)
+                CompactProtocol protocol = CompactProtocol.forClient();
+                ch.attr(CompactProtocol.KEY).set(protocol);
+                p.addLast(new RpcMessageEncoder(protocol));
+                p.addLast(new RpcMessageDecoder(protocol));
+                p.addLast(new NettyRpcClientHandler());
+            }
+        };
+        eventLoopGroup = new NioEventLoopGroup();
+        bootstrap = new Bootstrap();
+        bootstrap.group(eventLoopGroup)
+                .channel(NioSocketChannel.class)
+                //连接超时时间，超过这个时间还是建立不上的话则代表连接失败
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMs())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(initializer);
+        if (DomainSocketTransport.ENABLED) {
+            domainSocketEventLoopGroup = new EpollEventLoopGroup();
+            domainSocketBootstrap = new Bootstrap();
+            domainSocketBootstrap.group(domainSocketEventLoopGroup)
+                    .channel(EpollDomainSocketChannel.class)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMs())
+                    .handler(initializer);
+        } else {
+            domainSocketEventLoopGroup = null;
+            domainSocketBootstrap = null;
+        }
+        this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(ServiceRegistryEnum.ZK.getName());
+        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+        //每个客户端维护自己的连接，连接属于该客户端的eventLoopGroup
+        this.channelProvider = new ChannelProvider();
+    }
+
+    /**
+     * 连接服务端并返回对应的Channel
+     */
+    public Channel doConnect(InetSocketAddress inetSocketAddress) {
+        return doConnect(inetSocketAddress, null);
+    }
+
+    /**
+     * 连接服务端并返回对应的Channel，rpcServiceName用于查询服务端注册的Unix域套接字
+     */
+    public Channel doConnect(InetSocketAddress inetSocketAddress, String rpcServiceName) {
+        if (ShmTransport.ENABLED) {
+            //服务端在同一台机器上时优先使用共享内存，失败时退回TCP
+            ShmConnection shmConnection = ShmTransport.connect(inetSocketAddress, new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    ChannelPipeline p = ch.pipeline();
+                    p.addLast(new RpcMessageEncoder());
+                    p.addLast(new RpcMessageDecoder());
+                    p.addLast(new NettyRpcClientHandler());
+                }
+            });
+            if (shmConnection != null) {
+                log.info("The client has connected [{}] through shared memory", inetSocketAddress);
+                shmConnections.add(shmConnection);
+                return shmConnection.channel();
+            }
+        }
+        if (domainSocketBootstrap != null && rpcServiceName != null) {
+            //服务端在同一台机器上并且注册了域套接字时使用域套接字，失败时退回TCP
+            DomainSocketAddress domainSocketAddress = DomainSocketTransport.clientAddress(inetSocketAddress,
+                    serviceDiscovery.lookupDomainSocketPath(rpcServiceName, inetSocketAddress));
+            if (domainSocketAddress != null) {
+                try {
+                    Channel channel = connect(domainSocketBootstrap, domainSocketAddress);
+                    log.info("The client has connected [{}] through domain socket [{}]", inetSocketAddress, domainSocketAddress);
+                    return channel;
+                } catch (RpcException e) {
+                    log.warn("connect domain socket [{}] failed, fall back to tcp", domainSocketAddress, e.getCause());
+                }
+            }
+        }
+        Channel channel = connect(bootstrap, inetSocketAddress);
+        log.info("The client has connected [{}] successful!", inetSocketAddress.toString());
+        return channel;
+    }
+
+    /**
+     * 连接失败时抛出RpcException，cause是原始的异常
+     */
+    private static Channel connect(Bootstrap bootstrap, SocketAddress socketAddress) {
+        CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
+        bootstrap.connect(socketAddress).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                completableFuture.complete(future.channel());
+            } else {
+                completableFuture.completeExceptionally(future.cause());
+            }
+        });
+        try {
+            return completableFuture.get();
+        } catch (ExecutionException e) {
+            throw new RpcException(RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE.getMessage() + ":" + socketAddress, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(RpcErrorMessageEnum.CLIENT_CONNECT_SERVER_FAILURE.getMessage() + ":" + socketAddress, e);
+        }
+    }
+
+    @Override
+    public Object sendRpcRequest(RpcRequest rpcRequest) {
+        //通过注册中心和负载均衡选出服务端地址
+        InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+        return doSendRpcRequest(rpcRequest, inetSocketAddress, getChannel(inetSocketAddress, rpcRequest.getRpcServiceName()),
+                false, deadlineForCall());
+    }
+
+    /**
+     * 对冲请求：超过hedgePolicy给出的等待时间还没有响应时，向负载均衡选出的另一个地址发送相同的请求，使用先返回的成功响应
+     * 服务端无法取消已经收到的请求，落后的请求在本地取消：从未处理请求表中移除，它的响应返回后直接丢弃
+     */
+    public CompletableFuture<RpcResponse<Object>> sendHedgedRpcRequest(RpcRequest rpcRequest, HedgePolicy hedgePolicy) {
+        InetSocketAddress inetSocketAddress = serviceDiscovery.lookupService(rpcRequest);
+        long begin = System.nanoTime();
+        //对冲请求在定时器线程上发出，使用和原请求相同的截止时间
+        long deadlineNanos = deadlineForCall();
+        Channel channel = getChannel(inetSocketAddress, rpcRequest.getRpcServiceName());
+        CompletableFuture<RpcResponse<Object>> primary = doSendRpcRequest(rpcRequest, inetSocketAddress,
+                channel, false, deadlineNanos);
+        hedgePolicy.onCall();
+        long delayNanos = hedgePolicy.getDelayNanos();
+        CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
+        resultFuture.whenComplete((rpcResponse, throwable) -> cancelAttempt(rpcRequest.getRequestId(), channel));
+        //还没有返回的请求数，全部失败时把最后一个结果交给调用方
+        AtomicInteger pending = new AtomicInteger(1);
+        primary.whenComplete((rpcResponse, throwable) ->
+                onHedgedReply(rpcRequest, hedgePolicy, resultFuture, pending, begin, false, rpcResponse, throwable));
+        if (delayNanos >= 0 && !resultFuture.isDone()) {
+            Timeout timeout = TIMER.newTimeout(t -> sendHedge(rpcRequest, inetSocketAddress, hedgePolicy, resultFuture, pending, deadlineNanos),
+                    delayNanos, TimeUnit.NANOSECONDS);
+            resultFuture.whenComplete((rpcResponse, throwable) -> timeout.cancel());
+        }
+        return resultFuture;
+    }
+
+    //在定时器线程上执行，不能阻塞
+    private void sendHedge(RpcRequest rpcRequest, InetSocketAddress primaryAddress, HedgePolicy hedgePolicy,
+                           CompletableFuture<RpcResponse<Object>> resultFuture, AtomicInteger pending, long deadlineNanos) {
+        if (resultFuture.isDone()) {
+            return;
+        }
+        InetSocketAddress inetSocketAddress;
+        try {
+            inetSocketAddress = serviceDiscovery.lookupService(rpcRequest, Collections.singletonList(addressOf(primaryAddress)));
+        } catch (RpcException e) {
+            //没有其他地址，对同一个服务端对冲没有意义
+            return;
+        }
+        Channel channel = channelProvider.get(inetSocketAddress);
+        if (channel == null) {
+            //这次不对冲，异步建立连接供以后使用
+            bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    channelProvider.set(inetSocketAddress, future.channel());
+                }
+            });
+            return;
+        }
+        if (!hedgePolicy.tryAcquireHedge()) {
+            log.debug("hedge budget exhausted: [{}]", rpcRequest.getMethodName());
+            return;
+        }
+        //对冲请求使用新的requestId，和原请求分别等待响应
+        RpcRequest hedgeRequest = copyWithNewRequestId(rpcRequest);
+        if (RpcMetrics.ENABLED) {
+            RpcMetrics.consumer(rpcRequest.getRpcServiceName(), rpcRequest.getMethodName()).recordHedge();
+        }
+        pending.incrementAndGet();
+        long begin = System.nanoTime();
+        doSendRpcRequest(hedgeRequest, inetSocketAddress, channel, true, deadlineNanos).whenComplete((rpcResponse, throwable) ->
+                onHedgedReply(rpcRequest, hedgePolicy, resultFuture, pending, begin, true, rpcResponse, throwable));
+        resultFuture.whenComplete((rpcResponse, throwable) -> cancelAttempt(hedgeRequest.getRequestId(), channel));
+    }
+
+    /**
+     * 对冲调用完成后取消还在等待响应的请求，没有请求超时时间时它们不会被定时器清理
+     */
+    private void cancelAttempt(String requestId, Channel channel) {
+        CompletableFuture<RpcResponse<Object>> attemptFuture = unprocessedRequests.remove(requestId);
+        if (attemptFuture != null) {
+            CompactProtocol.forget(channel, requestId);
+            attemptFuture.cancel(false);
+        }
+    }
+
+    private void onHedgedReply(RpcRequest rpcRequest, HedgePolicy hedgePolicy, CompletableFuture<RpcResponse<Object>> resultFuture,
+                               AtomicInteger pending, long begin, boolean hedge,
+                               RpcResponse<Object> rpcResponse, Throwable throwable) {
+        if (rpcResponse != null && hedge) {
+            //调用方按原请求的requestId检查响应
+            rpcResponse.setRequestId(rpcRequest.getRequestId());
+        }
+        if (throwable == null && rpcResponse != null
+                && Integer.valueOf(RpcResponseCodeEnum.SUCCESS.getCode()).equals(rpcResponse.getCode())) {
+            hedgePolicy.recordLatency(System.nanoTime() - begin);
+            if (!resultFuture.complete(rpcResponse)) {
+                //较慢的一方直接返回的附件没有人使用，在这里释放
+                if (rpcResponse.getData() instanceof RpcAttachment) {
+                    ((RpcAttachment) rpcResponse.getData()).close();
+                }
+            } else if (hedge && RpcMetrics.ENABLED) {
+                RpcMetrics.consumer(rpcRequest.getRpcServiceName(), rpcRequest.getMethodName()).recordHedgeWin();
+            }
+            return;
+        }
+        //失败时如果还有请求没返回，等待它们
+        if (pending.decrementAndGet() == 0) {
+            if (throwable != null) {
+                resultFuture.completeExceptionally(throwable);
+            } else {
+                resultFuture.complete(rpcResponse);
+            }
+        }
+    }
+
+    /**
+     * 广播调用：把请求并行发给服务的所有服务端(fanout大于0时最多fanout个)，返回每个服务端的结果
+     * 每个服务端的请求使用新的requestId分别等待响应，响应中的requestId改回原请求的；
+     * 所有请求使用同一个截止时间，timeoutMs必须大于0，保证每个服务端的请求到期后都会结束
+     */
+    public List<CompletableFuture<RpcResponse<Object>>> sendBroadcastRpcRequest(RpcRequest rpcRequest, int fanout, long timeoutMs) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("broadcast timeout must be positive: " + timeoutMs);
+        }
+        List<InetSocketAddress> addresses = serviceDiscovery.lookupAllServices(rpcRequest);
+        if (fanout > 0 && fanout < addresses.size()) {
+            //从随机位置开始连续取fanout个，分散到不同的服务端
+            int start = ThreadLocalRandom.current().nextInt(addresses.size());
+            List<InetSocketAddress> selected = new ArrayList<>(fanout);
+            for (int i = 0; i < fanout; i++) {
+                selected.add(addresses.get((start + i) % addresses.size()));
+            }
+            addresses = selected;
+        }
+        long deadlineNanos = Deadline.forCall(timeoutMs);
+        List<CompletableFuture<RpcResponse<Object>>> responses = new ArrayList<>(addresses.size());
+        for (InetSocketAddress inetSocketAddress : addresses) {
+            RpcRequest broadcastRequest = copyWithNewRequestId(rpcRequest);
+            CompletableFuture<RpcResponse<Object>> response;
+            try {
+                response = doSendRpcRequest(broadcastRequest, inetSocketAddress,
+                        getChannel(inetSocketAddress, rpcRequest.getRpcServiceName()), false, deadlineNanos);
+            } catch (Exception e) {
+                //连接不上的服务端算作这个服务端调用失败，不影响发给其他服务端
+                log.warn("broadcast to [{}] failed", inetSocketAddress, e);
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            responses.add(response.thenApply(rpcResponse -> {
+                if (rpcResponse != null) {
+                    rpcResponse.setRequestId(rpcRequest.getRequestId());
+                }
+                return rpcResponse;
+            }));
+        }
+        return responses;
+    }
+
+    //同一个调用再发一次(对冲、广播)时使用新的requestId，分别等待响应
+    private static RpcRequest copyWithNewRequestId(RpcRequest rpcRequest) {
+        return RpcRequest.builder().requestId(UUID.randomUUID().toString())
+                .interfaceName(rpcRequest.getInterfaceName())
+                .methodName(rpcRequest.getMethodName())
+                .parameters(rpcRequest.getParameters())
+                .paramTypes(rpcRequest.getParamTypes())
+                .paramTypeNames(rpcRequest.getParamTypeNames())
+                .group(rpcRequest.getGroup())
+                .version(rpcRequest.getVersion()).build();
+    }
+
+    /**
+     * hedge为true时是对冲请求，不单独计入调用统计和链路追踪
+     */
+    private CompletableFuture<RpcResponse<Object>> doSendRpcRequest(RpcRequest rpcRequest, InetSocketAddress inetSocketAddress,
+                                                                   Channel channel, boolean hedge, long deadlineNanos) {
+        CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
+        if (!channel.isActive()) {
+            throw new RpcException(RpcErrorMessageEnum.SERVICE_INVOCATION_FAILURE, "address:" + inetSocketAddress
+                    + ",channel:" + channel + ",open:" + channel.isOpen() + ",registered:" + channel.isRegistered());
+        }
+        if (Deadline.isExpired(deadlineNanos)) {
+            //上游给的时间已经用完，服务端收到也会丢弃，不再发送
+            resultFuture.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT,
+                    "interfaceName:" + rpcRequest.getInterfaceName()));
+            return resultFuture;
+        }
+        if (RpcMetrics.ENABLED && !hedge) {
+            recordMetrics(rpcRequest, resultFuture);
+        }
+        //是否采样在这里决定，没被采样时traceContext为null
+        TraceContext traceContext = hedge ? null : Tracer.startClientSpan(rpcRequest.getRpcServiceName(), rpcRequest.getMethodName());
+        if (traceContext != null) {
+            resultFuture.whenComplete((rpcResponse, throwable) -> Tracer.finishClientSpan(traceContext));
+        }
+        RpcMessage rpcMessage = RpcMessage.builder().data(rpcRequest)
+                .codec(RpcConfig.get().getCodec())
+                .messageType(RpcConstants.REQUEST_TYPE)
+                //服务名写入消息头，网关可以不反序列化消息体直接转发
+                .serviceName(rpcRequest.getRpcServiceName())
+                .deadlineNanos(deadlineNanos)
+                .traceContext(traceContext).build();
+        send(channel, inetSocketAddress, rpcMessage, resultFuture, new ArrayList<>());
+        return resultFuture;
+    }
+
+    /**
+     * 发送一次请求，服务端过载拒绝时换一个没有拒绝过的地址重试，没有其他地址时把过载响应返回给调用方
+     */
+    private void send(Channel channel, InetSocketAddress inetSocketAddress, RpcMessage rpcMessage,
+                      CompletableFuture<RpcResponse<Object>> resultFuture, List<String> overloadedAddresses) {
+        RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+        CompletableFuture<RpcResponse<Object>> attemptFuture = new CompletableFuture<>();
+        String address = addressOf(inetSocketAddress);
+        long begin = CircuitBreakers.ENABLED ? System.nanoTime() : 0;
+        attemptFuture.whenComplete((rpcResponse, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                //对冲调用中落后的请求被取消，服务端并没有失败，不计入熔断统计
+                resultFuture.completeExceptionally(throwable);
+                return;
+            }
+            if (CircuitBreakers.ENABLED) {
+                //过载拒绝说明服务端是正常的，不算失败
+                boolean success = throwable == null && rpcResponse != null && (isOverloaded(rpcResponse)
+                        || Integer.valueOf(RpcResponseCodeEnum.SUCCESS.getCode()).equals(rpcResponse.getCode()));
+                CircuitBreakers.onResult(address, success, System.nanoTime() - begin);
+            }
+            if (LocalityRouter.ENABLED && throwable == null && isOverloaded(rpcResponse)) {
+                //之后一段时间内本地的服务端过载时把更远的服务端加入候选
+                LocalityRouter.onOverloaded(address);
+            }
+            if (throwable != null) {
+                resultFuture.completeExceptionally(throwable);
+            } else if (isOverloaded(rpcResponse) && overloadedAddresses.size() < MAX_OVERLOAD_RETRIES) {
+                overloadedAddresses.add(address);
+                retry(rpcMessage, rpcResponse, resultFuture, overloadedAddresses);
+            } else {
+                resultFuture.complete(rpcResponse);
+            }
+        });
+        //先放入未处理请求表，再发送，避免响应先于put到达
+        unprocessedRequests.put(rpcRequest.getRequestId(), attemptFuture, channel);
+        if (rpcMessage.getDeadlineNanos() != 0) {
+            //服务端不回复过期的请求，到期后从未处理请求表中移除，避免一直占用
+            Timeout timeout = TIMER.newTimeout(t -> {
+                if (unprocessedRequests.remove(rpcRequest.getRequestId()) != null) {
+                    //之后到达的响应按未知编号丢弃
+                    CompactProtocol.forget(channel, rpcRequest.getRequestId());
+                    attemptFuture.completeExceptionally(new RpcException(RpcErrorMessageEnum.REQUEST_TIMEOUT,
+                            "interfaceName:" + rpcRequest.getInterfaceName()));
+                }
+            }, Deadline.remainingNanos(rpcMessage.getDeadlineNanos()), TimeUnit.NANOSECONDS);
+            attemptFuture.whenComplete((rpcResponse, throwable) -> timeout.cancel());
+        }
+        channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                log.debug("client send message: [{}]", rpcMessage);
+            } else {
+                //请求不能序列化时什么都没有写出，连接没有问题，不关闭
+                if (!(future.cause() instanceof EncoderException)) {
+                    future.channel().close();
+                }
+                if (unprocessedRequests.remove(rpcRequest.getRequestId()) != null) {
+                    CompactProtocol.forget(channel, rpcRequest.getRequestId());
+                }
+                attemptFuture.completeExceptionally(future.cause());
+                log.error("Send failed:", future.cause());
+            }
+        });
+    }
+
+    /**
+     * 在IO线程上执行，不能阻塞：没有现成的连接时异步建立连接
+     */
+    private void retry(RpcMessage rpcMessage, RpcResponse<Object> overloadedResponse,
+                       CompletableFuture<RpcResponse<Object>> resultFuture, List<String> overloadedAddresses) {
+        InetSocketAddress inetSocketAddress;
+        try {
+            inetSocketAddress = serviceDiscovery.lookupService((RpcRequest) rpcMessage.getData(), overloadedAddresses);
+        } catch (RpcException e) {
+            //没有其他可用地址
+            resultFuture.complete(overloadedResponse);
+            return;
+        }
+        log.debug("server overloaded, retry on [{}]", inetSocketAddress);
+        Channel channel = channelProvider.get(inetSocketAddress);
+        if (channel != null) {
+            send(channel, inetSocketAddress, rpcMessage, resultFuture, overloadedAddresses);
+            return;
+        }
+        bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                channelProvider.set(inetSocketAddress, future.channel());
+                send(future.channel(), inetSocketAddress, rpcMessage, resultFuture, overloadedAddresses);
+            } else {
+                resultFuture.complete(overloadedResponse);
+            }
+        });
+    }
+
+    //当前线程上继承来的截止时间和配置的请求超时时间中更早的一个
+    private static long deadlineForCall() {
+        return Deadline.forCall(RpcConfig.get().getRequestTimeoutMs());
+    }
+
+    //和注册中心中的地址格式一致：host:port
+    private static String addressOf(InetSocketAddress inetSocketAddress) {
+        return inetSocketAddress.getHostString() + ":" + inetSocketAddress.getPort();
+    }
+
+    private static boolean isOverloaded(RpcResponse<Object> rpcResponse) {
+        return rpcResponse != null && Integer.valueOf(RpcResponseCodeEnum.OVERLOADED.getCode()).equals(rpcResponse.getCode());
+    }
+
+    //从发送到响应返回(或失败)的时间记为客户端调用延迟
+    private void recordMetrics(RpcRequest rpcRequest, CompletableFuture<RpcResponse<Object>> resultFuture) {
+        MethodMetrics metrics = RpcMetrics.consumer(rpcRequest.getRpcServiceName(), rpcRequest.getMethodName());
+        long begin = System.nanoTime();
+        metrics.onStart();
+        //被取消说明对冲请求已经成功返回，调用本身是成功的
+        resultFuture.whenComplete((rpcResponse, throwable) -> metrics.onComplete(System.nanoTime() - begin,
+                throwable instanceof CancellationException || throwable == null && rpcResponse != null
+                        && Integer.valueOf(RpcResponseCodeEnum.SUCCESS.getCode()).equals(rpcResponse.getCode())));
+    }
+
+    public Channel getChannel(InetSocketAddress inetSocketAddress) {
+        return getChannel(inetSocketAddress, null);
+    }
+
+    public Channel getChannel(InetSocketAddress inetSocketAddress, String rpcServiceName) {
+        Channel channel = channelProvider.get(inetSocketAddress);
+        if (channel == null) {
+            channel = doConnect(inetSocketAddress, rpcServiceName);
+            channelProvider.set(inetSocketAddress, channel);
+        }
+        return channel;
+    }
+
+    public void close() {
+        for (ShmConnection shmConnection : shmConnections) {
+            shmConnection.close();
+        }
+        eventLoopGroup.shutdownGracefully();
+        if (domainSocketEventLoopGroup != null) {
+            domainSocketEventLoopGroup.shutdownGracefully();
+        }
+    }
+}
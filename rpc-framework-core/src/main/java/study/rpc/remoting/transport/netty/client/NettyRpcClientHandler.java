@@ -0,0 +1,94 @@
+package study.rpc.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.RpcErrorMessageEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.exception.RpcException;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.trace.Tracer;
+
+/**
+ * 客户端自定义的ChannelHandler，处理服务端发来的数据
+ */
+@Slf4j
+public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
+    private final UnprocessedRequests unprocessedRequests;
+
+    public NettyRpcClientHandler() {
+        this.unprocessedRequests = SingletonFactory.getInstance(UnprocessedRequests.class);
+    }
+
+    /**
+     * 读取服务端返回的消息，完成对应请求的CompletableFuture
+     */
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        try {
+            log.debug("client receive msg: [{}]", msg);
+            if (msg instanceof RpcMessage) {
+                RpcMessage tmp = (RpcMessage) msg;
+                byte messageType = tmp.getMessageType();
+                if (messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+                    log.debug("heart [{}]", tmp.getData());
+                } else if (messageType == RpcConstants.RESPONSE_TYPE) {
+                    RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
+                    if (tmp.getTraceContext() != null) {
+                        Tracer.onClientResponse(tmp.getTraceContext());
+                    }
+                    if (!unprocessedRequests.complete(rpcResponse)) {
+                        //没有人接收的响应，其中的附件在这里释放，否则由调用方在用完后close()
+                        RpcAttachment.closeAll(tmp.getAttachments());
+                    }
+                }
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            IdleState state = ((IdleStateEvent) evt).state();
+            //5秒没有写数据就发送一次心跳，保持连接
+            if (state == IdleState.WRITER_IDLE) {
+                log.debug("write idle happen [{}]", ctx.channel().remoteAddress());
+                Channel channel = ctx.channel();
+                RpcMessage rpcMessage = new RpcMessage();
+                rpcMessage.setCodec(SerializationTypeEnum.KRYO.getCode());
+                rpcMessage.setMessageType(RpcConstants.HEARTBEAT_REQUEST_TYPE);
+                rpcMessage.setData(RpcConstants.PING);
+                channel.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    /**
+     * 连接断开时这个连接上还在等待响应的请求立即失败
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        unprocessedRequests.failAll(ctx.channel(), new RpcException(RpcErrorMessageEnum.CONNECTION_CLOSED,
+                String.valueOf(ctx.channel().remoteAddress())));
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("client catch exception：", cause);
+        ctx.close();
+    }
+}
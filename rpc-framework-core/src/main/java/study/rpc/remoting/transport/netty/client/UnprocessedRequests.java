@@ -0,0 +1,66 @@
+package study.rpc.remoting.transport.netty.client;
+
+import io.netty.channel.Channel;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.remoting.dtObject.RpcResponse;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 存放服务端还未返回结果的请求
+ * 键为RpcRequest的requestId，值为等待结果的CompletableFuture和发出请求的连接
+ */
+@Slf4j
+public class UnprocessedRequests {
+    private static final Map<String, PendingRequest> UNPROCESSED_RESPONSE_FUTURES = new ConcurrentHashMap<>();
+
+    public void put(String requestId, CompletableFuture<RpcResponse<Object>> future, Channel channel) {
+        UNPROCESSED_RESPONSE_FUTURES.put(requestId, new PendingRequest(future, channel));
+    }
+
+    //请求超时后移除，之后到达的响应会被忽略
+    public CompletableFuture<RpcResponse<Object>> remove(String requestId) {
+        PendingRequest pendingRequest = UNPROCESSED_RESPONSE_FUTURES.remove(requestId);
+        return pendingRequest == null ? null : pendingRequest.future;
+    }
+
+    /**
+     * 连接断开后上面的请求不会再有响应，立即失败，不用等到超时；连接断开很少发生，遍历全部请求即可
+     */
+    public void failAll(Channel channel, Throwable cause) {
+        Iterator<PendingRequest> iterator = UNPROCESSED_RESPONSE_FUTURES.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest pendingRequest = iterator.next();
+            if (pendingRequest.channel == channel) {
+                iterator.remove();
+                pendingRequest.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * 返回false表示没有调用方在等待这个响应
+     */
+    public boolean complete(RpcResponse<Object> rpcResponse) {
+        CompletableFuture<RpcResponse<Object>> future = remove(rpcResponse.getRequestId());
+        if (null != future) {
+            return future.complete(rpcResponse);
+        }
+        //已经超时的请求的响应，调用方不再等待
+        log.debug("response of expired request dropped: [{}]", rpcResponse.getRequestId());
+        return false;
+    }
+
+    private static final class PendingRequest {
+        private final CompletableFuture<RpcResponse<Object>> future;
+        private final Channel channel;
+
+        PendingRequest(CompletableFuture<RpcResponse<Object>> future, Channel channel) {
+            this.future = future;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.AttributeKey;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.handler.RpcRequestHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 一条连接上紧凑协议(v2)的状态：协商结果、请求方法字典和请求编号，通过-Drpc.protocol.compact.enabled=false关闭
+ * <p>
+ * 客户端在v1消息的扩展字段中声明支持v2，服务端收到声明后在下一条发出的消息中确认，之后服务端发出的消息都用v2；
+ * 客户端收到确认后也改用v2，收到没有确认的响应说明服务端只支持v1，不再声明。
+ * 解码器按第一个字节区分两种格式(v1以魔数开头)，切换前后在途的消息都能解码，无法用v2表示的消息随时可以退回v1。
+ * <p>
+ * v2消息格式：
+ * <pre>
+ *   1B 消息类型(低3位) | 0x08 序列化和压缩方式有变化 | 0x80 有扩展字段
+ *   varint 后面的长度
+ *   [1B codec 1B compress]   和这个方向上一条消息不同时才写
+ *   varint 请求编号           心跳没有；客户端按连接分配，服务端原样带回
+ *   varint 方法引用           只有请求有：id&lt;&lt;1 引用字典，id&lt;&lt;1|1 定义并加入字典，0 定义但不加入字典(不加载参数类型)
+ *                            定义：接口名 方法名 group version(varint长度+UTF-8) + 1B参数类型种类 + varint个数 + 类型名
+ *   [扩展字段]               格式和v1相同，不再写服务名
+ *   body                     请求只序列化参数数组，响应不带requestId，成功响应不带默认的message
+ * </pre>
+ * 编码器和解码器都在连接的EventLoop上访问这些状态，不需要同步；共享内存连接的读写不在同一个线程上，不使用紧凑协议。
+ */
+public final class CompactProtocol {
+    public static final boolean ENABLED = !"false".equals(System.getProperty("rpc.protocol.compact.enabled"));
+    //客户端连接上的紧凑协议状态，请求超时时用它丢掉请求编号
+    public static final AttributeKey<CompactProtocol> KEY = AttributeKey.valueOf("rpc.compact.protocol");
+
+    //v2消息第一个字节中的消息类型只有1~4，不会和魔数的第一个字节('g' = 0x67)相同
+    static final int TYPE_MASK = 0x07;
+    static final int FLAG_CODEC = 0x08;
+    static final int FLAG_EXTENSIONS = RpcConstants.HEADER_EXTENSION_FLAG & 0xFF;
+    //服务端解码v2请求时生成的requestId前缀，编码响应时据此取回请求编号
+    static final char SEQUENCE_PREFIX = '#';
+
+    private static final int PARAM_TYPES_NONE = 0;
+    private static final int PARAM_TYPES = 1;
+    private static final int PARAM_TYPE_NAMES = 2;
+    //每条连接的方法字典大小上限，客户端在字典满了之后对新的方法使用v1；服务端拒绝超过上限的定义
+    private static final int MAX_METHODS = 1024;
+    //客户端记录的未返回请求数上限，服务端丢弃的过期请求不会有响应，超过时丢掉最早的
+    private static final int MAX_PENDING_REQUESTS = 65536;
+
+    private final boolean client;
+    //出站方向已经使用v2
+    private boolean outboundCompact;
+    //客户端：还没有确定服务端是否支持v2；服务端：收到了声明，还没有确认
+    private boolean negotiating;
+    //这个方向上一条v2消息的序列化和压缩方式，-1表示还没有发送过
+    private int outboundCodec = -1;
+    private int outboundCompress = -1;
+    private byte inboundCodec;
+    private byte inboundCompress;
+
+    //客户端：方法 -> 字典id，id从1开始
+    private final Map<MethodKey, Integer> methodIds;
+    //服务端：字典id - 1 -> 方法
+    private final List<MethodEntry> methods;
+    //客户端：请求编号 -> requestId，以及反过来的映射，用于请求超时时丢掉编号
+    private final Map<Integer, String> requestIds;
+    private final Map<String, Integer> sequences;
+    private int nextSequence;
+
+    private CompactProtocol(boolean client) {
+        this.client = client;
+        this.negotiating = client;
+        this.methodIds = client ? new HashMap<>() : null;
+        this.methods = client ? null : new ArrayList<>();
+        this.sequences = client ? new HashMap<>() : null;
+        this.requestIds = client ? new LinkedHashMap<Integer, String>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                if (size() > MAX_PENDING_REQUESTS) {
+                    sequences.remove(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        } : null;
+    }
+
+    /**
+     * 客户端连接的状态，关闭时返回null，编解码器只使用v1
+     */
+    public static CompactProtocol forClient() {
+        return ENABLED ? new CompactProtocol(true) : null;
+    }
+
+    public static CompactProtocol forServer() {
+        return ENABLED ? new CompactProtocol(false) : null;
+    }
+
+    /**
+     * 客户端：调用方不再等待请求的响应(超时、对冲请求中的其他请求已经返回)，在连接的EventLoop上丢掉它的编号
+     */
+    public static void forget(Channel channel, String requestId) {
+        CompactProtocol protocol = channel.attr(KEY).get();
+        if (protocol != null) {
+            channel.eventLoop().execute(() -> protocol.forgetSequence(requestId));
+        }
+    }
+
+    boolean isClient() {
+        return client;
+    }
+
+    boolean isOutboundCompact() {
+        return outboundCompact;
+    }
+
+    /**
+     * 编码v1消息前调用，返回要写进扩展字段的协议版本，0表示不写：客户端声明，服务端确认后切换到v2
+     */
+    byte beforeV1Frame() {
+        if (!negotiating) {
+            return 0;
+        }
+        if (!client) {
+            negotiating = false;
+            outboundCompact = true;
+        }
+        return RpcConstants.COMPACT_VERSION;
+    }
+
+    /**
+     * 解码v1消息后调用，peerVersion是对端在扩展字段中写的协议版本
+     */
+    void afterV1Frame(byte peerVersion, byte messageType) {
+        if (!client) {
+            if (peerVersion >= RpcConstants.COMPACT_VERSION && !outboundCompact) {
+                negotiating = true;
+            }
+        } else if (negotiating) {
+            if (peerVersion >= RpcConstants.COMPACT_VERSION) {
+                negotiating = false;
+                outboundCompact = true;
+            } else if (messageType == RpcConstants.RESPONSE_TYPE || messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+                //服务端在收到声明后的第一条消息中就会确认，没有确认说明只支持v1
+                negotiating = false;
+            }
+        }
+    }
+
+    /**
+     * 返回第一个字节中的FLAG_CODEC，序列化和压缩方式和上一条消息相同时不重复写
+     */
+    int codecFlag(byte codec, byte compress) {
+        if (codec == outboundCodec && compress == outboundCompress) {
+            return 0;
+        }
+        outboundCodec = codec;
+        outboundCompress = compress;
+        return FLAG_CODEC;
+    }
+
+    void readCodec(int flags, ByteBuf in) {
+        if ((flags & FLAG_CODEC) != 0) {
+            inboundCodec = in.readByte();
+            inboundCompress = in.readByte();
+        }
+    }
+
+    byte getInboundCodec() {
+        return inboundCodec;
+    }
+
+    byte getInboundCompress() {
+        return inboundCompress;
+    }
+
+    /**
+     * 客户端：为请求分配连接内的编号，响应带回编号时换回requestId
+     */
+    int nextSequence(String requestId) {
+        int sequence = nextSequence;
+        nextSequence = (nextSequence + 1) & Integer.MAX_VALUE;
+        requestIds.put(sequence, requestId);
+        sequences.put(requestId, sequence);
+        return sequence;
+    }
+
+    /**
+     * 返回请求编号对应的requestId，编号已经被丢掉(超时或者超过上限)时返回null
+     */
+    String completeSequence(int sequence) {
+        String requestId = requestIds.remove(sequence);
+        if (requestId != null) {
+            sequences.remove(requestId);
+        }
+        return requestId;
+    }
+
+    void forgetSequence(String requestId) {
+        Integer sequence = sequences.remove(requestId);
+        if (sequence != null) {
+            requestIds.remove(sequence);
+        }
+    }
+
+    /**
+     * 服务端：v2请求的requestId，只需要在编码响应时能取回编号
+     */
+    static String sequenceRequestId(int sequence) {
+        return SEQUENCE_PREFIX + Integer.toString(sequence);
+    }
+
+    /**
+     * 服务端：从响应的requestId取回请求编号，不是v2请求的响应返回-1
+     */
+    static int parseSequence(String requestId) {
+        if (requestId == null || requestId.length() < 2 || requestId.length() > 11
+                || requestId.charAt(0) != SEQUENCE_PREFIX) {
+            return -1;
+        }
+        long sequence = 0;
+        for (int i = 1; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            sequence = sequence * 10 + (c - '0');
+        }
+        return sequence > Integer.MAX_VALUE ? -1 : (int) sequence;
+    }
+
+    /**
+     * 客户端：方法已经在字典中或者字典还有空间；字典没满时不需要查找
+     */
+    boolean canReferenceMethod(RpcRequest rpcRequest) {
+        return methodIds.size() < MAX_METHODS || methodIds.containsKey(new MethodKey(rpcRequest));
+    }
+
+    /**
+     * 客户端：写入方法引用，第一次使用的方法带着定义
+     */
+    void writeMethod(RpcRequest rpcRequest, ByteBuf out) {
+        MethodKey key = new MethodKey(rpcRequest);
+        Integer id = methodIds.get(key);
+        if (id != null) {
+            writeVarInt(out, id << 1);
+            return;
+        }
+        if (methodIds.size() < MAX_METHODS) {
+            id = methodIds.size() + 1;
+            methodIds.put(key, id);
+            writeVarInt(out, id << 1 | 1);
+        } else {
+            writeVarInt(out, 0);
+        }
+        writeString(out, rpcRequest.getInterfaceName());
+        writeString(out, rpcRequest.getMethodName());
+        writeString(out, rpcRequest.getGroup());
+        writeString(out, rpcRequest.getVersion());
+        if (rpcRequest.getParamTypes() != null) {
+            Class<?>[] paramTypes = rpcRequest.getParamTypes();
+            out.writeByte(PARAM_TYPES);
+            writeVarInt(out, paramTypes.length);
+            for (Class<?> paramType : paramTypes) {
+                writeString(out, paramType.getName());
+            }
+        } else if (rpcRequest.getParamTypeNames() != null) {
+            String[] paramTypeNames = rpcRequest.getParamTypeNames();
+            out.writeByte(PARAM_TYPE_NAMES);
+            writeVarInt(out, paramTypeNames.length);
+            for (String paramTypeName : paramTypeNames) {
+                writeString(out, paramTypeName);
+            }
+        } else {
+            out.writeByte(PARAM_TYPES_NONE);
+        }
+    }
+
+    /**
+     * 服务端：读取方法引用，定义中的参数类型只在这里加载一次
+     */
+    MethodEntry readMethod(ByteBuf in) {
+        int reference = readVarInt(in);
+        if ((reference & 1) == 0 && reference != 0) {
+            int index = (reference >>> 1) - 1;
+            if (index >= methods.size()) {
+                throw new CorruptedFrameException("unknown method reference: " + (reference >>> 1));
+            }
+            return methods.get(index);
+        }
+        MethodEntry entry = new MethodEntry(readString(in), readString(in), readString(in), readString(in));
+        int kind = in.readUnsignedByte();
+        if (kind != PARAM_TYPES_NONE) {
+            //每个类型名至少占1个字节，个数不会超过剩余的字节数
+            String[] names = new String[readLength(in, in.readableBytes())];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readString(in);
+            }
+            //不加入字典的定义每个请求都会带着，不在编解码线程上反复加载类，交给业务线程按类名加载
+            if (kind == PARAM_TYPES && reference != 0) {
+                try {
+                    entry.paramTypes = RpcRequestHandler.loadTypes(names, classLoader());
+                } catch (ClassNotFoundException e) {
+                    //编解码线程上加载不到的类交给服务实现类的类加载器
+                    entry.paramTypeNames = names;
+                }
+            } else {
+                entry.paramTypeNames = names;
+            }
+        }
+        if (reference != 0) {
+            if ((reference >>> 1) != methods.size() + 1 || methods.size() >= MAX_METHODS) {
+                throw new CorruptedFrameException("unexpected method id: " + (reference >>> 1));
+            }
+            methods.add(entry);
+        }
+        return entry;
+    }
+
+    private static ClassLoader classLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader != null ? classLoader : CompactProtocol.class.getClassLoader();
+    }
+
+    static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("malformed varint");
+    }
+
+    /**
+     * 不移动读指针地读取varint，数据还不完整时返回-1；lengthOut[0]是varint占用的字节数
+     */
+    static int peekVarInt(ByteBuf in, int index, int[] lengthOut) {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            if (index + i >= in.writerIndex()) {
+                return -1;
+            }
+            byte b = in.getByte(index + i);
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new CorruptedFrameException("negative length: " + value);
+                }
+                lengthOut[0] = i + 1;
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("malformed varint");
+    }
+
+    /**
+     * 读取对端写的长度或个数，在按它分配内存之前拒绝负数和超过max的值
+     */
+    static int readLength(ByteBuf in, int max) {
+        int value = readVarInt(in);
+        if (value < 0 || value > max) {
+            throw new CorruptedFrameException("length out of range: " + value);
+        }
+        return value;
+    }
+
+    static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    //长度+1，0表示null
+    private static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(RpcConstants.DEFAULT_CHARSET);
+        writeVarInt(out, bytes.length + 1);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = readLength(in, in.readableBytes() + 1) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String value = in.toString(in.readerIndex(), length, RpcConstants.DEFAULT_CHARSET);
+        in.skipBytes(length);
+        return value;
+    }
+
+    /**
+     * 服务端字典中的方法，解码请求时用它补全RpcRequest
+     */
+    static final class MethodEntry {
+        final String interfaceName;
+        final String methodName;
+        final String group;
+        final String version;
+        final String serviceName;
+        Class<?>[] paramTypes;
+        String[] paramTypeNames;
+
+        MethodEntry(String interfaceName, String methodName, String group, String version) {
+            this.interfaceName = interfaceName;
+            this.methodName = methodName;
+            this.group = group;
+            this.version = version;
+            this.serviceName = interfaceName + group + version;
+        }
+
+        RpcRequest toRpcRequest(String requestId, Object[] parameters) {
+            return new RpcRequest(requestId, interfaceName, methodName, parameters, paramTypes, paramTypeNames, group, version);
+        }
+    }
+
+    private static final class MethodKey {
+        private final String interfaceName;
+        private final String methodName;
+        private final String group;
+        private final String version;
+        private final Class<?>[] paramTypes;
+        private final String[] paramTypeNames;
+        private final int hash;
+
+        MethodKey(RpcRequest rpcRequest) {
+            this.interfaceName = rpcRequest.getInterfaceName();
+            this.methodName = rpcRequest.getMethodName();
+            this.group = rpcRequest.getGroup();
+            this.version = rpcRequest.getVersion();
+            this.paramTypes = rpcRequest.getParamTypes();
+            this.paramTypeNames = rpcRequest.getParamTypeNames();
+            int h = Objects.hashCode(interfaceName);
+            h = h * 31 + Objects.hashCode(methodName);
+            h = h * 31 + Objects.hashCode(group);
+            h = h * 31 + Objects.hashCode(version);
+            h = h * 31 + Arrays.hashCode(paramTypes);
+            this.hash = h * 31 + Arrays.hashCode(paramTypeNames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey other = (MethodKey) o;
+            return hash == other.hash && Objects.equals(interfaceName, other.interfaceName)
+                    && Objects.equals(methodName, other.methodName) && Objects.equals(group, other.group)
+                    && Objects.equals(version, other.version) && Arrays.equals(paramTypes, other.paramTypes)
+                    && Arrays.equals(paramTypeNames, other.paramTypeNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
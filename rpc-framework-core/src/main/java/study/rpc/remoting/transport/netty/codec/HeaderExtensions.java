@@ -0,0 +1,117 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import study.rpc.deadline.Deadline;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.trace.TraceContext;
+
+import java.util.List;
+
+/**
+ * 消息头扩展字段的读写，扩展字段直接写在消息头后面，不需要重新序列化消息体
+ * 格式：2B扩展总长度 + 若干个条目(1B类型 1B长度 值)，不认识的条目类型按长度跳过
+ */
+final class HeaderExtensions {
+    //traceIdHigh traceIdLow spanId parentSpanId remoteNanos 各8字节
+    private static final int TRACE_LENGTH = 40;
+    //条目长度只有1个字节
+    private static final int MAX_ENTRY_LENGTH = 255;
+
+    private HeaderExtensions() {
+    }
+
+    static boolean hasExtensions(RpcMessage rpcMessage, List<RpcAttachment> attachments, byte protocolVersion, boolean writeService) {
+        return rpcMessage.getTraceContext() != null || (writeService && rpcMessage.getServiceName() != null)
+                || rpcMessage.getDeadlineNanos() != 0 || !attachments.isEmpty() || protocolVersion != 0;
+    }
+
+    /**
+     * 写入扩展字段，返回写入的字节数(包括2字节的长度)
+     * protocolVersion为0时不写协议版本；紧凑协议的请求通过方法字典得到服务名，writeService为false
+     */
+    static int write(RpcMessage rpcMessage, List<RpcAttachment> attachments, byte protocolVersion, boolean writeService,
+                     ByteBuf out) {
+        int lengthIndex = out.writerIndex();
+        out.writeShort(0);
+        TraceContext traceContext = rpcMessage.getTraceContext();
+        if (traceContext != null) {
+            out.writeByte(RpcConstants.EXTENSION_TRACE);
+            out.writeByte(TRACE_LENGTH);
+            out.writeLong(traceContext.getTraceIdHigh());
+            out.writeLong(traceContext.getTraceIdLow());
+            out.writeLong(traceContext.getSpanId());
+            out.writeLong(traceContext.getParentSpanId());
+            out.writeLong(traceContext.getRemoteNanos());
+        }
+        if (rpcMessage.getDeadlineNanos() != 0) {
+            //两端的nanoTime没有可比性，只传剩余时间；已经过期的写0，接收方直接丢弃
+            out.writeByte(RpcConstants.EXTENSION_DEADLINE);
+            out.writeByte(8);
+            out.writeLong(Math.max(0, Deadline.remainingNanos(rpcMessage.getDeadlineNanos())));
+        }
+        if (protocolVersion != 0) {
+            out.writeByte(RpcConstants.EXTENSION_PROTOCOL);
+            out.writeByte(1);
+            out.writeByte(protocolVersion);
+        }
+        String serviceName = writeService ? rpcMessage.getServiceName() : null;
+        if (serviceName != null) {
+            byte[] bytes = serviceName.getBytes(RpcConstants.DEFAULT_CHARSET);
+            //太长的服务名不写，网关退回反序列化消息体
+            if (bytes.length <= MAX_ENTRY_LENGTH) {
+                out.writeByte(RpcConstants.EXTENSION_SERVICE);
+                out.writeByte(bytes.length);
+                out.writeBytes(bytes);
+            }
+        }
+        if (!attachments.isEmpty()) {
+            out.writeByte(RpcConstants.EXTENSION_ATTACHMENTS);
+            out.writeByte(attachments.size() * 4);
+            for (int i = 0; i < attachments.size(); i++) {
+                out.writeInt((int) attachments.get(i).length());
+            }
+        }
+        int length = out.writerIndex() - lengthIndex - 2;
+        out.setShort(lengthIndex, length);
+        return length + 2;
+    }
+
+    /**
+     * 读取扩展字段并设置到rpcMessage中，返回读取的字节数(包括2字节的长度)
+     */
+    static int read(ByteBuf in, RpcMessage rpcMessage) {
+        int length = in.readUnsignedShort();
+        int end = in.readerIndex() + length;
+        while (in.readerIndex() < end) {
+            byte type = in.readByte();
+            int entryLength = in.readUnsignedByte();
+            int entryEnd = in.readerIndex() + entryLength;
+            if (type == RpcConstants.EXTENSION_TRACE && entryLength >= TRACE_LENGTH) {
+                TraceContext traceContext = new TraceContext(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+                traceContext.setRemoteNanos(in.readLong());
+                rpcMessage.setTraceContext(traceContext);
+            } else if (type == RpcConstants.EXTENSION_DEADLINE && entryLength >= 8) {
+                //换算成本地时间，之后在网络和排队中花掉的时间都会计入；0表示没有截止时间，需要避开
+                long deadlineNanos = System.nanoTime() + in.readLong();
+                rpcMessage.setDeadlineNanos(deadlineNanos == 0 ? 1 : deadlineNanos);
+            } else if (type == RpcConstants.EXTENSION_ATTACHMENTS) {
+                int[] attachmentLengths = new int[entryLength / 4];
+                for (int i = 0; i < attachmentLengths.length; i++) {
+                    attachmentLengths[i] = in.readInt();
+                    if (attachmentLengths[i] < 0 || attachmentLengths[i] > RpcConstants.MAX_ATTACHMENT_LENGTH) {
+                        throw new IllegalArgumentException("Illegal attachment length: " + attachmentLengths[i]);
+                    }
+                }
+                rpcMessage.setAttachmentLengths(attachmentLengths);
+            } else if (type == RpcConstants.EXTENSION_PROTOCOL && entryLength >= 1) {
+                rpcMessage.setProtocolVersion(in.readByte());
+            } else if (type == RpcConstants.EXTENSION_SERVICE) {
+                rpcMessage.setServiceName(in.toString(in.readerIndex(), entryLength, RpcConstants.DEFAULT_CHARSET));
+            }
+            in.readerIndex(entryEnd);
+        }
+        return length + 2;
+    }
+}
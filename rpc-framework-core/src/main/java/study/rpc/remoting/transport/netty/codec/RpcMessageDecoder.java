@@ -0,0 +1,371 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.limiter.AdaptiveConcurrencyLimiter;
+import study.rpc.metrics.RpcMetrics;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.serialize.Attachments;
+import study.rpc.serialize.Serializer;
+import study.rpc.trace.TraceContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 自定义协议的解码器，协议格式见RpcMessageEncoder
+ * LengthFieldBasedFrameDecoder按照消息头中的full length字段拆包，解决TCP粘包/半包问题
+ * 消息帧后面跟着的附件按消息头扩展字段中的长度切出来，不经过拷贝
+ * 连接使用紧凑协议时，不以魔数开头的消息按v2格式(见CompactProtocol)自己拆包
+ */
+@Slf4j
+public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
+    private static final Integer SUCCESS_CODE = RpcResponseCodeEnum.SUCCESS.getCode();
+
+    //透传模式：只解析消息头，消息体保留为字节数组，用于网关转发
+    private final boolean passThrough;
+    //正在接收附件的消息：消息帧已经读完，附件全部到达后再处理消息体
+    private RpcMessage pending;
+    private byte[] pendingBody;
+    //正在接收附件的消息是否是v2，以及v2请求的方法和请求编号
+    private boolean pendingCompact;
+    private CompactProtocol.MethodEntry pendingMethod;
+    private int pendingSequence;
+    //连接的紧凑协议状态，为null时只接受v1
+    private final CompactProtocol protocol;
+    private final int[] varIntLength = new int[1];
+
+    public RpcMessageDecoder() {
+        this(false);
+    }
+
+    public RpcMessageDecoder(boolean passThrough) {
+        this(passThrough, null);
+    }
+
+    public RpcMessageDecoder(CompactProtocol protocol) {
+        this(false, protocol);
+    }
+
+    private RpcMessageDecoder(boolean passThrough, CompactProtocol protocol) {
+        // lengthFieldOffset: 魔数4B + 版本1B，所以是5
+        // lengthFieldLength: full length占4B
+        // lengthAdjustment: full length包含整个消息，已经读过了9个字节，所以减去9
+        // initialBytesToStrip: 需要自己校验魔数和版本，所以不跳过任何字节
+        super(RpcConstants.MAX_FRAME_LENGTH, 5, 4, -9, 0);
+        this.passThrough = passThrough;
+        this.protocol = protocol;
+    }
+
+    public RpcMessageDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength,
+                             int lengthAdjustment, int initialBytesToStrip) {
+        super(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment, initialBytesToStrip);
+        this.passThrough = false;
+        this.protocol = null;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (pending != null) {
+            return decodeAttachments(in);
+        }
+        if (protocol != null && in.isReadable() && in.getByte(in.readerIndex()) != RpcConstants.MAGIC_NUMBER[0]) {
+            ByteBuf frame = readCompactFrame(in);
+            if (frame == null) {
+                return null;
+            }
+            Object rpcMessage;
+            try {
+                rpcMessage = decodeCompactFrame(frame);
+            } catch (Exception e) {
+                log.error("Decode frame error!", e);
+                throw e;
+            } finally {
+                frame.release();
+            }
+            return pending != null ? decodeAttachments(in) : rpcMessage;
+        }
+        Object decoded = super.decode(ctx, in);
+        if (decoded instanceof ByteBuf) {
+            ByteBuf frame = (ByteBuf) decoded;
+            if (frame.readableBytes() >= RpcConstants.TOTAL_LENGTH) {
+                Object rpcMessage;
+                try {
+                    rpcMessage = decodeFrame(frame);
+                } catch (Exception e) {
+                    log.error("Decode frame error!", e);
+                    throw e;
+                } finally {
+                    frame.release();
+                }
+                //附件可能已经和消息帧一起到达
+                return pending != null ? decodeAttachments(in) : rpcMessage;
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * 从接收缓冲区中切出附件，不拷贝；全部到达后处理消息体并返回消息
+     */
+    private Object decodeAttachments(ByteBuf in) {
+        int[] attachmentLengths = pending.getAttachmentLengths();
+        List<RpcAttachment> attachments = pending.getAttachments();
+        while (attachments.size() < attachmentLengths.length) {
+            int length = attachmentLengths[attachments.size()];
+            if (in.readableBytes() < length) {
+                return null;
+            }
+            attachments.add(RpcAttachment.wrap(in.readRetainedSlice(length)));
+        }
+        RpcMessage rpcMessage = pending;
+        byte[] body = pendingBody;
+        CompactProtocol.MethodEntry method = pendingMethod;
+        pending = null;
+        pendingBody = null;
+        pendingMethod = null;
+        setCumulator(MERGE_CUMULATOR);
+        boolean decoded;
+        try {
+            decoded = decodeBody(rpcMessage, body, pendingCompact, method, pendingSequence);
+        } catch (RuntimeException e) {
+            log.error("Decode frame error!", e);
+            RpcAttachment.closeAll(attachments);
+            throw e;
+        }
+        if (!decoded) {
+            RpcAttachment.closeAll(attachments);
+            return null;
+        }
+        return rpcMessage;
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        //连接在附件传输过程中断开，释放已经收到的部分
+        if (pending != null) {
+            RpcAttachment.closeAll(pending.getAttachments());
+            pending = null;
+            pendingBody = null;
+            pendingMethod = null;
+        }
+    }
+
+    /**
+     * v2消息：1字节类型 + varint长度，数据不完整时返回null
+     */
+    private ByteBuf readCompactFrame(ByteBuf in) {
+        int length = CompactProtocol.peekVarInt(in, in.readerIndex() + 1, varIntLength);
+        if (length < 0) {
+            return null;
+        }
+        if (length > RpcConstants.MAX_FRAME_LENGTH) {
+            throw new TooLongFrameException("Adjusted frame length exceeds " + RpcConstants.MAX_FRAME_LENGTH + ": " + length);
+        }
+        int frameLength = 1 + varIntLength[0] + length;
+        if (in.readableBytes() < frameLength) {
+            return null;
+        }
+        return in.readRetainedSlice(frameLength);
+    }
+
+    private Object decodeCompactFrame(ByteBuf in) {
+        int flags = in.readUnsignedByte();
+        CompactProtocol.readVarInt(in);
+        byte messageType = (byte) (flags & CompactProtocol.TYPE_MASK);
+        protocol.readCodec(flags, in);
+        RpcMessage rpcMessage = new RpcMessage();
+        rpcMessage.setMessageType(messageType);
+        rpcMessage.setCodec(protocol.getInboundCodec());
+        rpcMessage.setCompress(protocol.getInboundCompress());
+        if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+            rpcMessage.setData(RpcConstants.PING);
+            return rpcMessage;
+        }
+        if (messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+            rpcMessage.setData(RpcConstants.PONG);
+            return rpcMessage;
+        }
+        //客户端只接收响应，服务端只接收请求
+        byte expectedType = protocol.isClient() ? RpcConstants.RESPONSE_TYPE : RpcConstants.REQUEST_TYPE;
+        if (messageType != expectedType) {
+            throw new CorruptedFrameException("unexpected compact message type: " + messageType);
+        }
+        int sequence = CompactProtocol.readLength(in, Integer.MAX_VALUE);
+        CompactProtocol.MethodEntry method = null;
+        if (messageType == RpcConstants.REQUEST_TYPE) {
+            method = protocol.readMethod(in);
+            rpcMessage.setServiceName(method.serviceName);
+        }
+        if ((flags & CompactProtocol.FLAG_EXTENSIONS) != 0) {
+            HeaderExtensions.read(in, rpcMessage);
+        }
+        byte[] bs = new byte[in.readableBytes()];
+        in.readBytes(bs);
+        return finishFrame(rpcMessage, bs, true, method, sequence);
+    }
+
+    private Object decodeFrame(ByteBuf in) {
+        //必须按顺序读取ByteBuf
+        checkMagicNumber(in);
+        checkVersion(in);
+        int fullLength = in.readInt();
+        byte rawMessageType = in.readByte();
+        byte messageType = (byte) (rawMessageType & ~RpcConstants.HEADER_EXTENSION_FLAG);
+        byte codecType = in.readByte();
+        byte compressType = in.readByte();
+        int requestId = in.readInt();
+        RpcMessage rpcMessage = new RpcMessage();
+        rpcMessage.setCodec(codecType);
+        rpcMessage.setRequestId(requestId);
+        rpcMessage.setMessageType(messageType);
+        rpcMessage.setCompress(compressType);
+        int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
+        //心跳也可能带着扩展字段(紧凑协议的协商)
+        if ((rawMessageType & RpcConstants.HEADER_EXTENSION_FLAG) != 0) {
+            bodyLength -= HeaderExtensions.read(in, rpcMessage);
+        }
+        if (protocol != null) {
+            protocol.afterV1Frame(rpcMessage.getProtocolVersion(), messageType);
+        }
+        if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+            rpcMessage.setData(RpcConstants.PING);
+            return rpcMessage;
+        }
+        if (messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
+            rpcMessage.setData(RpcConstants.PONG);
+            return rpcMessage;
+        }
+        if (bodyLength > 0) {
+            byte[] bs = new byte[bodyLength];
+            in.readBytes(bs);
+            return finishFrame(rpcMessage, bs, false, null, 0);
+        }
+        return rpcMessage;
+    }
+
+    private RpcMessage finishFrame(RpcMessage rpcMessage, byte[] bs, boolean compact,
+                                   CompactProtocol.MethodEntry method, int sequence) {
+        if (rpcMessage.getAttachmentLengths() != null) {
+            //附件跟在消息帧后面，大附件会分很多次到达，期间用组合缓冲区累积，避免反复扩容拷贝
+            rpcMessage.setAttachments(new ArrayList<>(rpcMessage.getAttachmentLengths().length));
+            pending = rpcMessage;
+            pendingBody = bs;
+            pendingCompact = compact;
+            pendingMethod = method;
+            pendingSequence = sequence;
+            setCumulator(COMPOSITE_CUMULATOR);
+            return null;
+        }
+        return decodeBody(rpcMessage, bs, compact, method, sequence) ? rpcMessage : null;
+    }
+
+    /**
+     * compact为true时是v2消息：请求的消息体只有参数，其他字段来自方法字典；响应的requestId来自请求编号
+     * 返回false表示丢弃这条消息
+     */
+    private boolean decodeBody(RpcMessage rpcMessage, byte[] bs, boolean compact,
+                            CompactProtocol.MethodEntry method, int sequence) {
+        if (passThrough) {
+            rpcMessage.setSerializedBody(bs);
+            return true;
+        }
+        String responseRequestId = null;
+        if (compact && rpcMessage.getMessageType() == RpcConstants.RESPONSE_TYPE) {
+            responseRequestId = protocol.completeSequence(sequence);
+            if (responseRequestId == null) {
+                //请求已经超时或者编号超过上限被丢掉，调用方不再等待
+                log.debug("response of forgotten sequence dropped: [{}]", sequence);
+                return false;
+            }
+        }
+        String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
+        log.debug("codec name: [{}] ", codecName);
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(codecName);
+        TraceContext traceContext = rpcMessage.getTraceContext();
+        //并发限制也需要receiveNanos计算包括排队在内的延迟
+        boolean timed = RpcMetrics.ENABLED || AdaptiveConcurrencyLimiter.ENABLED || traceContext != null;
+        long begin = timed ? System.nanoTime() : 0;
+        List<RpcAttachment> attachments = rpcMessage.getAttachments();
+        if (attachments != null) {
+            Attachments.beginRead(attachments);
+        }
+        try {
+            if (rpcMessage.getMessageType() == RpcConstants.REQUEST_TYPE) {
+                RpcRequest rpcRequest = compact
+                        ? method.toRpcRequest(CompactProtocol.sequenceRequestId(sequence),
+                        bs.length == 0 ? null : serializer.deserialize(bs, Object[].class))
+                        : serializer.deserialize(bs, RpcRequest.class);
+                rpcMessage.setData(rpcRequest);
+                if (timed) {
+                    long end = System.nanoTime();
+                    //服务名和方法名来自客户端，由NettyRpcServerHandler确认方法存在后再记入统计
+                    rpcMessage.setDecodeNanos(end - begin);
+                    rpcMessage.setReceiveNanos(end);
+                    if (traceContext != null) {
+                        traceContext.setDecodeNanos(end - begin);
+                        traceContext.setReceiveNanos(end);
+                        traceContext.setServiceName(rpcRequest.getRpcServiceName());
+                        traceContext.setMethodName(rpcRequest.getMethodName());
+                    }
+                }
+            } else {
+                RpcResponse<?> rpcResponse = serializer.deserialize(bs, RpcResponse.class);
+                if (compact) {
+                    rpcResponse.setRequestId(responseRequestId);
+                    if (rpcResponse.getMessage() == null && SUCCESS_CODE.equals(rpcResponse.getCode())) {
+                        rpcResponse.setMessage(RpcResponseCodeEnum.SUCCESS.getMessage());
+                    }
+                }
+                rpcMessage.setData(rpcResponse);
+                if (timed) {
+                    long nanos = System.nanoTime() - begin;
+                    if (RpcMetrics.ENABLED) {
+                        RpcMetrics.responseCodec(RpcMetrics.Side.CONSUMER).recordSerialization(nanos);
+                    }
+                    if (traceContext != null) {
+                        traceContext.setDecodeNanos(nanos);
+                    }
+                }
+            }
+        } finally {
+            if (attachments != null) {
+                Attachments.endRead();
+            }
+        }
+        return true;
+    }
+
+    private void checkVersion(ByteBuf in) {
+        byte version = in.readByte();
+        if (version != RpcConstants.VERSION) {
+            throw new RuntimeException("version isn't compatible" + version);
+        }
+    }
+
+    private void checkMagicNumber(ByteBuf in) {
+        int len = RpcConstants.MAGIC_NUMBER.length;
+        //逐个字节比较，只有魔数不对时才拷贝出来用于报错
+        for (int i = 0; i < len; i++) {
+            if (in.getByte(in.readerIndex() + i) != RpcConstants.MAGIC_NUMBER[i]) {
+                byte[] tmp = new byte[len];
+                in.readBytes(tmp);
+                throw new IllegalArgumentException("Unknown magic code: " + Arrays.toString(tmp));
+            }
+        }
+        in.skipBytes(len);
+    }
+}
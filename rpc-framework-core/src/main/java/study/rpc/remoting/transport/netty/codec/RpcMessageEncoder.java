@@ -0,0 +1,269 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToByteEncoder;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.metrics.RpcMetrics;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.serialize.Attachments;
+import study.rpc.serialize.Serializer;
+import study.rpc.trace.TraceContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自定义协议的编码器，消息头固定16字节：
+ * <pre>
+ *   0     1     2     3     4        5     6     7     8         9          10      11     12  13  14   15 16
+ *   +-----+-----+-----+-----+--------+----+----+----+------+-----------+-------+----- --+-----+-----+-------+
+ *   |   magic   code        |version | full length         | messageType| codec|compress|    RequestId       |
+ *   +-----------------------+--------+---------------------+-----------+-----------+-----------+------------+
+ *   |                                                                                                       |
+ *   |                                         body                                                          |
+ *   +-------------------------------------------------------------------------------------------------------+
+ * </pre>
+ * 4B magic code（魔数）1B version（版本）4B full length（消息长度）1B messageType（消息类型）
+ * 1B codec（序列化类型）1B compress（压缩类型）4B requestId（请求的Id）
+ * 消息中的RpcAttachment不写进body，长度记在消息头扩展字段中，内容跟在消息帧后面原样写出
+ * 连接协商使用紧凑协议后，能用v2表示的消息按CompactProtocol中的格式编码
+ */
+@Slf4j
+public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
+    //消息的requestId在编码时分配，同一个JVM中递增
+    private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
+    private static final Integer SUCCESS_CODE = RpcResponseCodeEnum.SUCCESS.getCode();
+
+    //连接的紧凑协议状态，为null时只使用v1
+    private final CompactProtocol protocol;
+
+    public RpcMessageEncoder() {
+        this(null);
+    }
+
+    public RpcMessageEncoder(CompactProtocol protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * 消息帧写出后紧接着按顺序写出附件，最后一个附件写完时整个消息才算写完
+     */
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof RpcMessage)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        //当前消息带出的附件，编码时由序列化器收集；共享内存连接上编码器会被多个线程同时调用，不能放在字段里
+        List<RpcAttachment> attachments = new ArrayList<>(0);
+        ByteBuf buf = ctx.alloc().ioBuffer();
+        try {
+            encode((RpcMessage) msg, buf, attachments);
+        } catch (Exception e) {
+            //什么都没有写出，发送方要通过promise知道失败，不能当作已经发出
+            buf.release();
+            log.error("Encode request error!", e);
+            promise.tryFailure(new EncoderException(e));
+            return;
+        }
+        if (attachments.isEmpty()) {
+            ctx.write(buf, promise);
+            return;
+        }
+        ctx.write(buf, ctx.voidPromise());
+        int last = attachments.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            ctx.write(attachments.get(i).toOutbound(), i == last ? promise : ctx.voidPromise());
+        }
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) {
+        encode(rpcMessage, out, new ArrayList<>(0));
+    }
+
+    private void encode(RpcMessage rpcMessage, ByteBuf out, List<RpcAttachment> attachments) {
+        byte messageType = rpcMessage.getMessageType();
+        boolean heartbeat = messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE
+                || messageType == RpcConstants.HEARTBEAT_RESPONSE_TYPE;
+        boolean compact = protocol != null && protocol.isOutboundCompact() && canEncodeCompact(rpcMessage, heartbeat);
+        //消息体先序列化，序列化时才知道带了哪些附件，附件长度要写在消息头扩展字段中
+        byte[] bodyBytes = null;
+        //心跳消息没有body
+        if (rpcMessage.getSerializedBody() != null) {
+            //透传的消息体已经是序列化好的字节，原样写出，附件也原样转发
+            bodyBytes = rpcMessage.getSerializedBody();
+            if (rpcMessage.getAttachments() != null) {
+                attachments.addAll(rpcMessage.getAttachments());
+            }
+        } else if (!heartbeat) {
+            Object data = compact ? compactData(rpcMessage.getData()) : rpcMessage.getData();
+            //v2请求没有参数时没有消息体
+            if (data != null || !compact) {
+                bodyBytes = serialize(rpcMessage, data, attachments);
+            }
+        }
+        if (compact) {
+            encodeCompact(rpcMessage, bodyBytes, attachments, out);
+        } else {
+            encodeV1(rpcMessage, bodyBytes, attachments, out);
+        }
+    }
+
+    private void encodeV1(RpcMessage rpcMessage, byte[] bodyBytes, List<RpcAttachment> attachments, ByteBuf out) {
+        byte protocolVersion = protocol != null ? protocol.beforeV1Frame() : 0;
+        out.writeBytes(RpcConstants.MAGIC_NUMBER);
+        out.writeByte(RpcConstants.VERSION);
+        //先跳过full length的4个字节，等body写完再回填
+        out.writerIndex(out.writerIndex() + 4);
+        boolean hasExtensions = HeaderExtensions.hasExtensions(rpcMessage, attachments, protocolVersion, true);
+        byte messageType = rpcMessage.getMessageType();
+        out.writeByte(hasExtensions ? messageType | RpcConstants.HEADER_EXTENSION_FLAG : messageType);
+        out.writeByte(rpcMessage.getCodec());
+        out.writeByte(rpcMessage.getCompress());
+        out.writeInt(ATOMIC_INTEGER.getAndIncrement());
+        int fullLength = RpcConstants.HEAD_LENGTH;
+        if (hasExtensions) {
+            fullLength += HeaderExtensions.write(rpcMessage, attachments, protocolVersion, true, out);
+        }
+        if (bodyBytes != null) {
+            out.writeBytes(bodyBytes);
+            fullLength += bodyBytes.length;
+        }
+        //回到full length的位置写入消息总长度
+        int writeIndex = out.writerIndex();
+        out.writerIndex(writeIndex - fullLength + RpcConstants.MAGIC_NUMBER.length + 1);
+        out.writeInt(fullLength);
+        out.writerIndex(writeIndex);
+    }
+
+    /**
+     * v2：长度是varint，要先写完后面的内容才知道占几个字节，所以长度之后的部分先写到临时缓冲区
+     */
+    private void encodeCompact(RpcMessage rpcMessage, byte[] bodyBytes, List<RpcAttachment> attachments, ByteBuf out) {
+        byte messageType = rpcMessage.getMessageType();
+        boolean hasExtensions = HeaderExtensions.hasExtensions(rpcMessage, attachments, (byte) 0, false);
+        int flags = messageType | protocol.codecFlag(rpcMessage.getCodec(), rpcMessage.getCompress());
+        if (hasExtensions) {
+            flags |= CompactProtocol.FLAG_EXTENSIONS;
+        }
+        ByteBuf header = out.alloc().buffer(64);
+        try {
+            if ((flags & CompactProtocol.FLAG_CODEC) != 0) {
+                header.writeByte(rpcMessage.getCodec());
+                header.writeByte(rpcMessage.getCompress());
+            }
+            if (messageType == RpcConstants.REQUEST_TYPE) {
+                RpcRequest rpcRequest = (RpcRequest) rpcMessage.getData();
+                CompactProtocol.writeVarInt(header, protocol.nextSequence(rpcRequest.getRequestId()));
+                protocol.writeMethod(rpcRequest, header);
+            } else if (messageType == RpcConstants.RESPONSE_TYPE) {
+                RpcResponse<?> rpcResponse = (RpcResponse<?>) rpcMessage.getData();
+                CompactProtocol.writeVarInt(header, CompactProtocol.parseSequence(rpcResponse.getRequestId()));
+            }
+            if (hasExtensions) {
+                HeaderExtensions.write(rpcMessage, attachments, (byte) 0, false, header);
+            }
+            int bodyLength = bodyBytes == null ? 0 : bodyBytes.length;
+            out.writeByte(flags);
+            CompactProtocol.writeVarInt(out, header.readableBytes() + bodyLength);
+            out.writeBytes(header);
+            if (bodyBytes != null) {
+                out.writeBytes(bodyBytes);
+            }
+        } finally {
+            header.release();
+        }
+    }
+
+    /**
+     * 客户端只发请求、服务端只发响应时才用v2；透传的消息体和不是v2请求的响应(协商之前发出的请求)仍然用v1
+     */
+    private boolean canEncodeCompact(RpcMessage rpcMessage, boolean heartbeat) {
+        if (heartbeat) {
+            return true;
+        }
+        if (rpcMessage.getSerializedBody() != null) {
+            return false;
+        }
+        Object data = rpcMessage.getData();
+        if (rpcMessage.getMessageType() == RpcConstants.REQUEST_TYPE) {
+            if (!protocol.isClient() || !(data instanceof RpcRequest)) {
+                return false;
+            }
+            RpcRequest rpcRequest = (RpcRequest) data;
+            //接收方按Object[]反序列化参数；字典满了之后新的方法用v1，不在每个请求中重复带着定义
+            return rpcRequest.getRequestId() != null
+                    && (rpcRequest.getParameters() == null || rpcRequest.getParameters().getClass() == Object[].class)
+                    && protocol.canReferenceMethod(rpcRequest);
+        }
+        return rpcMessage.getMessageType() == RpcConstants.RESPONSE_TYPE && !protocol.isClient()
+                && data instanceof RpcResponse
+                && CompactProtocol.parseSequence(((RpcResponse<?>) data).getRequestId()) >= 0;
+    }
+
+    /**
+     * v2的消息体：请求中其他字段在消息头中，只序列化参数；响应去掉requestId和默认的message
+     */
+    private static Object compactData(Object data) {
+        if (data instanceof RpcRequest) {
+            return ((RpcRequest) data).getParameters();
+        }
+        RpcResponse<?> rpcResponse = (RpcResponse<?>) data;
+        String message = rpcResponse.getMessage();
+        if (rpcResponse.getSerializedPrefix() == null && SUCCESS_CODE.equals(rpcResponse.getCode())
+                && RpcResponseCodeEnum.SUCCESS.getMessage().equals(message)) {
+            message = null;
+        }
+        return new RpcResponse<>(null, rpcResponse.getCode(), message, rpcResponse.getData(),
+                rpcResponse.getSerializedPrefix());
+    }
+
+    private byte[] serialize(RpcMessage rpcMessage, Object data, List<RpcAttachment> attachments) {
+        String codecName = SerializationTypeEnum.getName(rpcMessage.getCodec());
+        log.debug("codec name: [{}] ", codecName);
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(codecName);
+        TraceContext traceContext = rpcMessage.getTraceContext();
+        boolean timed = RpcMetrics.ENABLED || traceContext != null;
+        long begin = timed ? System.nanoTime() : 0;
+        byte[] bodyBytes;
+        Attachments.beginWrite(attachments);
+        try {
+            bodyBytes = serializer.serialize(data);
+        } finally {
+            Attachments.endWrite();
+        }
+        if (timed) {
+            long nanos = System.nanoTime() - begin;
+            if (RpcMetrics.ENABLED) {
+                recordSerialization(rpcMessage.getData(), nanos);
+            }
+            if (traceContext != null) {
+                traceContext.setEncodeNanos(nanos);
+            }
+        }
+        return bodyBytes;
+    }
+
+    //请求在客户端编码，响应在服务端编码
+    private void recordSerialization(Object data, long nanos) {
+        if (data instanceof RpcRequest) {
+            RpcRequest rpcRequest = (RpcRequest) data;
+            RpcMetrics.consumer(rpcRequest.getRpcServiceName(), rpcRequest.getMethodName()).recordSerialization(nanos);
+        } else {
+            RpcMetrics.responseCodec(RpcMetrics.Side.PROVIDER).recordSerialization(nanos);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package study.rpc.remoting.transport.netty.gateway;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.config.RpcConfig;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.registry.ServiceDiscovery;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+import study.rpc.serialize.Attachments;
+import study.rpc.serialize.Serializer;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网关的下游连接处理器，每个客户端连接一个实例，所有方法都在这个连接的EventLoop中执行
+ */
+@Slf4j
+final class GatewayHandler extends ChannelInboundHandlerAdapter {
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    private final ServiceDiscovery serviceDiscovery;
+    private final Bootstrap upstreamBootstrap;
+    //这个客户端连接对应的上游连接，只在EventLoop中访问，不需要同步
+    private final Map<InetSocketAddress, ChannelFuture> upstreams = new HashMap<>();
+
+    GatewayHandler(ServiceDiscovery serviceDiscovery, Bootstrap upstreamBootstrap) {
+        this.serviceDiscovery = serviceDiscovery;
+        this.upstreamBootstrap = upstreamBootstrap;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        try {
+            if (!(msg instanceof RpcMessage)) {
+                return;
+            }
+            RpcMessage rpcMessage = (RpcMessage) msg;
+            if (rpcMessage.getMessageType() == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+                //客户端的心跳由网关直接回复
+                RpcMessage pong = RpcMessage.builder().codec(SerializationTypeEnum.KRYO.getCode())
+                        .messageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE).data(RpcConstants.PONG).build();
+                ctx.writeAndFlush(pong).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            } else if (rpcMessage.getMessageType() == RpcConstants.REQUEST_TYPE && rpcMessage.getSerializedBody() != null) {
+                route(ctx, rpcMessage);
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void route(ChannelHandlerContext ctx, RpcMessage rpcMessage) {
+        String serviceName = rpcMessage.getServiceName();
+        if (serviceName == null) {
+            //旧版本客户端的请求消息头中没有服务名，只能反序列化消息体
+            serviceName = deserializeRequest(rpcMessage).getRpcServiceName();
+        }
+        InetSocketAddress address;
+        try {
+            //只用服务名做负载均衡，一致性哈希不考虑参数
+            RpcRequest routeRequest = RpcRequest.builder().interfaceName(serviceName).group("").version("")
+                    .parameters(NO_PARAMETERS).build();
+            address = serviceDiscovery.lookupService(routeRequest);
+        } catch (RuntimeException e) {
+            log.warn("no provider for service [{}]", serviceName, e);
+            replyFailure(ctx.channel(), rpcMessage);
+            return;
+        }
+        ChannelFuture upstream = upstreams.get(address);
+        if (upstream == null || upstream.isDone() && !upstream.channel().isActive()) {
+            upstream = connect(ctx.channel(), address);
+        }
+        if (upstream.isDone()) {
+            forward(ctx.channel(), upstream, rpcMessage);
+        } else {
+            //监听器按添加顺序执行，同一个上游连接上的请求顺序不变
+            upstream.addListener((ChannelFutureListener) f -> forward(ctx.channel(), f, rpcMessage));
+        }
+    }
+
+    /**
+     * 请求带的附件由编码器原样转发，转发完成或失败后释放
+     */
+    private void forward(Channel downstream, ChannelFuture upstream, RpcMessage rpcMessage) {
+        if (upstream.isSuccess()) {
+            upstream.channel().writeAndFlush(rpcMessage).addListener((ChannelFutureListener) f -> {
+                if (!f.isSuccess()) {
+                    replyFailure(downstream, rpcMessage);
+                } else {
+                    RpcAttachment.closeAll(rpcMessage.getAttachments());
+                }
+            });
+        } else {
+            replyFailure(downstream, rpcMessage);
+        }
+    }
+
+    private ChannelFuture connect(Channel downstream, InetSocketAddress address) {
+        int heartbeatIntervalSeconds = RpcConfig.get().getHeartbeatIntervalSeconds();
+        ChannelFuture upstream = upstreamBootstrap.clone(downstream.eventLoop())
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new IdleStateHandler(0, heartbeatIntervalSeconds, 0, TimeUnit.SECONDS));
+                        p.addLast(new RpcMessageEncoder());
+                        p.addLast(new RpcMessageDecoder(true));
+                        p.addLast(new UpstreamHandler(downstream));
+                    }
+                }).connect(address);
+        upstreams.put(address, upstream);
+        upstream.channel().closeFuture().addListener(f -> upstreams.remove(address, upstream));
+        log.info("gateway connected [{}] for [{}]", address, downstream.remoteAddress());
+        return upstream;
+    }
+
+    //失败的响应需要客户端的requestId，只有这时才反序列化请求
+    private static void replyFailure(Channel downstream, RpcMessage request) {
+        RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
+        try {
+            rpcResponse.setRequestId(deserializeRequest(request).getRequestId());
+        } finally {
+            RpcAttachment.closeAll(request.getAttachments());
+        }
+        RpcMessage rpcMessage = RpcMessage.builder().codec(request.getCodec())
+                .messageType(RpcConstants.RESPONSE_TYPE).data(rpcResponse).build();
+        downstream.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
+
+    private static RpcRequest deserializeRequest(RpcMessage rpcMessage) {
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class)
+                .getExtension(SerializationTypeEnum.getName(rpcMessage.getCodec()));
+        //消息体中的附件只是下标，需要对应到收到的附件上
+        Attachments.beginRead(rpcMessage.getAttachments());
+        try {
+            return serializer.deserialize(rpcMessage.getSerializedBody(), RpcRequest.class);
+        } finally {
+            Attachments.endRead();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        //客户端断开后它的上游连接也没有用了
+        for (ChannelFuture upstream : upstreams.values()) {
+            upstream.channel().close();
+        }
+        upstreams.clear();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            if (((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+                log.info("idle check happen, so close the connection");
+                ctx.close();
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("gateway catch exception", cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,85 @@
+package study.rpc.remoting.transport.netty.gateway;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.config.RpcConfig;
+import study.rpc.enums.ServiceRegistryEnum;
+import study.rpc.extension.ExtensionLoader;
+import study.rpc.registry.ServiceDiscovery;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 透传网关：客户端把网关当作服务端连接，网关只解析消息头，按消息头中的服务名通过注册中心和负载均衡选出服务端，
+ * 把序列化好的消息体原样转发过去，网关不需要服务的接口类，也不做反序列化和重新序列化
+ * <p>
+ * 每个客户端连接对每个服务端单独建立一条上游连接，响应按连接原样转发回去，不需要解析消息体中的requestId来对应请求
+ */
+@Slf4j
+public class NettyRpcGateway {
+    private final int port;
+    private final ServiceDiscovery serviceDiscovery;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+
+    public NettyRpcGateway(int port) {
+        this.port = port;
+        this.serviceDiscovery = ExtensionLoader.getExtensionLoader(ServiceDiscovery.class).getExtension(ServiceRegistryEnum.ZK.getName());
+    }
+
+    /**
+     * 绑定端口后立即返回，调用close()关闭网关
+     */
+    public void start() throws InterruptedException {
+        RpcConfig config = RpcConfig.get();
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup();
+        //上游连接使用下游连接所在的EventLoop，转发不需要切换线程，这里只设置公共参数
+        Bootstrap upstreamBootstrap = new Bootstrap()
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMs())
+                .option(ChannelOption.TCP_NODELAY, true);
+        int idleTimeoutSeconds = config.getServerIdleTimeoutSeconds();
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.SO_BACKLOG, 128)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new IdleStateHandler(idleTimeoutSeconds, 0, 0, TimeUnit.SECONDS));
+                        p.addLast(new RpcMessageEncoder());
+                        p.addLast(new RpcMessageDecoder(true));
+                        p.addLast(new GatewayHandler(serviceDiscovery, upstreamBootstrap));
+                    }
+                });
+        serverChannel = b.bind(port).sync().channel();
+        log.info("Netty gateway started on port [{}]", port);
+    }
+
+    public void close() {
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        log.info("shutdown gateway bossGroup and workerGroup");
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+    }
+}
@@ -0,0 +1,58 @@
+package study.rpc.remoting.transport.netty.gateway;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+
+import java.util.List;
+
+/**
+ * 网关到服务端的上游连接处理器：响应原样转发给对应的客户端连接，空闲时向服务端发送心跳
+ */
+@Slf4j
+final class UpstreamHandler extends ChannelInboundHandlerAdapter {
+    private final Channel downstream;
+
+    UpstreamHandler(Channel downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof RpcMessage && ((RpcMessage) msg).getMessageType() == RpcConstants.RESPONSE_TYPE) {
+            List<RpcAttachment> attachments = ((RpcMessage) msg).getAttachments();
+            ChannelFuture future = downstream.writeAndFlush(msg);
+            if (attachments != null) {
+                future.addListener(f -> RpcAttachment.closeAll(attachments));
+            }
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            if (((IdleStateEvent) evt).state() == IdleState.WRITER_IDLE) {
+                RpcMessage ping = RpcMessage.builder().codec(SerializationTypeEnum.KRYO.getCode())
+                        .messageType(RpcConstants.HEARTBEAT_REQUEST_TYPE).data(RpcConstants.PING).build();
+                ctx.writeAndFlush(ping).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("gateway upstream catch exception", cause);
+        ctx.close();
+    }
+}
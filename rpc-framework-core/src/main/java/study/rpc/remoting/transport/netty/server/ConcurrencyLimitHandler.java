@@ -0,0 +1,49 @@
+package study.rpc.remoting.transport.netty.server;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.limiter.AdaptiveConcurrencyLimiter;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+
+/**
+ * 在IO线程上做并发限制：超过限制的请求直接返回OVERLOADED，不提交给业务线程池
+ * 通过的请求由NettyRpcServerHandler处理完后归还名额
+ */
+@Slf4j
+public class ConcurrencyLimitHandler extends ChannelInboundHandlerAdapter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitHandler(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof RpcMessage && ((RpcMessage) msg).getMessageType() == RpcConstants.REQUEST_TYPE
+                && !limiter.tryAcquire()) {
+            RpcMessage request = (RpcMessage) msg;
+            RpcRequest rpcRequest = (RpcRequest) request.getData();
+            log.debug("server overloaded, reject request: [{}]", rpcRequest.getRequestId());
+            //请求不会被处理，附件持有的接收缓冲区切片在这里释放
+            RpcAttachment.closeAll(request.getAttachments());
+            RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.OVERLOADED);
+            rpcResponse.setRequestId(rpcRequest.getRequestId());
+            RpcMessage rpcMessage = RpcMessage.builder()
+                    .codec(SerializationTypeEnum.KRYO.getCode())
+                    .messageType(RpcConstants.RESPONSE_TYPE)
+                    .data(rpcResponse).build();
+            ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
@@ -0,0 +1,308 @@
+package study.rpc.remoting.transport.netty.server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.logging.LogLevel;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import study.rpc.config.RpcConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.limiter.AdaptiveConcurrencyLimiter;
+import study.rpc.provider.ServiceProvider;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.registry.zk.util.CuratorUtils;
+import study.rpc.remoting.transport.netty.codec.CompactProtocol;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+import study.rpc.remoting.transport.shm.ShmServer;
+import study.rpc.remoting.transport.shm.ShmTransport;
+import study.rpc.remoting.transport.uds.DomainSocketTransport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端：接收客户端消息，根据消息调用相应的方法，然后返回结果给客户端
+ */
+@Slf4j
+public class NettyRpcServer {
+
+    public static final int PORT = 9998;
+
+    private final ServiceProvider serviceProvider = SingletonFactory.getInstance(ZkServiceProviderImpl.class);
+    //服务端监听的地址，同时也是注册到Zookeeper的地址
+    private final InetSocketAddress serverAddress;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    //业务处理线程池，避免反射调用阻塞IO线程
+    private DefaultEventExecutorGroup serviceHandlerGroup;
+    private Channel serverChannel;
+    //SO_REUSEPORT模式下的多个监听socket，没有开启时为空
+    private final List<Reactor> reactors = new ArrayList<>();
+    //共享内存服务端，没有开启时为null
+    private ShmServer shmServer;
+    //Unix域套接字的监听路径和线程，没有开启时为null
+    private final String domainSocketPath;
+    private EventLoopGroup domainSocketBossGroup;
+    private EventLoopGroup domainSocketWorkerGroup;
+    private Channel domainSocketChannel;
+    //并发限制，没有开启时为null
+    private final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.fromSystemProperties();
+    //因为已经过了截止时间被丢弃的请求数
+    private final LongAdder expiredRequests = new LongAdder();
+    //连接空闲超时，启动时从配置快照读取
+    private final int idleTimeoutSeconds = RpcConfig.get().getServerIdleTimeoutSeconds();
+
+    public NettyRpcServer() throws UnknownHostException {
+        this(new InetSocketAddress(InetAddress.getLocalHost().getHostAddress(), PORT));
+    }
+
+    public NettyRpcServer(InetSocketAddress serverAddress) {
+        this.serverAddress = serverAddress;
+        this.domainSocketPath = DomainSocketTransport.ENABLED ? DomainSocketTransport.socketPath(serverAddress.getPort()) : null;
+    }
+
+    /**
+     * 发布服务：本地立即可用，注册中心的注册在后台并行进行，需要等待注册完成时使用返回的future
+     */
+    public CompletableFuture<Void> registerService(RpcServiceConfig rpcServiceConfig) {
+        return serviceProvider.publishService(rpcServiceConfig, serverAddress, domainSocketPath);
+    }
+
+    /**
+     * 绑定端口后立即返回，调用close()关闭服务端
+     */
+    public void start() throws InterruptedException {
+        int reactorCount = RpcConfig.get().getServerReactors();
+        if (reactorCount > 1 && !Epoll.isAvailable()) {
+            log.warn("SO_REUSEPORT requires native epoll, fall back to a single acceptor: {}", Epoll.unavailabilityCause().toString());
+            reactorCount = 1;
+        }
+        if (reactorCount > 1) {
+            startReactors(reactorCount);
+        } else {
+            startAcceptor();
+        }
+        if (domainSocketPath != null) {
+            startDomainSocket();
+        }
+        if (ShmTransport.ENABLED) {
+            //同一台机器上的客户端通过共享内存连接，连接的生命周期跟随客户端，不需要空闲检测
+            shmServer = new ShmServer(serverAddress.getPort(), new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    //共享内存连接的读写不在同一个线程上，不使用有连接状态的紧凑协议
+                    initPipeline(ch.pipeline(), serviceHandlerGroup, null);
+                }
+            });
+            try {
+                shmServer.start();
+            } catch (IOException e) {
+                log.warn("start shm server failed, only tcp is available", e);
+                shmServer = null;
+            }
+        }
+    }
+
+    //一个accept线程 + 共享的IO线程池和业务线程池
+    private void startAcceptor() throws InterruptedException {
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup();
+        serviceHandlerGroup = new DefaultEventExecutorGroup(
+                RpcConfig.get().getServiceHandlerThreads(),
+                new DefaultThreadFactory("service-handler-group")
+        );
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                // TCP默认开启了Nagle算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY参数的作用就是控制是否启用Nagle算法。
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                // 是否开启TCP底层心跳机制
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                //表示系统用于临时存放已完成三次握手的请求的队列的最大长度
+                .option(ChannelOption.SO_BACKLOG, 128)
+                .handler(new LoggingHandler(LogLevel.INFO))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        // 一段时间(默认30秒)之内没有收到客户端请求的话就关闭连接
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new IdleStateHandler(idleTimeoutSeconds, 0, 0, TimeUnit.SECONDS));
+                        initPipeline(p, serviceHandlerGroup, CompactProtocol.forServer());
+                    }
+                });
+        serverChannel = b.bind(serverAddress.getPort()).sync().channel();
+        log.info("Netty server started on [{}]", serverAddress);
+    }
+
+    /**
+     * 在同一个端口上用SO_REUSEPORT打开多个监听socket，由内核把新连接分散到各个socket。
+     * 每个socket只有一个epoll线程，accept和这个socket上所有连接的读写、编解码都在这个线程上，
+     * 业务线程池也按socket拆开，不同socket之间没有共享的队列
+     */
+    private void startReactors(int reactorCount) throws InterruptedException {
+        int handlerThreads = Math.max(1, RpcConfig.get().getServiceHandlerThreads() / reactorCount);
+        try {
+            for (int i = 0; i < reactorCount; i++) {
+                Reactor reactor = new Reactor(new EpollEventLoopGroup(1, new DefaultThreadFactory("rpc-reactor-" + i)),
+                        new DefaultEventExecutorGroup(handlerThreads, new DefaultThreadFactory("service-handler-group-" + i)));
+                reactors.add(reactor);
+                ServerBootstrap b = new ServerBootstrap();
+                b.group(reactor.eventLoop, reactor.eventLoop)
+                        .channel(EpollServerSocketChannel.class)
+                        .option(EpollChannelOption.SO_REUSEPORT, true)
+                        .option(ChannelOption.SO_BACKLOG, 128)
+                        .childOption(ChannelOption.TCP_NODELAY, true)
+                        .childOption(ChannelOption.SO_KEEPALIVE, true)
+                        .childHandler(new ChannelInitializer<Channel>() {
+                            @Override
+                            protected void initChannel(Channel ch) {
+                                ChannelPipeline p = ch.pipeline();
+                                p.addLast(new IdleStateHandler(idleTimeoutSeconds, 0, 0, TimeUnit.SECONDS));
+                                initPipeline(p, reactor.dispatcher, CompactProtocol.forServer());
+                            }
+                        });
+                reactor.channel = b.bind(serverAddress.getPort()).sync().channel();
+            }
+        } catch (Throwable e) {
+            //后面的socket绑定失败时关闭已经启动的线程，再把异常抛给调用方
+            closeReactors();
+            throw e;
+        }
+        //域套接字和共享内存连接使用第一个socket的业务线程池
+        serviceHandlerGroup = reactors.get(0).dispatcher;
+        log.info("Netty server started on [{}] with {} SO_REUSEPORT reactors", serverAddress, reactorCount);
+    }
+
+    /**
+     * 同时监听Unix域套接字，和TCP使用相同的处理器和业务线程池
+     */
+    private void startDomainSocket() throws InterruptedException {
+        domainSocketBossGroup = new EpollEventLoopGroup(1);
+        domainSocketWorkerGroup = new EpollEventLoopGroup();
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(domainSocketBossGroup, domainSocketWorkerGroup)
+                .channel(EpollServerDomainSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new IdleStateHandler(idleTimeoutSeconds, 0, 0, TimeUnit.SECONDS));
+                        initPipeline(p, serviceHandlerGroup, CompactProtocol.forServer());
+                    }
+                });
+        try {
+            domainSocketChannel = b.bind(DomainSocketTransport.prepareBind(domainSocketPath)).sync().channel();
+            log.info("Domain socket server started on [{}]", domainSocketPath);
+        } catch (IOException e) {
+            //注册中心里的路径不可用时客户端会退回TCP
+            log.warn("start domain socket server failed, only tcp is available", e);
+        }
+    }
+
+    /**
+     * protocol是这个连接的紧凑协议状态，编码器和解码器共用；为null时只使用v1
+     */
+    private void initPipeline(ChannelPipeline p, DefaultEventExecutorGroup dispatcher, CompactProtocol protocol) {
+        p.addLast(new RpcMessageEncoder(protocol));
+        p.addLast(new RpcMessageDecoder(protocol));
+        if (limiter != null) {
+            //在IO线程上拒绝超出限制的请求，不让它们进入业务线程池排队
+            p.addLast(new ConcurrencyLimitHandler(limiter));
+        }
+        p.addLast(dispatcher, new NettyRpcServerHandler(limiter, expiredRequests));
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public long getExpiredRequests() {
+        return expiredRequests.sum();
+    }
+
+    /**
+     * 清理注册中心中本服务端的节点，然后关闭所有线程池
+     * 没有连上Zookeeper时不为了清理而建立连接，避免关闭被连接超时拖住
+     */
+    public void close() {
+        CuratorFramework zkClient = CuratorUtils.getConnectedZkClient();
+        if (zkClient != null) {
+            try {
+                CuratorUtils.clearRegistry(zkClient, serverAddress);
+            } catch (Exception e) {
+                log.error("occur exception when clear registry", e);
+            }
+        } else {
+            log.warn("not connected to zookeeper, skip clearing registry for [{}]", serverAddress);
+        }
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        if (shmServer != null) {
+            shmServer.close();
+        }
+        if (domainSocketChannel != null) {
+            domainSocketChannel.close().syncUninterruptibly();
+        }
+        if (domainSocketBossGroup != null) {
+            domainSocketBossGroup.shutdownGracefully();
+            domainSocketWorkerGroup.shutdownGracefully();
+        }
+        log.info("shutdown bossGroup and workerGroup");
+        closeReactors();
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            serviceHandlerGroup.shutdownGracefully();
+        }
+    }
+
+    private void closeReactors() {
+        for (Reactor reactor : reactors) {
+            //关闭监听socket之后内核不再把新连接分给它
+            if (reactor.channel != null) {
+                reactor.channel.close().syncUninterruptibly();
+            }
+            reactor.eventLoop.shutdownGracefully();
+            reactor.dispatcher.shutdownGracefully();
+        }
+        reactors.clear();
+    }
+
+    private static final class Reactor {
+        private final EventLoopGroup eventLoop;
+        private final DefaultEventExecutorGroup dispatcher;
+        private Channel channel;
+
+        private Reactor(EventLoopGroup eventLoop, DefaultEventExecutorGroup dispatcher) {
+            this.eventLoop = eventLoop;
+            this.dispatcher = dispatcher;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package study.rpc.remoting.transport.netty.server;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.cache.CachedResponse;
+import study.rpc.deadline.Deadline;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.limiter.AdaptiveConcurrencyLimiter;
+import study.rpc.metrics.MethodMetrics;
+import study.rpc.metrics.RpcMetrics;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.handler.RpcRequestHandler;
+import study.rpc.trace.TraceContext;
+import study.rpc.trace.Tracer;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端自定义的ChannelHandler，处理客户端发来的数据
+ * 如果继承自SimpleChannelInboundHandler的话就不需要考虑ByteBuf的释放，这里手动释放
+ * <p>
+ * 服务方法返回CompletionStage时不占用业务线程等待，结果完成时再写回响应
+ */
+@Slf4j
+public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
+    //异步方法到截止时间还没有完成，调用方已经不再等待
+    private static final Exception DEADLINE_EXCEEDED = new Exception("deadline exceeded", null, false, false) {
+    };
+
+    private final RpcRequestHandler rpcRequestHandler;
+    //和ConcurrencyLimitHandler共用，请求处理完后归还名额，没有开启限流时为null
+    private final AdaptiveConcurrencyLimiter limiter;
+    //因为已经过了截止时间被丢弃的请求数
+    private final LongAdder expiredRequests;
+
+    public NettyRpcServerHandler() {
+        this(null);
+    }
+
+    public NettyRpcServerHandler(AdaptiveConcurrencyLimiter limiter) {
+        this(limiter, new LongAdder());
+    }
+
+    public NettyRpcServerHandler(AdaptiveConcurrencyLimiter limiter, LongAdder expiredRequests) {
+        this.rpcRequestHandler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        this.limiter = limiter;
+        this.expiredRequests = expiredRequests;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        try {
+            if (msg instanceof RpcMessage) {
+                log.debug("server receive msg: [{}] ", msg);
+                byte messageType = ((RpcMessage) msg).getMessageType();
+                RpcMessage rpcMessage = new RpcMessage();
+                //响应使用和请求相同的序列化方式，客户端可以通过配置切换
+                rpcMessage.setCodec(((RpcMessage) msg).getCodec());
+                if (messageType == RpcConstants.HEARTBEAT_REQUEST_TYPE) {
+                    rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
+                    rpcMessage.setData(RpcConstants.PONG);
+                } else {
+                    RpcMessage request = (RpcMessage) msg;
+                    RpcRequest rpcRequest = (RpcRequest) request.getData();
+                    if (Deadline.isExpired(request.getDeadlineNanos())) {
+                        //从业务线程池取出时调用方已经不再等待，不调用也不回复，省下调用和序列化响应的开销
+                        log.debug("request expired before invocation, dropped: [{}]", rpcRequest.getRequestId());
+                        expiredRequests.increment();
+                        RpcAttachment.closeAll(request.getAttachments());
+                        if (limiter != null) {
+                            limiter.release(System.nanoTime() - request.getReceiveNanos());
+                        }
+                        return;
+                    }
+                    rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
+                    TraceContext traceContext = request.getTraceContext();
+                    CompletableFuture<RpcResponse<Object>> pending = null;
+                    //处理期间截止时间放在当前线程中，服务内部发出的下游调用自动继承
+                    long previousDeadline = Deadline.enter(request.getDeadlineNanos());
+                    try {
+                        Object response = traceContext == null
+                                ? handleRequest(ctx, rpcRequest, request.getReceiveNanos(), request.getDecodeNanos())
+                                : handleTracedRequest(ctx, rpcRequest, request.getReceiveNanos(), request.getDecodeNanos(), traceContext);
+                        if (response instanceof CompletableFuture) {
+                            pending = (CompletableFuture<RpcResponse<Object>>) response;
+                        } else {
+                            rpcMessage.setData(response);
+                        }
+                        //响应原样带回trace上下文和服务端耗时
+                        rpcMessage.setTraceContext(traceContext);
+                    } finally {
+                        Deadline.restore(previousDeadline);
+                        if (limiter != null && pending == null) {
+                            //延迟包括在业务线程池中排队的时间，排队变长时限制会缩小
+                            limiter.release(System.nanoTime() - request.getReceiveNanos());
+                        }
+                    }
+                    if (pending != null) {
+                        replyWhenComplete(ctx, request, rpcMessage, pending);
+                        return;
+                    }
+                    write(ctx, rpcMessage, request.getAttachments());
+                    return;
+                }
+                write(ctx, rpcMessage, null);
+            }
+        } finally {
+            //确保ByteBuf被释放，不然可能会有内存泄露问题
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    /**
+     * 写回响应，请求中收到的附件在响应写完后释放，响应可能直接引用了它们
+     */
+    private void write(ChannelHandlerContext ctx, RpcMessage rpcMessage, List<RpcAttachment> requestAttachments) {
+        ChannelFuture future = ctx.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) f -> {
+            if (f.isSuccess()) {
+                return;
+            }
+            if (f.cause() instanceof EncoderException && rpcMessage.getData() instanceof RpcResponse) {
+                //结果不能序列化时什么都没有写出，连接没有问题，回复失败的响应，客户端不用等到超时
+                RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
+                rpcResponse.setRequestId(((RpcResponse<?>) rpcMessage.getData()).getRequestId());
+                RpcMessage failure = RpcMessage.builder().messageType(RpcConstants.RESPONSE_TYPE)
+                        .codec(rpcMessage.getCodec()).data(rpcResponse).build();
+                ctx.writeAndFlush(failure).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            } else {
+                f.channel().close();
+            }
+        });
+        if (requestAttachments != null) {
+            future.addListener(f -> RpcAttachment.closeAll(requestAttachments));
+        }
+        TraceContext traceContext = rpcMessage.getTraceContext();
+        if (traceContext != null) {
+            //编码在写出时才发生，写完之后encodeNanos才有值
+            future.addListener(f -> Tracer.finishServerSpan(traceContext, traceContext.getEncodeNanos()));
+        }
+    }
+
+    /**
+     * 异步方法完成后写回响应并归还限流名额；到截止时间还没有完成时和排队超时的请求一样不回复
+     */
+    private void replyWhenComplete(ChannelHandlerContext ctx, RpcMessage request, RpcMessage rpcMessage,
+                                   CompletableFuture<RpcResponse<Object>> pending) {
+        long receiveNanos = request.getReceiveNanos();
+        ScheduledFuture<?> expiry = request.getDeadlineNanos() == 0 ? null
+                : ctx.executor().schedule(() -> pending.completeExceptionally(DEADLINE_EXCEEDED),
+                Deadline.remainingNanos(request.getDeadlineNanos()), TimeUnit.NANOSECONDS);
+        pending.whenComplete((rpcResponse, throwable) -> {
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - receiveNanos);
+            }
+            if (throwable != null) {
+                log.debug("async request expired before completion, dropped");
+                expiredRequests.increment();
+                RpcAttachment.closeAll(request.getAttachments());
+                return;
+            }
+            rpcMessage.setData(rpcResponse);
+            write(ctx, rpcMessage, request.getAttachments());
+        });
+    }
+
+    /**
+     * 被采样的请求：处理期间当前线程持有trace上下文，下游调用自动成为子span
+     * 异步方法的调用耗时算到结果完成为止
+     */
+    @SuppressWarnings("unchecked")
+    private Object handleTracedRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest,
+                                       long receiveNanos, long decodeNanos, TraceContext traceContext) {
+        long begin = System.nanoTime();
+        traceContext.setQueueNanos(begin - receiveNanos);
+        Tracer.enterServerSpan(traceContext);
+        Object response;
+        try {
+            response = handleRequest(ctx, rpcRequest, receiveNanos, decodeNanos);
+        } finally {
+            Tracer.exitServerSpan();
+        }
+        if (response instanceof CompletableFuture) {
+            return ((CompletableFuture<RpcResponse<Object>>) response).whenComplete((rpcResponse, throwable) ->
+                    finishInvoke(traceContext, begin, receiveNanos));
+        }
+        finishInvoke(traceContext, begin, receiveNanos);
+        return response;
+    }
+
+    private static void finishInvoke(TraceContext traceContext, long begin, long receiveNanos) {
+        long end = System.nanoTime();
+        traceContext.setInvokeNanos(end - begin);
+        //服务端耗时从开始解码请求算起
+        traceContext.setRemoteNanos(end - receiveNanos + traceContext.getDecodeNanos());
+    }
+
+    /**
+     * 返回RpcResponse，异步方法返回CompletableFuture<RpcResponse>
+     */
+    @SuppressWarnings("unchecked")
+    private Object handleRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest, long receiveNanos, long decodeNanos) {
+        if (!RpcMetrics.ENABLED) {
+            return doHandleRequest(ctx, rpcRequest);
+        }
+        //不存在的服务或方法都记在同一个名称下，任意的名称不会让统计无限增长
+        MethodMetrics metrics = rpcRequestHandler.exists(rpcRequest)
+                ? RpcMetrics.provider(rpcRequest.getRpcServiceName(), rpcRequest.getMethodName())
+                : RpcMetrics.unknownProvider();
+        metrics.recordSerialization(decodeNanos);
+        long begin = System.nanoTime();
+        //从IO线程解码完成到业务线程开始处理的时间就是排队时间
+        metrics.recordQueueWait(begin - receiveNanos);
+        metrics.onStart();
+        Object response = doHandleRequest(ctx, rpcRequest);
+        if (response instanceof CompletableFuture) {
+            return ((CompletableFuture<RpcResponse<Object>>) response).whenComplete((rpcResponse, throwable) ->
+                    metrics.onComplete(System.nanoTime() - begin, isSuccess(rpcResponse)));
+        }
+        metrics.onComplete(System.nanoTime() - begin, isSuccess((RpcResponse<Object>) response));
+        return response;
+    }
+
+    private static boolean isSuccess(RpcResponse<Object> rpcResponse) {
+        return rpcResponse != null && RpcResponseCodeEnum.SUCCESS.getCode() == rpcResponse.getCode();
+    }
+
+    private Object doHandleRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest) {
+        if (!ctx.channel().isActive() || !ctx.channel().isWritable()) {
+            log.error("not writable now, message dropped");
+            return failure(rpcRequest);
+        }
+        try {
+            Object result = rpcRequestHandler.handle(rpcRequest);
+            log.debug("server get result: {}", result);
+            if (result instanceof CompletionStage) {
+                return toResponse(rpcRequest, (CompletionStage<?>) result);
+            }
+            if (result instanceof CachedResponse) {
+                //命中结果缓存：有序列化前缀时编码阶段只需要追加requestId
+                CachedResponse cachedResponse = (CachedResponse) result;
+                RpcResponse<Object> rpcResponse = RpcResponse.success(cachedResponse.getResult(), rpcRequest.getRequestId());
+                rpcResponse.setSerializedPrefix(cachedResponse.getSerializedPrefix());
+                return rpcResponse;
+            }
+            return RpcResponse.success(result, rpcRequest.getRequestId());
+        } catch (Exception e) {
+            log.error("service invocation failed: [{}]", rpcRequest.getRpcServiceName(), e);
+            return failure(rpcRequest);
+        }
+    }
+
+    //异步结果转换成响应，异常完成时返回失败的响应，转换后的future不会异常完成
+    private static CompletableFuture<RpcResponse<Object>> toResponse(RpcRequest rpcRequest, CompletionStage<?> stage) {
+        CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        stage.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                future.complete(RpcResponse.success(result, rpcRequest.getRequestId()));
+            } else {
+                log.error("async service invocation failed: [{}]", rpcRequest.getRpcServiceName(), throwable);
+                future.complete(failure(rpcRequest));
+            }
+        });
+        return future;
+    }
+
+    //失败的响应也要带上requestId，客户端才能找到对应的请求
+    private static RpcResponse<Object> failure(RpcRequest rpcRequest) {
+        RpcResponse<Object> rpcResponse = RpcResponse.fail(RpcResponseCodeEnum.FAIL);
+        rpcResponse.setRequestId(rpcRequest.getRequestId());
+        return rpcResponse;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            IdleState state = ((IdleStateEvent) evt).state();
+            if (state == IdleState.READER_IDLE) {
+                log.info("idle check happen, so close the connection");
+                ctx.close();
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("server catch exception", cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,301 @@
+package study.rpc.remoting.transport.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandler;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 一条共享内存连接：一个内存映射文件，里面是客户端->服务端和服务端->客户端两个环形队列
+ * <p>
+ * 消息的编解码和处理复用TCP的ChannelHandler：连接对外是一个EmbeddedChannel，
+ * 写出的ByteBuf由管道最前面的ShmWriteHandler写入发送队列，读线程把接收队列中的帧交给管道处理。
+ * EmbeddedChannel的inEventLoop()总是返回true，写消息的线程直接在自己的线程上执行出站处理器，
+ * 所以一条消息的编码和写入(消息帧、拆开的分段、附件)整个在连接的锁内完成，发送队列始终只有一个生产者。
+ */
+@Slf4j
+public final class ShmConnection {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final long MAGIC = 0x5250435F53484D31L;
+    private static final int MAGIC_OFFSET = 0;
+    //服务端接受连接后置1
+    private static final int ACCEPTED_OFFSET = 64;
+    //任意一方关闭后置1
+    private static final int CLOSED_OFFSET = 128;
+    private static final int HEADER_SIZE = 256;
+    private static final long ACCEPT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final Path file;
+    private final boolean client;
+    private final MappedByteBuffer buffer;
+    private final ShmRing inbound;
+    private final ShmRing outbound;
+    private final EmbeddedChannel channel;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private ShmConnection(Path file, MappedByteBuffer buffer, int ringCapacity, boolean client, ChannelHandler... handlers) {
+        this.file = file;
+        this.client = client;
+        this.buffer = buffer;
+        ByteBuf memory = Unpooled.wrappedBuffer(buffer);
+        ShmRing clientToServer = new ShmRing(buffer, memory, HEADER_SIZE, ringCapacity);
+        ShmRing serverToClient = new ShmRing(buffer, memory, HEADER_SIZE + ShmRing.size(ringCapacity), ringCapacity);
+        this.inbound = client ? serverToClient : clientToServer;
+        this.outbound = client ? clientToServer : serverToClient;
+        ChannelHandler[] pipeline = new ChannelHandler[handlers.length + 1];
+        pipeline[0] = new ShmWriteHandler();
+        System.arraycopy(handlers, 0, pipeline, 1, handlers.length);
+        this.channel = new EmbeddedChannel(pipeline);
+        addWriteLock(this.channel.pipeline());
+        this.channel.closeFuture().addListener(future -> close());
+        this.reader = new Thread(this::readLoop, "shm-reader-" + file.getFileName());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * 客户端：在服务端的目录下创建连接文件，等待服务端接受，超时返回null
+     */
+    static ShmConnection connect(Path directory, int ringCapacity, ChannelHandler... handlers) throws IOException {
+        String name = UUID.randomUUID().toString();
+        Path tmp = directory.resolve(name + ".tmp");
+        Path file = directory.resolve(name + ShmTransport.CONNECTION_SUFFIX);
+        MappedByteBuffer buffer = map(tmp, fileSize(ringCapacity), true);
+        LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+        //改名是原子的，服务端看到的文件一定已经初始化完成
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        long deadline = System.nanoTime() + ACCEPT_TIMEOUT_NANOS;
+        while ((long) LONGS.getAcquire(buffer, ACCEPTED_OFFSET) == 0) {
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("shm server did not accept connection in time: [{}]", directory);
+                Files.deleteIfExists(file);
+                return null;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return new ShmConnection(file, buffer, ringCapacity, true, handlers);
+    }
+
+    /**
+     * 服务端：映射客户端创建的连接文件
+     */
+    static ShmConnection accept(Path file, int ringCapacity, ChannelHandler... handlers) throws IOException {
+        MappedByteBuffer buffer = map(file, fileSize(ringCapacity), false);
+        if ((long) LONGS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("not a shm connection file: " + file);
+        }
+        ShmConnection connection = new ShmConnection(file, buffer, ringCapacity, false, handlers);
+        LONGS.setRelease(buffer, ACCEPTED_OFFSET, 1L);
+        return connection;
+    }
+
+    /**
+     * 锁放在最后一个出站处理器(编码器)后面，从管道任何位置发起的写都先经过它
+     */
+    private void addWriteLock(ChannelPipeline pipeline) {
+        String last = null;
+        for (Map.Entry<String, ChannelHandler> entry : pipeline) {
+            if (entry.getValue() instanceof ChannelOutboundHandler) {
+                last = entry.getKey();
+            }
+        }
+        pipeline.addAfter(last, "shmWriteLock", new ShmWriteLock());
+    }
+
+    public EmbeddedChannel channel() {
+        return channel;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void readLoop() {
+        int idle = 0;
+        while (!closed) {
+            if ((long) LONGS.getAcquire(buffer, CLOSED_OFFSET) != 0) {
+                log.info("shm connection closed by peer: [{}]", file);
+                channel.close();
+                return;
+            }
+            ByteBuf frame = inbound.poll(ByteBufAllocator.DEFAULT);
+            if (frame == null) {
+                idle = ShmTransport.idle(idle);
+                continue;
+            }
+            idle = 0;
+            try {
+                channel.writeInbound(frame);
+            } catch (Exception e) {
+                log.error("shm connection handle message failed: [{}]", file, e);
+            }
+        }
+    }
+
+    private synchronized void write(ByteBuf message) {
+        if (message.readableBytes() > outbound.maxMessageSize()) {
+            throw new IllegalStateException("message too large for shm ring: " + message.readableBytes());
+        }
+        int idle = 0;
+        //队列满时等待对方消费
+        while (!outbound.offer(message)) {
+            if (closed) {
+                throw new IllegalStateException("shm connection closed: " + file);
+            }
+            idle = ShmTransport.idle(idle);
+        }
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LONGS.setRelease(buffer, CLOSED_OFFSET, 1L);
+        if (channel.isOpen()) {
+            channel.close();
+        }
+        if (client) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("delete shm connection file failed: [{}]", file, e);
+            }
+        }
+    }
+
+    private static int fileSize(int ringCapacity) {
+        return HEADER_SIZE + 2 * ShmRing.size(ringCapacity);
+    }
+
+    private static MappedByteBuffer map(Path file, int size, boolean create) throws IOException {
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        //映射建立之后文件通道就可以关闭了
+        try (FileChannel fileChannel = FileChannel.open(file, options)) {
+            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    /**
+     * 一条消息经过编码器时会分成消息帧和附件多次写出，在锁内写完之前其他线程的消息不能插进来
+     */
+    private final class ShmWriteLock extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            synchronized (ShmConnection.this) {
+                ctx.write(msg, promise);
+            }
+        }
+    }
+
+    /**
+     * 管道最前面的出站处理器：把编码好的帧写入共享内存，不再交给EmbeddedChannel
+     * 共享内存中是字节流，超过单条消息上限的数据(附件)拆成多段写入，接收方的解码器会重新拼起来
+     */
+    private final class ShmWriteHandler extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            try {
+                if (msg instanceof FileRegion) {
+                    write((FileRegion) msg);
+                } else {
+                    write((ByteBuf) msg);
+                }
+                promise.setSuccess();
+            } catch (Exception e) {
+                promise.setFailure(e);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            //写入队列即对对方可见，不需要flush
+        }
+
+        private void write(ByteBuf message) {
+            int maxMessageSize = outbound.maxMessageSize();
+            while (message.readableBytes() > maxMessageSize) {
+                ShmConnection.this.write(message.readSlice(maxMessageSize));
+            }
+            ShmConnection.this.write(message);
+        }
+
+        //文件附件没法sendfile到共享内存，分段读出后写入
+        private void write(FileRegion region) throws IOException {
+            ByteBuf chunk = Unpooled.buffer((int) Math.min(outbound.maxMessageSize(), region.count()));
+            try {
+                ChunkChannel sink = new ChunkChannel(chunk);
+                while (region.transferred() < region.count()) {
+                    chunk.clear();
+                    region.transferTo(sink, region.transferred());
+                    ShmConnection.this.write(chunk);
+                }
+            } finally {
+                chunk.release();
+            }
+        }
+    }
+
+    /**
+     * 把FileRegion的内容写进一个ByteBuf，写满后不再接收
+     */
+    private static final class ChunkChannel implements WritableByteChannel {
+        private final ByteBuf chunk;
+
+        ChunkChannel(ByteBuf chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = Math.min(src.remaining(), chunk.writableBytes());
+            ByteBuffer slice = src.slice();
+            slice.limit(length);
+            chunk.writeBytes(slice);
+            src.position(src.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
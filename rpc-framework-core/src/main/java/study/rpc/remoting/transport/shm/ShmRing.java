@@ -0,0 +1,111 @@
+package study.rpc.remoting.transport.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 共享内存中的单生产者/单消费者环形队列，生产者和消费者可以在不同的进程中
+ * <p>
+ * 布局：head(消费位置)和tail(生产位置)各占一个缓存行，之后是capacity字节的数据区。
+ * 每条记录是 4字节长度 + 数据，按8字节对齐；剩余空间放不下一条记录时写入填充标记，从数据区开头继续写。
+ * 数据写完之后以release语义更新tail，消费者以acquire语义读tail，保证看到完整的数据。
+ */
+final class ShmRing {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int PADDING = -1;
+    private static final int HEAD_OFFSET = 0;
+    private static final int TAIL_OFFSET = 64;
+    private static final int DATA_OFFSET = 128;
+
+    private final ByteBuffer buffer;
+    //和buffer共享同一块内存，用于和ByteBuf之间直接拷贝
+    private final ByteBuf memory;
+    private final int base;
+    private final int capacity;
+    private final int mask;
+
+    ShmRing(ByteBuffer buffer, ByteBuf memory, int base, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        }
+        this.buffer = buffer;
+        this.memory = memory;
+        this.base = base;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    static int size(int capacity) {
+        return DATA_OFFSET + capacity;
+    }
+
+    /**
+     * 单条消息的最大长度，保证任何时候都能放进空的队列
+     */
+    int maxMessageSize() {
+        return capacity / 2 - 8;
+    }
+
+    /**
+     * 写入一条消息，空间不够时返回false，只能由一个线程调用
+     */
+    boolean offer(ByteBuf message) {
+        int length = message.readableBytes();
+        int required = align(4 + length);
+        long tail = (long) LONGS.getOpaque(buffer, base + TAIL_OFFSET);
+        long head = (long) LONGS.getAcquire(buffer, base + HEAD_OFFSET);
+        int index = (int) (tail & mask);
+        int toEnd = capacity - index;
+        if (toEnd < required) {
+            //放不下时先用填充标记占掉剩余空间
+            if (tail + toEnd + required - head > capacity) {
+                return false;
+            }
+            buffer.putInt(base + DATA_OFFSET + index, PADDING);
+            tail += toEnd;
+            index = 0;
+        } else if (tail + required - head > capacity) {
+            return false;
+        }
+        int position = base + DATA_OFFSET + index;
+        buffer.putInt(position, length);
+        memory.setBytes(position + 4, message, message.readerIndex(), length);
+        LONGS.setRelease(buffer, base + TAIL_OFFSET, tail + required);
+        return true;
+    }
+
+    /**
+     * 读取一条消息，队列为空时返回null，只能由一个线程调用
+     */
+    ByteBuf poll(ByteBufAllocator allocator) {
+        long head = (long) LONGS.getOpaque(buffer, base + HEAD_OFFSET);
+        long tail = (long) LONGS.getAcquire(buffer, base + TAIL_OFFSET);
+        if (head == tail) {
+            return null;
+        }
+        int index = (int) (head & mask);
+        int length = buffer.getInt(base + DATA_OFFSET + index);
+        if (length == PADDING) {
+            head += capacity - index;
+            LONGS.setRelease(buffer, base + HEAD_OFFSET, head);
+            if (head == tail) {
+                return null;
+            }
+            index = 0;
+            length = buffer.getInt(base + DATA_OFFSET);
+        }
+        ByteBuf message = allocator.buffer(length);
+        message.writeBytes(memory, base + DATA_OFFSET + index + 4, length);
+        LONGS.setRelease(buffer, base + HEAD_OFFSET, head + align(4 + length));
+        return message;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
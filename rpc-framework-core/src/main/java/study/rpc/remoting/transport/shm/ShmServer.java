@@ -0,0 +1,98 @@
+package study.rpc.remoting.transport.shm;
+
+import io.netty.channel.ChannelHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 共享内存的服务端：监听目录中新建的连接文件，为每个连接创建一个管道
+ */
+@Slf4j
+public final class ShmServer {
+    private final Path directory;
+    //通常是ChannelInitializer，为每个连接添加编解码和业务处理器
+    private final ChannelHandler initializer;
+    private final List<ShmConnection> connections = new CopyOnWriteArrayList<>();
+    private WatchService watchService;
+    private Thread acceptor;
+
+    public ShmServer(int port, ChannelHandler initializer) {
+        this.directory = ShmTransport.directory(port);
+        this.initializer = initializer;
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        //上一次运行留下的连接文件已经没有客户端了
+        deleteFiles();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        acceptor = new Thread(this::acceptLoop, "shm-acceptor-" + directory.getFileName());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("shm server started on [{}]", directory);
+    }
+
+    private void acceptLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (context instanceof Path && context.toString().endsWith(ShmTransport.CONNECTION_SUFFIX)) {
+                        accept(directory.resolve((Path) context));
+                    }
+                }
+                key.reset();
+                //清理已经关闭的连接
+                connections.removeIf(ShmConnection::isClosed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.info("shm acceptor stopped: [{}]", directory);
+        }
+    }
+
+    private void accept(Path file) {
+        try {
+            connections.add(ShmConnection.accept(file, ShmTransport.RING_CAPACITY, initializer));
+            log.info("shm connection accepted: [{}]", file);
+        } catch (IOException e) {
+            log.warn("accept shm connection failed: [{}]", file, e);
+        }
+    }
+
+    public void close() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+            for (ShmConnection connection : connections) {
+                connection.close();
+            }
+            connections.clear();
+            deleteFiles();
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("close shm server failed: [{}]", directory, e);
+        }
+    }
+
+    private void deleteFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package study.rpc.remoting.transport.shm;
+
+import io.netty.channel.ChannelHandler;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.utils.NetUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 同一台机器上的进程之间通过共享内存通信，通过-Drpc.shm.enabled=true开启(服务端和客户端都需要)
+ * <p>
+ * 服务端在 rpc.shm.dir/端口号 目录下等待连接文件，客户端发现服务端地址是本机并且目录存在时使用共享内存，否则使用TCP。
+ */
+@Slf4j
+public final class ShmTransport {
+    public static final boolean ENABLED = Boolean.getBoolean("rpc.shm.enabled");
+    //每个方向的队列大小，必须是2的幂，单条消息不能超过一半
+    public static final int RING_CAPACITY = Integer.getInteger("rpc.shm.ring.size", 1 << 20);
+    static final String CONNECTION_SUFFIX = ".ring";
+
+    private static final Path ROOT = Paths.get(System.getProperty("rpc.shm.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "rpc-shm").toString()));
+    //连续空闲时先自旋，再让出CPU，最后逐渐延长休眠时间
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 200;
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private ShmTransport() {
+    }
+
+    static Path directory(int port) {
+        return ROOT.resolve(String.valueOf(port));
+    }
+
+    /**
+     * 地址是本机并且服务端开启了共享内存时建立连接，否则返回null
+     */
+    public static ShmConnection connect(InetSocketAddress address, ChannelHandler... handlers) {
+        if (!NetUtil.isLocalAddress(address.getAddress())) {
+            return null;
+        }
+        Path directory = directory(address.getPort());
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        try {
+            return ShmConnection.connect(directory, RING_CAPACITY, handlers);
+        } catch (IOException e) {
+            log.warn("connect shm server failed, fall back to tcp: [{}]", directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * 没有数据可读或者队列满时等待，返回下一次的空闲计数
+     */
+    static int idle(int count) {
+        if (count < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (count < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(count - YIELD_LIMIT, 9)));
+        }
+        return count + 1;
+    }
+}
@@ -0,0 +1,66 @@
+package study.rpc.remoting.transport.uds;
+
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.unix.DomainSocketAddress;
+import lombok.extern.slf4j.Slf4j;
+import study.rpc.utils.NetUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 同一台机器上的进程之间通过Unix域套接字通信，通过-Drpc.uds.enabled=true开启
+ * <p>
+ * 服务端额外监听 rpc.uds.dir/端口号.sock，并把路径写入注册中心节点的数据；
+ * 客户端发现服务端地址是本机并且节点中有路径时使用域套接字，否则使用TCP。消息格式和TCP完全相同。
+ * 使用Netty的epoll原生传输，不支持的平台上自动关闭。
+ */
+@Slf4j
+public final class DomainSocketTransport {
+    public static final boolean ENABLED = Boolean.getBoolean("rpc.uds.enabled") && isAvailable();
+
+    private static final Path ROOT = Paths.get(System.getProperty("rpc.uds.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "rpc-uds").toString()));
+
+    private DomainSocketTransport() {
+    }
+
+    private static boolean isAvailable() {
+        if (!Epoll.isAvailable()) {
+            log.warn("unix domain socket transport is not available, use tcp", Epoll.unavailabilityCause());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 服务端监听的域套接字路径
+     */
+    public static String socketPath(int port) {
+        return ROOT.resolve(port + ".sock").toString();
+    }
+
+    /**
+     * 服务端绑定之前删除上一次运行留下的套接字文件
+     */
+    public static DomainSocketAddress prepareBind(String socketPath) throws IOException {
+        Path path = Paths.get(socketPath);
+        Files.createDirectories(path.getParent());
+        Files.deleteIfExists(path);
+        return new DomainSocketAddress(socketPath);
+    }
+
+    /**
+     * 服务端地址是本机并且注册了域套接字时返回它的地址，否则返回null
+     */
+    public static DomainSocketAddress clientAddress(InetSocketAddress inetSocketAddress, String socketPath) {
+        if (socketPath == null || !NetUtil.isLocalAddress(inetSocketAddress.getAddress())
+                || !Files.exists(Paths.get(socketPath))) {
+            return null;
+        }
+        return new DomainSocketAddress(socketPath);
+    }
+}
@@ -0,0 +1,47 @@
+package study.rpc.serialize;
+
+import study.rpc.remoting.dtObject.RpcAttachment;
+
+import java.util.List;
+
+/**
+ * 序列化时附件的去向，在编解码线程上设置，序列化器通过它找到附件
+ * <p>
+ * 编码器在序列化消息体期间提供一个列表，序列化器把附件放进列表，消息体中只写下标；
+ * 解码器在反序列化期间提供已经收到的附件。没有设置时(进程内拷贝、结果缓存等)附件内容直接写进序列化结果
+ */
+public final class Attachments {
+    private static final ThreadLocal<List<RpcAttachment>> OUTGOING = new ThreadLocal<>();
+    private static final ThreadLocal<List<RpcAttachment>> INCOMING = new ThreadLocal<>();
+
+    private Attachments() {
+    }
+
+    public static void beginWrite(List<RpcAttachment> attachments) {
+        OUTGOING.set(attachments);
+    }
+
+    public static void endWrite() {
+        //set(null)而不是remove()，下次设置时不需要重新创建条目
+        OUTGOING.set(null);
+    }
+
+    /**
+     * 当前消息体带出的附件，没有时为null
+     */
+    public static List<RpcAttachment> outgoing() {
+        return OUTGOING.get();
+    }
+
+    public static void beginRead(List<RpcAttachment> attachments) {
+        INCOMING.set(attachments);
+    }
+
+    public static void endRead() {
+        INCOMING.set(null);
+    }
+
+    public static List<RpcAttachment> incoming() {
+        return INCOMING.get();
+    }
+}
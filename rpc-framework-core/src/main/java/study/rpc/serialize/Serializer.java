@@ -1,11 +1,14 @@
 package study.rpc.serialize;
 
+import study.rpc.extension.SPI;
+import study.rpc.remoting.dtObject.RpcResponse;
+
 
 /**
  * 序列化接口，所有序列化类都要实现这个接口
  */
 
-
+@SPI
 public interface Serializer {
     /**序列化方法(接口中的抽象方法)，将对象序列化为字节数组
      * @param obj 是要序列化的对象，可以接受任意类型的对象，所以不需要知道对象的具体类型
@@ -16,4 +19,12 @@ public interface Serializer {
      * @return 反序列化的对象，使用泛型<T>,类型由参数Class<T>决定,返回一个明确类型的对象
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 序列化不包含requestId的响应前缀，设置到RpcResponse.serializedPrefix后，serialize只需要追加requestId
+     * 服务端结果缓存用它跳过重复的序列化，不支持的序列化方式返回null
+     */
+    default byte[] serializeResponsePrefix(RpcResponse<?> rpcResponse) {
+        return null;
+    }
 }
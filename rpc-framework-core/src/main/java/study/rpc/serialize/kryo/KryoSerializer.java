@@ -5,11 +5,12 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcResponse;
 import study.rpc.serialize.Serializer;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 /**
  * Slf4j是Lombok提供的一种日志注解，可以自动生成一个基于 SLF4J 的 Logger 对象。日志默认输出到控制台
@@ -17,6 +18,12 @@ import java.io.ByteArrayOutputStream;
 @Slf4j
 
 public class KryoSerializer implements Serializer {
+    //Kryo中null字符串的编码
+    private static final byte NULL_STRING = (byte) 0x80;
+    //线程复用的缓冲区超过这个大小时换回小的，不让一次大消息一直占着内存
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
     /**
      * 因为Kryo不是线程安全的，因此使用ThreadLocal存储
      * final保证ThreadLocal不会被修改
@@ -29,45 +36,94 @@ public class KryoSerializer implements Serializer {
         kryo.setReferences(true); // 支持循环引用
         /* RPC框架中需要动态序列化任意对象，无法提前确定所有类，所以不能提前确定所有 */
         kryo.setRegistrationRequired(false); // 不需要预先注册类
+        /* 响应使用固定格式，requestId在最后，支持缓存序列化好的响应前缀 */
+        kryo.addDefaultSerializer(RpcResponse.class, RpcResponseSerializer.class);
+        /* 附件在编码消息时只写下标，内容跟在消息帧后面发送 */
+        kryo.addDefaultSerializer(RpcAttachment.class, RpcAttachmentSerializer.class);
         return kryo;
     });
 
     /**
-     * try-with-resources：用于自动管理资源，确保在 try 块结束后自动关闭资源（如流对象）。
-     * ByteArrayOutputStream：是一个基于内存的输出流，临时存储 Kryo 写入的序列化结果。用于将序列化后的数据写入到字节数组中。
-     * */
+     * 每次序列化都新建Output会分配4KB的缓冲区，再加上ByteArrayOutputStream的拷贝，按线程复用
+     * 反序列化直接读调用方的字节数组，不需要InputStream
+     */
+    private final ThreadLocal<Output> outputThreadLocal = ThreadLocal.withInitial(() -> new Output(256, -1));
+    private final ThreadLocal<Input> inputThreadLocal = ThreadLocal.withInitial(Input::new);
 
     @Override
     public byte[] serialize(Object obj) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             Output output = new Output(byteArrayOutputStream)) {
+        //已经缓存了序列化前缀的响应，只需要追加requestId
+        if (obj instanceof RpcResponse && ((RpcResponse<?>) obj).getSerializedPrefix() != null) {
+            return serializeWithPrefix((RpcResponse<?>) obj);
+        }
+        Output output = borrowOutput();
+        try {
             // 获取当前线程的 Kryo 实例
             Kryo kryo = kryoThreadLocal.get();
             // 序列化对象
             kryo.writeObject(output, obj);
-            //刷新输出流，确保所有序列化的数据都写入到了byteArrayOutputStream里了
-            output.flush();
-            //返回流中当前数据的字节数组
-            return byteArrayOutputStream.toByteArray(); // 返回字节数组
+            //返回缓冲区中已经写入的字节
+            return output.toBytes();
         } catch (Exception e) {
             log.error("Serialization failed", e);
             throw new RuntimeException("Serialization failed", e);
+        } finally {
+            returnOutput(output);
         }
     }
 
+    /**
+     * RpcResponseSerializer最后写requestId，requestId为null时Kryo只写一个字节(0x80)，去掉这个字节就是前缀
+     */
     @Override
-    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
-        try(ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-            Input input = new Input(byteArrayInputStream)){
+    public byte[] serializeResponsePrefix(RpcResponse<?> rpcResponse) {
+        RpcResponse<Object> copy = new RpcResponse<>();
+        copy.setCode(rpcResponse.getCode());
+        copy.setMessage(rpcResponse.getMessage());
+        copy.setData(rpcResponse.getData());
+        byte[] bytes = serialize(copy);
+        if (bytes[bytes.length - 1] != NULL_STRING) {
+            throw new IllegalStateException("unexpected response encoding");
+        }
+        return Arrays.copyOf(bytes, bytes.length - 1);
+    }
 
-            Kryo kryo = kryoThreadLocal.get();
-            return kryo.readObject(input,clazz);
+    private byte[] serializeWithPrefix(RpcResponse<?> rpcResponse) {
+        Output output = borrowOutput();
+        try {
+            output.writeBytes(rpcResponse.getSerializedPrefix());
+            output.writeString(rpcResponse.getRequestId());
+            return output.toBytes();
+        } finally {
+            returnOutput(output);
+        }
+    }
 
-        }catch (Exception e) {
+    private Output borrowOutput() {
+        Output output = outputThreadLocal.get();
+        output.clear();
+        return output;
+    }
+
+    private void returnOutput(Output output) {
+        if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+            output.setBuffer(new byte[256], -1);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        Input input = inputThreadLocal.get();
+        input.setBuffer(bytes);
+        try {
+            Kryo kryo = kryoThreadLocal.get();
+            return kryo.readObject(input, clazz);
+        } catch (Exception e) {
             log.error("Deserialization failed", e);
             throw new RuntimeException("Deserialization failed", e);
+        } finally {
+            //不持有调用方的数组
+            input.setBuffer(EMPTY);
         }
     }
-
-
 }
@@ -0,0 +1,51 @@
+package study.rpc.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.serialize.Attachments;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * RpcAttachment的Kryo序列化器：编码消息时只写附件的下标，内容由编码器跟在帧后面发送
+ * 其他场景(没有设置Attachments)把内容写进序列化结果
+ */
+public class RpcAttachmentSerializer extends Serializer<RpcAttachment> {
+    private static final byte INLINE = 0;
+    private static final byte OUT_OF_BAND = 1;
+
+    @Override
+    public void write(Kryo kryo, Output output, RpcAttachment attachment) {
+        List<RpcAttachment> outgoing = Attachments.outgoing();
+        //附件长度写在消息头扩展字段中，数量有上限，超过的退回到写进消息体
+        if (outgoing != null && outgoing.size() < RpcConstants.MAX_ATTACHMENTS) {
+            output.writeByte(OUT_OF_BAND);
+            output.writeVarInt(outgoing.size(), true);
+            outgoing.add(attachment);
+        } else {
+            byte[] bytes = attachment.toByteArray();
+            output.writeByte(INLINE);
+            output.writeVarInt(bytes.length, true);
+            output.writeBytes(bytes);
+        }
+    }
+
+    @Override
+    public RpcAttachment read(Kryo kryo, Input input, Class<RpcAttachment> type) {
+        if (input.readByte() == OUT_OF_BAND) {
+            int index = input.readVarInt(true);
+            List<RpcAttachment> incoming = Attachments.incoming();
+            if (incoming == null || index >= incoming.size()) {
+                throw new KryoException("attachment not received: " + index);
+            }
+            return incoming.get(index);
+        }
+        return RpcAttachment.of(ByteBuffer.wrap(input.readBytes(input.readVarInt(true))));
+    }
+}
@@ -0,0 +1,35 @@
+package study.rpc.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import study.rpc.remoting.dtObject.RpcResponse;
+
+/**
+ * RpcResponse的Kryo序列化器：固定字段顺序，并且把requestId放在最后
+ * 这样同一个结果的响应，除了末尾的requestId之外字节完全相同，服务端可以缓存序列化好的前缀
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class RpcResponseSerializer extends Serializer<RpcResponse> {
+
+    @Override
+    public void write(Kryo kryo, Output output, RpcResponse rpcResponse) {
+        kryo.writeObjectOrNull(output, rpcResponse.getCode(), Integer.class);
+        output.writeString(rpcResponse.getMessage());
+        kryo.writeClassAndObject(output, rpcResponse.getData());
+        //requestId必须最后写，并且不经过引用表
+        output.writeString(rpcResponse.getRequestId());
+    }
+
+    @Override
+    public RpcResponse read(Kryo kryo, Input input, Class<RpcResponse> type) {
+        RpcResponse rpcResponse = new RpcResponse();
+        kryo.reference(rpcResponse);
+        rpcResponse.setCode(kryo.readObjectOrNull(input, Integer.class));
+        rpcResponse.setMessage(input.readString());
+        rpcResponse.setData(kryo.readClassAndObject(input));
+        rpcResponse.setRequestId(input.readString());
+        return rpcResponse;
+    }
+}
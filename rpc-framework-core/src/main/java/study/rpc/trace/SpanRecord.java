@@ -0,0 +1,32 @@
+package study.rpc.trace;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 环形缓冲区中的一条记录：一次调用在客户端或服务端各阶段的耗时(纳秒)
+ * 客户端记录 encode/network/decode，服务端记录 decode/queue/invoke/encode，不适用的阶段为0
+ */
+@AllArgsConstructor
+@Getter
+public class SpanRecord {
+    private final String side;
+    private final String traceId;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String serviceName;
+    private final String methodName;
+    private final long encodeNanos;
+    private final long networkNanos;
+    private final long queueNanos;
+    private final long invokeNanos;
+    private final long decodeNanos;
+    private final long totalNanos;
+
+    //输出到文件的一行，字段之间以tab分隔
+    public String toLine() {
+        return side + '\t' + traceId + '\t' + Long.toHexString(spanId) + '\t' + Long.toHexString(parentSpanId)
+                + '\t' + serviceName + '\t' + methodName + '\t' + encodeNanos + '\t' + networkNanos
+                + '\t' + queueNanos + '\t' + invokeNanos + '\t' + decodeNanos + '\t' + totalNanos;
+    }
+}
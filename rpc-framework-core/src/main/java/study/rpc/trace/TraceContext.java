@@ -0,0 +1,46 @@
+package study.rpc.trace;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * 一次调用(span)的链路上下文，只有被采样的请求才会创建
+ * traceId/spanId/parentSpanId和remoteNanos会写入消息头扩展字段，其余计时字段只在本地使用
+ */
+@Getter
+@Setter
+@ToString
+public class TraceContext {
+    //128位的traceId，分成高低两个long，整条调用链相同
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    //当前这一跳的id，客户端创建，服务端在响应中原样带回
+    private final long spanId;
+    //上游span的id，链路的第一跳为0
+    private final long parentSpanId;
+
+    //服务端从开始解码请求到开始编码响应的耗时，由服务端写入响应的扩展字段
+    private long remoteNanos;
+
+    //以下字段只在本地记录，不在网络上传输
+    private long startNanos;
+    private long encodeNanos;
+    private long decodeNanos;
+    private long receiveNanos;
+    private long queueNanos;
+    private long invokeNanos;
+    private String serviceName;
+    private String methodName;
+
+    public TraceContext(long traceIdHigh, long traceIdLow, long spanId, long parentSpanId) {
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+    }
+
+    public String getTraceId() {
+        return String.format("%016x%016x", traceIdHigh, traceIdLow);
+    }
+}
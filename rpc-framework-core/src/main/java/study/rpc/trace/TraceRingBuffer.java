@@ -0,0 +1,51 @@
+package study.rpc.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定大小的环形缓冲区，保存最近的SpanRecord
+ * 写入只有一次原子自增和一次数组写，满了之后覆盖最旧的记录
+ */
+public class TraceRingBuffer {
+    private static final String HEADER = "side\ttraceId\tspanId\tparentSpanId\tservice\tmethod\tencode\tnetwork\tqueue\tinvoke\tdecode\ttotal";
+
+    private final AtomicReferenceArray<SpanRecord> records;
+    //容量是2的幂，用位运算代替取模
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public TraceRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.records = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public void add(SpanRecord record) {
+        records.set((int) (sequence.getAndIncrement() & mask), record);
+    }
+
+    /**
+     * 把当前缓冲区中的记录按写入顺序输出到本地文件
+     */
+    public void dump(Path file) throws IOException {
+        long end = sequence.get();
+        long begin = Math.max(0, end - records.length());
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (long i = begin; i < end; i++) {
+                SpanRecord record = records.get((int) (i & mask));
+                if (record != null) {
+                    writer.write(record.toLine());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+}
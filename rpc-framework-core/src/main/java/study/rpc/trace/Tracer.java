@@ -0,0 +1,115 @@
+package study.rpc.trace;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 链路追踪入口
+ * <p>
+ * 采样在链路的入口(没有上游上下文的客户端调用)决定，采样率由 -Drpc.trace.sample.rate=0.01 指定，默认0即关闭。
+ * 服务端处理被采样的请求时，当前线程会持有该请求的上下文，此时发起的下游调用自动成为子span并继承采样结果。
+ * 没被采样的请求不会创建任何对象，消息头也不带扩展字段。
+ * <p>
+ * 设置 -Drpc.trace.dump.file=path 后，JVM退出时会把环形缓冲区输出到该文件，也可以随时调用dump()。
+ */
+@Slf4j
+public final class Tracer {
+
+    public static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("rpc.trace.sample.rate", "0"));
+    private static final int BUFFER_SIZE = Integer.getInteger("rpc.trace.buffer.size", 8192);
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+    private static final TraceRingBuffer RING_BUFFER = new TraceRingBuffer(BUFFER_SIZE);
+    //已发出、还没收到响应的客户端span，键为spanId，只有被采样的请求才会放进来
+    private static final Map<Long, TraceContext> PENDING = new ConcurrentHashMap<>();
+
+    static {
+        String dumpFile = System.getProperty("rpc.trace.dump.file");
+        if (dumpFile != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(dumpFile), "trace-dump"));
+        }
+    }
+
+    private Tracer() {
+    }
+
+    /**
+     * 客户端发送请求前调用：返回null表示不采样
+     */
+    public static TraceContext startClientSpan(String serviceName, String methodName) {
+        TraceContext parent = CURRENT.get();
+        TraceContext span;
+        ThreadLocalRandom random;
+        if (parent != null) {
+            random = ThreadLocalRandom.current();
+            span = new TraceContext(parent.getTraceIdHigh(), parent.getTraceIdLow(), random.nextLong(), parent.getSpanId());
+        } else if (SAMPLE_RATE > 0 && (random = ThreadLocalRandom.current()).nextDouble() < SAMPLE_RATE) {
+            span = new TraceContext(random.nextLong(), random.nextLong(), random.nextLong(), 0);
+        } else {
+            return null;
+        }
+        span.setServiceName(serviceName);
+        span.setMethodName(methodName);
+        span.setStartNanos(System.nanoTime());
+        PENDING.put(span.getSpanId(), span);
+        return span;
+    }
+
+    /**
+     * 客户端收到响应时调用：把服务端耗时和响应解码耗时合并到发送时的span中
+     */
+    public static void onClientResponse(TraceContext response) {
+        TraceContext span = PENDING.get(response.getSpanId());
+        if (span != null) {
+            span.setRemoteNanos(response.getRemoteNanos());
+            span.setDecodeNanos(response.getDecodeNanos());
+        }
+    }
+
+    /**
+     * 客户端调用结束(成功、失败或者超时)时调用，记录这一跳
+     */
+    public static void finishClientSpan(TraceContext span) {
+        PENDING.remove(span.getSpanId());
+        long total = System.nanoTime() - span.getStartNanos();
+        //network = 总耗时 - 本地编解码 - 服务端耗时，服务端没有返回时全部算作网络耗时
+        long network = total - span.getEncodeNanos() - span.getDecodeNanos() - span.getRemoteNanos();
+        RING_BUFFER.add(new SpanRecord("CONSUMER", span.getTraceId(), span.getSpanId(), span.getParentSpanId(),
+                span.getServiceName(), span.getMethodName(), span.getEncodeNanos(), Math.max(0, network),
+                0, 0, span.getDecodeNanos(), total));
+    }
+
+    /**
+     * 服务端开始调用目标方法前调用，之后该线程发起的下游调用都属于这条链路
+     */
+    public static void enterServerSpan(TraceContext span) {
+        CURRENT.set(span);
+    }
+
+    public static void exitServerSpan() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 服务端响应写出后调用，记录这一跳
+     */
+    public static void finishServerSpan(TraceContext span, long encodeNanos) {
+        RING_BUFFER.add(new SpanRecord("PROVIDER", span.getTraceId(), span.getSpanId(), span.getParentSpanId(),
+                span.getServiceName(), span.getMethodName(), encodeNanos, 0,
+                span.getQueueNanos(), span.getInvokeNanos(), span.getDecodeNanos(),
+                span.getRemoteNanos() + encodeNanos));
+    }
+
+    public static void dump(String file) {
+        try {
+            RING_BUFFER.dump(Paths.get(file));
+        } catch (IOException e) {
+            log.error("dump trace records to [{}] fail", file, e);
+        }
+    }
+}
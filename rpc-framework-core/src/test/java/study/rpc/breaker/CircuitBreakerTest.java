@@ -0,0 +1,81 @@
+package study.rpc.breaker;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.CircuitBreakerConfig;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CircuitBreaker breaker = new CircuitBreaker("127.0.0.1:9998",
+            CircuitBreakerConfig.builder().minimumCalls(10).openMillis(100).slowCallMillis(50).build(), () -> {
+    });
+
+    @Test
+    void opensWhenFailureRateExceedsThreshold() {
+        long now = 1000 * MS;
+        for (int i = 0; i < 5; i++) {
+            breaker.onResult(true, MS, now);
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(false, MS, now);
+        }
+        //调用次数不够时不熔断
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        breaker.onResult(false, MS, now);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted(now + 10 * MS));
+    }
+
+    @Test
+    void slowCallsAlsoOpenTheBreaker() {
+        long now = 1000 * MS;
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(true, 60 * MS, now);
+        }
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenAllowsSingleProbe() {
+        long now = 1000 * MS;
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(false, MS, now);
+        }
+        long later = now + 100 * MS;
+        assertTrue(breaker.isCallPermitted(later));
+        assertTrue(breaker.tryAcquire(later));
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(later));
+
+        //探测失败重新熔断
+        breaker.onResult(false, MS, later);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+
+        long recovered = later + 100 * MS;
+        assertTrue(breaker.tryAcquire(recovered));
+        breaker.onResult(true, MS, recovered);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(recovered));
+    }
+
+    @Test
+    void oldBucketsLeaveTheWindow() {
+        long now = 1000 * MS;
+        for (int i = 0; i < 9; i++) {
+            breaker.onResult(false, MS, now);
+        }
+        //10秒之后之前的失败已经不在窗口内
+        long later = now + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 9; i++) {
+            breaker.onResult(true, MS, later);
+        }
+        breaker.onResult(false, MS, later);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+    }
+}
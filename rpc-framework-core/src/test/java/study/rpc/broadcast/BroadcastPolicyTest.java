@@ -0,0 +1,122 @@
+package study.rpc.broadcast;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.BroadcastConfig;
+import study.rpc.exception.RpcException;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BroadcastPolicyTest {
+
+    public interface PartitionService {
+        List<String> query(String keyword);
+
+        Map<String, Integer> counts();
+
+        int invalidate(String key);
+
+        CompletableFuture<List<String>> queryAsync(String keyword);
+
+        void evictAll();
+
+        String describe();
+    }
+
+    private static Method method(String name) throws NoSuchMethodException {
+        for (Method method : PartitionService.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static CompletableFuture<Object> failed() {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        future.completeExceptionally(new IllegalStateException("provider down"));
+        return future;
+    }
+
+    @Test
+    void mergerFollowsReturnType() throws Exception {
+        BroadcastPolicy list = new BroadcastPolicy(new BroadcastConfig(), method("query"));
+        assertEquals(Arrays.asList("a", "b", "c"), list.gather(Arrays.asList(
+                CompletableFuture.completedFuture(Arrays.asList("a", "b")),
+                CompletableFuture.completedFuture(Collections.singletonList("c")))).get());
+
+        Map<String, Integer> first = new HashMap<>();
+        first.put("p0", 1);
+        Map<String, Integer> second = new HashMap<>();
+        second.put("p1", 2);
+        Map<?, ?> merged = (Map<?, ?>) new BroadcastPolicy(new BroadcastConfig(), method("counts")).gather(Arrays.asList(
+                CompletableFuture.completedFuture(first), CompletableFuture.completedFuture(second))).get();
+        assertEquals(2, merged.size());
+
+        //异步方法按future中的类型选择合并器
+        assertEquals(Arrays.asList("x", "y"), new BroadcastPolicy(new BroadcastConfig(), method("queryAsync")).gather(Arrays.asList(
+                CompletableFuture.completedFuture(Collections.singletonList("x")),
+                CompletableFuture.completedFuture(Collections.singletonList("y")))).get());
+
+        //void方法不需要合并
+        assertNull(new BroadcastPolicy(new BroadcastConfig(), method("evictAll")).gather(Arrays.asList(
+                CompletableFuture.completedFuture(null), CompletableFuture.completedFuture(null))).get());
+    }
+
+    @Test
+    void timeoutIsAlwaysFinite() throws Exception {
+        //没有配置超时时间时也有截止时间，不回复的服务端不会让广播一直等待
+        assertTrue(new BroadcastPolicy(new BroadcastConfig(), method("query")).getTimeoutMillis() > 0);
+        assertEquals(500, new BroadcastPolicy(BroadcastConfig.builder().timeoutMillis(500).build(), method("query")).getTimeoutMillis());
+    }
+
+    @Test
+    void configuredMerger() throws Exception {
+        BroadcastPolicy sum = new BroadcastPolicy(BroadcastConfig.builder().merger("sum").build(), method("invalidate"));
+        assertEquals(6, sum.gather(Arrays.asList(CompletableFuture.completedFuture(1),
+                CompletableFuture.completedFuture(2), CompletableFuture.completedFuture(3))).get());
+        //返回类型无法自动合并时需要配置合并器
+        assertThrows(RpcException.class, () -> new BroadcastPolicy(new BroadcastConfig(), method("describe")));
+    }
+
+    @Test
+    void failFastWithoutPartialResults() throws Exception {
+        BroadcastPolicy policy = new BroadcastPolicy(new BroadcastConfig(), method("query"));
+        CompletableFuture<Object> slow = new CompletableFuture<>();
+        CompletableFuture<Object> result = policy.gather(Arrays.asList(slow, failed()));
+        //不等还没返回的服务端，第一个失败就结束
+        assertTrue(result.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, result::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void partialResultsMergeSuccessfulProviders() throws Exception {
+        BroadcastPolicy policy = new BroadcastPolicy(BroadcastConfig.builder().allowPartial(true).minSuccesses(2).build(),
+                method("query"));
+        CompletableFuture<Object> slow = new CompletableFuture<>();
+        CompletableFuture<Object> result = policy.gather(Arrays.asList(
+                CompletableFuture.completedFuture(Collections.singletonList("a")), failed(), slow));
+        //等所有服务端结束(超时的服务端也会以失败结束)
+        assertFalse(result.isDone());
+        slow.complete(Collections.singletonList("b"));
+        assertEquals(Arrays.asList("a", "b"), result.get());
+
+        CompletableFuture<Object> tooFew = policy.gather(Arrays.asList(
+                CompletableFuture.completedFuture(Collections.singletonList("a")), failed(), failed()));
+        ExecutionException e = assertThrows(ExecutionException.class, tooFew::get);
+        assertTrue(e.getCause() instanceof RpcException);
+    }
+}
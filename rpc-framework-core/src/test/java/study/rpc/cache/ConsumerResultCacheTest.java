@@ -0,0 +1,87 @@
+package study.rpc.cache;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.MethodCacheConfig;
+import study.rpc.config.RpcServiceConfig;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConsumerResultCacheTest {
+    @Test
+    void concurrentIdenticalCallsAreCollapsed() throws Exception {
+        RpcServiceConfig config = new RpcServiceConfig();
+        config.getCollapsedMethods().add("valueOf");
+        Method method = String.class.getMethod("valueOf", Object.class);
+        ConsumerResultCache.MethodState state = new ConsumerResultCache().getState(method, config);
+
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        CompletableFuture<Object> first = state.invoke(new Object[]{"a"}, () -> {
+            sent.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<Object> second = state.invoke(new Object[]{"a"}, () -> {
+            sent.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        assertEquals(1, sent.get());
+        response.complete("result");
+        assertEquals("result", first.get());
+        assertEquals("result", second.get());
+
+        //没有开启缓存，调用结束后再次调用会重新发送请求
+        state.invoke(new Object[]{"a"}, () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture("result");
+        });
+        assertEquals(2, sent.get());
+    }
+
+    @Test
+    void cachedResultIsReturnedWithoutSending() throws Exception {
+        RpcServiceConfig config = new RpcServiceConfig();
+        config.getConsumerCachedMethods().put("valueOf", new MethodCacheConfig());
+        Method method = String.class.getMethod("valueOf", Object.class);
+        ConsumerResultCache cache = new ConsumerResultCache();
+        assertNull(cache.getState(String.class.getMethod("trim"), config));
+        ConsumerResultCache.MethodState state = cache.getState(method, config);
+
+        Object result = new Object();
+        state.invoke(new Object[]{"a"}, () -> CompletableFuture.completedFuture(result)).get();
+        AtomicInteger sent = new AtomicInteger();
+        Object cached = state.invoke(new Object[]{"a"}, () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(new Object());
+        }).get();
+        assertSame(result, cached);
+        assertEquals(0, sent.get());
+    }
+
+    @Test
+    void cancellingOneWaiterDoesNotAffectOthers() throws Exception {
+        RpcServiceConfig config = new RpcServiceConfig();
+        config.getCollapsedMethods().add("valueOf");
+        Method method = String.class.getMethod("valueOf", Object.class);
+        ConsumerResultCache.MethodState state = new ConsumerResultCache().getState(method, config);
+
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        CompletableFuture<Object> leader = state.invoke(new Object[]{"a"}, () -> response);
+        CompletableFuture<Object> cancelled = state.invoke(new Object[]{"a"}, CompletableFuture::new);
+        CompletableFuture<Object> poisoned = state.invoke(new Object[]{"a"}, CompletableFuture::new);
+        CompletableFuture<Object> follower = state.invoke(new Object[]{"a"}, CompletableFuture::new);
+        //一个等待者取消或者自己完成future，其他等待者仍然拿到真正的结果
+        cancelled.cancel(false);
+        poisoned.complete("poisoned");
+        response.complete("result");
+        assertTrue(cancelled.isCancelled());
+        assertEquals("result", leader.get());
+        assertEquals("result", follower.get());
+    }
+}
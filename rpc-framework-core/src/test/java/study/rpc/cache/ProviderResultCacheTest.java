@@ -0,0 +1,47 @@
+package study.rpc.cache;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.MethodCacheConfig;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.remoting.dtObject.RpcRequest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ProviderResultCacheTest {
+    private static RpcRequest rpcRequest(String methodName, Class<?> paramType, Object parameter) {
+        return RpcRequest.builder().interfaceName("demo.QueryService").methodName(methodName)
+                .parameters(new Object[]{parameter}).paramTypes(new Class<?>[]{paramType}).group("").version("").build();
+    }
+
+    @Test
+    void overloadsDoNotShareResults() {
+        RpcServiceConfig config = new RpcServiceConfig();
+        config.getCachedMethods().put("find", MethodCacheConfig.builder().build());
+        ProviderResultCache resultCache = new ProviderResultCache();
+        RpcRequest byLong = rpcRequest("find", Long.class, 1L);
+        RpcRequest byObject = rpcRequest("find", Object.class, 1L);
+        ProviderResultCache.MethodCache cache = resultCache.getCache("demo.QueryService", config, byLong);
+        assertSame(cache, resultCache.getCache("demo.QueryService", config, byObject));
+
+        AtomicInteger invocations = new AtomicInteger();
+        assertEquals("long", ((CachedResponse) cache.get(byLong, () -> "long")).getResult());
+        assertEquals("object", ((CachedResponse) cache.get(byObject, () -> "object")).getResult());
+        assertEquals("long", ((CachedResponse) cache.get(rpcRequest("find", Long.class, 1L), () -> {
+            invocations.incrementAndGet();
+            return "again";
+        })).getResult());
+        assertEquals(0, invocations.get());
+    }
+
+    @Test
+    void methodsWithoutConfigAreNotTracked() {
+        RpcServiceConfig config = new RpcServiceConfig();
+        ProviderResultCache resultCache = new ProviderResultCache();
+        assertNull(resultCache.getCache("demo.QueryService", config, rpcRequest("missing", String.class, "a")));
+        assertNull(resultCache.getCache("demo.Missing", null, rpcRequest("find", String.class, "a")));
+    }
+}
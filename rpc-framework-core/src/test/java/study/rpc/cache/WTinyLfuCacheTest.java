@@ -0,0 +1,52 @@
+package study.rpc.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WTinyLfuCacheTest {
+    @Test
+    void boundedBySize() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>(100, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void frequentKeysSurviveScan() {
+        WTinyLfuCache<Integer, Integer> cache = new WTinyLfuCache<>(100, 0);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, i);
+                }
+            }
+        }
+        //一次性扫描大量新key，不应该把热点key挤出去
+        for (int i = 1000; i < 3000; i++) {
+            cache.put(i, i);
+        }
+        int hits = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get(i) != null) {
+                hits++;
+            }
+        }
+        assertTrue(hits >= 45, "hot keys kept: " + hits);
+    }
+
+    @Test
+    void expiresAfterTtl() throws InterruptedException {
+        WTinyLfuCache<String, String> cache = new WTinyLfuCache<>(10, TimeUnit.MILLISECONDS.toNanos(20));
+        cache.put("k", "v");
+        assertEquals("v", cache.get("k"));
+        Thread.sleep(40);
+        assertNull(cache.get("k"));
+    }
+}
@@ -0,0 +1,79 @@
+package study.rpc.config;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.utils.PropertiesFileUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RpcConfigTest {
+
+    @Test
+    void readsPropertiesFileFromClasspath() {
+        Properties file = PropertiesFileUtil.readPropertiesFile("rpc-config-test.properties");
+        assertNotNull(file);
+        assertEquals("10.0.0.1:2181", file.getProperty("rpc.zookeeper.address"));
+        assertNull(PropertiesFileUtil.readPropertiesFile("missing.properties"));
+    }
+
+    @Test
+    void defaultsWhenNothingIsConfigured() {
+        RpcConfig config = RpcConfig.load(null, Collections.emptyMap(), new Properties());
+        assertEquals("127.0.0.1:2181", config.getZookeeperAddress());
+        assertEquals(5000, config.getRequestTimeoutMs());
+        assertEquals(SerializationTypeEnum.KRYO.getCode(), config.getCodec());
+        assertEquals("loadBalance", config.getLoadBalance());
+    }
+
+    @Test
+    void systemPropertiesOverrideEnvironmentOverrideFile() {
+        Properties file = PropertiesFileUtil.readPropertiesFile("rpc-config-test.properties");
+        Map<String, String> env = new HashMap<>();
+        env.put("RPC_CLIENT_REQUEST_TIMEOUT_MS", "2000");
+        env.put("RPC_LOADBALANCE", "fromEnv");
+        Properties system = new Properties();
+        system.setProperty("rpc.loadbalance", "fromSystem");
+        RpcConfig config = RpcConfig.load(file, env, system);
+        assertEquals("10.0.0.1:2181", config.getZookeeperAddress());
+        assertEquals(2000, config.getRequestTimeoutMs());
+        assertEquals("fromSystem", config.getLoadBalance());
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        Properties system = new Properties();
+        system.setProperty("rpc.serializer", "unknown");
+        assertThrows(IllegalArgumentException.class, () -> RpcConfig.load(null, Collections.emptyMap(), system));
+        system.setProperty("rpc.serializer", "kryo");
+        system.setProperty("rpc.client.request.timeout.ms", "abc");
+        assertThrows(IllegalArgumentException.class, () -> RpcConfig.load(null, Collections.emptyMap(), system));
+    }
+
+    @Test
+    void reloadSwapsSnapshotAndKeepsOldOneOnError() {
+        RpcConfig before = RpcConfig.get();
+        try {
+            System.setProperty("rpc.client.request.timeout.ms", "1234");
+            RpcConfig reloaded = RpcConfig.reload();
+            assertSame(reloaded, RpcConfig.get());
+            assertEquals(1234, RpcConfig.get().getRequestTimeoutMs());
+            //旧快照不受影响
+            assertNotEquals(1234, before.getRequestTimeoutMs());
+            System.setProperty("rpc.client.request.timeout.ms", "abc");
+            assertSame(reloaded, RpcConfig.reload());
+        } finally {
+            System.clearProperty("rpc.client.request.timeout.ms");
+            RpcConfig.reload();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package study.rpc.deadline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+import study.rpc.remoting.transport.netty.server.NettyRpcServerHandler;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeadlineTest {
+    private static final int REQUESTS = 20;
+    private static final long WORK_MILLIS = 10;
+
+    public interface SlowService {
+        long work();
+    }
+
+    //每次调用占用业务线程10毫秒，返回调用时线程上的截止时间
+    public static class SlowServiceImpl implements SlowService {
+        static final AtomicInteger INVOCATIONS = new AtomicInteger();
+
+        @Override
+        public long work() {
+            INVOCATIONS.incrementAndGet();
+            try {
+                Thread.sleep(WORK_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Deadline.current();
+        }
+    }
+
+    @BeforeAll
+    static void publish() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .service(new SlowServiceImpl()).group("deadline").build());
+    }
+
+    private static RpcMessage request(long deadlineNanos) {
+        RpcRequest rpcRequest = RpcRequest.builder().requestId(UUID.randomUUID().toString())
+                .interfaceName(SlowService.class.getName()).methodName("work")
+                .parameters(new Object[0]).paramTypes(new Class<?>[0]).group("deadline").version("").build();
+        return RpcMessage.builder().data(rpcRequest).codec(SerializationTypeEnum.KRYO.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).deadlineNanos(deadlineNanos).build();
+    }
+
+    //一个业务线程面前排着REQUESTS个请求，返回被调用的次数
+    private static int runBacklog(long deadlineNanos, EmbeddedChannel channel) {
+        SlowServiceImpl.INVOCATIONS.set(0);
+        for (int i = 0; i < REQUESTS; i++) {
+            channel.writeInbound(request(deadlineNanos));
+        }
+        return SlowServiceImpl.INVOCATIONS.get();
+    }
+
+    @Test
+    void expiredRequestsAreDroppedUnderOverload() {
+        LongAdder expired = new LongAdder();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(null, expired));
+        //没有截止时间：所有排队的请求都会被执行，即使调用方早就放弃了
+        assertEquals(REQUESTS, runBacklog(0, channel));
+        assertEquals(REQUESTS, channel.outboundMessages().size());
+        channel.outboundMessages().clear();
+
+        //调用方只等35毫秒，之后排到的请求直接丢弃，不调用也不回复
+        int invoked = runBacklog(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(35), channel);
+        assertTrue(invoked >= 1 && invoked <= 5, "invoked " + invoked);
+        assertEquals(REQUESTS - invoked, expired.sum());
+        assertEquals(invoked, channel.outboundMessages().size());
+    }
+
+    @Test
+    void deadlineIsPropagatedToServiceThread() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        channel.writeInbound(request(deadlineNanos));
+        RpcMessage response = channel.readOutbound();
+        assertEquals(deadlineNanos, ((RpcResponse<?>) response.getData()).getData());
+        //处理完后恢复
+        assertEquals(0, Deadline.current());
+    }
+
+    @Test
+    void remainingTimeIsCarriedInHeader() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        encoder.writeOutbound(request(System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+        ByteBuf frame = encoder.readOutbound();
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcMessageDecoder());
+        decoder.writeInbound(frame);
+        RpcMessage decoded = decoder.readInbound();
+        long remaining = Deadline.remainingNanos(decoded.getDeadlineNanos());
+        assertTrue(remaining > TimeUnit.SECONDS.toNanos(4) && remaining <= TimeUnit.SECONDS.toNanos(5));
+
+        encoder.writeOutbound(request(0));
+        decoder.writeInbound((ByteBuf) encoder.readOutbound());
+        assertEquals(0, ((RpcMessage) decoder.readInbound()).getDeadlineNanos());
+    }
+
+    @Test
+    void callUsesEarliestDeadline() {
+        long outer = Deadline.call(50, TimeUnit.MILLISECONDS, Deadline::current);
+        assertFalse(Deadline.isExpired(outer));
+        long nested = Deadline.call(1, TimeUnit.SECONDS, () -> Deadline.call(10, TimeUnit.SECONDS, () -> Deadline.forCall(60_000)));
+        assertTrue(Deadline.remainingNanos(nested) <= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, Deadline.current());
+        assertEquals(0, Deadline.forCall(0));
+    }
+}
@@ -0,0 +1,64 @@
+package study.rpc.extension;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.serialize.Serializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ExtensionLoaderTest {
+    @SPI
+    public interface Counter {
+    }
+
+    public static class SlowCounter implements Counter {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        public SlowCounter() throws InterruptedException {
+            CREATED.incrementAndGet();
+            //放大并发首次调用的时间窗口
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    @Test
+    void concurrentFirstCallsCreateOneInstance() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Counter>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return ExtensionLoader.getExtensionLoader(Counter.class).getExtension("counter");
+            }));
+        }
+        start.countDown();
+        Counter first = futures.get(0).get();
+        for (Future<Counter> future : futures) {
+            assertSame(first, future.get());
+        }
+        executor.shutdown();
+        assertEquals(1, SlowCounter.CREATED.get());
+    }
+
+    @Test
+    void extensionsAreResolvedFromIndex() {
+        //core模块的扩展在编译时生成的索引中
+        assertNotNull(ExtensionLoader.IndexHolder.INDEX.get(Serializer.class.getName()));
+        assertNotNull(ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("kryo"));
+        assertThrows(RuntimeException.class, () -> ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("unknown"));
+        assertThrows(IllegalArgumentException.class, () -> ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(" "));
+    }
+}
@@ -0,0 +1,38 @@
+package study.rpc.hedge;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.HedgeConfig;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgePolicyTest {
+    @Test
+    void delayFollowsConfiguredPercentile() {
+        HedgePolicy policy = new HedgePolicy(HedgeConfig.builder().percentile(90).minSamples(100).build());
+        assertEquals(-1, policy.getDelayNanos());
+        for (int i = 1; i <= 100; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        policy.maybeRefresh(System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+        assertEquals(90.0, policy.getDelayNanos() / 1e6, 0.5);
+    }
+
+    @Test
+    void budgetBoundsExtraLoad() {
+        HedgePolicy policy = new HedgePolicy(HedgeConfig.builder().budgetRatio(0.1).maxBudget(2).build());
+        assertTrue(policy.tryAcquireHedge());
+        assertTrue(policy.tryAcquireHedge());
+        assertFalse(policy.tryAcquireHedge());
+        //每10次调用积累一次对冲
+        for (int i = 0; i < 9; i++) {
+            policy.onCall();
+        }
+        assertFalse(policy.tryAcquireHedge());
+        policy.onCall();
+        assertTrue(policy.tryAcquireHedge());
+    }
+}
@@ -0,0 +1,75 @@
+package study.rpc.injvm;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InJvmInvokerTest {
+    public interface ListService {
+        List<String> append(List<String> list, String value);
+    }
+
+    public static class ListServiceImpl implements ListService {
+        @Override
+        public List<String> append(List<String> list, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("value is null");
+            }
+            list.add(value);
+            return list;
+        }
+    }
+
+    private static InJvmInvoker newInvoker(boolean copy) {
+        ZkServiceProviderImpl serviceProvider = new ZkServiceProviderImpl();
+        serviceProvider.addService(RpcServiceConfig.builder().service(new ListServiceImpl()).build());
+        return new InJvmInvoker(serviceProvider, copy);
+    }
+
+    @Test
+    void sharesObjectsWithoutCopy() throws Exception {
+        InJvmInvoker invoker = newInvoker(false);
+        assertNull(invoker.findService("unknown"));
+        Object service = invoker.findService(ListService.class.getName());
+        Method method = ListService.class.getMethod("append", List.class, String.class);
+        List<String> list = new ArrayList<>();
+        Object result = invoker.invoke(service, method, new Object[]{list, "a"}).get();
+        assertSame(list, result);
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    void copiesArgumentsAndResult() throws Exception {
+        InJvmInvoker invoker = newInvoker(true);
+        Object service = invoker.findService(ListService.class.getName());
+        Method method = ListService.class.getMethod("append", List.class, String.class);
+        List<String> list = new ArrayList<>();
+        Object result = invoker.invoke(service, method, new Object[]{list, "a"}).get();
+        //服务端修改的是拷贝，调用方的参数不受影响
+        assertTrue(list.isEmpty());
+        assertNotSame(list, result);
+        assertEquals(1, ((List<?>) result).size());
+    }
+
+    @Test
+    void targetExceptionIsPropagated() throws Exception {
+        InJvmInvoker invoker = newInvoker(false);
+        Object service = invoker.findService(ListService.class.getName());
+        Method method = ListService.class.getMethod("append", List.class, String.class);
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> invoker.invoke(service, method, new Object[]{new ArrayList<>(), null}).get());
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+}
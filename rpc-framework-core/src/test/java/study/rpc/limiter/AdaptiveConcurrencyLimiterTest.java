@@ -0,0 +1,43 @@
+package study.rpc.limiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+    @Test
+    void rejectsAboveLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsStableAndShrinksWhenItRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 1000);
+        runAtLimit(limiter, 1_000_000, 30);
+        int grown = limiter.getLimit();
+        assertTrue(grown > 20, "limit should grow, was " + grown);
+
+        //排队导致延迟变成原来的5倍
+        runAtLimit(limiter, 5_000_000, 1);
+        assertTrue(limiter.getLimit() < grown / 2, "limit should shrink, was " + limiter.getLimit());
+    }
+
+    //每轮占满当前限制，再以给定延迟归还
+    private static void runAtLimit(AdaptiveConcurrencyLimiter limiter, long rttNanos, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(rttNanos);
+            }
+        }
+    }
+}
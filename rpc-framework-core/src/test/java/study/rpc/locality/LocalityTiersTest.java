@@ -0,0 +1,71 @@
+package study.rpc.locality;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.registry.ServiceNodeData;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class LocalityTiersTest {
+    private static final List<String> ADDRESSES = Arrays.asList("10.0.0.1:9998", "10.0.0.2:9998", "10.0.0.3:9998",
+            "10.0.1.1:9998", "10.0.1.2:9998");
+
+    private final Map<String, ServiceNodeData> nodeData = new HashMap<>();
+    private final Set<String> unavailable = new HashSet<>();
+    private final LocalityTiers.Availability availability = (address, nowNanos) -> !unavailable.contains(address);
+
+    LocalityTiersTest() {
+        nodeData.put("10.0.0.1:9998", new ServiceNodeData(null, "az1", "host1"));
+        nodeData.put("10.0.0.2:9998", new ServiceNodeData(null, "az1", "host2"));
+        nodeData.put("10.0.0.3:9998", new ServiceNodeData(null, "az1", "host3"));
+        nodeData.put("10.0.1.1:9998", new ServiceNodeData(null, "az2", "host4"));
+        //旧版本服务端没有标签
+        nodeData.put("10.0.1.2:9998", ServiceNodeData.parse("/tmp/rpc-9998.sock"));
+    }
+
+    private LocalityTiers tiers(String zone, String host) {
+        return new LocalityTiers(ADDRESSES, nodeData::get, zone, host);
+    }
+
+    @Test
+    void prefersSameHostThenSameZone() {
+        LocalityTiers tiers = tiers("az1", "host1");
+        assertEquals(Collections.singletonList("10.0.0.1:9998"), tiers.select(availability, 0.5, 0));
+
+        //同主机的服务端不可用，扩大到同可用区
+        unavailable.add("10.0.0.1:9998");
+        assertEquals(ADDRESSES.subList(0, 3), tiers.select(availability, 0.5, 0));
+
+        //同可用区只有三分之一可用，低于比例，使用全部地址
+        unavailable.add("10.0.0.2:9998");
+        assertSame(ADDRESSES, tiers.select(availability, 0.5, 0));
+    }
+
+    @Test
+    void withoutLocalProvidersUsesSourceList() {
+        assertSame(ADDRESSES, tiers("az3", "host9").select(availability, 0.5, 0));
+        //没有配置可用区时只区分主机
+        assertSame(ADDRESSES, tiers(null, "host9").select(availability, 0.5, 0));
+        assertEquals(Collections.singletonList("10.0.1.1:9998"), tiers(null, "host4").select(availability, 0.5, 0));
+    }
+
+    @Test
+    void nodeDataRoundTrip() {
+        ServiceNodeData data = new ServiceNodeData("/tmp/a&b=c.sock", "az1", "host1");
+        ServiceNodeData parsed = ServiceNodeData.parse(data.encode());
+        assertEquals("/tmp/a&b=c.sock", parsed.getDomainSocketPath());
+        assertEquals("az1", parsed.getZone());
+        assertEquals("host1", parsed.getHost());
+        assertNull(ServiceNodeData.EMPTY.encode());
+        assertEquals("/tmp/rpc.sock", ServiceNodeData.parse("/tmp/rpc.sock").getDomainSocketPath());
+    }
+}
@@ -0,0 +1,45 @@
+package study.rpc.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RpcMetricsTest {
+    @Test
+    void recordAndSnapshot() {
+        MethodMetrics metrics = RpcMetrics.provider("study.rpc.TestService", "hello");
+        assertSame(metrics, RpcMetrics.provider("study.rpc.TestService", "hello"));
+        metrics.onStart();
+        metrics.onStart();
+        metrics.onComplete(1_000_000, true);
+
+        MethodMetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.getCalls());
+        assertEquals(1, snapshot.getInFlight());
+        assertEquals(0, snapshot.getErrors());
+        assertEquals(1000.0, snapshot.getLatencyP50Us(), 1.0);
+
+        metrics.onComplete(2_000_000, false);
+        snapshot = metrics.snapshot();
+        assertEquals(0, snapshot.getInFlight());
+        assertEquals(1, snapshot.getErrors());
+        //快照是累计的，两次拉取之间的数据不会丢失
+        assertEquals(2000.0, snapshot.getLatencyMaxUs(), 2.0);
+    }
+
+    @Test
+    void exportedThroughJmx() throws Exception {
+        RpcMetrics.consumer("study.rpc.TestService", "hello").onStart();
+        RpcMetrics.registerMBean();
+        Object snapshots = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("study.rpc:type=RpcMetrics"), "Snapshots");
+        assertTrue(snapshots instanceof CompositeData[]);
+        assertTrue(((CompositeData[]) snapshots).length > 0);
+    }
+}
@@ -0,0 +1,141 @@
+package study.rpc.remoting.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.metrics.MethodMetricsSnapshot;
+import study.rpc.metrics.RpcMetrics;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.transport.netty.server.NettyRpcServerHandler;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncInvokeTest {
+    private static final int REQUESTS = 1000;
+
+    public interface AsyncService {
+        CompletableFuture<String> lookup(String key);
+
+        Flow.Publisher<Integer> range(int count);
+    }
+
+    //结果由测试代码完成，模拟等待下游IO的服务
+    public static class AsyncServiceImpl implements AsyncService {
+        static final Map<String, CompletableFuture<String>> PENDING = new ConcurrentHashMap<>();
+
+        @Override
+        public CompletableFuture<String> lookup(String key) {
+            return PENDING.computeIfAbsent(key, k -> new CompletableFuture<>());
+        }
+
+        @Override
+        public Flow.Publisher<Integer> range(int count) {
+            return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    for (int i = 0; i < count; i++) {
+                        subscriber.onNext(i);
+                    }
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+    @BeforeAll
+    static void publish() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .service(new AsyncServiceImpl()).group("async").build());
+    }
+
+    private static RpcMessage request(String methodName, Class<?> paramType, Object parameter, long deadlineNanos) {
+        RpcRequest rpcRequest = RpcRequest.builder().requestId(UUID.randomUUID().toString())
+                .interfaceName(AsyncService.class.getName()).methodName(methodName)
+                .parameters(new Object[]{parameter}).paramTypes(new Class<?>[]{paramType})
+                .group("async").version("").build();
+        return RpcMessage.builder().data(rpcRequest).codec(SerializationTypeEnum.KRYO.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).deadlineNanos(deadlineNanos).build();
+    }
+
+    private static RpcResponse<?> readResponse(EmbeddedChannel channel) {
+        RpcMessage rpcMessage = channel.readOutbound();
+        return rpcMessage == null ? null : (RpcResponse<?>) rpcMessage.getData();
+    }
+
+    @Test
+    void pendingFuturesDoNotHoldTheHandlerThread() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        //同一个线程上挂起REQUESTS个调用，每个调用都立即返回
+        for (int i = 0; i < REQUESTS; i++) {
+            channel.writeInbound(request("lookup", String.class, "key-" + i, 0));
+        }
+        assertNull(channel.readOutbound());
+        for (int i = REQUESTS - 1; i >= 0; i--) {
+            AsyncServiceImpl.PENDING.remove("key-" + i).complete("value-" + i);
+        }
+        assertEquals(REQUESTS, channel.outboundMessages().size());
+        assertEquals("value-" + (REQUESTS - 1), readResponse(channel).getData());
+        channel.outboundMessages().clear();
+
+        channel.writeInbound(request("lookup", String.class, "failed", 0));
+        AsyncServiceImpl.PENDING.remove("failed").completeExceptionally(new IllegalStateException("downstream failed"));
+        assertEquals(RpcResponseCodeEnum.FAIL.getCode(), readResponse(channel).getCode());
+    }
+
+    @Test
+    void publisherIsCollectedIntoList() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        channel.writeInbound(request("range", int.class, 3, 0));
+        assertEquals(Arrays.asList(0, 1, 2), (List<?>) readResponse(channel).getData());
+    }
+
+    @Test
+    void futureNotCompletedBeforeDeadlineIsDropped() throws InterruptedException {
+        LongAdder expired = new LongAdder();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler(null, expired));
+        channel.writeInbound(request("lookup", String.class, "slow", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20)));
+        Thread.sleep(40);
+        channel.runScheduledPendingTasks();
+        assertEquals(1, expired.sum());
+        //截止时间之后才完成，调用方已经不再等待，不回复
+        AsyncServiceImpl.PENDING.remove("slow").complete("late");
+        assertNull(channel.readOutbound());
+        assertTrue(channel.isActive());
+    }
+
+    @Test
+    void unknownMethodsShareOneMetricsBucket() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyRpcServerHandler());
+        for (int i = 0; i < 10; i++) {
+            channel.writeInbound(request("missing-" + i, String.class, "key", 0));
+            assertEquals(RpcResponseCodeEnum.FAIL.getCode(), readResponse(channel).getCode());
+        }
+        List<MethodMetricsSnapshot> snapshots = RpcMetrics.snapshot();
+        assertTrue(snapshots.stream().noneMatch(s -> s.getMethodName().startsWith("missing-")));
+        assertTrue(RpcMetrics.unknownProvider().snapshot().getCalls() >= 10);
+    }
+}
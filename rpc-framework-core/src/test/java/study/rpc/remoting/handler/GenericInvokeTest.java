@@ -0,0 +1,61 @@
+package study.rpc.remoting.handler;
+
+import org.junit.jupiter.api.Test;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.exception.RpcException;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.remoting.dtObject.RpcRequest;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GenericInvokeTest {
+    public interface RepeatService {
+        String repeat(String value, int times);
+
+        int sum(int[] values);
+    }
+
+    public static class RepeatServiceImpl implements RepeatService {
+        @Override
+        public String repeat(String value, int times) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < times; i++) {
+                sb.append(value);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public int sum(int[] values) {
+            int sum = 0;
+            for (int value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    private static RpcRequest genericRequest(String methodName, String[] paramTypeNames, Object[] parameters) {
+        return RpcRequest.builder().requestId(UUID.randomUUID().toString())
+                .interfaceName(RepeatService.class.getName()).methodName(methodName)
+                .paramTypeNames(paramTypeNames).parameters(parameters)
+                .group("generic").version("").build();
+    }
+
+    @Test
+    void invokesByTypeNames() {
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .service(new RepeatServiceImpl()).group("generic").build());
+        RpcRequestHandler handler = new RpcRequestHandler();
+        assertEquals("abab", handler.handle(genericRequest("repeat",
+                new String[]{"java.lang.String", "int"}, new Object[]{"ab", 2})));
+        assertEquals(6, handler.handle(genericRequest("sum",
+                new String[]{int[].class.getName()}, new Object[]{new int[]{1, 2, 3}})));
+        assertThrows(RpcException.class, () -> handler.handle(genericRequest("repeat",
+                new String[]{"no.such.Type", "int"}, new Object[]{"ab", 2})));
+    }
+}
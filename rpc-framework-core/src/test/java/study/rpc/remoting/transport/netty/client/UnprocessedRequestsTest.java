@@ -0,0 +1,36 @@
+package study.rpc.remoting.transport.netty.client;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import study.rpc.exception.RpcException;
+import study.rpc.remoting.dtObject.RpcResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UnprocessedRequestsTest {
+
+    @Test
+    void pendingRequestsFailWhenTheirConnectionCloses() {
+        UnprocessedRequests unprocessedRequests = new UnprocessedRequests();
+        EmbeddedChannel closing = new EmbeddedChannel(new NettyRpcClientHandler());
+        EmbeddedChannel other = new EmbeddedChannel(new NettyRpcClientHandler());
+        CompletableFuture<RpcResponse<Object>> onClosing = new CompletableFuture<>();
+        CompletableFuture<RpcResponse<Object>> onOther = new CompletableFuture<>();
+        unprocessedRequests.put("closing-1", onClosing, closing);
+        unprocessedRequests.put("other-1", onOther, other);
+
+        closing.close();
+        ExecutionException e = assertThrows(ExecutionException.class, onClosing::get);
+        assertTrue(e.getCause() instanceof RpcException);
+        assertNull(unprocessedRequests.remove("closing-1"));
+        //其他连接上的请求继续等待
+        assertFalse(onOther.isDone());
+        assertTrue(unprocessedRequests.remove("other-1") == onOther);
+    }
+}
@@ -0,0 +1,150 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import study.rpc.config.RpcServiceConfig;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.factory.SingletonFactory;
+import study.rpc.loadbalance.LoadBalance;
+import study.rpc.loadbalance.loadbalancer.ConsistenHashLoadBalance;
+import study.rpc.loadbalance.loadbalancer.RandomLoadBalance;
+import study.rpc.provider.impl.ZkServiceProviderImpl;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+import study.rpc.remoting.handler.RpcRequestHandler;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 请求路径上每次操作分配的字节数，超过预算时测试失败，防止热点路径上的分配悄悄变多
+ * 预算按没有逃逸分析(解释执行)时的分配量设置，留了余量
+ */
+public class AllocationBudgetTest {
+    private static final int WARMUP = 5_000;
+    private static final int ITERATIONS = 20_000;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public interface EchoService {
+        String echo(String value);
+    }
+
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+    }
+
+    @BeforeAll
+    static void setUp() {
+        assumeTrue(THREAD_MX_BEAN.isThreadAllocatedMemorySupported());
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+        SingletonFactory.getInstance(ZkServiceProviderImpl.class).addService(RpcServiceConfig.builder()
+                .service(new EchoServiceImpl()).group("alloc").build());
+    }
+
+    //预热后每次操作平均分配的字节数
+    private static long bytesPerOp(Runnable op) {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        return (THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+
+    private static void assertBudget(String name, long budget, Runnable op) {
+        long bytes = bytesPerOp(op);
+        assertTrue(bytes <= budget, name + " allocated " + bytes + " bytes/op, budget " + budget);
+    }
+
+    private static RpcRequest request() {
+        return RpcRequest.builder().requestId("2b1f7a52-5d1e-4c7c-9a43-6f1d0c2e9b11")
+                .interfaceName(EchoService.class.getName()).methodName("echo")
+                .parameters(new Object[]{"hello"}).paramTypes(new Class<?>[]{String.class})
+                .group("alloc").version("").build();
+    }
+
+    private static RpcMessage message(byte messageType, Object data) {
+        return RpcMessage.builder().messageType(messageType).codec(SerializationTypeEnum.KRYO.getCode())
+                .data(data).build();
+    }
+
+    private static ByteBuf encode(RpcMessage rpcMessage) {
+        ByteBuf out = Unpooled.buffer(256);
+        new RpcMessageEncoder().encode(null, rpcMessage, out);
+        return out;
+    }
+
+    @Test
+    void encode() {
+        RpcMessageEncoder encoder = new RpcMessageEncoder();
+        RpcMessage request = message(RpcConstants.REQUEST_TYPE, request());
+        RpcMessage response = message(RpcConstants.RESPONSE_TYPE, RpcResponse.success("hello", request().getRequestId()));
+        ByteBuf out = Unpooled.buffer(256);
+        assertBudget("encode request", 448, () -> {
+            out.clear();
+            encoder.encode(null, request, out);
+        });
+        assertBudget("encode response", 160, () -> {
+            out.clear();
+            encoder.encode(null, response, out);
+        });
+    }
+
+    @Test
+    void decode() throws Exception {
+        RpcMessageDecoder decoder = new RpcMessageDecoder();
+        ByteBuf request = encode(message(RpcConstants.REQUEST_TYPE, request()));
+        ByteBuf response = encode(message(RpcConstants.RESPONSE_TYPE, RpcResponse.success("hello", request().getRequestId())));
+        assertEquals("echo", ((RpcRequest) ((RpcMessage) decoder.decode(null, request.duplicate())).getData()).getMethodName());
+        assertBudget("decode request", 1280, () -> decodeQuietly(decoder, request));
+        assertBudget("decode response", 640, () -> decodeQuietly(decoder, response));
+    }
+
+    private static void decodeQuietly(RpcMessageDecoder decoder, ByteBuf frame) {
+        try {
+            decoder.decode(null, frame.duplicate());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void loadBalanceSelect() {
+        List<String> addresses = Arrays.asList("10.0.0.1:9998", "10.0.0.2:9998", "10.0.0.3:9998");
+        RpcRequest rpcRequest = request();
+        LoadBalance random = new RandomLoadBalance();
+        LoadBalance consistentHash = new ConsistenHashLoadBalance();
+        assertBudget("random select", 0, () -> random.selectServiceAddress(addresses, rpcRequest));
+        assertBudget("consistent hash select", 160, () -> consistentHash.selectServiceAddress(addresses, rpcRequest));
+        //相同的参数总是选到同一个地址
+        String selected = consistentHash.selectServiceAddress(addresses, rpcRequest);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(selected, consistentHash.selectServiceAddress(addresses, request()));
+        }
+    }
+
+    @Test
+    void dispatch() {
+        RpcRequestHandler handler = SingletonFactory.getInstance(RpcRequestHandler.class);
+        RpcRequest rpcRequest = request();
+        assertEquals("hello", handler.handle(rpcRequest));
+        assertBudget("dispatch", 192, () -> handler.handle(rpcRequest));
+    }
+}
@@ -0,0 +1,162 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.serialize.kryo.KryoSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AttachmentCodecTest {
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static RpcMessage request(Object... parameters) {
+        Class<?>[] paramTypes = new Class<?>[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            paramTypes[i] = parameters[i].getClass();
+        }
+        RpcRequest rpcRequest = RpcRequest.builder().requestId("1").interfaceName("demo.BlobService")
+                .methodName("upload").parameters(parameters).paramTypes(paramTypes).group("").version("").build();
+        return RpcMessage.builder().data(rpcRequest).codec(SerializationTypeEnum.KRYO.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+    }
+
+    //编码器写出的所有对象拼成字节流，FileRegion按sendfile的方式写出
+    private static byte[] encode(RpcMessage rpcMessage, int[] writes) throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageEncoder());
+        channel.writeOutbound(rpcMessage);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(stream);
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            writes[0]++;
+            if (msg instanceof FileRegion) {
+                FileRegion region = (FileRegion) msg;
+                while (region.transferred() < region.count()) {
+                    region.transferTo(target, region.transferred());
+                }
+                region.release();
+            } else {
+                ByteBuf buf = (ByteBuf) msg;
+                buf.readBytes(stream, buf.readableBytes());
+                buf.release();
+            }
+        }
+        return stream.toByteArray();
+    }
+
+    //按固定大小分段送给解码器，模拟TCP拆包
+    private static RpcMessage decode(byte[] stream, int fragment, boolean passThrough, List<ByteBuf> fragments) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder(passThrough));
+        for (int offset = 0; offset < stream.length; offset += fragment) {
+            ByteBuf buf = Unpooled.directBuffer(fragment);
+            buf.writeBytes(stream, offset, Math.min(fragment, stream.length - offset));
+            fragments.add(buf);
+            channel.writeInbound(buf);
+        }
+        RpcMessage rpcMessage = channel.readInbound();
+        assertNull(channel.readInbound());
+        return rpcMessage;
+    }
+
+    @Test
+    void attachmentsFollowFrameAndAreSlicedOnReceive(@TempDir Path dir) throws Exception {
+        byte[] memory = randomBytes(300_000);
+        byte[] fileContent = randomBytes(200_000);
+        Path file = Files.write(dir.resolve("blob"), fileContent);
+        ByteBuffer direct = ByteBuffer.allocateDirect(memory.length);
+        direct.put(memory).flip();
+
+        int[] writes = new int[1];
+        byte[] stream = encode(request(RpcAttachment.of(direct), RpcAttachment.of(file, 1000, 150_000)), writes);
+        //消息帧 + 两个附件分别写出，附件不在消息体中
+        assertEquals(3, writes[0]);
+        assertTrue(stream.length < memory.length + 150_000 + 1024);
+
+        List<ByteBuf> fragments = new ArrayList<>();
+        RpcMessage received = decode(stream, 7919, false, fragments);
+        Object[] parameters = ((RpcRequest) received.getData()).getParameters();
+        RpcAttachment first = (RpcAttachment) parameters[0];
+        RpcAttachment second = (RpcAttachment) parameters[1];
+        assertArrayEquals(memory, first.toByteArray());
+        byte[] expected = new byte[150_000];
+        System.arraycopy(fileContent, 1000, expected, 0, expected.length);
+        assertArrayEquals(expected, second.toByteArray());
+        //附件是接收缓冲区的切片，跨越多个分段
+        assertTrue(first.nioBuffers().length > 1);
+
+        //关闭附件后所有接收缓冲区都被释放
+        RpcAttachment.closeAll(received.getAttachments());
+        for (ByteBuf fragment : fragments) {
+            assertEquals(0, fragment.refCnt());
+        }
+    }
+
+    @Test
+    void passThroughForwardsAttachments() throws Exception {
+        byte[] content = randomBytes(100_000);
+        RpcMessage forwarded = decode(encode(request(RpcAttachment.of(ByteBuffer.wrap(content))), new int[1]),
+                65536, true, new ArrayList<>());
+        assertNotNull(forwarded.getSerializedBody());
+        assertEquals(1, forwarded.getAttachments().size());
+
+        //网关原样转发，服务端正常解码
+        RpcMessage received = decode(encode(forwarded, new int[1]), 65536, false, new ArrayList<>());
+        RpcAttachment attachment = (RpcAttachment) ((RpcRequest) received.getData()).getParameters()[0];
+        assertArrayEquals(content, attachment.toByteArray());
+        RpcAttachment.closeAll(received.getAttachments());
+        RpcAttachment.closeAll(forwarded.getAttachments());
+    }
+
+    @Test
+    void serializedInlineOutsideCodec() {
+        byte[] content = randomBytes(1000);
+        KryoSerializer serializer = new KryoSerializer();
+        RpcAttachment copy = serializer.deserialize(serializer.serialize(RpcAttachment.of(ByteBuffer.wrap(content))),
+                RpcAttachment.class);
+        assertArrayEquals(content, copy.toByteArray());
+    }
+
+    @Test
+    void tooManyAttachmentsFallBackToInline() throws Exception {
+        Object[] parameters = new Object[RpcConstants.MAX_ATTACHMENTS + 1];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = RpcAttachment.of(ByteBuffer.wrap(randomBytes(i + 1)));
+        }
+        int[] writes = new int[1];
+        RpcMessage received = decode(encode(request(parameters), writes), 1024, false, new ArrayList<>());
+        assertEquals(RpcConstants.MAX_ATTACHMENTS + 1, writes[0]);
+        Object[] decoded = ((RpcRequest) received.getData()).getParameters();
+        for (int i = 0; i < decoded.length; i++) {
+            assertArrayEquals(randomBytes(i + 1), ((RpcAttachment) decoded[i]).toByteArray());
+        }
+        RpcAttachment.closeAll(received.getAttachments());
+    }
+}
@@ -0,0 +1,253 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+import study.rpc.enums.RpcResponseCodeEnum;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.dtObject.RpcResponse;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactProtocolTest {
+
+    private static EmbeddedChannel channel(CompactProtocol protocol) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageEncoder(protocol), new RpcMessageDecoder(protocol));
+        channel.attr(CompactProtocol.KEY).set(protocol);
+        return channel;
+    }
+
+    private static RpcRequest rpcRequest(Object... parameters) {
+        Class<?>[] paramTypes = new Class<?>[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            paramTypes[i] = parameters[i].getClass();
+        }
+        return RpcRequest.builder().requestId(UUID.randomUUID().toString()).interfaceName("demo.HelloService")
+                .methodName("hello").parameters(parameters).paramTypes(paramTypes).group("g").version("v").build();
+    }
+
+    private static RpcMessage message(byte messageType, Object data) {
+        return RpcMessage.builder().messageType(messageType).codec(SerializationTypeEnum.KRYO.getCode()).data(data).build();
+    }
+
+    //把from写出的字节全部交给to，返回字节数和第一个字节
+    private static int[] transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        int[] sizeAndFirstByte = {0, -1};
+        ByteBuf buf;
+        while ((buf = from.readOutbound()) != null) {
+            if (sizeAndFirstByte[1] < 0 && buf.isReadable()) {
+                sizeAndFirstByte[1] = buf.getByte(buf.readerIndex());
+            }
+            sizeAndFirstByte[0] += buf.readableBytes();
+            to.writeInbound(buf);
+        }
+        return sizeAndFirstByte;
+    }
+
+    private static boolean isV1(int[] sizeAndFirstByte) {
+        return sizeAndFirstByte[1] == RpcConstants.MAGIC_NUMBER[0];
+    }
+
+    //客户端发送一次请求，服务端原样返回第一个参数
+    private static int[][] call(EmbeddedChannel client, EmbeddedChannel server, RpcRequest rpcRequest) {
+        client.writeOutbound(message(RpcConstants.REQUEST_TYPE, rpcRequest));
+        int[] requestBytes = transfer(client, server);
+        RpcRequest received = (RpcRequest) ((RpcMessage) server.readInbound()).getData();
+        assertEquals(rpcRequest.getRpcServiceName(), received.getRpcServiceName());
+        assertEquals(rpcRequest.getMethodName(), received.getMethodName());
+        assertArrayEquals(rpcRequest.getParamTypes(), received.getParamTypes());
+        Object result = received.getParameters()[0];
+        server.writeOutbound(message(RpcConstants.RESPONSE_TYPE, RpcResponse.success(result, received.getRequestId())));
+        int[] responseBytes = transfer(server, client);
+        RpcResponse<?> response = (RpcResponse<?>) ((RpcMessage) client.readInbound()).getData();
+        assertEquals(rpcRequest.getRequestId(), response.getRequestId());
+        assertEquals(RpcResponseCodeEnum.SUCCESS.getCode(), response.getCode());
+        assertEquals(RpcResponseCodeEnum.SUCCESS.getMessage(), response.getMessage());
+        if (!(result instanceof RpcAttachment)) {
+            assertEquals(result, response.getData());
+        }
+        return new int[][]{requestBytes, responseBytes};
+    }
+
+    @Test
+    void negotiatesV2AndReusesMethodDictionary() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        //第一次调用用v1声明和确认
+        int[][] first = call(client, server, rpcRequest("world"));
+        assertTrue(isV1(first[0]));
+        assertTrue(isV1(first[1]));
+        //第二次调用在字典中定义方法，之后只写方法id
+        int[][] second = call(client, server, rpcRequest("world"));
+        int[][] third = call(client, server, rpcRequest("world"));
+        assertTrue(!isV1(second[0]) && !isV1(second[1]) && !isV1(third[0]));
+        assertTrue(third[0][0] < second[0][0]);
+        assertTrue(third[0][0] < first[0][0] / 3, "v2 request " + third[0][0] + "B, v1 " + first[0][0] + "B");
+        assertTrue(third[1][0] < first[1][0] / 2, "v2 response " + third[1][0] + "B, v1 " + first[1][0] + "B");
+        //另一个方法使用新的字典id
+        call(client, server, RpcRequest.builder().requestId(UUID.randomUUID().toString()).interfaceName("demo.HelloService")
+                .methodName("bye").parameters(new Object[]{1}).paramTypes(new Class<?>[]{Integer.class})
+                .group("g").version("v").build());
+        call(client, server, rpcRequest("again"));
+    }
+
+    @Test
+    void heartbeatNegotiatesBeforeFirstRequest() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        client.writeOutbound(message(RpcConstants.HEARTBEAT_REQUEST_TYPE, RpcConstants.PING));
+        transfer(client, server);
+        assertEquals(RpcConstants.PING, ((RpcMessage) server.readInbound()).getData());
+        server.writeOutbound(message(RpcConstants.HEARTBEAT_RESPONSE_TYPE, RpcConstants.PONG));
+        assertTrue(isV1(transfer(server, client)));
+        assertEquals(RpcConstants.PONG, ((RpcMessage) client.readInbound()).getData());
+        int[][] first = call(client, server, rpcRequest("world"));
+        assertTrue(!isV1(first[0]) && !isV1(first[1]));
+    }
+
+    @Test
+    void v2ClientFallsBackToV1Server() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(null);
+        call(client, server, rpcRequest("world"));
+        int[][] second = call(client, server, rpcRequest("world"));
+        assertTrue(isV1(second[0]) && isV1(second[1]));
+    }
+
+    @Test
+    void v1ClientIsAnsweredWithV1() {
+        EmbeddedChannel client = channel(null);
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        call(client, server, rpcRequest("world"));
+        int[][] second = call(client, server, rpcRequest("world"));
+        assertTrue(isV1(second[0]) && isV1(second[1]));
+    }
+
+    @Test
+    void responsesToV1RequestsStayV1AfterSwitch() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        //确认到达之前发出的两个请求都是v1
+        RpcRequest first = rpcRequest("first");
+        RpcRequest second = rpcRequest("second");
+        client.writeOutbound(message(RpcConstants.REQUEST_TYPE, first));
+        client.writeOutbound(message(RpcConstants.REQUEST_TYPE, second));
+        transfer(client, server);
+        for (RpcRequest expected : new RpcRequest[]{first, second}) {
+            RpcRequest received = (RpcRequest) ((RpcMessage) server.readInbound()).getData();
+            assertEquals(expected.getRequestId(), received.getRequestId());
+            server.writeOutbound(message(RpcConstants.RESPONSE_TYPE, RpcResponse.success("ok", received.getRequestId())));
+        }
+        assertTrue(isV1(transfer(server, client)));
+        assertEquals(first.getRequestId(), ((RpcResponse<?>) ((RpcMessage) client.readInbound()).getData()).getRequestId());
+        assertEquals(second.getRequestId(), ((RpcResponse<?>) ((RpcMessage) client.readInbound()).getData()).getRequestId());
+        assertNotEquals(RpcConstants.MAGIC_NUMBER[0], call(client, server, rpcRequest("third"))[0][1]);
+    }
+
+    @Test
+    void attachmentsFollowV2Frame() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        call(client, server, rpcRequest("world"));
+        byte[] content = new byte[100_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        client.writeOutbound(message(RpcConstants.REQUEST_TYPE, rpcRequest(RpcAttachment.of(ByteBuffer.wrap(content)))));
+        assertTrue(!isV1(transfer(client, server)));
+        RpcMessage received = server.readInbound();
+        RpcAttachment attachment = (RpcAttachment) ((RpcRequest) received.getData()).getParameters()[0];
+        assertArrayEquals(content, attachment.toByteArray());
+        RpcAttachment.closeAll(received.getAttachments());
+    }
+
+    @Test
+    void responseOfForgottenRequestIsDropped() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        call(client, server, rpcRequest("world"));
+        RpcRequest rpcRequest = rpcRequest("late");
+        client.writeOutbound(message(RpcConstants.REQUEST_TYPE, rpcRequest));
+        transfer(client, server);
+        RpcRequest received = (RpcRequest) ((RpcMessage) server.readInbound()).getData();
+        //请求超时后丢掉编号，之后到达的响应不再交给调用方
+        CompactProtocol.forget(client, rpcRequest.getRequestId());
+        client.runPendingTasks();
+        server.writeOutbound(message(RpcConstants.RESPONSE_TYPE, RpcResponse.success("late", received.getRequestId())));
+        transfer(server, client);
+        assertNull(client.readInbound());
+        call(client, server, rpcRequest("next"));
+    }
+
+    @Test
+    void oversizedCountIsRejectedBeforeAllocation() {
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        ByteBuf header = Unpooled.buffer();
+        header.writeByte(SerializationTypeEnum.KRYO.getCode());
+        header.writeByte(0);
+        //请求编号0，方法定义不加入字典，4个空字符串，参数类型个数是Integer.MAX_VALUE
+        CompactProtocol.writeVarInt(header, 0);
+        CompactProtocol.writeVarInt(header, 0);
+        for (int i = 0; i < 4; i++) {
+            CompactProtocol.writeVarInt(header, 1);
+        }
+        header.writeByte(1);
+        CompactProtocol.writeVarInt(header, Integer.MAX_VALUE);
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeByte(RpcConstants.REQUEST_TYPE | CompactProtocol.FLAG_CODEC);
+        CompactProtocol.writeVarInt(frame, header.readableBytes());
+        frame.writeBytes(header);
+        assertThrows(DecoderException.class, () -> server.writeInbound(frame));
+    }
+
+    @Test
+    void methodsBeyondFullDictionaryFallBackToV1() {
+        EmbeddedChannel client = channel(CompactProtocol.forClient());
+        EmbeddedChannel server = channel(CompactProtocol.forServer());
+        call(client, server, rpcRequest("world"));
+        //填满字典
+        for (int i = 0; i < 1024; i++) {
+            call(client, server, RpcRequest.builder().requestId(UUID.randomUUID().toString()).interfaceName("demo.HelloService")
+                    .methodName("m" + i).parameters(new Object[]{"x"}).paramTypes(new Class<?>[]{String.class})
+                    .group("g").version("v").build());
+        }
+        RpcRequest unmapped = RpcRequest.builder().requestId(UUID.randomUUID().toString()).interfaceName("demo.HelloService")
+                .methodName("extra").parameters(new Object[]{"x"}).paramTypes(new Class<?>[]{String.class})
+                .group("g").version("v").build();
+        assertTrue(isV1(call(client, server, unmapped)[0]));
+        //字典中的方法继续使用v2
+        assertTrue(!isV1(call(client, server, RpcRequest.builder().requestId(UUID.randomUUID().toString())
+                .interfaceName("demo.HelloService").methodName("m0").parameters(new Object[]{"x"})
+                .paramTypes(new Class<?>[]{String.class}).group("g").version("v").build())[0]));
+    }
+
+    @Test
+    void varIntRoundTrip() {
+        ByteBuf buf = Unpooled.buffer();
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+        for (int value : values) {
+            CompactProtocol.writeVarInt(buf, value);
+        }
+        for (int value : values) {
+            assertEquals(value, CompactProtocol.readVarInt(buf));
+        }
+        assertEquals(1, CompactProtocol.varIntLength(127));
+        assertEquals(5, CompactProtocol.varIntLength(Integer.MAX_VALUE));
+        assertEquals(-1, CompactProtocol.parseSequence("2b1f7a52-5d1e-4c7c-9a43-6f1d0c2e9b11"));
+        assertEquals(42, CompactProtocol.parseSequence(CompactProtocol.sequenceRequestId(42)));
+    }
+}
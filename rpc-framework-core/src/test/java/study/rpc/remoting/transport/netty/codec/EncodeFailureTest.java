@@ -0,0 +1,54 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+import org.junit.jupiter.api.Test;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncodeFailureTest {
+
+    @DefaultSerializer(Unserializable.FailingSerializer.class)
+    static class Unserializable {
+        public static class FailingSerializer extends Serializer<Unserializable> {
+            @Override
+            public void write(Kryo kryo, Output output, Unserializable object) {
+                throw new KryoException("cannot serialize");
+            }
+
+            @Override
+            public Unserializable read(Kryo kryo, Input input, Class<Unserializable> type) {
+                throw new KryoException("cannot deserialize");
+            }
+        }
+    }
+
+    @Test
+    void serializationFailureFailsThePromise() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageEncoder());
+        RpcRequest rpcRequest = RpcRequest.builder().requestId("1").interfaceName("demo.HelloService")
+                .methodName("hello").parameters(new Object[]{new Unserializable()})
+                .paramTypes(new Class<?>[]{Unserializable.class}).group("g").version("v").build();
+        ChannelFuture future = channel.writeOneOutbound(RpcMessage.builder().data(rpcRequest)
+                .codec(SerializationTypeEnum.KRYO.getCode()).messageType(RpcConstants.REQUEST_TYPE).build());
+        channel.flushOutbound();
+        assertFalse(future.isSuccess());
+        assertTrue(future.cause() instanceof EncoderException);
+        assertNull(channel.readOutbound());
+        //连接没有问题，之后的消息照常写出
+        assertTrue(channel.isActive());
+    }
+}
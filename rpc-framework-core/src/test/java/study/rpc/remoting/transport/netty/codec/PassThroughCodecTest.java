@@ -0,0 +1,52 @@
+package study.rpc.remoting.transport.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PassThroughCodecTest {
+
+    private static ByteBuf encode(RpcMessage rpcMessage) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageEncoder());
+        channel.writeOutbound(rpcMessage);
+        return channel.readOutbound();
+    }
+
+    private static RpcMessage decode(ByteBuf frame, boolean passThrough) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder(passThrough));
+        channel.writeInbound(frame);
+        return channel.readInbound();
+    }
+
+    @Test
+    void forwardedBodyIsDecodedUnchanged() {
+        RpcRequest rpcRequest = RpcRequest.builder().requestId("1").interfaceName("demo.HelloService")
+                .methodName("hello").parameters(new Object[]{"world"}).paramTypes(new Class<?>[]{String.class})
+                .group("g").version("v").build();
+        RpcMessage request = RpcMessage.builder().data(rpcRequest).codec(SerializationTypeEnum.KRYO.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).serviceName(rpcRequest.getRpcServiceName()).build();
+
+        //网关只解析消息头
+        RpcMessage forwarded = decode(encode(request), true);
+        assertNull(forwarded.getData());
+        assertNotNull(forwarded.getSerializedBody());
+        assertEquals("demo.HelloServicegv", forwarded.getServiceName());
+
+        //原样转发后服务端正常解码
+        RpcMessage received = decode(encode(forwarded), false);
+        RpcRequest decoded = (RpcRequest) received.getData();
+        assertEquals("1", decoded.getRequestId());
+        assertEquals("hello", decoded.getMethodName());
+        assertArrayEquals(new Object[]{"world"}, decoded.getParameters());
+        assertEquals("demo.HelloServicegv", received.getServiceName());
+    }
+}
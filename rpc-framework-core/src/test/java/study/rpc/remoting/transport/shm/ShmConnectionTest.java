@@ -0,0 +1,105 @@
+package study.rpc.remoting.transport.shm;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.Channel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import study.rpc.enums.SerializationTypeEnum;
+import study.rpc.remoting.constants.RpcConstants;
+import study.rpc.remoting.dtObject.RpcAttachment;
+import study.rpc.remoting.dtObject.RpcMessage;
+import study.rpc.remoting.dtObject.RpcRequest;
+import study.rpc.remoting.transport.netty.codec.RpcMessageDecoder;
+import study.rpc.remoting.transport.netty.codec.RpcMessageEncoder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class ShmConnectionTest {
+    private static final int RING_CAPACITY = 1 << 16;
+
+    private static RpcMessage request(String id, byte[] content) {
+        RpcRequest rpcRequest = RpcRequest.builder().requestId(id).interfaceName("demo.BlobService")
+                .methodName("upload").parameters(new Object[]{id, RpcAttachment.of(ByteBuffer.wrap(content))})
+                .paramTypes(new Class<?>[]{String.class, RpcAttachment.class}).group("").version("").build();
+        return RpcMessage.builder().data(rpcRequest).codec(SerializationTypeEnum.KRYO.getCode())
+                .messageType(RpcConstants.REQUEST_TYPE).build();
+    }
+
+    private static byte[] content(int writer, int size) {
+        byte[] content = new byte[size];
+        Arrays.fill(content, (byte) writer);
+        return content;
+    }
+
+    @Test
+    void concurrentWritersDoNotInterleave(@TempDir Path dir) throws Exception {
+        BlockingQueue<RpcMessage> received = new LinkedBlockingQueue<>();
+        CompletableFuture<ShmConnection> connecting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ShmConnection.connect(dir, RING_CAPACITY, new RpcMessageEncoder(), new RpcMessageDecoder());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Path file = null;
+        while (file == null) {
+            try (Stream<Path> files = Files.list(dir)) {
+                file = files.filter(f -> f.toString().endsWith(ShmTransport.CONNECTION_SUFFIX)).findFirst().orElse(null);
+            }
+        }
+        ShmConnection server = ShmConnection.accept(file, RING_CAPACITY, new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(new RpcMessageDecoder(), new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        received.add((RpcMessage) msg);
+                    }
+                });
+            }
+        });
+        ShmConnection client = connecting.get(5, TimeUnit.SECONDS);
+        try {
+            //附件比单条消息上限大，会拆成多段写入
+            int writers = 4;
+            int messages = 20;
+            int size = RING_CAPACITY;
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[writers];
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                futures[w] = CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < messages; i++) {
+                        client.channel().writeAndFlush(request(writer + "-" + i, content(writer, size)));
+                    }
+                });
+            }
+            CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+            for (int i = 0; i < writers * messages; i++) {
+                RpcMessage rpcMessage = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull(rpcMessage);
+                Object[] parameters = ((RpcRequest) rpcMessage.getData()).getParameters();
+                int writer = Integer.parseInt(((String) parameters[0]).split("-")[0]);
+                assertArrayEquals(content(writer, size), ((RpcAttachment) parameters[1]).toByteArray());
+                RpcAttachment.closeAll(rpcMessage.getAttachments());
+            }
+            assertEquals(0, received.size());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package study.rpc.remoting.transport.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShmRingTest {
+    private static final int CAPACITY = 64;
+
+    private static ShmRing newRing() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ShmRing.size(CAPACITY)).order(ByteOrder.nativeOrder());
+        return new ShmRing(buffer, Unpooled.wrappedBuffer(buffer), 0, CAPACITY);
+    }
+
+    private static ByteBuf message(String s) {
+        return Unpooled.copiedBuffer(s, StandardCharsets.UTF_8);
+    }
+
+    private static String poll(ShmRing ring) {
+        ByteBuf buf = ring.poll(ByteBufAllocator.DEFAULT);
+        if (buf == null) {
+            return null;
+        }
+        try {
+            return buf.toString(StandardCharsets.UTF_8);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void messagesAreReadInOrder() {
+        ShmRing ring = newRing();
+        assertNull(poll(ring));
+        assertTrue(ring.offer(message("hello")));
+        assertTrue(ring.offer(message("world")));
+        assertEquals("hello", poll(ring));
+        assertEquals("world", poll(ring));
+        assertNull(poll(ring));
+    }
+
+    @Test
+    void fullRingRejectsUntilConsumed() {
+        ShmRing ring = newRing();
+        //每条记录4+20字节对齐到24，64字节只能放两条
+        String payload = "01234567890123456789";
+        assertTrue(ring.offer(message(payload)));
+        assertTrue(ring.offer(message(payload)));
+        assertFalse(ring.offer(message(payload)));
+        assertEquals(payload, poll(ring));
+        //剩余空间不够时写入填充标记，从头继续写
+        assertTrue(ring.offer(message(payload)));
+        assertEquals(payload, poll(ring));
+        assertEquals(payload, poll(ring));
+        assertNull(poll(ring));
+    }
+
+    @Test
+    void wrapsAroundManyTimes() {
+        ShmRing ring = newRing();
+        for (int i = 0; i < 1000; i++) {
+            String payload = "message-" + i;
+            assertTrue(ring.offer(message(payload)));
+            assertEquals(payload, poll(ring));
+        }
+        assertTrue(ring.maxMessageSize() < CAPACITY);
+    }
+}
@@ -1,10 +1,34 @@
 package study.rpc.serialize.kryo;
 
 import org.junit.jupiter.api.Test;
+import study.rpc.remoting.dtObject.RpcResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class KryoSerializerTest {
     @Test
     void kryoSerializerTest(){
     }
 
+    @Test
+    void cachedPrefixProducesSameBytes() {
+        KryoSerializer serializer = new KryoSerializer();
+        List<String> data = new ArrayList<>(Arrays.asList("a", "b", "a"));
+        RpcResponse<Object> response = RpcResponse.success(data, "request-1");
+        byte[] expected = serializer.serialize(response);
+
+        RpcResponse<Object> cached = RpcResponse.success(data, "request-1");
+        cached.setSerializedPrefix(serializer.serializeResponsePrefix(RpcResponse.success(data, null)));
+        assertArrayEquals(expected, serializer.serialize(cached));
+
+        RpcResponse<?> decoded = serializer.deserialize(expected, RpcResponse.class);
+        assertEquals("request-1", decoded.getRequestId());
+        assertEquals(data, decoded.getData());
+    }
+
 }